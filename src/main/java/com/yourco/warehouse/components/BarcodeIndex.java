@@ -0,0 +1,139 @@
+package com.yourco.warehouse.components;
+
+import com.yourco.warehouse.repository.ProductBarcodeRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * BARCODE INDEX - БАРКОД -> ПРОДУКТ В ПАМЕТТА
+ * ===========================================
+ * Hash индекс от нормализиран баркод към productId. Всяко сканиране е едно
+ * ConcurrentHashMap.get() без заявка към базата - ръчните скенери при товарене
+ * пращат десетки сканирания в секунда на работник.
+ *
+ * - Индексът се построява веднъж при стартиране от product_barcodes (само проекция)
+ * - Нови баркодове се добавят след commit на транзакцията, която ги е записала;
+ *   при rollback не влизат в индекса
+ * - Непознат баркод се търси в базата с една заявка по idx_barcode_unique - така се
+ *   виждат баркодове, импортирани на друг нод; намереният се добавя в индекса.
+ *   Баркодове не се изтриват и не сменят продукта, затова кешът не остарява
+ */
+@Component
+public class BarcodeIndex {
+
+    private static final Logger log = LoggerFactory.getLogger(BarcodeIndex.class);
+
+    public static final int MAX_BARCODE_LENGTH = 64;
+
+    private final ProductBarcodeRepository barcodeRepository;
+    private final Map<String, Long> productIdByBarcode = new ConcurrentHashMap<>();
+
+    private volatile boolean loaded = false;
+
+    @Autowired
+    public BarcodeIndex(ProductBarcodeRepository barcodeRepository) {
+        this.barcodeRepository = barcodeRepository;
+    }
+
+    // ==========================================
+    // READ
+    // ==========================================
+
+    /**
+     * productId за баркода или null ако е непознат и в базата
+     */
+    public Long resolve(String barcode) {
+        String normalized = normalize(barcode);
+        if (normalized == null) {
+            return null;
+        }
+        if (!loaded) {
+            rebuild();
+        }
+        Long productId = productIdByBarcode.get(normalized);
+        if (productId != null) {
+            return productId;
+        }
+
+        productId = barcodeRepository.findProductIdByBarcode(normalized);
+        if (productId != null) {
+            productIdByBarcode.put(normalized, productId);
+            log.debug("Barcode {} loaded from database (imported on another node)", normalized);
+        }
+        return productId;
+    }
+
+    public int size() {
+        return productIdByBarcode.size();
+    }
+
+    /**
+     * Каноничната форма на баркода: без интервали и управляващи символи (CR/LF от
+     * скенера), главни букви. null за празен или твърде дълъг баркод.
+     */
+    public static String normalize(String barcode) {
+        if (barcode == null) {
+            return null;
+        }
+        StringBuilder result = new StringBuilder(barcode.length());
+        for (int i = 0; i < barcode.length(); i++) {
+            char c = barcode.charAt(i);
+            if (!Character.isWhitespace(c) && !Character.isISOControl(c)) {
+                result.append(c);
+            }
+        }
+        if (result.length() == 0 || result.length() > MAX_BARCODE_LENGTH) {
+            return null;
+        }
+        return result.toString().toUpperCase(Locale.ROOT);
+    }
+
+    // ==========================================
+    // LIFECYCLE - build при стартиране
+    // ==========================================
+
+    @EventListener(ApplicationReadyEvent.class)
+    public synchronized void rebuild() {
+        List<Object[]> rows = barcodeRepository.findAllBarcodeMappings();
+        Map<String, Long> loadedMappings = new HashMap<>(rows.size() * 2);
+        rows.forEach(row -> loadedMappings.put((String) row[0], (Long) row[1]));
+
+        // Баркодове не се изтриват - putAll не губи записи, регистрирани по време на заявката
+        productIdByBarcode.putAll(loadedMappings);
+        loaded = true;
+
+        log.info("Barcode index built: {} barcodes", loadedMappings.size());
+    }
+
+    // ==========================================
+    // MUTATIONS
+    // ==========================================
+
+    /**
+     * Добавя баркода в индекса след commit на текущата транзакция
+     */
+    public void register(String normalizedBarcode, Long productId) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            productIdByBarcode.put(normalizedBarcode, productId);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                productIdByBarcode.put(normalizedBarcode, productId);
+            }
+        });
+    }
+}
@@ -0,0 +1,545 @@
+package com.yourco.warehouse.components;
+
+import com.yourco.warehouse.repository.CartItemRepository;
+import com.yourco.warehouse.repository.OrderItemRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+
+/**
+ * CART STORE - КОЛИЧКИТЕ В ПАМЕТТА С WRITE-BEHIND
+ * ===============================================
+ * Когато е включен (warehouse.cart.write-behind-enabled), количката на всеки активен
+ * потребител се държи в паметта: +/- в cartPanel.js променя само обекта в паметта,
+ * а cart_items се обновява асинхронно.
+ *
+ * - Зареждане: при първо обръщение - една заявка за редовете на потребителя
+ * - Write-behind: на flush-interval-ms променените редове на всички колички се
+ *   записват в една транзакция (upsert/delete); при грешка - поотделно по количка
+ * - Checkout и logout записват количката синхронно (flush) преди да я използват/освободят
+ * - Изчистване: колички без незаписани промени се освобождават след idle-ttl-minutes,
+ *   а над max-resident-carts - най-отдавна неизползваните
+ * - Резервираното от клиента в чакащи поръчки се кешира за reserved-refresh-seconds -
+ *   проверките в количката са ориентировъчни, окончателната е при checkout
+ * - Изключен: всяка промяна се записва веднага (write-through) в транзакцията на
+ *   извикващия (или в една нова, ако няма), нищо не се кешира
+ * - Store-ът е локален за процеса - само за един нод или sticky sessions
+ * - Micrometer: cart.store.resident, cart.store.flushes{result}
+ */
+@Component
+public class CartStore {
+
+    private static final Logger log = LoggerFactory.getLogger(CartStore.class);
+
+    private static final int MAX_FLUSH_BATCH = 200;
+
+    private final boolean enabled;
+    private final long idleTtlMillis;
+    private final int maxResidentCarts;
+    private final long reservedRefreshMillis;
+    private final CartItemRepository cartItemRepository;
+    private final OrderItemRepository orderItemRepository;
+    private final TransactionTemplate flushTransaction;
+    private final TransactionTemplate writeThroughTransaction;
+    private final MeterRegistry meterRegistry;
+
+    private final Map<Long, UserCart> carts = new ConcurrentHashMap<>();
+
+    @Autowired
+    public CartStore(CartItemRepository cartItemRepository,
+                     OrderItemRepository orderItemRepository,
+                     PlatformTransactionManager transactionManager,
+                     MeterRegistry meterRegistry,
+                     @Value("${warehouse.cart.write-behind-enabled:false}") boolean enabled,
+                     @Value("${warehouse.cart.idle-ttl-minutes:30}") long idleTtlMinutes,
+                     @Value("${warehouse.cart.max-resident-carts:10000}") int maxResidentCarts,
+                     @Value("${warehouse.cart.reserved-refresh-seconds:30}") long reservedRefreshSeconds) {
+        this.cartItemRepository = cartItemRepository;
+        this.orderItemRepository = orderItemRepository;
+        this.flushTransaction = new TransactionTemplate(transactionManager);
+        this.flushTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.writeThroughTransaction = new TransactionTemplate(transactionManager);
+        this.meterRegistry = meterRegistry;
+        this.enabled = enabled;
+        this.idleTtlMillis = idleTtlMinutes * 60_000L;
+        this.maxResidentCarts = Math.max(1, maxResidentCarts);
+        this.reservedRefreshMillis = reservedRefreshSeconds * 1000L;
+        meterRegistry.gaugeMapSize("cart.store.resident", Tags.empty(), carts);
+    }
+
+    /**
+     * Ред от количката
+     */
+    public record Line(Long productId, int quantity, LocalDateTime updatedAt) {
+    }
+
+    private record Reserved(int quantity, long loadedAt) {
+    }
+
+    private record PendingWrite(UserCart cart, boolean cleared, List<Line> lines) {
+        boolean isEmpty() {
+            return !cleared && lines.isEmpty();
+        }
+    }
+
+    /**
+     * Количката на един потребител. Методите се извикват само от read/update -
+     * под monitor-а на обекта.
+     */
+    public static final class UserCart {
+
+        private final Long userId;
+        private final Map<Long, Line> lines = new LinkedHashMap<>();
+
+        // productId -> последното незаписано състояние на реда (quantity 0 = изтриване)
+        private final Map<Long, Line> dirty = new HashMap<>();
+        private boolean cleared;
+
+        private final Map<Long, Reserved> reserved = new HashMap<>();
+        private final ReentrantLock flushLock = new ReentrantLock();
+        private long lastAccess = System.currentTimeMillis();
+        private boolean evicted;
+
+        private UserCart(Long userId) {
+            this.userId = userId;
+        }
+
+        public int quantity(Long productId) {
+            Line line = lines.get(productId);
+            return line != null ? line.quantity() : 0;
+        }
+
+        public boolean contains(Long productId) {
+            return lines.containsKey(productId);
+        }
+
+        public void set(Long productId, int quantity) {
+            if (quantity < 1) {
+                throw new IllegalArgumentException("Количеството трябва да бъде поне 1");
+            }
+            Line line = new Line(productId, quantity, LocalDateTime.now());
+            lines.put(productId, line);
+            dirty.put(productId, line);
+        }
+
+        public boolean remove(Long productId) {
+            if (lines.remove(productId) == null) {
+                return false;
+            }
+            dirty.put(productId, new Line(productId, 0, LocalDateTime.now()));
+            return true;
+        }
+
+        public int clear() {
+            int count = lines.size();
+            lines.clear();
+            dirty.clear();
+            cleared = true;
+            return count;
+        }
+
+        /**
+         * Редовете - последно променените първи (както ORDER BY updatedAt DESC)
+         */
+        public List<Line> lines() {
+            List<Line> result = new ArrayList<>(lines.values());
+            result.sort(Comparator.comparing(Line::updatedAt).reversed());
+            return result;
+        }
+
+        public Map<Long, Integer> quantities() {
+            Map<Long, Integer> quantities = new LinkedHashMap<>();
+            lines.values().forEach(line -> quantities.put(line.productId(), line.quantity()));
+            return quantities;
+        }
+
+        public boolean isEmpty() {
+            return lines.isEmpty();
+        }
+
+        private boolean hasPendingWrites() {
+            return cleared || !dirty.isEmpty();
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    // ==========================================
+    // ACCESS
+    // ==========================================
+
+    /**
+     * Чете количката под нейния lock
+     */
+    public <T> T read(Long userId, Function<UserCart, T> reader) {
+        return access(userId, reader, false);
+    }
+
+    /**
+     * Променя количката под нейния lock. Изключен store записва промяната веднага.
+     */
+    public <T> T update(Long userId, Function<UserCart, T> mutation) {
+        return access(userId, mutation, true);
+    }
+
+    /**
+     * Резервираното от потребителя в чакащи поръчки (productId -> количество).
+     * Кешира се в количката за reserved-refresh-seconds.
+     */
+    public Map<Long, Integer> reservedByUser(Long userId, Collection<Long> productIds) {
+        UserCart cart = enabled ? carts.get(userId) : null;
+        if (cart == null) {
+            return orderItemRepository.getReservedQuantitiesByUser(userId, productIds);
+        }
+
+        long now = System.currentTimeMillis();
+        Map<Long, Integer> result = new HashMap<>();
+        List<Long> stale = new ArrayList<>();
+        synchronized (cart) {
+            for (Long productId : productIds) {
+                Reserved cached = cart.reserved.get(productId);
+                if (cached != null && now - cached.loadedAt() < reservedRefreshMillis) {
+                    result.put(productId, cached.quantity());
+                } else {
+                    stale.add(productId);
+                }
+            }
+        }
+        if (stale.isEmpty()) {
+            return result;
+        }
+
+        Map<Long, Integer> fresh = orderItemRepository.getReservedQuantitiesByUser(userId, stale);
+        synchronized (cart) {
+            for (Long productId : stale) {
+                int quantity = fresh.getOrDefault(productId, 0);
+                cart.reserved.put(productId, new Reserved(quantity, now));
+                result.put(productId, quantity);
+            }
+        }
+        return result;
+    }
+
+    // ==========================================
+    // SYNCHRONOUS FLUSH - checkout, logout
+    // ==========================================
+
+    /**
+     * Записва незаписаните промени в количката на потребителя (в собствена транзакция)
+     */
+    public void flush(Long userId) {
+        UserCart cart = carts.get(userId);
+        if (cart == null) {
+            return;
+        }
+        cart.flushLock.lock();
+        try {
+            writeSingle(cart);
+        } finally {
+            cart.flushLock.unlock();
+        }
+    }
+
+    /**
+     * Записва и освобождава количката (logout)
+     */
+    public void flushAndEvict(Long userId) {
+        UserCart cart = carts.get(userId);
+        if (cart == null) {
+            return;
+        }
+        cart.flushLock.lock();
+        try {
+            writeSingle(cart);
+            evict(cart);
+        } finally {
+            cart.flushLock.unlock();
+        }
+    }
+
+    /**
+     * След commit на транзакцията (checkout изтрива cart_items) количката в паметта се
+     * изхвърля без запис. При rollback остава непроменена.
+     */
+    public void discardAfterCommit(Long userId) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            discard(userId);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                discard(userId);
+            }
+        });
+    }
+
+    // ==========================================
+    // WRITE-BEHIND
+    // ==========================================
+
+    /**
+     * Записва променените колички - до MAX_FLUSH_BATCH колички в една транзакция.
+     * Колички, които в момента се записват синхронно (checkout), се пропускат.
+     */
+    @Scheduled(fixedDelayString = "${warehouse.cart.flush-interval-ms:2000}")
+    public synchronized void flushPending() {
+        if (!enabled) {
+            return;
+        }
+
+        List<UserCart> batch = new ArrayList<>();
+        List<PendingWrite> writes = new ArrayList<>();
+        try {
+            for (UserCart cart : carts.values()) {
+                if (writes.size() >= MAX_FLUSH_BATCH) {
+                    break;
+                }
+                if (!cart.flushLock.tryLock()) {
+                    continue;
+                }
+                batch.add(cart);
+                PendingWrite write = drain(cart);
+                if (!write.isEmpty()) {
+                    writes.add(write);
+                }
+            }
+
+            if (!writes.isEmpty()) {
+                writeBatch(writes);
+            }
+            evictIdle(batch);
+        } finally {
+            batch.forEach(cart -> cart.flushLock.unlock());
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (!enabled) {
+            return;
+        }
+        for (UserCart cart : carts.values()) {
+            try {
+                flush(cart.userId);
+            } catch (Exception e) {
+                log.error("Количката на потребител {} не е записана при спиране: {}", cart.userId, e.getMessage());
+            }
+        }
+    }
+
+    // ==========================================
+    // PRIVATE HELPERS
+    // ==========================================
+
+    private <T> T access(Long userId, Function<UserCart, T> action, boolean modifies) {
+        if (!enabled) {
+            return modifies
+                    ? writeThroughTransaction.execute(status -> accessDirect(userId, action, true))
+                    : accessDirect(userId, action, false);
+        }
+        while (true) {
+            UserCart cart = carts.computeIfAbsent(userId, this::load);
+            T result;
+            synchronized (cart) {
+                if (cart.evicted) {
+                    // Освободена между computeIfAbsent и lock-а - зареждаме наново
+                    continue;
+                }
+                cart.lastAccess = System.currentTimeMillis();
+                result = action.apply(cart);
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Write-through без кеш: зареждане, промяна и запис с обикновените repository
+     * извиквания - в транзакцията на извикващия, без отделна REQUIRES_NEW
+     */
+    private <T> T accessDirect(Long userId, Function<UserCart, T> action, boolean modifies) {
+        UserCart cart = load(userId);
+        T result;
+        synchronized (cart) {
+            result = action.apply(cart);
+        }
+        if (modifies) {
+            apply(drain(cart));
+        }
+        return result;
+    }
+
+    private UserCart load(Long userId) {
+        UserCart cart = new UserCart(userId);
+        for (Object[] row : cartItemRepository.findCartLinesByUserId(userId)) {
+            Long productId = (Long) row[0];
+            cart.lines.put(productId, new Line(productId, (Integer) row[1], (LocalDateTime) row[2]));
+        }
+        return cart;
+    }
+
+    private PendingWrite drain(UserCart cart) {
+        synchronized (cart) {
+            PendingWrite write = new PendingWrite(cart, cart.cleared, new ArrayList<>(cart.dirty.values()));
+            cart.cleared = false;
+            cart.dirty.clear();
+            return write;
+        }
+    }
+
+    /**
+     * Връща неуспешно записаните промени; по-новите промени в количката имат предимство
+     */
+    private void restore(PendingWrite write) {
+        UserCart cart = write.cart();
+        synchronized (cart) {
+            if (write.cleared()) {
+                cart.cleared = true;
+            }
+            for (Line line : write.lines()) {
+                cart.dirty.putIfAbsent(line.productId(), line);
+            }
+        }
+    }
+
+    /**
+     * Извиква се под flushLock-а на количката
+     */
+    private void writeSingle(UserCart cart) {
+        PendingWrite write = drain(cart);
+        if (write.isEmpty()) {
+            return;
+        }
+        try {
+            flushTransaction.executeWithoutResult(status -> apply(write));
+            count("ok", 1);
+        } catch (RuntimeException e) {
+            restore(write);
+            count("failed", 1);
+            throw e;
+        }
+    }
+
+    private void writeBatch(List<PendingWrite> writes) {
+        try {
+            flushTransaction.executeWithoutResult(status -> writes.forEach(this::apply));
+            count("ok", writes.size());
+            log.debug("Cart write-behind: {} carts flushed", writes.size());
+            return;
+        } catch (RuntimeException e) {
+            log.warn("Cart write-behind batch of {} carts failed, retrying one by one: {}", writes.size(), e.getMessage());
+        }
+
+        // Една проблемна количка не трябва да блокира останалите
+        for (PendingWrite write : writes) {
+            try {
+                flushTransaction.executeWithoutResult(status -> apply(write));
+                count("ok", 1);
+            } catch (RuntimeException e) {
+                restore(write);
+                count("failed", 1);
+                log.error("Cart write-behind failed for user {}: {}", write.cart().userId, e.getMessage());
+            }
+        }
+    }
+
+    private void apply(PendingWrite write) {
+        Long userId = write.cart().userId;
+        if (write.cleared()) {
+            cartItemRepository.deleteAllByUserId(userId);
+        }
+        for (Line line : write.lines()) {
+            if (line.quantity() > 0) {
+                cartItemRepository.upsertLine(userId, line.productId(), line.quantity(), line.updatedAt());
+            } else if (!write.cleared()) {
+                cartItemRepository.deleteByUserIdAndProductId(userId, line.productId());
+            }
+        }
+    }
+
+    /**
+     * Освобождава неизползваните колички и пази броя им под max-resident-carts.
+     * Само колички без незаписани промени, чийто flushLock е взет от извикващия.
+     */
+    private void evictIdle(List<UserCart> lockedCarts) {
+        long now = System.currentTimeMillis();
+        List<UserCart> clean = new ArrayList<>();
+        for (UserCart cart : lockedCarts) {
+            synchronized (cart) {
+                if (cart.hasPendingWrites()) {
+                    continue;
+                }
+                if (now - cart.lastAccess > idleTtlMillis) {
+                    evict(cart);
+                } else {
+                    clean.add(cart);
+                }
+            }
+        }
+
+        int excess = carts.size() - maxResidentCarts;
+        if (excess <= 0) {
+            return;
+        }
+        clean.sort(Comparator.comparingLong(cart -> cart.lastAccess));
+        for (UserCart cart : clean) {
+            if (excess-- <= 0) {
+                break;
+            }
+            synchronized (cart) {
+                if (!cart.hasPendingWrites()) {
+                    evict(cart);
+                }
+            }
+        }
+    }
+
+    private void evict(UserCart cart) {
+        synchronized (cart) {
+            cart.evicted = true;
+            carts.remove(cart.userId, cart);
+        }
+    }
+
+    private void discard(Long userId) {
+        UserCart cart = carts.get(userId);
+        if (cart == null) {
+            return;
+        }
+        cart.flushLock.lock();
+        try {
+            evict(cart);
+        } finally {
+            cart.flushLock.unlock();
+        }
+    }
+
+    private void count(String result, int carts) {
+        meterRegistry.counter("cart.store.flushes", "result", result).increment(carts);
+    }
+}
@@ -0,0 +1,21 @@
+package com.yourco.warehouse.components;
+
+import com.yourco.warehouse.dto.ProductCatalogDTO;
+
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Публикува се от CatalogSnapshotHolder след всяка нова ревизия на каталога
+ *
+ * @param updated        добавените и променените активни продукти в новото им състояние
+ * @param deactivated    id-тата на деактивираните или изтрити продукти
+ * @param detailsChanged id-тата от updated, при които е променено нещо освен наличността
+ *                       (нов продукт, име, цена, категория...) - клиентът ги дозарежда
+ */
+public record CatalogChangedEvent(String epoch,
+                                  long revision,
+                                  List<ProductCatalogDTO> updated,
+                                  List<Long> deactivated,
+                                  Set<Long> detailsChanged) {
+}
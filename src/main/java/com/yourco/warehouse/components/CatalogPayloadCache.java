@@ -0,0 +1,211 @@
+package com.yourco.warehouse.components;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.yourco.warehouse.dto.ProductCatalogDTO;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tag;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * CATALOG PAYLOAD CACHE - ГОТОВИ JSON БАЙТОВЕ ЗА КАТАЛОГА
+ * =======================================================
+ * За всяка версия на snapshot-а каталогът (и всяка категория поотделно) се
+ * сериализира веднъж до UTF-8 JSON и се компресира веднъж с gzip. Заявките
+ * пишат готовите байтове директно в response-а - без Jackson и без компресия
+ * на request нишката.
+ *
+ * - Регенерирането върви на отделна нишка при CatalogChangedEvent / стартиране
+ * - Докато новата версия не е готова, заявките минават по стария път (Jackson)
+ *   - никога не се сервират байтове от различна версия от snapshot-а
+ * - Micrometer: catalog.payload.bytes{encoding=identity|gzip} - размерът на пълния
+ *   каталог, catalog.payload.lookups{result=hit|miss}
+ */
+@Component
+public class CatalogPayloadCache {
+
+    private static final Logger log = LoggerFactory.getLogger(CatalogPayloadCache.class);
+
+    // Под този размер gzip не си струва (header-ите са по-големи от спестеното)
+    private static final int GZIP_MIN_BYTES = 1024;
+
+    private final CatalogSnapshotHolder catalogSnapshot;
+    private final ObjectMapper objectMapper;
+    private final MeterRegistry meterRegistry;
+
+    private final ExecutorService builder;
+    private final AtomicBoolean building = new AtomicBoolean(false);
+
+    private final AtomicLong identityBytes = new AtomicLong();
+    private final AtomicLong gzipBytes = new AtomicLong();
+
+    private volatile Payloads payloads;
+
+    @Autowired
+    public CatalogPayloadCache(CatalogSnapshotHolder catalogSnapshot,
+                               ObjectMapper objectMapper,
+                               MeterRegistry meterRegistry) {
+        this.catalogSnapshot = catalogSnapshot;
+        this.objectMapper = objectMapper;
+        this.meterRegistry = meterRegistry;
+        this.builder = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "catalog-payload-builder");
+            thread.setDaemon(true);
+            return thread;
+        });
+        meterRegistry.gauge("catalog.payload.bytes", List.of(Tag.of("encoding", "identity")), identityBytes);
+        meterRegistry.gauge("catalog.payload.bytes", List.of(Tag.of("encoding", "gzip")), gzipBytes);
+    }
+
+    /**
+     * Готовият JSON в двата варианта. gzip е null, ако payload-ът е твърде малък за компресия.
+     */
+    public record Payload(byte[] json, byte[] gzip) {
+    }
+
+    private record Payloads(long version, Payload catalog, Map<String, Payload> byCategory) {
+    }
+
+    // ==========================================
+    // READ
+    // ==========================================
+
+    /**
+     * Целият каталог за дадената версия на snapshot-а или null, ако още не е готов
+     */
+    public Payload catalog(CatalogSnapshotHolder.Snapshot snapshot) {
+        Payloads current = forVersion(snapshot);
+        return current != null ? current.catalog() : null;
+    }
+
+    /**
+     * Продуктите от категорията (подредени по име, както /api/products/filter) или null
+     */
+    public Payload category(CatalogSnapshotHolder.Snapshot snapshot, String category) {
+        Payloads current = forVersion(snapshot);
+        if (current == null) {
+            return null;
+        }
+        return current.byCategory().get(category != null ? category.trim() : "");
+    }
+
+    // ==========================================
+    // REGENERATION - извън request нишката
+    // ==========================================
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        requestRegeneration();
+    }
+
+    @EventListener
+    public void onCatalogChanged(CatalogChangedEvent event) {
+        requestRegeneration();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        builder.shutdownNow();
+    }
+
+    private Payloads forVersion(CatalogSnapshotHolder.Snapshot snapshot) {
+        Payloads current = payloads;
+        if (current != null && current.version() == snapshot.version()) {
+            meterRegistry.counter("catalog.payload.lookups", "result", "hit").increment();
+            return current;
+        }
+        meterRegistry.counter("catalog.payload.lookups", "result", "miss").increment();
+        requestRegeneration();
+        return null;
+    }
+
+    private void requestRegeneration() {
+        if (!building.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            builder.execute(this::regenerate);
+        } catch (Exception e) {
+            building.set(false);
+            log.warn("Catalog payload regeneration not scheduled: {}", e.getMessage());
+        }
+    }
+
+    private void regenerate() {
+        try {
+            // Цикъл - промени, дошли по време на build-а, се хващат без нова задача
+            CatalogSnapshotHolder.Snapshot snapshot = catalogSnapshot.current();
+            while (payloads == null || payloads.version() != snapshot.version()) {
+                payloads = build(snapshot);
+                snapshot = catalogSnapshot.current();
+            }
+        } catch (Exception e) {
+            // Заявките остават на Jackson пътя; следващата промяна/заявка опитва отново
+            log.error("Грешка при генериране на catalog payload: {}", e.getMessage());
+            building.set(false);
+            return;
+        }
+        building.set(false);
+
+        // Промяна между последната проверка и building=false
+        Payloads current = payloads;
+        if (current != null && current.version() != catalogSnapshot.current().version()) {
+            requestRegeneration();
+        }
+    }
+
+    private Payloads build(CatalogSnapshotHolder.Snapshot snapshot) throws IOException {
+        long startedAt = System.nanoTime();
+
+        Payload catalog = encode(objectMapper, snapshot.products());
+        Map<String, Payload> byCategory = new HashMap<>();
+        for (String category : snapshot.metadata().categories()) {
+            byCategory.put(category, encode(objectMapper, snapshot.facets().filter(category, null, null, null)));
+        }
+
+        identityBytes.set(catalog.json().length);
+        gzipBytes.set(catalog.gzip() != null ? catalog.gzip().length : catalog.json().length);
+        log.debug("Catalog payloads v{} built in {} ms: {} bytes JSON, {} bytes gzip, {} category slices",
+                snapshot.version(), (System.nanoTime() - startedAt) / 1_000_000,
+                identityBytes.get(), gzipBytes.get(), byCategory.size());
+
+        return new Payloads(snapshot.version(), catalog, Map.copyOf(byCategory));
+    }
+
+    /**
+     * JSON байтовете и gzip варианта им (BEST_COMPRESSION - плаща се веднъж на версия)
+     */
+    static Payload encode(ObjectMapper objectMapper, List<ProductCatalogDTO> products) throws IOException {
+        byte[] json = objectMapper.writeValueAsBytes(products);
+        if (json.length < GZIP_MIN_BYTES) {
+            return new Payload(json, null);
+        }
+
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(json.length / 4);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(compressed) {
+            {
+                def.setLevel(Deflater.BEST_COMPRESSION);
+            }
+        }) {
+            gzip.write(json);
+        }
+        return new Payload(json, compressed.toByteArray());
+    }
+}
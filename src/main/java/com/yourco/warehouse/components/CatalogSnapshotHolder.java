@@ -0,0 +1,655 @@
+package com.yourco.warehouse.components;
+
+import com.yourco.warehouse.dto.ProductCatalogDTO;
+import com.yourco.warehouse.entity.ProductEntity;
+import com.yourco.warehouse.repository.ProductRepository;
+import com.yourco.warehouse.utils.CatalogFacetIndex;
+import com.yourco.warehouse.utils.CatalogMetadataAggregate;
+import com.yourco.warehouse.utils.CatalogSearchIndex;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * CATALOG SNAPSHOT HOLDER - IMMUTABLE КАТАЛОГ В ПАМЕТТА
+ * =====================================================
+ * Държи всички активни продукти като готови ProductCatalogDTO в immutable snapshot
+ * с монотонна версия. /api/products връща snapshot-а директно, а версията е ETag -
+ * повторно зареждане с непроменен каталог е 304 без заявка към базата и без сериализация.
+ *
+ * - Snapshot-ът се построява веднъж при стартиране от findAllByActiveTrue()
+ * - Всяка промяна на ProductEntity (ProductChangeListener) се събира за транзакцията
+ *   и след commit се прилага copy-on-write: нов snapshot, версия + 1
+ * - При rollback промените се изхвърлят - snapshot-ът отразява само committed данни
+ * - ETag съдържа и epoch на процеса, за да не съвпадне версия от преди рестарт
+ * - Search index-ът (SKU, име, описание) се обновява в същия момент, но само когато
+ *   текстът на продукта се е променил - промени в наличности не го докосват
+ * - Facet index-ът (категория, мерна единица, цена) е част от snapshot-а и се строи
+ *   наново само при промяна на набора продукти или на facet полетата
+ * - Метаданните (броячи по категория/единица, min/max/сума на цените) се поддържат
+ *   инкрементално при всяка промяна и периодично се сверяват с базата (заедно със
+ *   сумите на наличностите)
+ * - Промени от други нодове: products.updated_at се поддържа от MySQL при всяка промяна
+ *   на реда; на всеки warehouse.catalog.sync-interval-ms се четат редовете, променени
+ *   след последния видян updated_at (с припокриване), и се прилагат като нормална ревизия.
+ *   Изключено при включен StockReservationLedger - той е само за един нод, а
+ *   количествата в базата изостават от ledger-а
+ * - Промени само в количествата (резервация/продажба през JPA или StockReservationLedger -
+ *   при всяка поръчка) не копират snapshot-а поотделно: последните стойности по продукт
+ *   се събират и се сливат в една ревизия на warehouse.catalog.stock-merge-interval-ms,
+ *   извън request нишката. Copy-on-write веднага остава за редките промени по продукта
+ * - Всяка ревизия влиза в ограничен change log - клиент с известна ревизия получава
+ *   само разликата (changesSince), а CatalogChangedEvent носи промените към WebSocket
+ */
+@Component
+public class CatalogSnapshotHolder {
+
+    private static final Logger log = LoggerFactory.getLogger(CatalogSnapshotHolder.class);
+
+    private static final int MAX_REBUILD_ATTEMPTS = 3;
+
+    // Припокриване на sync прозореца - покрива транзакции, commit-нати след updated_at-а си
+    private static final Duration SYNC_OVERLAP = Duration.ofSeconds(10);
+    private static final LocalDateTime SYNC_ORIGIN = LocalDateTime.of(2000, 1, 1, 0, 0);
+
+    private final ProductRepository productRepository;
+    private final ApplicationEventPublisher eventPublisher;
+    private final int changeLogSize;
+    private final boolean syncEnabled;
+    private final String epoch = Long.toString(System.currentTimeMillis(), 36);
+
+    private final CatalogSearchIndex searchIndex = new CatalogSearchIndex();
+    private final CatalogMetadataAggregate metadataAggregate = new CatalogMetadataAggregate();
+
+    private volatile Snapshot snapshot;
+    private long version = 0;
+
+    // Брои приложените промени - rebuild не презаписва промени, дошли по време на заявката
+    private long modificationCount = 0;
+
+    // Последните ревизии (най-старата отпред); changeLogBase е ревизията, от която log-ът е пълен
+    private final Deque<Revision> changeLog = new ArrayDeque<>();
+    private long changeLogBase = 0;
+
+    // productId -> modificationCount при последния patch - sync не връща по-стари стойности
+    private final Map<Long, Long> patchedAt = new HashMap<>();
+    // Най-новият updated_at (часовника на базата), видян от rebuild/sync
+    private volatile LocalDateTime syncCursor;
+
+    // productId -> последните количества, които още не са слети в snapshot-а
+    private final Map<Long, StockReservationLedger.StockLevel> pendingStock = new ConcurrentHashMap<>();
+
+    @Autowired
+    public CatalogSnapshotHolder(ProductRepository productRepository,
+                                 ApplicationEventPublisher eventPublisher,
+                                 @Value("${warehouse.catalog.change-log-size:1024}") int changeLogSize,
+                                 @Value("${warehouse.reservations.ledger-enabled:false}") boolean ledgerEnabled) {
+        this.productRepository = productRepository;
+        this.eventPublisher = eventPublisher;
+        this.changeLogSize = Math.max(1, changeLogSize);
+        this.syncEnabled = !ledgerEnabled;
+    }
+
+    /**
+     * Immutable изглед на каталога - products е подреден по id, byId/bySku са за директен достъп
+     */
+    public record Snapshot(long version, String epoch, String etag,
+                           List<ProductCatalogDTO> products,
+                           Map<Long, ProductCatalogDTO> byId,
+                           Map<String, ProductCatalogDTO> bySku,
+                           CatalogFacetIndex facets,
+                           CatalogMetadataAggregate.Metadata metadata) {
+    }
+
+    /**
+     * Разликата спрямо дадена ревизия. reset = true означава, че клиентът трябва да
+     * презареди целия каталог (друг epoch или ревизията е извън change log-а)
+     */
+    public record ChangeSet(boolean reset, String epoch, long revision,
+                            List<ProductCatalogDTO> updated,
+                            List<Long> deactivated) {
+    }
+
+    private record Revision(long version, Map<Long, ProductCatalogDTO> changes) {
+    }
+
+    // ==========================================
+    // READ
+    // ==========================================
+
+    public Snapshot current() {
+        Snapshot current = snapshot;
+        if (current == null) {
+            rebuild();
+            current = snapshot;
+        }
+        return current;
+    }
+
+    /**
+     * Най-релевантните активни продукти за заявката (ranked, най-много {@code limit})
+     */
+    public List<ProductCatalogDTO> search(String query, int limit) {
+        Map<Long, ProductCatalogDTO> byId = current().byId();
+        return searchIndex.search(query, limit).stream()
+                .map(byId::get)
+                .filter(Objects::nonNull)
+                .toList();
+    }
+
+    /**
+     * Id-тата на най-релевантните активни продукти - за заявки, които работят с entities
+     */
+    public List<Long> searchIds(String query, int limit) {
+        current();
+        return searchIndex.search(query, limit);
+    }
+
+    /**
+     * Продуктите, добавени/променени и деактивирани след ревизия {@code since} -
+     * за всеки продукт само последното му състояние
+     */
+    public ChangeSet changesSince(long since, String clientEpoch) {
+        current();
+        synchronized (this) {
+            Snapshot current = snapshot;
+            if (!epoch.equals(clientEpoch) || since < changeLogBase || since > current.version()) {
+                return new ChangeSet(true, epoch, current.version(), List.of(), List.of());
+            }
+
+            Map<Long, ProductCatalogDTO> merged = new LinkedHashMap<>();
+            for (Revision revision : changeLog) {
+                if (revision.version() > since) {
+                    revision.changes().forEach((productId, dto) -> {
+                        merged.remove(productId);
+                        merged.put(productId, dto);
+                    });
+                }
+            }
+
+            List<ProductCatalogDTO> updated = new ArrayList<>();
+            List<Long> deactivated = new ArrayList<>();
+            merged.forEach((productId, dto) -> {
+                if (dto != null) {
+                    updated.add(dto);
+                } else {
+                    deactivated.add(productId);
+                }
+            });
+            return new ChangeSet(false, epoch, current.version(), updated, deactivated);
+        }
+    }
+
+    // ==========================================
+    // LIFECYCLE - build при стартиране
+    // ==========================================
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuild() {
+        for (int attempt = 1; attempt <= MAX_REBUILD_ATTEMPTS; attempt++) {
+            long modificationsBefore;
+            synchronized (this) {
+                modificationsBefore = modificationCount;
+            }
+
+            // Преди зареждането - промени по време на заявката ще се видят и от sync-а
+            LocalDateTime cursor = syncEnabled ? productRepository.findLatestUpdate() : null;
+            Map<Long, ProductCatalogDTO> loaded = new LinkedHashMap<>();
+            productRepository.findAllByActiveTrue().stream()
+                    .sorted((a, b) -> Long.compare(a.getId(), b.getId()))
+                    .forEach(product -> loaded.put(product.getId(), ProductCatalogDTO.from(product)));
+
+            synchronized (this) {
+                if (modificationCount == modificationsBefore || attempt == MAX_REBUILD_ATTEMPTS) {
+                    searchIndex.clear();
+                    loaded.values().forEach(this::index);
+                    metadataAggregate.clear();
+                    loaded.values().forEach(metadataAggregate::add);
+                    publish(loaded, true);
+                    changeLog.clear();
+                    changeLogBase = version;
+                    patchedAt.clear();
+                    syncCursor = cursor != null ? cursor : SYNC_ORIGIN;
+                    log.info("Catalog snapshot built: {} active products, version {}", loaded.size(), version);
+                    return;
+                }
+            }
+            log.debug("Catalog snapshot rebuild retried - concurrent product changes detected");
+        }
+    }
+
+    /**
+     * Прилага промените по продукти, направени от други нодове (или с bulk UPDATE) след
+     * последния видян updated_at. Продукт, променен локално по време на заявката, се
+     * пропуска - локалната промяна е по-нова, а следващият sync го прочита отново.
+     */
+    @Scheduled(initialDelayString = "${warehouse.catalog.sync-interval-ms:2000}",
+            fixedDelayString = "${warehouse.catalog.sync-interval-ms:2000}")
+    public void syncFromDatabase() {
+        LocalDateTime cursor = syncCursor;
+        if (!syncEnabled || snapshot == null || cursor == null) {
+            return;
+        }
+        try {
+            // Локалните количества преди заявката влизат в snapshot-а (и в patchedAt)
+            mergeStock();
+            long modificationsBefore;
+            synchronized (this) {
+                modificationsBefore = modificationCount;
+            }
+
+            List<ProductEntity> changed = productRepository.findChangedSince(cursor.minus(SYNC_OVERLAP));
+            if (changed.isEmpty()) {
+                return;
+            }
+
+            LocalDateTime latest = cursor;
+            Map<Long, ProductCatalogDTO> changes = new HashMap<>();
+            for (ProductEntity product : changed) {
+                if (product.getUpdatedAt() != null && product.getUpdatedAt().isAfter(latest)) {
+                    latest = product.getUpdatedAt();
+                }
+                changes.put(product.getId(), product.isActive() ? ProductCatalogDTO.from(product) : null);
+            }
+
+            CatalogChangedEvent event = patchRemote(changes, modificationsBefore);
+            syncCursor = latest;
+            if (event != null) {
+                log.debug("Catalog synced {} products changed outside this node, version {}",
+                        event.updated().size() + event.deactivated().size(), event.revision());
+                eventPublisher.publishEvent(event);
+            }
+        } catch (Exception e) {
+            log.error("Грешка при синхронизация на каталога с базата: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Сверява инкременталните метаданни и сумите на наличностите с агрегатни заявки към
+     * базата. При разминаване (промяна, пропусната от sync-а - напр. изтрит ред или
+     * транзакция, по-дълга от припокриването) каталогът се rebuild-ва.
+     */
+    @Scheduled(initialDelayString = "${warehouse.catalog.verify-interval-ms:900000}",
+            fixedDelayString = "${warehouse.catalog.verify-interval-ms:900000}")
+    public void verifyMetadata() {
+        try {
+            mergeStock();
+            syncFromDatabase();
+
+            long modificationsBefore;
+            synchronized (this) {
+                modificationsBefore = modificationCount;
+            }
+
+            List<Object[]> priceRows = productRepository.getActivePriceAggregate();
+            Object[] price = priceRows.isEmpty() ? new Object[4] : priceRows.get(0);
+            Map<String, Integer> categoryCounts = new HashMap<>();
+            productRepository.countProductsByCategory().forEach(row -> {
+                String category = row[0] != null ? row[0].toString().trim() : "";
+                if (!category.isEmpty()) {
+                    categoryCounts.merge(category, ((Number) row[1]).intValue(), Integer::sum);
+                }
+            });
+
+            // С ledger количествата в базата изостават от паметта - не се сравняват
+            List<Object[]> stockRows = syncEnabled ? productRepository.getActiveStockTotals() : List.of();
+
+            CatalogMetadataAggregate.Metadata metadata;
+            List<ProductCatalogDTO> products;
+            synchronized (this) {
+                if (modificationCount != modificationsBefore || snapshot == null) {
+                    log.debug("Catalog metadata verification skipped - concurrent product changes");
+                    return;
+                }
+                metadata = snapshot.metadata();
+                products = snapshot.products();
+            }
+
+            boolean stockConsistent = true;
+            if (!stockRows.isEmpty()) {
+                long available = 0;
+                long reserved = 0;
+                for (ProductCatalogDTO product : products) {
+                    available += product.getQuantityAvailable();
+                    reserved += product.getQuantityReserved();
+                }
+                stockConsistent = available == toLong(stockRows.get(0)[0]) && reserved == toLong(stockRows.get(0)[1]);
+            }
+
+            Map<String, Integer> expectedCategories = new HashMap<>(metadata.categoryCounts());
+            expectedCategories.remove("");
+            boolean consistent = metadata.totalProducts() == toLong(price[0])
+                    && metadata.minPrice().compareTo(toDecimal(price[1])) == 0
+                    && metadata.maxPrice().compareTo(toDecimal(price[2])) == 0
+                    && metadata.priceSum().compareTo(toDecimal(price[3])) == 0
+                    && expectedCategories.equals(categoryCounts);
+
+            if (!consistent || !stockConsistent) {
+                log.warn("Catalog snapshot drifted from the database ({} products in memory, {} in DB, stock {}) - rebuilding",
+                        metadata.totalProducts(), toLong(price[0]), stockConsistent ? "consistent" : "differs");
+                rebuild();
+            }
+        } catch (Exception e) {
+            log.error("Грешка при сверяване на метаданните на каталога: {}", e.getMessage());
+        }
+    }
+
+    // ==========================================
+    // MUTATIONS - от ProductChangeListener
+    // ==========================================
+
+    /**
+     * Продуктът е създаден или променен - неактивните продукти се махат от каталога
+     */
+    public void recordChange(ProductEntity product) {
+        if (product.getId() == null) {
+            return;
+        }
+        stage(product.getId(), product.isActive() ? ProductCatalogDTO.from(product) : null);
+    }
+
+    public void recordRemoval(Long productId) {
+        if (productId != null) {
+            stage(productId, null);
+        }
+    }
+
+    /**
+     * Само количествата са променени извън JPA (StockReservationLedger). Без lock и без
+     * копиране - по-новата стойност за продукта замества чакащата, а mergeStock ги
+     * прилага наведнъж.
+     */
+    public void recordStock(Map<Long, StockReservationLedger.StockLevel> levels) {
+        pendingStock.putAll(levels);
+    }
+
+    /**
+     * Слива чакащите количества в една ревизия; продукти извън каталога и непроменени
+     * количества се пропускат
+     */
+    @Scheduled(fixedDelayString = "${warehouse.catalog.stock-merge-interval-ms:250}")
+    public void mergeStock() {
+        if (pendingStock.isEmpty()) {
+            return;
+        }
+        CatalogChangedEvent event = patchStock();
+        if (event != null) {
+            eventPublisher.publishEvent(event);
+        }
+    }
+
+    // ==========================================
+    // PRIVATE HELPERS
+    // ==========================================
+
+    /**
+     * Събира промените на транзакцията в един map (null = премахване) и ги прилага
+     * наведнъж след commit
+     */
+    @SuppressWarnings("unchecked")
+    private void stage(Long productId, ProductCatalogDTO dto) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            apply(Collections.singletonMap(productId, dto));
+            return;
+        }
+
+        Map<Long, ProductCatalogDTO> pending =
+                (Map<Long, ProductCatalogDTO>) TransactionSynchronizationManager.getResource(this);
+        if (pending == null) {
+            Map<Long, ProductCatalogDTO> changes = new HashMap<>();
+            TransactionSynchronizationManager.bindResource(this, changes);
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    TransactionSynchronizationManager.unbindResourceIfPossible(CatalogSnapshotHolder.this);
+                    if (status == STATUS_COMMITTED) {
+                        apply(changes);
+                    }
+                }
+            });
+            pending = changes;
+        }
+        pending.put(productId, dto);
+    }
+
+    /**
+     * Прилага промените като нова ревизия; събитието се публикува извън lock-а.
+     * Продукти, при които са променени само количествата, отиват в pendingStock.
+     */
+    private void apply(Map<Long, ProductCatalogDTO> changes) {
+        Snapshot current = snapshot;
+        Map<Long, ProductCatalogDTO> details = new HashMap<>();
+        changes.forEach((productId, dto) -> {
+            ProductCatalogDTO previous = current != null ? current.byId().get(productId) : null;
+            if (dto != null && previous != null && sameDetails(previous, dto)) {
+                pendingStock.put(productId, new StockReservationLedger.StockLevel(
+                        dto.getQuantityAvailable(), dto.getQuantityReserved()));
+            } else {
+                // Пълното състояние е по-ново от чакащите количества (ledger-ът публикува
+                // своите след commit-а, т.е. след тази промяна)
+                pendingStock.remove(productId);
+                details.put(productId, dto);
+            }
+        });
+        if (details.isEmpty()) {
+            return;
+        }
+        CatalogChangedEvent event = patch(details);
+        if (event != null) {
+            eventPublisher.publishEvent(event);
+        }
+    }
+
+    private synchronized CatalogChangedEvent patchStock() {
+        Snapshot current = snapshot;
+        if (current == null) {
+            return null;
+        }
+        Map<Long, ProductCatalogDTO> changes = new HashMap<>();
+        for (Map.Entry<Long, StockReservationLedger.StockLevel> entry : List.copyOf(pendingStock.entrySet())) {
+            Long productId = entry.getKey();
+            StockReservationLedger.StockLevel level = entry.getValue();
+            // По-нова стойност, дошла междувременно, остава за следващия merge
+            pendingStock.remove(productId, level);
+
+            ProductCatalogDTO dto = current.byId().get(productId);
+            if (dto != null && (dto.getQuantityAvailable() != level.available()
+                    || dto.getQuantityReserved() != level.reserved())) {
+                changes.put(productId, dto.withQuantities(level.available(), level.reserved()));
+            }
+        }
+        return changes.isEmpty() ? null : patch(changes);
+    }
+
+    /**
+     * Промени, прочетени от базата - само продуктите, които реално се различават от
+     * snapshot-а и не са променени локално след началото на заявката (вкл. чакащи
+     * количества)
+     */
+    private synchronized CatalogChangedEvent patchRemote(Map<Long, ProductCatalogDTO> changes, long modificationsBefore) {
+        Snapshot current = snapshot;
+        if (current == null) {
+            return null;
+        }
+        Map<Long, ProductCatalogDTO> effective = new HashMap<>();
+        changes.forEach((productId, dto) -> {
+            Long localPatch = patchedAt.get(productId);
+            if ((localPatch != null && localPatch > modificationsBefore)
+                    || pendingStock.containsKey(productId)) {
+                return;
+            }
+            ProductCatalogDTO previous = current.byId().get(productId);
+            boolean differs = dto == null
+                    ? previous != null
+                    : previous == null || !sameContent(previous, dto);
+            if (differs) {
+                effective.put(productId, dto);
+            }
+        });
+        return effective.isEmpty() ? null : patch(effective);
+    }
+
+    private synchronized CatalogChangedEvent patch(Map<Long, ProductCatalogDTO> changes) {
+        modificationCount++;
+        for (Long productId : changes.keySet()) {
+            patchedAt.put(productId, modificationCount);
+        }
+        Snapshot current = snapshot;
+        if (current == null || changes.isEmpty()) {
+            return null;
+        }
+
+        Map<Long, ProductCatalogDTO> next = new LinkedHashMap<>(current.byId());
+        Map<Long, ProductCatalogDTO> effective = new LinkedHashMap<>();
+        Set<Long> detailsChanged = new HashSet<>();
+        boolean facetsChanged = false;
+        for (Map.Entry<Long, ProductCatalogDTO> change : changes.entrySet()) {
+            Long productId = change.getKey();
+            ProductCatalogDTO dto = change.getValue();
+            ProductCatalogDTO previous = dto != null ? next.put(productId, dto) : next.remove(productId);
+
+            if (previous != null && (dto == null || facetFieldsChanged(previous, dto))) {
+                metadataAggregate.remove(previous);
+            }
+            if (dto != null && (previous == null || facetFieldsChanged(previous, dto))) {
+                metadataAggregate.add(dto);
+            }
+
+            if (dto == null) {
+                // Неактивен продукт, който и преди не е бил в каталога - не е промяна за клиентите
+                if (previous != null) {
+                    searchIndex.remove(productId);
+                    facetsChanged = true;
+                    effective.put(productId, null);
+                }
+            } else {
+                if (previous == null || textChanged(previous, dto)) {
+                    index(dto);
+                }
+                facetsChanged |= previous == null || facetFieldsChanged(previous, dto);
+                if (previous == null || textChanged(previous, dto) || facetFieldsChanged(previous, dto)
+                        || previous.getVatRate() != dto.getVatRate()) {
+                    detailsChanged.add(productId);
+                }
+                effective.put(productId, dto);
+            }
+        }
+        if (effective.isEmpty()) {
+            return null;
+        }
+        publish(next, facetsChanged);
+        record(effective);
+        log.debug("Catalog snapshot patched with {} product changes, version {}", changes.size(), version);
+
+        List<ProductCatalogDTO> updated = new ArrayList<>();
+        List<Long> deactivated = new ArrayList<>();
+        effective.forEach((productId, dto) -> {
+            if (dto != null) {
+                updated.add(dto);
+            } else {
+                deactivated.add(productId);
+            }
+        });
+        return new CatalogChangedEvent(epoch, version, List.copyOf(updated), List.copyOf(deactivated),
+                Set.copyOf(detailsChanged));
+    }
+
+    private void record(Map<Long, ProductCatalogDTO> changes) {
+        changeLog.addLast(new Revision(version, Collections.unmodifiableMap(changes)));
+        while (changeLog.size() > changeLogSize) {
+            changeLogBase = changeLog.removeFirst().version();
+        }
+    }
+
+    private void index(ProductCatalogDTO product) {
+        searchIndex.put(product.getId(), product.getSku(), product.getName(), product.getDescription());
+    }
+
+    private static boolean textChanged(ProductCatalogDTO previous, ProductCatalogDTO current) {
+        return !Objects.equals(previous.getSku(), current.getSku())
+                || !Objects.equals(previous.getName(), current.getName())
+                || !Objects.equals(previous.getDescription(), current.getDescription());
+    }
+
+    private static boolean sameContent(ProductCatalogDTO previous, ProductCatalogDTO current) {
+        return sameDetails(previous, current)
+                && Objects.equals(previous.getQuantityAvailable(), current.getQuantityAvailable())
+                && Objects.equals(previous.getQuantityReserved(), current.getQuantityReserved());
+    }
+
+    /**
+     * Всичко освен количествата
+     */
+    private static boolean sameDetails(ProductCatalogDTO previous, ProductCatalogDTO current) {
+        return !textChanged(previous, current)
+                && !facetFieldsChanged(previous, current)
+                && previous.getVatRate() == current.getVatRate();
+    }
+
+    private static boolean facetFieldsChanged(ProductCatalogDTO previous, ProductCatalogDTO current) {
+        return !Objects.equals(previous.getCategory(), current.getCategory())
+                || !Objects.equals(previous.getUnit(), current.getUnit())
+                || !Objects.equals(previous.getName(), current.getName())
+                || previous.getPrice().compareTo(current.getPrice()) != 0;
+    }
+
+    private void publish(Map<Long, ProductCatalogDTO> byId, boolean rebuildFacets) {
+        List<ProductCatalogDTO> products = List.copyOf(byId.values());
+        Snapshot current = snapshot;
+        CatalogFacetIndex facets = rebuildFacets || current == null
+                ? new CatalogFacetIndex(products)
+                : current.facets().withProducts(products);
+        CatalogMetadataAggregate.Metadata metadata = rebuildFacets || current == null
+                ? metadataAggregate.view()
+                : current.metadata();
+
+        Map<String, ProductCatalogDTO> bySku = new HashMap<>(products.size() * 2);
+        products.forEach(product -> bySku.put(product.getSku(), product));
+
+        version++;
+        snapshot = new Snapshot(
+                version,
+                epoch,
+                "\"catalog-" + epoch + "-" + version + "\"",
+                products,
+                Collections.unmodifiableMap(byId),
+                Collections.unmodifiableMap(bySku),
+                facets,
+                metadata);
+    }
+
+    private static long toLong(Object value) {
+        return value != null ? ((Number) value).longValue() : 0L;
+    }
+
+    private static BigDecimal toDecimal(Object value) {
+        if (value == null) {
+            return BigDecimal.ZERO;
+        }
+        return value instanceof BigDecimal decimal ? decimal : new BigDecimal(value.toString());
+    }
+}
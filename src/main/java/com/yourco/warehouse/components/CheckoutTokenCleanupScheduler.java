@@ -0,0 +1,52 @@
+package com.yourco.warehouse.components;
+
+import com.yourco.warehouse.repository.CheckoutTokenRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * CHECKOUT TOKEN CLEANUP - ИЗТЕКЛИ IDEMPOTENCY KEYS
+ * =================================================
+ * Ключовете са нужни само докато клиентът може да повтори заявката (двоен клик,
+ * retry след timeout). След TTL-а се трият, за да остане checkout_tokens малка.
+ * Job-ът минава през ClusterJobCoordinator - изпълнява се само на един нод.
+ */
+@Component
+public class CheckoutTokenCleanupScheduler {
+
+    private static final Logger log = LoggerFactory.getLogger(CheckoutTokenCleanupScheduler.class);
+
+    public static final String CLEANUP_JOB = "checkout-token-cleanup";
+
+    private final CheckoutTokenRepository checkoutTokenRepository;
+    private final ClusterJobCoordinator jobCoordinator;
+    private final int tokenTtlHours;
+    private final Duration leaseDuration;
+
+    @Autowired
+    public CheckoutTokenCleanupScheduler(CheckoutTokenRepository checkoutTokenRepository,
+                                         ClusterJobCoordinator jobCoordinator,
+                                         @Value("${warehouse.checkout.token-ttl-hours:24}") int tokenTtlHours,
+                                         @Value("${warehouse.cluster.lease-seconds:60}") long leaseSeconds) {
+        this.checkoutTokenRepository = checkoutTokenRepository;
+        this.jobCoordinator = jobCoordinator;
+        this.tokenTtlHours = tokenTtlHours;
+        this.leaseDuration = Duration.ofSeconds(leaseSeconds);
+    }
+
+    @Scheduled(fixedDelayString = "${warehouse.checkout.token-cleanup-interval-ms:3600000}")
+    public void cleanupExpiredTokens() {
+        jobCoordinator.runExclusive(CLEANUP_JOB, leaseDuration, lease -> {
+            int deleted = checkoutTokenRepository.deleteOlderThanHours(tokenTtlHours);
+            if (deleted > 0) {
+                log.info("{} checkout tokens older than {}h deleted", deleted, tokenTtlHours);
+            }
+        });
+    }
+}
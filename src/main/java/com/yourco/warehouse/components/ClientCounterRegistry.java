@@ -0,0 +1,417 @@
+package com.yourco.warehouse.components;
+
+import com.yourco.warehouse.entity.enums.OrderStatus;
+import com.yourco.warehouse.repository.OrderRepository;
+import com.yourco.warehouse.service.CartService;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.context.event.EventListener;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.simp.user.SimpUser;
+import org.springframework.messaging.simp.user.SimpUserRegistry;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.web.context.request.async.DeferredResult;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * CLIENT COUNTER REGISTRY - NAVBAR БРОЯЧИТЕ НА КЛИЕНТА В ПАМЕТТА
+ * ==============================================================
+ * Кешира за всеки клиент броя артикули в количката и броя поръчки (PENDING / общо),
+ * така че badge-овете не правят заявка към базата на всяко зареждане.
+ *
+ * - Запис се създава при първото четене (/api/counters, /api/cart/count, /api/orders/count)
+ * - Промени в количката (CartServiceImpl), нови/отказани поръчки (ClientOrderServiceImpl)
+ *   и status transition-и (OrderTransitionEvent) инвалидират съответната част след commit
+ * - Преизчисляването върви на отделна нишка; при промяна новите броячи се изпращат
+ *   на /user/queue/counters и на чакащите long-poll заявки (DeferredResult)
+ * - Всяка стойност е валидна най-много max-age-seconds - промени, направени на друг
+ *   нод, се виждат след най-много толкова време
+ * - Записи без STOMP абонамент и без четене за idle-ttl-minutes се освобождават
+ * - Micrometer: client.counters.lookups{result=hit|miss}, client.counters.pushes,
+ *   client.counters.users, client.counters.waiting
+ */
+@Component
+public class ClientCounterRegistry {
+
+    private static final Logger log = LoggerFactory.getLogger(ClientCounterRegistry.class);
+
+    public static final String DESTINATION = "/queue/counters";
+    private static final String SUBSCRIPTION = "/user" + DESTINATION;
+
+    private final OrderRepository orderRepository;
+    private final CartService cartService;
+    private final SimpMessagingTemplate messagingTemplate;
+    private final SimpUserRegistry simpUserRegistry;
+    private final MeterRegistry meterRegistry;
+    private final long maxAgeMillis;
+    private final long idleTtlMillis;
+
+    private final ExecutorService refresher;
+    private final Map<Long, Entry> entries = new ConcurrentHashMap<>();
+    private final Map<String, Long> userIds = new ConcurrentHashMap<>();
+    private final AtomicLong versions = new AtomicLong();
+    private final AtomicInteger waiting = new AtomicInteger();
+
+    @Autowired
+    public ClientCounterRegistry(OrderRepository orderRepository,
+                                 @Lazy CartService cartService,
+                                 SimpMessagingTemplate messagingTemplate,
+                                 SimpUserRegistry simpUserRegistry,
+                                 MeterRegistry meterRegistry,
+                                 @Value("${warehouse.client-counters.max-age-seconds:60}") long maxAgeSeconds,
+                                 @Value("${warehouse.client-counters.idle-ttl-minutes:30}") long idleTtlMinutes) {
+        this.orderRepository = orderRepository;
+        this.cartService = cartService;
+        this.messagingTemplate = messagingTemplate;
+        this.simpUserRegistry = simpUserRegistry;
+        this.meterRegistry = meterRegistry;
+        this.maxAgeMillis = maxAgeSeconds * 1000L;
+        this.idleTtlMillis = idleTtlMinutes * 60_000L;
+        this.refresher = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "client-counter-refresh");
+            thread.setDaemon(true);
+            return thread;
+        });
+        meterRegistry.gaugeMapSize("client.counters.users", Tags.empty(), entries);
+        meterRegistry.gauge("client.counters.waiting", waiting);
+    }
+
+    /**
+     * Броячите на клиента; version се сменя при всяка промяна на някоя от стойностите
+     */
+    public record Counts(long version, int cartCount, long pendingCount, long totalCount) {
+
+        public Map<String, Object> toPayload() {
+            Map<String, Object> payload = new LinkedHashMap<>();
+            payload.put("version", version);
+            payload.put("cartCount", cartCount);
+            payload.put("hasItems", cartCount > 0);
+            payload.put("pendingCount", pendingCount);
+            payload.put("totalCount", totalCount);
+            return payload;
+        }
+    }
+
+    private static final class Entry {
+        private final Long userId;
+        private volatile String username;
+        private Counts counts;
+        private long loadedAt;
+        private boolean cartStale;
+        private boolean ordersStale;
+        private volatile long lastAccess = System.currentTimeMillis();
+        private final List<DeferredResult<Map<String, Object>>> waiters = new ArrayList<>();
+
+        private Entry(Long userId) {
+            this.userId = userId;
+        }
+    }
+
+    // ==========================================
+    // READ
+    // ==========================================
+
+    public Counts current(Long userId, String username) {
+        Entry entry = entries.computeIfAbsent(userId, Entry::new);
+        entry.username = username;
+        entry.lastAccess = System.currentTimeMillis();
+        if (username != null) {
+            userIds.put(username, userId);
+        }
+        return refresh(entry);
+    }
+
+    /**
+     * userId на вече видян клиент - polling заявките не търсят потребителя в базата
+     */
+    public Long knownUserId(String username) {
+        return username != null ? userIds.get(username) : null;
+    }
+
+    /**
+     * Long-poll: отговаря веднага, ако клиентът не знае текущата версия, иначе при
+     * следващата промяна или след timeoutMillis с текущите броячи
+     */
+    public DeferredResult<Map<String, Object>> await(Long userId, String username,
+                                                     long knownVersion, long timeoutMillis) {
+        DeferredResult<Map<String, Object>> result = new DeferredResult<>(timeoutMillis);
+        Counts counts = current(userId, username);
+        if (counts.version() != knownVersion) {
+            result.setResult(counts.toPayload());
+            return result;
+        }
+
+        Entry entry = entries.computeIfAbsent(userId, Entry::new);
+        synchronized (entry) {
+            // Промяна между current() и регистрацията
+            if (entry.counts != null && entry.counts.version() != knownVersion) {
+                result.setResult(entry.counts.toPayload());
+                return result;
+            }
+            entry.waiters.add(result);
+            waiting.incrementAndGet();
+        }
+
+        result.onTimeout(() -> result.setResult(current(userId, username).toPayload()));
+        result.onCompletion(() -> {
+            synchronized (entry) {
+                if (entry.waiters.remove(result)) {
+                    waiting.decrementAndGet();
+                }
+            }
+        });
+        return result;
+    }
+
+    // ==========================================
+    // INVALIDATION - след commit на промяната
+    // ==========================================
+
+    public void cartChanged(Long userId) {
+        invalidate(userId, true, false);
+    }
+
+    public void ordersChanged(Long userId) {
+        invalidate(userId, false, true);
+    }
+
+    /**
+     * Status transition-ите идват с orderId - клиентите се намират с една заявка
+     * за всички поръчки на транзакцията, след commit
+     */
+    @EventListener
+    @SuppressWarnings("unchecked")
+    public void onOrderTransition(OrderTransitionEvent event) {
+        if (entries.isEmpty()) {
+            return;
+        }
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            submitTransitions(Set.of(event.orderId()));
+            return;
+        }
+
+        Set<Long> pending = (Set<Long>) TransactionSynchronizationManager.getResource(this);
+        if (pending == null) {
+            Set<Long> orderIds = new HashSet<>();
+            TransactionSynchronizationManager.bindResource(this, orderIds);
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    TransactionSynchronizationManager.unbindResourceIfPossible(ClientCounterRegistry.this);
+                    if (status == STATUS_COMMITTED) {
+                        submitTransitions(orderIds);
+                    }
+                }
+            });
+            pending = orderIds;
+        }
+        pending.add(event.orderId());
+    }
+
+    /**
+     * Освобождава записите на клиенти без абонамент за /user/queue/counters,
+     * които не са чели броячите от idle-ttl-minutes
+     */
+    @Scheduled(fixedDelayString = "${warehouse.client-counters.cleanup-interval-ms:300000}")
+    public void evictIdle() {
+        long now = System.currentTimeMillis();
+        entries.values().removeIf(entry -> {
+            if (now - entry.lastAccess <= idleTtlMillis || isSubscribed(entry.username)) {
+                return false;
+            }
+            synchronized (entry) {
+                if (!entry.waiters.isEmpty()) {
+                    return false;
+                }
+            }
+            if (entry.username != null) {
+                userIds.remove(entry.username, entry.userId);
+            }
+            return true;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        refresher.shutdownNow();
+    }
+
+    // ==========================================
+    // PRIVATE HELPERS
+    // ==========================================
+
+    private void invalidate(Long userId, boolean cart, boolean orders) {
+        if (userId == null || !entries.containsKey(userId)) {
+            // Никой не гледа броячите на този клиент от този нод
+            return;
+        }
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            submit(userId, cart, orders);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                submit(userId, cart, orders);
+            }
+        });
+    }
+
+    private void submit(Long userId, boolean cart, boolean orders) {
+        Entry entry = entries.get(userId);
+        if (entry == null) {
+            return;
+        }
+        synchronized (entry) {
+            entry.cartStale |= cart;
+            entry.ordersStale |= orders;
+        }
+        execute(() -> refresh(entry));
+    }
+
+    private void submitTransitions(Set<Long> orderIds) {
+        execute(() -> {
+            for (Long clientId : orderRepository.findClientIdsByOrderIds(orderIds)) {
+                Entry entry = entries.get(clientId);
+                if (entry != null) {
+                    synchronized (entry) {
+                        entry.ordersStale = true;
+                    }
+                    refresh(entry);
+                }
+            }
+        });
+    }
+
+    private void execute(Runnable task) {
+        try {
+            refresher.execute(() -> {
+                try {
+                    task.run();
+                } catch (Exception e) {
+                    // Записът остава stale - следващото четене преизчислява
+                    log.warn("Client counter refresh failed: {}", e.getMessage());
+                }
+            });
+        } catch (Exception e) {
+            log.warn("Client counter refresh not scheduled: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Преизчислява само инвалидираните (или изтеклите) стойности; при промяна
+     * вдига версията и уведомява абонатите и чакащите long-poll заявки
+     */
+    private Counts refresh(Entry entry) {
+        synchronized (entry) {
+            long now = System.currentTimeMillis();
+            Counts previous = entry.counts;
+            boolean expired = previous == null || now - entry.loadedAt > maxAgeMillis;
+            if (!expired && !entry.cartStale && !entry.ordersStale) {
+                meterRegistry.counter("client.counters.lookups", "result", "hit").increment();
+                return previous;
+            }
+            meterRegistry.counter("client.counters.lookups", "result", "miss").increment();
+
+            int cartCount = expired || entry.cartStale
+                    ? cartService.getCartItems(entry.userId).size()
+                    : previous.cartCount();
+            long pendingCount;
+            long totalCount;
+            if (expired || entry.ordersStale) {
+                long[] orders = loadOrderCounts(entry.userId);
+                pendingCount = orders[0];
+                totalCount = orders[1];
+            } else {
+                pendingCount = previous.pendingCount();
+                totalCount = previous.totalCount();
+            }
+
+            entry.cartStale = false;
+            entry.ordersStale = false;
+            entry.loadedAt = now;
+
+            if (previous != null && previous.cartCount() == cartCount
+                    && previous.pendingCount() == pendingCount && previous.totalCount() == totalCount) {
+                return previous;
+            }
+
+            entry.counts = new Counts(versions.incrementAndGet(), cartCount, pendingCount, totalCount);
+            if (previous != null) {
+                publish(entry);
+            }
+            return entry.counts;
+        }
+    }
+
+    /**
+     * Извиква се под lock-а на записа
+     */
+    private void publish(Entry entry) {
+        Map<String, Object> payload = entry.counts.toPayload();
+
+        for (DeferredResult<Map<String, Object>> waiter : entry.waiters) {
+            waiter.setResult(payload);
+        }
+        waiting.addAndGet(-entry.waiters.size());
+        entry.waiters.clear();
+
+        if (entry.username != null && isSubscribed(entry.username)) {
+            try {
+                messagingTemplate.convertAndSendToUser(entry.username, DESTINATION, payload);
+                meterRegistry.counter("client.counters.pushes").increment();
+            } catch (Exception e) {
+                log.warn("Counter push to {} failed: {}", entry.username, e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * [PENDING, всички] - същото разделение като досегашния /api/orders/count
+     */
+    private long[] loadOrderCounts(Long clientId) {
+        long pending = 0;
+        long total = 0;
+        for (Object[] row : orderRepository.countByClientGroupedByStatus(clientId)) {
+            long count = ((Number) row[1]).longValue();
+            if (row[0] == OrderStatus.PENDING) {
+                pending = count;
+            }
+            total += count;
+        }
+        return new long[]{pending, total};
+    }
+
+    private boolean isSubscribed(String username) {
+        if (username == null) {
+            return false;
+        }
+        SimpUser user = simpUserRegistry.getUser(username);
+        if (user == null) {
+            return false;
+        }
+        return user.getSessions().stream()
+                .flatMap(session -> session.getSubscriptions().stream())
+                .anyMatch(subscription -> SUBSCRIPTION.equals(subscription.getDestination()));
+    }
+}
@@ -0,0 +1,280 @@
+package com.yourco.warehouse.components;
+
+import com.yourco.warehouse.repository.SchedulerLeaseRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.net.InetAddress;
+import java.time.Duration;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * CLUSTER JOB COORDINATOR - ЕДИН НОД НА JOB
+ * =========================================
+ * Scheduled методите продължават да тиктакат на всеки нод, но тялото им минава
+ * през runExclusive(), което изпълнява job-а само ако нодът държи lease-а в
+ * таблицата scheduler_leases (същата MySQL база, без допълнителна инфраструктура).
+ *
+ * - Lease-ът се подновява на всеки tick и на всяка 1/3 от продължителността по време на изпълнение
+ * - Притежателят остава същият между tick-овете; при срив друг нод поема след изтичането
+ * - fencing token расте при всяка смяна на притежателя. Записите на job-а включват
+ *   token-а в самия UPDATE (напр. OrderRepository.fencedBulkCompareAndSetStatus), така
+ *   че нод, паузиран след като е загубил lease-а, променя 0 реда. JobLease.verify()
+ *   е само ранна проверка (check-then-act) и не замества fenced записа
+ * - Micrometer: scheduler.jobs.runs{job, outcome=executed|skipped|failed}, scheduler.lease.lost{job}
+ */
+@Component
+public class ClusterJobCoordinator {
+
+    private static final Logger log = LoggerFactory.getLogger(ClusterJobCoordinator.class);
+
+    private final SchedulerLeaseRepository leaseRepository;
+    private final TransactionTemplate leaseTransaction;
+    private final MeterRegistry meterRegistry;
+    private final String nodeId;
+
+    // jobName -> последният получен token; за откриване на ново поемане и release при спиране
+    private final Map<String, Long> heldTokens = new ConcurrentHashMap<>();
+
+    private final ScheduledExecutorService renewalExecutor;
+
+    @Autowired
+    public ClusterJobCoordinator(SchedulerLeaseRepository leaseRepository,
+                                 PlatformTransactionManager transactionManager,
+                                 MeterRegistry meterRegistry,
+                                 @Value("${warehouse.cluster.node-id:}") String configuredNodeId) {
+        this.leaseRepository = leaseRepository;
+        this.leaseTransaction = new TransactionTemplate(transactionManager);
+        this.leaseTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.meterRegistry = meterRegistry;
+        this.nodeId = configuredNodeId != null && !configuredNodeId.isBlank()
+                ? configuredNodeId
+                : defaultNodeId();
+        this.renewalExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "scheduler-lease-renewal");
+            thread.setDaemon(true);
+            return thread;
+        });
+        log.info("Cluster job coordinator started as node {}", nodeId);
+    }
+
+    // ==========================================
+    // PUBLIC API
+    // ==========================================
+
+    /**
+     * Изпълнява job-а само ако този нод държи (или успее да вземе) lease-а
+     *
+     * @return true ако job-ът е изпълнен успешно на този нод
+     */
+    public boolean runExclusive(String jobName, Duration leaseDuration, Consumer<JobLease> job) {
+        long leaseSeconds = Math.max(1, leaseDuration.getSeconds());
+
+        JobLease lease;
+        try {
+            lease = acquire(jobName, leaseSeconds);
+        } catch (Exception e) {
+            log.error("Грешка при вземане на lease за job {}: {}", jobName, e.getMessage());
+            recordRun(jobName, "failed");
+            return false;
+        }
+
+        if (lease == null) {
+            recordRun(jobName, "skipped");
+            return false;
+        }
+
+        long renewalPeriodMs = Math.max(1000, leaseSeconds * 1000 / 3);
+        ScheduledFuture<?> renewal = renewalExecutor.scheduleAtFixedRate(
+                () -> renew(lease, leaseSeconds), renewalPeriodMs, renewalPeriodMs, TimeUnit.MILLISECONDS);
+
+        try {
+            job.accept(lease);
+            recordRun(jobName, "executed");
+            return true;
+
+        } catch (Exception e) {
+            log.error("Грешка при изпълнение на job {} (token {}): {}", jobName, lease.getToken(), e.getMessage());
+            recordRun(jobName, "failed");
+            return false;
+
+        } finally {
+            renewal.cancel(false);
+        }
+    }
+
+    /**
+     * true ако този нод държеше lease-а при последния tick на job-а и не го е изгубил
+     */
+    public boolean isHeld(String jobName) {
+        return heldTokens.containsKey(jobName);
+    }
+
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    // ==========================================
+    // LIFECYCLE
+    // ==========================================
+
+    @PreDestroy
+    public void shutdown() {
+        renewalExecutor.shutdownNow();
+        heldTokens.forEach((jobName, token) -> {
+            try {
+                leaseTransaction.executeWithoutResult(status -> leaseRepository.release(jobName, nodeId, token));
+                log.info("Released lease for job {} (token {})", jobName, token);
+            } catch (Exception e) {
+                log.warn("Lease за job {} не беше освободен: {}", jobName, e.getMessage());
+            }
+        });
+    }
+
+    // ==========================================
+    // PRIVATE HELPERS
+    // ==========================================
+
+    private JobLease acquire(String jobName, long leaseSeconds) {
+        Long token = leaseTransaction.execute(status -> {
+            if (leaseRepository.tryAcquire(jobName, nodeId, leaseSeconds) == 0) {
+                return null;
+            }
+            return leaseRepository.findActiveToken(jobName, nodeId);
+        });
+
+        if (token == null && !leaseRepository.existsById(jobName)) {
+            token = insertLease(jobName, leaseSeconds);
+        }
+
+        if (token == null) {
+            heldTokens.remove(jobName);
+            return null;
+        }
+
+        Long previous = heldTokens.put(jobName, token);
+        boolean newlyAcquired = !token.equals(previous);
+        if (newlyAcquired) {
+            log.info("Node {} acquired lease for job {} (token {})", nodeId, jobName, token);
+        }
+        return new JobLease(jobName, token, newlyAcquired);
+    }
+
+    private Long insertLease(String jobName, long leaseSeconds) {
+        try {
+            leaseTransaction.executeWithoutResult(status -> leaseRepository.insertLease(jobName, nodeId, leaseSeconds));
+            return 1L;
+        } catch (DataIntegrityViolationException e) {
+            // Друг нод е създал реда междувременно
+            return null;
+        }
+    }
+
+    private void renew(JobLease lease, long leaseSeconds) {
+        try {
+            Integer renewed = leaseTransaction.execute(status ->
+                    leaseRepository.renew(lease.getJobName(), nodeId, lease.getToken(), leaseSeconds));
+            if (renewed == null || renewed == 0) {
+                markLost(lease);
+            }
+        } catch (Exception e) {
+            log.warn("Неуспешно подновяване на lease за job {}: {}", lease.getJobName(), e.getMessage());
+        }
+    }
+
+    private void markLost(JobLease lease) {
+        if (!lease.lost) {
+            lease.lost = true;
+            heldTokens.remove(lease.getJobName(), lease.getToken());
+            meterRegistry.counter("scheduler.lease.lost", "job", lease.getJobName()).increment();
+            log.warn("Node {} lost lease for job {} (token {})", nodeId, lease.getJobName(), lease.getToken());
+        }
+    }
+
+    private void recordRun(String jobName, String outcome) {
+        meterRegistry.counter("scheduler.jobs.runs", "job", jobName, "outcome", outcome).increment();
+    }
+
+    private static String defaultNodeId() {
+        String host;
+        try {
+            host = InetAddress.getLocalHost().getHostName();
+        } catch (Exception e) {
+            host = "node";
+        }
+        return host + "-" + UUID.randomUUID().toString().substring(0, 8);
+    }
+
+    // ==========================================
+    // JOB LEASE - подава се на job-а
+    // ==========================================
+
+    public final class JobLease {
+
+        private final String jobName;
+        private final long token;
+        private final boolean newlyAcquired;
+        private volatile boolean lost = false;
+
+        private JobLease(String jobName, long token, boolean newlyAcquired) {
+            this.jobName = jobName;
+            this.token = token;
+            this.newlyAcquired = newlyAcquired;
+        }
+
+        public String getJobName() {
+            return jobName;
+        }
+
+        public long getToken() {
+            return token;
+        }
+
+        public String getOwnerId() {
+            return nodeId;
+        }
+
+        /**
+         * true при първото изпълнение след поемане на lease-а - job-ът трябва
+         * да презареди състоянието си, защото друг нод може да го е променял
+         */
+        public boolean isNewlyAcquired() {
+            return newlyAcquired;
+        }
+
+        /**
+         * Ранна проверка, че lease-ът все още е наш и със същия token. Не пази самия
+         * запис - между проверката и записа lease-ът може да изтече; за това записът
+         * трябва да съдържа fencing token-а (getJobName/getOwnerId/getToken)
+         *
+         * @throws IllegalStateException ако lease-ът е изгубен
+         */
+        public void verify() {
+            if (!lost) {
+                Long current = leaseRepository.findActiveToken(jobName, nodeId);
+                if (current == null || current != token) {
+                    markLost(this);
+                }
+            }
+            if (lost) {
+                throw new IllegalStateException("Lease за job " + jobName + " (token " + token + ") е изгубен");
+            }
+        }
+    }
+}
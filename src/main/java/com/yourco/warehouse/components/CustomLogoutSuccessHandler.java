@@ -1,10 +1,14 @@
 package com.yourco.warehouse.components;
 
+import com.yourco.warehouse.repository.UserRepository;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.Cookie;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import jakarta.servlet.http.HttpSession;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.web.authentication.logout.LogoutSuccessHandler;
 import org.springframework.stereotype.Component;
@@ -14,11 +18,32 @@ import java.io.IOException;
 @Component
 public class CustomLogoutSuccessHandler implements LogoutSuccessHandler {
 
+    private static final Logger log = LoggerFactory.getLogger(CustomLogoutSuccessHandler.class);
+
+    private final CartStore cartStore;
+    private final UserRepository userRepository;
+
+    @Autowired
+    public CustomLogoutSuccessHandler(CartStore cartStore, UserRepository userRepository) {
+        this.cartStore = cartStore;
+        this.userRepository = userRepository;
+    }
+
     @Override
     public void onLogoutSuccess(HttpServletRequest request,
                                 HttpServletResponse response,
                                 Authentication authentication) throws IOException, ServletException {
 
+        // Write-behind количката се записва и освобождава от паметта
+        if (authentication != null && cartStore.isEnabled()) {
+            try {
+                userRepository.findByUsername(authentication.getName())
+                        .ifPresent(user -> cartStore.flushAndEvict(user.getId()));
+            } catch (Exception e) {
+                log.warn("Количката на {} не е записана при logout: {}", authentication.getName(), e.getMessage());
+            }
+        }
+
         // Clear session
         HttpSession session = request.getSession(false);
         if (session != null) {
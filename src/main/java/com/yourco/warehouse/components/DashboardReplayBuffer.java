@@ -0,0 +1,108 @@
+package com.yourco.warehouse.components;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * DASHBOARD REPLAY BUFFER - SEQUENCED FRAMES ПО TOPIC
+ * ===================================================
+ * Всеки frame изпратен към dashboard topic получава монотонен seq за този topic
+ * и се пази в ограничен ring buffer. Клиент, който е изпуснал frames при reconnect,
+ * иска само липсващите чрез /employer/dashboard/sync?since=N вместо пълен reload.
+ *
+ * - seq започва от 1 за всеки topic и расте без пропуски
+ * - epoch се сменя при рестарт - стар seq от друг epoch изисква snapshot
+ * - Ако липсващите frames вече не са в буфера, framesSince() връща null (gap твърде голям)
+ */
+@Component
+public class DashboardReplayBuffer {
+
+    private final int capacity;
+    private final String epoch = Long.toString(System.currentTimeMillis(), 36);
+    private final Map<String, TopicLog> topics = new ConcurrentHashMap<>();
+
+    public DashboardReplayBuffer(@Value("${warehouse.broadcast.replay-buffer-size:256}") int capacity) {
+        this.capacity = Math.max(1, capacity);
+    }
+
+    /**
+     * Маркира frame-а със seq и epoch и го добавя в буфера на topic-а
+     *
+     * @return присвоеният seq
+     */
+    public long append(String topic, Map<String, Object> frame) {
+        return topics.computeIfAbsent(topic, key -> new TopicLog(capacity)).append(frame, epoch);
+    }
+
+    /**
+     * Frames с seq > since в реда на изпращане
+     *
+     * @return празен списък ако клиентът е актуален, null ако част от липсващите frames
+     *         вече са изместени от буфера или since е от бъдещето (рестарт)
+     */
+    public List<Map<String, Object>> framesSince(String topic, long since) {
+        TopicLog log = topics.get(topic);
+        if (log == null) {
+            return since == 0 ? Collections.emptyList() : null;
+        }
+        return log.since(since);
+    }
+
+    public long getLatestSeq(String topic) {
+        TopicLog log = topics.get(topic);
+        return log != null ? log.latestSeq() : 0;
+    }
+
+    public String getEpoch() {
+        return epoch;
+    }
+
+    // ==========================================
+    // RING BUFFER ЗА ЕДИН TOPIC
+    // ==========================================
+
+    private static final class TopicLog {
+
+        private final Map<String, Object>[] frames;
+        private long lastSeq = 0;
+
+        @SuppressWarnings("unchecked")
+        TopicLog(int capacity) {
+            this.frames = new Map[capacity];
+        }
+
+        synchronized long append(Map<String, Object> frame, String epoch) {
+            long seq = ++lastSeq;
+            frame.put("seq", seq);
+            frame.put("epoch", epoch);
+            frames[(int) (seq % frames.length)] = frame;
+            return seq;
+        }
+
+        synchronized List<Map<String, Object>> since(long since) {
+            if (since < 0 || since > lastSeq) {
+                return null;
+            }
+            long oldestSeq = Math.max(1, lastSeq - frames.length + 1);
+            if (since + 1 < oldestSeq) {
+                return null;
+            }
+
+            List<Map<String, Object>> result = new ArrayList<>((int) (lastSeq - since));
+            for (long seq = since + 1; seq <= lastSeq; seq++) {
+                result.add(frames[(int) (seq % frames.length)]);
+            }
+            return result;
+        }
+
+        synchronized long latestSeq() {
+            return lastSeq;
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package com.yourco.warehouse.components;
+
+import com.yourco.warehouse.service.OrderLoadingService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * LOADING SESSION MAINTENANCE - ИЗГУБЕНИ И ИЗОСТАВЕНИ СЕСИИ
+ * =========================================================
+ * Периодично маркира сесиите без heartbeat като SIGNAL_LOST и изтрива старите
+ * изгубени сесии. И двата job-а минават през ClusterJobCoordinator, така че
+ * при няколко нода зад load balancer-а се изпълняват само на един.
+ * Ръчните endpoint-и в OrderLoadingRestController остават за администратора.
+ */
+@Component
+public class LoadingSessionMaintenanceScheduler {
+
+    private static final Logger log = LoggerFactory.getLogger(LoadingSessionMaintenanceScheduler.class);
+
+    public static final String LOST_SIGNAL_JOB = "loading-lost-signal-detection";
+    public static final String CLEANUP_JOB = "loading-session-cleanup";
+
+    private final OrderLoadingService orderLoadingService;
+    private final ClusterJobCoordinator jobCoordinator;
+    private final int lostSignalMinutes;
+    private final int cleanupMaxAgeHours;
+    private final Duration leaseDuration;
+
+    @Autowired
+    public LoadingSessionMaintenanceScheduler(OrderLoadingService orderLoadingService,
+                                              ClusterJobCoordinator jobCoordinator,
+                                              @Value("${warehouse.loading.lost-signal-minutes:10}") int lostSignalMinutes,
+                                              @Value("${warehouse.loading.cleanup-max-age-hours:24}") int cleanupMaxAgeHours,
+                                              @Value("${warehouse.cluster.lease-seconds:60}") long leaseSeconds) {
+        this.orderLoadingService = orderLoadingService;
+        this.jobCoordinator = jobCoordinator;
+        this.lostSignalMinutes = lostSignalMinutes;
+        this.cleanupMaxAgeHours = cleanupMaxAgeHours;
+        this.leaseDuration = Duration.ofSeconds(leaseSeconds);
+    }
+
+    @Scheduled(fixedDelayString = "${warehouse.loading.lost-signal-check-ms:60000}")
+    public void detectLostSignals() {
+        jobCoordinator.runExclusive(LOST_SIGNAL_JOB, leaseDuration, lease -> {
+            int affected = orderLoadingService.detectLostConnectionSessions(lostSignalMinutes);
+            if (affected > 0) {
+                log.info("{} loading sessions marked as SIGNAL_LOST (no heartbeat for {} min)", affected, lostSignalMinutes);
+            }
+        });
+    }
+
+    @Scheduled(fixedDelayString = "${warehouse.loading.cleanup-interval-ms:3600000}")
+    public void cleanupAbandonedSessions() {
+        jobCoordinator.runExclusive(CLEANUP_JOB, leaseDuration, lease -> {
+            int deleted = orderLoadingService.cleanupAbandonedSessions(cleanupMaxAgeHours);
+            if (deleted > 0) {
+                log.info("{} abandoned loading sessions older than {}h deleted", deleted, cleanupMaxAgeHours);
+            }
+        });
+    }
+}
@@ -0,0 +1,79 @@
+package com.yourco.warehouse.components;
+
+import com.yourco.warehouse.entity.AuditLog;
+import com.yourco.warehouse.entity.enums.Role;
+import com.yourco.warehouse.repository.AuditLogRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+/**
+ * ORDER AUDIT LISTENER
+ * ====================
+ * Записва всеки статус преход в audit_logs в същата транзакция (BEFORE_COMMIT) -
+ * audit редът и преходът се commit-ват или rollback-ват заедно.
+ */
+@Component
+public class OrderAuditListener {
+
+    private static final Logger log = LoggerFactory.getLogger(OrderAuditListener.class);
+
+    private final AuditLogRepository auditLogRepository;
+
+    @Autowired
+    public OrderAuditListener(AuditLogRepository auditLogRepository) {
+        this.auditLogRepository = auditLogRepository;
+    }
+
+    @TransactionalEventListener(phase = TransactionPhase.BEFORE_COMMIT, fallbackExecution = true)
+    public void onOrderTransition(OrderTransitionEvent event) {
+        AuditLog entry = new AuditLog();
+        entry.setAction("ORDER_STATUS_CHANGED");
+        entry.setEntityType("Order");
+        entry.setEntityId(event.orderId());
+        entry.setDescription(buildDescription(event));
+        entry.setUserName(event.actor());
+        entry.setRole(currentRole());
+        entry.setTimestamp(event.occurredAt());
+
+        auditLogRepository.save(entry);
+        log.debug("Audit: order {} {} -> {} by {}", event.orderId(), event.from(), event.to(), event.actor());
+    }
+
+    private static String buildDescription(OrderTransitionEvent event) {
+        String description = event.from() + " -> " + event.to();
+        if (event.reason() != null && !event.reason().isBlank()) {
+            description += ": " + event.reason();
+        }
+        return description.length() > 2000 ? description.substring(0, 2000) : description;
+    }
+
+    /**
+     * Ролята от security context-а; системните преходи (scheduler) се записват като ADMIN
+     */
+    private static Role currentRole() {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        if (authentication == null || !authentication.isAuthenticated()) {
+            return Role.ADMIN;
+        }
+        for (GrantedAuthority authority : authentication.getAuthorities()) {
+            switch (authority.getAuthority()) {
+                case "ROLE_ADMIN":
+                    return Role.ADMIN;
+                case "ROLE_EMPLOYER":
+                    return Role.EMPLOYER;
+                case "ROLE_CLIENT":
+                    return Role.CLIENT;
+                default:
+                    break;
+            }
+        }
+        return Role.ADMIN;
+    }
+}
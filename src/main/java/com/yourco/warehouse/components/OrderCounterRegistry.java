@@ -0,0 +1,197 @@
+package com.yourco.warehouse.components;
+
+import com.yourco.warehouse.entity.enums.OrderStatus;
+import com.yourco.warehouse.repository.OrderRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * ORDER COUNTER REGISTRY - IN-MEMORY БРОЯЧИ ПО СТАТУС
+ * ===================================================
+ * Държи броя поръчки за всеки OrderStatus в паметта, така че dashboard
+ * броячите и counter broadcast-ите не правят нито една заявка към базата.
+ *
+ * - Seed-ва се веднъж от getAllStatusCounts() при стартиране
+ * - Всеки status transition се прилага атомарно (AtomicLong per status)
+ * - При rollback на транзакцията промяната се връща обратно
+ * - Периодична reconciliation срещу MySQL поправя евентуален drift
+ */
+@Component
+public class OrderCounterRegistry {
+
+    private static final Logger log = LoggerFactory.getLogger(OrderCounterRegistry.class);
+
+    private final OrderRepository orderRepository;
+
+    private final Map<OrderStatus, AtomicLong> counters = new EnumMap<>(OrderStatus.class);
+
+    // Брои всички промени - reconciliation не презаписва ако е имало промяна по време на заявката
+    private final AtomicLong modificationCount = new AtomicLong(0);
+    private volatile boolean seeded = false;
+
+    @Autowired
+    public OrderCounterRegistry(OrderRepository orderRepository) {
+        this.orderRepository = orderRepository;
+        for (OrderStatus status : OrderStatus.values()) {
+            counters.put(status, new AtomicLong(0));
+        }
+    }
+
+    // ==========================================
+    // LIFECYCLE - seed и reconciliation
+    // ==========================================
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void seed() {
+        if (reconcile()) {
+            seeded = true;
+            log.info("Order counters seeded: {}", snapshot());
+        }
+    }
+
+    /**
+     * Периодично сверява броячите с базата. Ако по време на заявката е имало
+     * transition, резултатът се игнорира и се изчаква следващия цикъл.
+     */
+    @Scheduled(fixedDelayString = "${warehouse.counters.reconcile-interval-ms:300000}",
+            initialDelayString = "${warehouse.counters.reconcile-interval-ms:300000}")
+    public void scheduledReconcile() {
+        reconcile();
+    }
+
+    public boolean reconcile() {
+        try {
+            long versionBefore = modificationCount.get();
+            Map<OrderStatus, Long> dbCounts = loadCountsFromDatabase();
+
+            synchronized (this) {
+                if (modificationCount.get() != versionBefore) {
+                    log.debug("Order counter reconciliation skipped - concurrent transitions detected");
+                    return false;
+                }
+
+                for (OrderStatus status : OrderStatus.values()) {
+                    long dbValue = dbCounts.getOrDefault(status, 0L);
+                    long previous = counters.get(status).getAndSet(dbValue);
+                    if (seeded && previous != dbValue) {
+                        log.warn("Order counter drift corrected for {}: {} -> {}", status, previous, dbValue);
+                    }
+                }
+            }
+            return true;
+
+        } catch (Exception e) {
+            log.error("Грешка при reconciliation на order броячите: {}", e.getMessage());
+            return false;
+        }
+    }
+
+    // ==========================================
+    // MUTATIONS - извикват се при всяка промяна на статус
+    // ==========================================
+
+    /**
+     * Нова поръчка със статус {@code status}
+     */
+    public void recordCreated(OrderStatus status) {
+        apply(null, status);
+    }
+
+    /**
+     * Поръчка със статус {@code status} е изтрита
+     */
+    public void recordRemoved(OrderStatus status) {
+        apply(status, null);
+    }
+
+    /**
+     * Преходите от OrderStateMachine - синхронно, в транзакцията на прехода,
+     * така че при rollback броячът се връща обратно
+     */
+    @EventListener
+    public void onOrderTransition(OrderTransitionEvent event) {
+        recordTransition(event.from(), event.to());
+    }
+
+    /**
+     * Поръчка е преминала от {@code from} към {@code to}
+     */
+    public void recordTransition(OrderStatus from, OrderStatus to) {
+        if (from == to) {
+            return;
+        }
+        apply(from, to);
+    }
+
+    // ==========================================
+    // READS - без достъп до базата
+    // ==========================================
+
+    public long getCount(OrderStatus status) {
+        return counters.get(status).get();
+    }
+
+    public Map<OrderStatus, Long> snapshot() {
+        Map<OrderStatus, Long> result = new EnumMap<>(OrderStatus.class);
+        for (OrderStatus status : OrderStatus.values()) {
+            result.put(status, counters.get(status).get());
+        }
+        return result;
+    }
+
+    // ==========================================
+    // PRIVATE HELPERS
+    // ==========================================
+
+    private void apply(OrderStatus from, OrderStatus to) {
+        adjust(from, to);
+
+        // При rollback връщаме промяната - броячът трябва да отразява само committed данни
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    if (status != STATUS_COMMITTED) {
+                        adjust(to, from);
+                    }
+                }
+            });
+        }
+    }
+
+    private synchronized void adjust(OrderStatus from, OrderStatus to) {
+        if (from != null) {
+            counters.get(from).decrementAndGet();
+        }
+        if (to != null) {
+            counters.get(to).incrementAndGet();
+        }
+        modificationCount.incrementAndGet();
+    }
+
+    private Map<OrderStatus, Long> loadCountsFromDatabase() {
+        Map<OrderStatus, Long> result = new EnumMap<>(OrderStatus.class);
+        List<Object[]> rows = orderRepository.getAllStatusCounts();
+        for (Object[] row : rows) {
+            try {
+                OrderStatus status = OrderStatus.valueOf(String.valueOf(row[0]));
+                result.put(status, ((Number) row[1]).longValue());
+            } catch (IllegalArgumentException e) {
+                log.warn("Unknown order status in counts query: {}", row[0]);
+            }
+        }
+        return result;
+    }
+}
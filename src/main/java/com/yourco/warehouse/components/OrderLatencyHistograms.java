@@ -0,0 +1,280 @@
+package com.yourco.warehouse.components;
+
+import com.yourco.warehouse.entity.Order;
+import com.yourco.warehouse.repository.OrderRepository;
+import com.yourco.warehouse.utils.RollingLatencyHistogram;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * ORDER LATENCY HISTOGRAMS - PERCENTILE-И ПО ЕТАП
+ * ===============================================
+ * Поддържа in-memory histogram с фиксирана памет за всеки етап от жизнения
+ * цикъл на поръчката, така че p50/p90/p99 се четат без заявка към базата:
+ *
+ * - SUBMIT_TO_CONFIRM   - submitted_at -> confirmed_at (обработка от служител)
+ * - CONFIRM_TO_SHIPPING - confirmed_at -> shipping_started_at (чакане за товарене)
+ * - SHIPPING            - shipping_duration_seconds (самото товарене)
+ *
+ * Всеки етап е плъзгащ се прозорец от дневни histogram-и (warehouse.latency.window-days),
+ * така че percentile-ите отразяват текущото време за обработка, а не историята.
+ * Записите се прилагат след commit. При стартиране прозорецът се rebuild-ва
+ * с едно streaming минаване по orders; записи, пристигнали по време на rebuild-а,
+ * се добавят и към новия набор, за да не се изгубят при подмяната.
+ * Стойностите са в секунди; percentile-ите се публикуват и като Micrometer gauges
+ * (orders.stage.latency, tags stage/quantile) в /actuator/metrics.
+ */
+@Component
+public class OrderLatencyHistograms {
+
+    private static final Logger log = LoggerFactory.getLogger(OrderLatencyHistograms.class);
+
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99};
+
+    public enum Stage {
+        SUBMIT_TO_CONFIRM("submitToConfirm"),
+        CONFIRM_TO_SHIPPING("confirmToShipping"),
+        SHIPPING("shipping");
+
+        private final String key;
+
+        Stage(String key) {
+            this.key = key;
+        }
+
+        public String getKey() {
+            return key;
+        }
+    }
+
+    private final OrderRepository orderRepository;
+    private final TransactionTemplate streamTransaction;
+    private final int windowDays;
+
+    // Подменя се изцяло след rebuild - четенията винаги виждат консистентен набор
+    private volatile Map<Stage, RollingLatencyHistogram> histograms;
+    // Наборът, който се rebuild-ва в момента - живите записи отиват и в него (guarded by this)
+    private Map<Stage, RollingLatencyHistogram> rebuilding;
+
+    @Autowired
+    public OrderLatencyHistograms(OrderRepository orderRepository,
+                                  PlatformTransactionManager transactionManager,
+                                  MeterRegistry meterRegistry,
+                                  @Value("${warehouse.latency.window-days:7}") int windowDays) {
+        this.orderRepository = orderRepository;
+        this.streamTransaction = new TransactionTemplate(transactionManager);
+        this.streamTransaction.setReadOnly(true);
+        this.windowDays = windowDays;
+        this.histograms = newHistograms();
+
+        for (Stage stage : Stage.values()) {
+            for (double quantile : QUANTILES) {
+                Gauge.builder("orders.stage.latency", this, self -> self.histograms.get(stage).percentile(quantile))
+                        .tag("stage", stage.getKey())
+                        .tag("quantile", String.valueOf(quantile))
+                        .baseUnit("seconds")
+                        .description("Order lifecycle stage latency percentile")
+                        .register(meterRegistry);
+            }
+            Gauge.builder("orders.stage.latency.count", this, self -> self.histograms.get(stage).getCount())
+                    .tag("stage", stage.getKey())
+                    .description("Orders recorded in the stage latency histogram")
+                    .register(meterRegistry);
+        }
+    }
+
+    // ==========================================
+    // LIFECYCLE - rebuild при стартиране
+    // ==========================================
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuild() {
+        try {
+            LocalDateTime since = LocalDate.now().minusDays(windowDays - 1L).atStartOfDay();
+            Map<Stage, RollingLatencyHistogram> rebuilt = newHistograms();
+            synchronized (this) {
+                rebuilding = rebuilt;
+            }
+
+            AtomicLong rows = new AtomicLong();
+            streamTransaction.executeWithoutResult(status -> {
+                try (Stream<Object[]> stream = orderRepository.streamStageTimestamps(since)) {
+                    stream.forEach(row -> {
+                        recordRow(rebuilt, row);
+                        rows.incrementAndGet();
+                    });
+                }
+            });
+
+            synchronized (this) {
+                histograms = rebuilt;
+                rebuilding = null;
+            }
+            log.info("Order latency histograms rebuilt from {} orders (last {} days): {}", rows.get(), windowDays, snapshot());
+
+        } catch (Exception e) {
+            synchronized (this) {
+                rebuilding = null;
+            }
+            log.error("Грешка при rebuild на latency histogram-ите: {}", e.getMessage());
+        }
+    }
+
+    // ==========================================
+    // RECORDING - от жизнения цикъл на поръчката
+    // ==========================================
+
+    /**
+     * Поръчката е одобрена - submitted -> confirmed
+     */
+    public void recordConfirmed(LocalDateTime submittedAt, LocalDateTime confirmedAt) {
+        long seconds = secondsBetween(submittedAt, confirmedAt);
+        if (seconds >= 0) {
+            afterCommit(Stage.SUBMIT_TO_CONFIRM, seconds);
+        }
+    }
+
+    /**
+     * Товаренето е стартирано - confirmed -> shipping started
+     */
+    public void recordShippingStarted(Order order) {
+        long seconds = secondsBetween(order.getConfirmedAt(), order.getShippingStartedAt());
+        if (seconds >= 0) {
+            afterCommit(Stage.CONFIRM_TO_SHIPPING, seconds);
+        }
+    }
+
+    /**
+     * Товаренето е завършено - shippingDurationSeconds
+     */
+    public void recordShipped(long shippingDurationSeconds) {
+        if (shippingDurationSeconds >= 0) {
+            afterCommit(Stage.SHIPPING, shippingDurationSeconds);
+        }
+    }
+
+    // ==========================================
+    // READ
+    // ==========================================
+
+    public long percentile(Stage stage, double quantile) {
+        return histograms.get(stage).percentile(quantile);
+    }
+
+    /**
+     * Percentile-и в секунди по етап: {stage: {count, p50, p90, p99, max}}
+     */
+    public Map<String, Map<String, Long>> snapshot() {
+        Map<Stage, RollingLatencyHistogram> current = histograms;
+        Map<String, Map<String, Long>> result = new LinkedHashMap<>();
+
+        for (Stage stage : Stage.values()) {
+            RollingLatencyHistogram histogram = current.get(stage);
+            Map<String, Long> stats = new LinkedHashMap<>();
+            stats.put("count", histogram.getCount());
+            stats.put("p50", histogram.percentile(0.5));
+            stats.put("p90", histogram.percentile(0.9));
+            stats.put("p99", histogram.percentile(0.99));
+            stats.put("max", histogram.getMax());
+            result.put(stage.getKey(), stats);
+        }
+        return result;
+    }
+
+    // ==========================================
+    // PRIVATE HELPERS
+    // ==========================================
+
+    /**
+     * Ред от rebuild-а - всеки етап се брои към деня, в който е завършил
+     */
+    private void recordRow(Map<Stage, RollingLatencyHistogram> target, Object[] row) {
+        LocalDateTime submittedAt = toLocalDateTime(row[0]);
+        LocalDateTime confirmedAt = toLocalDateTime(row[1]);
+        LocalDateTime shippingStartedAt = toLocalDateTime(row[2]);
+
+        long processing = secondsBetween(submittedAt, confirmedAt);
+        if (processing >= 0) {
+            target.get(Stage.SUBMIT_TO_CONFIRM).record(confirmedAt.toLocalDate(), processing);
+        }
+        long waiting = secondsBetween(confirmedAt, shippingStartedAt);
+        if (waiting >= 0) {
+            target.get(Stage.CONFIRM_TO_SHIPPING).record(shippingStartedAt.toLocalDate(), waiting);
+        }
+        if (row[3] != null) {
+            LocalDateTime shippedDay = shippingStartedAt != null ? shippingStartedAt : confirmedAt;
+            target.get(Stage.SHIPPING).record(shippedDay.toLocalDate(), ((Number) row[3]).longValue());
+        }
+    }
+
+    private void afterCommit(Stage stage, long seconds) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    record(stage, seconds);
+                }
+            });
+        } else {
+            record(stage, seconds);
+        }
+    }
+
+    /**
+     * Записва в текущия набор и в този, който се rebuild-ва в момента. Заявка,
+     * commit-ната точно преди streaming snapshot-а, може да се преброи два пъти -
+     * за percentile-ите това е пренебрежимо, докато изгубените записи не са.
+     */
+    private synchronized void record(Stage stage, long seconds) {
+        histograms.get(stage).record(seconds);
+        if (rebuilding != null) {
+            rebuilding.get(stage).record(seconds);
+        }
+    }
+
+    /**
+     * @return секунди между двата момента, или -1 ако някой липсва или редът е обърнат
+     */
+    private static long secondsBetween(LocalDateTime from, LocalDateTime to) {
+        if (from == null || to == null || to.isBefore(from)) {
+            return -1;
+        }
+        return Duration.between(from, to).getSeconds();
+    }
+
+    private static LocalDateTime toLocalDateTime(Object value) {
+        if (value instanceof Timestamp timestamp) {
+            return timestamp.toLocalDateTime();
+        }
+        return value instanceof LocalDateTime dateTime ? dateTime : null;
+    }
+
+    private Map<Stage, RollingLatencyHistogram> newHistograms() {
+        Map<Stage, RollingLatencyHistogram> map = new EnumMap<>(Stage.class);
+        for (Stage stage : Stage.values()) {
+            map.put(stage, new RollingLatencyHistogram(windowDays));
+        }
+        return map;
+    }
+}
@@ -0,0 +1,178 @@
+package com.yourco.warehouse.components;
+
+import com.yourco.warehouse.entity.Order;
+import com.yourco.warehouse.entity.enums.OrderStatus;
+import com.yourco.warehouse.repository.OrderRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * ORDER STATE MACHINE - COMPARE-AND-SET ПРЕХОДИ
+ * =============================================
+ * Всеки преход е UPDATE orders SET status = :target ... WHERE id = :id AND status = :expected
+ * за всеки позволен изходен статус (OrderStatus.allowedSources). Без SELECT на цялата
+ * поръчка и без full-row UPDATE; от две конкурентни действия само едното печели,
+ * а загубилото получава IllegalStateException.
+ *
+ * След успешен преход се публикува OrderTransitionEvent:
+ * - OrderCounterRegistry - в транзакцията (връща се при rollback)
+ * - Audit log - преди commit, в същата транзакция
+ * - Dashboard broadcast - след commit
+ */
+@Component
+public class OrderStateMachine {
+
+    private static final Logger log = LoggerFactory.getLogger(OrderStateMachine.class);
+
+    public static final String SYSTEM_ACTOR = "system";
+
+    private final OrderRepository orderRepository;
+    private final ApplicationEventPublisher eventPublisher;
+
+    @Autowired
+    public OrderStateMachine(OrderRepository orderRepository,
+                             ApplicationEventPublisher eventPublisher) {
+        this.orderRepository = orderRepository;
+        this.eventPublisher = eventPublisher;
+    }
+
+    /**
+     * Преход по id - поръчката не се зарежда
+     *
+     * @throws IllegalStateException ако текущият статус не позволява прехода (или друг е бил по-бърз)
+     */
+    @Transactional
+    public OrderTransitionEvent transition(Long orderId, OrderStatus target, String reason) {
+        return apply(orderId, target, reason, 0);
+    }
+
+    /**
+     * Преход за вече заредена поръчка - новият статус и timestamp-ите се отразяват
+     * и в managed entity-то, така че по-късен flush не връща стария статус
+     */
+    @Transactional
+    public OrderTransitionEvent transition(Order order, OrderStatus target, String reason) {
+        OrderTransitionEvent event = apply(order.getId(), target, reason, 0);
+
+        order.setStatus(target);
+        if (target == OrderStatus.CONFIRMED || target == OrderStatus.CANCELLED) {
+            order.setConfirmedAt(event.occurredAt());
+        }
+        if (target == OrderStatus.SHIPPED) {
+            order.setShippedAt(event.occurredAt());
+        }
+        return event;
+    }
+
+    /**
+     * CONFIRMED -> SHIPPED със записване на продължителността на товаренето
+     */
+    @Transactional
+    public OrderTransitionEvent ship(Long orderId, int shippingDurationSeconds) {
+        return apply(orderId, OrderStatus.SHIPPED, null, shippingDurationSeconds);
+    }
+
+    /**
+     * Bulk преход - по един SELECT ... FOR UPDATE и един UPDATE за всеки позволен
+     * изходен статус. Поръчките, които вече не са в позволен статус, се пропускат.
+     *
+     * @return събитията за точно тези поръчки, които са преминали в target
+     */
+    @Transactional
+    public List<OrderTransitionEvent> transitionAll(Collection<Long> orderIds, OrderStatus target, String reason) {
+        return transitionAll(orderIds, target, reason, null);
+    }
+
+    /**
+     * Bulk преход от scheduled job - UPDATE-ите са fenced с token-а на lease-а
+     * (виж OrderRepository.fencedBulkCompareAndSetStatus)
+     *
+     * @throws IllegalStateException ако lease-ът вече не е на този нод - транзакцията се rollback-ва
+     */
+    @Transactional
+    public List<OrderTransitionEvent> transitionAll(Collection<Long> orderIds, OrderStatus target, String reason,
+                                                    ClusterJobCoordinator.JobLease fence) {
+        List<OrderTransitionEvent> events = new ArrayList<>();
+        if (orderIds.isEmpty()) {
+            return events;
+        }
+
+        LocalDateTime now = LocalDateTime.now();
+        String actor = currentActor();
+        Set<Long> remaining = new LinkedHashSet<>(orderIds);
+
+        for (OrderStatus source : target.allowedSources()) {
+            if (remaining.isEmpty()) {
+                break;
+            }
+
+            List<Long> locked = orderRepository.lockIdsByStatus(remaining, source.name());
+            if (locked.isEmpty()) {
+                continue;
+            }
+            if (fence == null) {
+                orderRepository.bulkCompareAndSetStatus(locked, source.name(), target.name(), now);
+            } else if (orderRepository.fencedBulkCompareAndSetStatus(locked, source.name(), target.name(), now,
+                    fence.getJobName(), fence.getOwnerId(), fence.getToken()) == 0) {
+                throw new IllegalStateException("Lease за job " + fence.getJobName()
+                        + " (token " + fence.getToken() + ") е изгубен - преходът не е записан");
+            }
+
+            for (Long orderId : locked) {
+                OrderTransitionEvent event = new OrderTransitionEvent(orderId, source, target, now, reason, actor);
+                eventPublisher.publishEvent(event);
+                events.add(event);
+            }
+            locked.forEach(remaining::remove);
+        }
+
+        log.debug("Bulk transition to {}: {} of {} orders by {}", target, events.size(), orderIds.size(), actor);
+        return events;
+    }
+
+    // ==========================================
+    // PRIVATE HELPERS
+    // ==========================================
+
+    private OrderTransitionEvent apply(Long orderId, OrderStatus target, String reason, int shippingDurationSeconds) {
+        LocalDateTime now = LocalDateTime.now();
+
+        for (OrderStatus source : target.allowedSources()) {
+            int updated = orderRepository.compareAndSetStatus(
+                    orderId, source.name(), target.name(), now, shippingDurationSeconds);
+
+            if (updated == 1) {
+                OrderTransitionEvent event = new OrderTransitionEvent(
+                        orderId, source, target, now, reason, currentActor());
+                eventPublisher.publishEvent(event);
+
+                log.debug("Order {} transitioned {} -> {} by {}", orderId, source, target, event.actor());
+                return event;
+            }
+        }
+
+        throw new IllegalStateException(
+                "Поръчка " + orderId + " не може да премине в статус " + target + " от текущия си статус");
+    }
+
+    private static String currentActor() {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        if (authentication == null || !authentication.isAuthenticated()) {
+            return SYSTEM_ACTOR;
+        }
+        return authentication.getName();
+    }
+}
@@ -1,40 +1,205 @@
 package com.yourco.warehouse.components;
 
-import com.yourco.warehouse.entity.Order;
 import com.yourco.warehouse.entity.enums.OrderStatus;
 import com.yourco.warehouse.repository.OrderRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
-import org.springframework.stereotype.Service;
 
+import java.time.Duration;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Set;
 
-@Service
+/**
+ * ORDER STATUS SCHEDULER - DEADLINE ОПАШКА ЗА URGENT
+ * ==================================================
+ * Всяка PENDING поръчка се записва в опашка по срок submittedAt + threshold.
+ * На всеки tick се вадят само изтеклите срокове и се промотират с един
+ * bulk UPDATE (OrderStateMachine.transitionAll) - без периодично сканиране
+ * на всички PENDING поръчки и без закъснение до следващия час.
+ *
+ * - Tick-ът се изпълнява само на нода, който държи lease-а (ClusterJobCoordinator);
+ *   само той пази опашка - останалите нодове не записват срокове и изчистват
+ *   опашката си на всеки tick, в който не държат lease-а
+ * - При поемане на lease-а опашката се rebuild-ва изцяло от базата; на всеки
+ *   следващ tick се добавят PENDING поръчките от последните минути (и от други нодове)
+ * - Одобрена/отказана междувременно поръчка просто не минава status проверката
+ * - Counter и order broadcast-ите идват от OrderTransitionEvent за точно промотираните id-та
+ */
 @Component
 public class OrderStatusScheduler {
 
+    private static final Logger log = LoggerFactory.getLogger(OrderStatusScheduler.class);
+
+    public static final String JOB_NAME = "order-urgent-promotion";
+
+    private static final String URGENT_REASON = "Изтекло време за обработка";
+    private static final int MAX_BATCH_SIZE = 500;
+
+    // Припокриване на catch-up прозореца - покрива бавни commit-и и разлика в часовниците
+    private static final Duration CATCH_UP_OVERLAP = Duration.ofMinutes(5);
 
     private final OrderRepository orderRepository;
+    private final OrderStateMachine orderStateMachine;
+    private final ClusterJobCoordinator jobCoordinator;
+    private final long thresholdHours;
+    private final Duration leaseDuration;
+
+    // Min-heap по срок + id-тата в него; достъпът е synchronized върху опашката
+    private final PriorityQueue<Deadline> deadlines = new PriorityQueue<>();
+    private final Set<Long> queuedIds = new HashSet<>();
+
+    private volatile LocalDateTime lastCatchUp;
 
     @Autowired
-    public OrderStatusScheduler(OrderRepository orderRepository) {
+    public OrderStatusScheduler(OrderRepository orderRepository,
+                                OrderStateMachine orderStateMachine,
+                                ClusterJobCoordinator jobCoordinator,
+                                @Value("${warehouse.urgent.threshold-hours:12}") long thresholdHours,
+                                @Value("${warehouse.cluster.lease-seconds:60}") long leaseSeconds) {
         this.orderRepository = orderRepository;
+        this.orderStateMachine = orderStateMachine;
+        this.jobCoordinator = jobCoordinator;
+        this.thresholdHours = thresholdHours;
+        this.leaseDuration = Duration.ofSeconds(leaseSeconds);
     }
 
-    // Изпълнява се всеки час
-    @Scheduled(fixedRate = 3600000) // 1 час = 3600000 милисекунди
+    // ==========================================
+    // SCHEDULING
+    // ==========================================
+
+    /**
+     * Записва срока на нова PENDING поръчка, ако този нод държи lease-а. На другите
+     * нодове записът не се прави - опашката им никога не се изпразва, а притежателят
+     * взима поръчката с catch-up-а. Ако транзакцията бъде rollback-ната, записът е
+     * безвреден - UPDATE-ът няма да намери PENDING поръчка с това id.
+     */
+    public void schedule(Long orderId, LocalDateTime submittedAt) {
+        if (jobCoordinator.isHeld(JOB_NAME)) {
+            enqueue(orderId, submittedAt);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${warehouse.urgent.tick-ms:15000}")
     public void promotePendingToUrgent() {
-        LocalDateTime twelveHoursAgo = LocalDateTime.now().minusHours(12);
+        jobCoordinator.runExclusive(JOB_NAME, leaseDuration, lease -> {
+            if (lease.isNewlyAcquired() || lastCatchUp == null) {
+                rebuild();
+            } else {
+                catchUp();
+            }
+            promoteDue(lease);
+        });
+
+        if (!jobCoordinator.isHeld(JOB_NAME)) {
+            dropQueue();
+        }
+    }
+
+    public int getQueuedCount() {
+        synchronized (deadlines) {
+            return deadlines.size();
+        }
+    }
+
+    // ==========================================
+    // QUEUE MAINTENANCE
+    // ==========================================
+
+    private void enqueue(Long orderId, LocalDateTime submittedAt) {
+        if (orderId == null || submittedAt == null) {
+            return;
+        }
+        synchronized (deadlines) {
+            if (queuedIds.add(orderId)) {
+                deadlines.add(new Deadline(orderId, submittedAt.plusHours(thresholdHours)));
+            }
+        }
+    }
+
+    private void rebuild() {
+        LocalDateTime startedAt = LocalDateTime.now();
+        List<Object[]> rows = orderRepository.findIdAndSubmittedAtByStatus(OrderStatus.PENDING);
+
+        synchronized (deadlines) {
+            deadlines.clear();
+            queuedIds.clear();
+        }
+        rows.forEach(row -> enqueue((Long) row[0], (LocalDateTime) row[1]));
+        lastCatchUp = startedAt;
+
+        log.info("URGENT deadline queue rebuilt with {} pending orders", rows.size());
+    }
+
+    private void catchUp() {
+        LocalDateTime startedAt = LocalDateTime.now();
+        orderRepository.findIdAndSubmittedAtByStatusSince(OrderStatus.PENDING, lastCatchUp.minus(CATCH_UP_OVERLAP))
+                .forEach(row -> enqueue((Long) row[0], (LocalDateTime) row[1]));
+        lastCatchUp = startedAt;
+    }
+
+    private void promoteDue(ClusterJobCoordinator.JobLease lease) {
+        List<Long> dueIds = drainDue(LocalDateTime.now());
+        if (dueIds.isEmpty()) {
+            return;
+        }
 
-        List<Order> pendingOrders = orderRepository
-                .findByStatusAndSubmittedAtBefore(OrderStatus.PENDING, twelveHoursAgo);
+        for (int from = 0; from < dueIds.size(); from += MAX_BATCH_SIZE) {
+            List<Long> batch = dueIds.subList(from, Math.min(from + MAX_BATCH_SIZE, dueIds.size()));
+            try {
+                // Fenced UPDATE - ако lease-ът е изгубен междувременно, не се пише нищо
+                List<OrderTransitionEvent> promoted =
+                        orderStateMachine.transitionAll(batch, OrderStatus.URGENT, URGENT_REASON, lease);
+                if (!promoted.isEmpty()) {
+                    log.info("{} orders promoted to URGENT (deadline {}h)", promoted.size(), thresholdHours);
+                }
+
+            } catch (Exception e) {
+                // Връщаме срока в опашката - ще се опита отново на следващия tick
+                log.error("Грешка при промотиране на {} поръчки към URGENT: {}", batch.size(), e.getMessage());
+                LocalDateTime retryAt = LocalDateTime.now();
+                batch.forEach(orderId -> enqueue(orderId, retryAt.minusHours(thresholdHours)));
+            }
+        }
+    }
+
+    /**
+     * Lease-ът е при друг нод - опашката тук не се използва; при повторно поемане се rebuild-ва
+     */
+    private void dropQueue() {
+        synchronized (deadlines) {
+            if (!deadlines.isEmpty()) {
+                log.debug("Dropping {} queued URGENT deadlines - lease held by another node", deadlines.size());
+            }
+            deadlines.clear();
+            queuedIds.clear();
+        }
+        lastCatchUp = null;
+    }
+
+    private List<Long> drainDue(LocalDateTime now) {
+        List<Long> due = new ArrayList<>();
+        synchronized (deadlines) {
+            while (!deadlines.isEmpty() && !deadlines.peek().dueAt().isAfter(now)) {
+                Long orderId = deadlines.poll().orderId();
+                queuedIds.remove(orderId);
+                due.add(orderId);
+            }
+        }
+        return due;
+    }
 
-        for (Order order : pendingOrders) {
-            order.setStatus(OrderStatus.URGENT);
-            orderRepository.save(order);
-            System.out.println("Поръчка "+order.getId()+" е станала URGENT поради изтекло време "+ order.getId());
+    private record Deadline(Long orderId, LocalDateTime dueAt) implements Comparable<Deadline> {
+        @Override
+        public int compareTo(Deadline other) {
+            return dueAt.compareTo(other.dueAt);
         }
     }
 }
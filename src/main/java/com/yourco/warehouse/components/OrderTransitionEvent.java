@@ -0,0 +1,20 @@
+package com.yourco.warehouse.components;
+
+import com.yourco.warehouse.entity.enums.OrderStatus;
+
+import java.time.LocalDateTime;
+
+/**
+ * Публикува се от OrderStateMachine след успешен compare-and-set преход
+ * Съдържа всичко нужно на броячите, broadcast-ите и audit-а - без презареждане на поръчката
+ *
+ * @param reason бележка на служителя, причина за отказ или системна причина (може да е null)
+ * @param actor  username на потребителя извършил прехода или "system" за scheduled jobs
+ */
+public record OrderTransitionEvent(Long orderId,
+                                   OrderStatus from,
+                                   OrderStatus to,
+                                   LocalDateTime occurredAt,
+                                   String reason,
+                                   String actor) {
+}
@@ -0,0 +1,55 @@
+package com.yourco.warehouse.components;
+
+import com.yourco.warehouse.entity.ProductEntity;
+import jakarta.persistence.PostLoad;
+import jakarta.persistence.PostPersist;
+import jakarta.persistence.PostRemove;
+import jakarta.persistence.PostUpdate;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.stereotype.Component;
+
+/**
+ * JPA entity listener за ProductEntity - всяко записване на продукт (админ промени,
+ * корекции на наличност, импорт, резервации от поръчки) минава оттук, така че
+ * каталожният snapshot не зависи от това кой сервиз е направил промяната.
+ *
+ * Промените в количествата се подават и към StockReservationLedger като разлика
+ * спрямо зареденото състояние - след snapshot-а, за да останат количествата от ledger-а.
+ *
+ * Listener-ът се създава от Hibernate заедно с EntityManagerFactory - @Lazy прекъсва
+ * цикъла EntityManagerFactory -> listener -> ProductRepository -> EntityManagerFactory.
+ */
+@Component
+public class ProductChangeListener {
+
+    private final CatalogSnapshotHolder catalogSnapshot;
+    private final StockReservationLedger reservationLedger;
+
+    @Autowired
+    public ProductChangeListener(@Lazy CatalogSnapshotHolder catalogSnapshot,
+                                 @Lazy StockReservationLedger reservationLedger) {
+        this.catalogSnapshot = catalogSnapshot;
+        this.reservationLedger = reservationLedger;
+    }
+
+    @PostLoad
+    public void onProductLoaded(ProductEntity product) {
+        product.markQuantitiesPersisted();
+    }
+
+    @PostPersist
+    @PostUpdate
+    public void onProductSaved(ProductEntity product) {
+        catalogSnapshot.recordChange(product);
+        reservationLedger.recordStockChange(product.getId(),
+                product.getQuantityAvailableDelta(), product.getQuantityReservedDelta());
+        product.markQuantitiesPersisted();
+    }
+
+    @PostRemove
+    public void onProductRemoved(ProductEntity product) {
+        catalogSnapshot.recordRemoval(product.getId());
+        reservationLedger.recordRemoval(product.getId());
+    }
+}
@@ -0,0 +1,531 @@
+package com.yourco.warehouse.components;
+
+import com.yourco.warehouse.repository.ProductRepository;
+import com.yourco.warehouse.repository.StockLedgerCheckpointRepository;
+import com.yourco.warehouse.utils.StockLedgerJournal;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * STOCK RESERVATION LEDGER - РЕЗЕРВАЦИИ В ПАМЕТТА С WRITE-BEHIND
+ * ==============================================================
+ * Когато е включен (warehouse.reservations.ledger-enabled), ledger-ът е източникът
+ * на истина за quantityAvailable/quantityReserved при резервиране, освобождаване и
+ * продажба. Всеки продукт е отделна клетка (AtomicLong: available в горните 32 бита,
+ * reserved в долните) - резервацията е CAS цикъл без lock и без заявка към базата,
+ * така че checkout-ите за един и същ горещ продукт не чакат ред за DB lock.
+ *
+ * - Резервация: прилага се веднага (конкурентите я виждат); в beforeCommit се записва
+ *   в журнала с fsync, т.е. преди поръчката да е в базата; при rollback се връща
+ * - Освобождаване/продажба: валидират се веднага, прилагат се и се журналират след
+ *   commit - при срив между двете остава излишна резервация, никога overselling
+ * - Write-behind: на flush-interval-ms натрупаните записи се сумират по продукт и
+ *   се прилагат с относителни UPDATE-и в една транзакция заедно с checkpoint-а
+ * - Възстановяване: при стартиране записите след checkpoint-а се прилагат към
+ *   products, след което клетките се зареждат от базата
+ * - Промени през JPA (импорт, корекции, админ) идват от ProductChangeListener като
+ *   разлика спрямо зареденото състояние и се добавят към клетката след commit.
+ *   JPA записва количествата абсолютно, затова тези пътища зареждат продукта с
+ *   PESSIMISTIC_WRITE: относителният UPDATE на write-behind чака commit-а им и се
+ *   прилага върху записаното, вместо да бъде презаписан от остаряло състояние
+ * - Ledger-ът е локален за процеса - само за инсталации с един нод
+ * - Micrometer: stock.ledger.operations{operation, result}, stock.ledger.unflushed
+ */
+@Component
+public class StockReservationLedger {
+
+    private static final Logger log = LoggerFactory.getLogger(StockReservationLedger.class);
+
+    private static final String LEDGER_NAME = "product-stock";
+    private static final int MAX_FLUSH_BATCH = 5000;
+
+    private final boolean enabled;
+    private final Path journalPath;
+    private final ProductRepository productRepository;
+    private final StockLedgerCheckpointRepository checkpointRepository;
+    private final CatalogSnapshotHolder catalogSnapshot;
+    private final TransactionTemplate flushTransaction;
+    private final MeterRegistry meterRegistry;
+
+    // productId -> (available << 32 | reserved)
+    private final Map<Long, AtomicLong> cells = new ConcurrentHashMap<>();
+
+    // Журналирани записи, които още не са приложени към products (в реда на sequence)
+    private final Queue<StockLedgerJournal.Entry> unflushed = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger unflushedCount = new AtomicInteger();
+    private final Object flushLock = new Object();
+    private List<StockLedgerJournal.Entry> failedBatch = List.of();
+
+    private volatile StockLedgerJournal journal;
+    private volatile boolean loaded = false;
+
+    @Autowired
+    public StockReservationLedger(ProductRepository productRepository,
+                                  StockLedgerCheckpointRepository checkpointRepository,
+                                  CatalogSnapshotHolder catalogSnapshot,
+                                  PlatformTransactionManager transactionManager,
+                                  MeterRegistry meterRegistry,
+                                  @Value("${warehouse.reservations.ledger-enabled:false}") boolean enabled,
+                                  @Value("${warehouse.reservations.journal-path:./data/stock-ledger.journal}") String journalPath) {
+        this.productRepository = productRepository;
+        this.checkpointRepository = checkpointRepository;
+        this.catalogSnapshot = catalogSnapshot;
+        this.flushTransaction = new TransactionTemplate(transactionManager);
+        this.flushTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.meterRegistry = meterRegistry;
+        this.enabled = enabled;
+        this.journalPath = Path.of(journalPath);
+        meterRegistry.gauge("stock.ledger.unflushed", unflushedCount);
+    }
+
+    /**
+     * Наличност и резервирано количество на продукта според ledger-а
+     */
+    public record StockLevel(int available, int reserved) {
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    // ==========================================
+    // OPERATIONS - productId -> количество, всичко или нищо
+    // ==========================================
+
+    /**
+     * Резервира количествата без lock. При недостиг за който и да е продукт вече
+     * направените резервации се връщат и се хвърля IllegalStateException.
+     */
+    public void reserve(Map<Long, Integer> quantities) {
+        ensureLoaded();
+        Map<Long, Integer> applied = new LinkedHashMap<>();
+        try {
+            for (Map.Entry<Long, Integer> entry : quantities.entrySet()) {
+                int quantity = requirePositive(entry.getValue());
+                AtomicLong cell = cell(entry.getKey());
+                while (true) {
+                    long current = cell.get();
+                    int available = available(current);
+                    int reserved = reserved(current);
+                    int free = available - reserved;
+                    if (quantity > free) {
+                        throw new IllegalStateException(
+                                String.format("Няма достатъчно свободно количество. Налични: %d, Резервирани: %d, Свободни: %d",
+                                        available, reserved, free));
+                    }
+                    if (cell.compareAndSet(current, pack(available, reserved + quantity))) {
+                        break;
+                    }
+                }
+                applied.put(entry.getKey(), quantity);
+            }
+        } catch (RuntimeException e) {
+            applied.forEach((productId, quantity) -> adjust(productId, 0, -quantity));
+            count("reserve", "rejected");
+            throw e;
+        }
+        count("reserve", "ok");
+
+        Map<Long, int[]> deltas = deltas(applied, 0, 1);
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            journal(deltas);
+            publish(applied.keySet());
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            private boolean journaled = false;
+
+            @Override
+            public void beforeCommit(boolean readOnly) {
+                // fsync преди commit на поръчката - резервация в базата без запис в журнала е невъзможна
+                journal(deltas);
+                journaled = true;
+            }
+
+            @Override
+            public void afterCompletion(int status) {
+                if (status != STATUS_COMMITTED) {
+                    applied.forEach((productId, quantity) -> adjust(productId, 0, -quantity));
+                    if (journaled) {
+                        journalQuietly(deltas(applied, 0, -1));
+                    }
+                }
+                publish(applied.keySet());
+            }
+        });
+    }
+
+    /**
+     * Освобождава резервации - валидира веднага, прилага след commit
+     *
+     * @return очакваните наличности след commit
+     */
+    public Map<Long, StockLevel> release(Map<Long, Integer> quantities) {
+        return onCommit("release", quantities, 0);
+    }
+
+    /**
+     * Потвърждава продажба - намалява available и reserved след commit
+     *
+     * @return очакваните наличности след commit
+     */
+    public Map<Long, StockLevel> confirmSale(Map<Long, Integer> quantities) {
+        return onCommit("sale", quantities, 1);
+    }
+
+    /**
+     * Записан продукт през JPA (от ProductChangeListener) - разликата в количествата
+     * спрямо зареденото състояние се добавя към клетката след commit. Каталогът получава
+     * количествата от ledger-а и при промяна само на други полета - entity-то може да
+     * не съдържа още неприложените от write-behind записи.
+     */
+    public void recordStockChange(Long productId, int availableDelta, int reservedDelta) {
+        if (!enabled || productId == null) {
+            return;
+        }
+        Runnable change = () -> {
+            if (availableDelta != 0 || reservedDelta != 0) {
+                adjust(productId, availableDelta, reservedDelta);
+            }
+            publish(List.of(productId));
+        };
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            change.run();
+            return;
+        }
+        // afterCompletion, а не afterCommit - изпълнява се след snapshot-а на каталога
+        // (регистриран по-рано от ProductChangeListener) и презаписва неговите количества
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                if (status == STATUS_COMMITTED) {
+                    change.run();
+                }
+            }
+        });
+    }
+
+    public void recordRemoval(Long productId) {
+        if (!enabled || productId == null) {
+            return;
+        }
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            cells.remove(productId);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                cells.remove(productId);
+            }
+        });
+    }
+
+    // ==========================================
+    // LIFECYCLE - възстановяване и write-behind
+    // ==========================================
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        if (enabled) {
+            ensureLoaded();
+        }
+    }
+
+    /**
+     * Прилага натрупаните записи към products с относителни UPDATE-и - един на продукт
+     * за целия batch - и checkpoint-а в същата транзакция
+     */
+    @Scheduled(fixedDelayString = "${warehouse.reservations.flush-interval-ms:500}")
+    public void flush() {
+        if (!enabled || !loaded) {
+            return;
+        }
+        synchronized (flushLock) {
+            List<StockLedgerJournal.Entry> batch = new ArrayList<>(failedBatch);
+            StockLedgerJournal.Entry entry;
+            while (batch.size() < MAX_FLUSH_BATCH && (entry = unflushed.poll()) != null) {
+                batch.add(entry);
+            }
+            if (batch.isEmpty()) {
+                return;
+            }
+
+            try {
+                long checkpoint = write(batch);
+                failedBatch = List.of();
+                unflushedCount.addAndGet(-batch.size());
+                if (journal.truncateIfCheckpointed(checkpoint)) {
+                    log.debug("Stock ledger journal truncated at sequence {}", checkpoint);
+                }
+            } catch (Exception e) {
+                // Записите остават в паметта и в журнала - следващият flush опитва отново
+                failedBatch = batch;
+                log.error("Stock ledger write-behind failed for {} records: {}", batch.size(), e.getMessage());
+            }
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (!enabled || journal == null) {
+            return;
+        }
+        flush();
+        try {
+            journal.close();
+        } catch (IOException e) {
+            log.warn("Stock ledger journal not closed cleanly: {}", e.getMessage());
+        }
+    }
+
+    // ==========================================
+    // PRIVATE HELPERS
+    // ==========================================
+
+    private Map<Long, StockLevel> onCommit(String operation, Map<Long, Integer> quantities, int availableSign) {
+        ensureLoaded();
+        Map<Long, StockLevel> expected = new LinkedHashMap<>();
+        for (Map.Entry<Long, Integer> entry : quantities.entrySet()) {
+            int quantity = requirePositive(entry.getValue());
+            StockLevel current = level(cell(entry.getKey()).get());
+            if (quantity > current.reserved()) {
+                count(operation, "rejected");
+                throw new IllegalStateException(
+                        String.format("Не може да се освободи повече от резервираното количество. Резервирани: %d, Поискани: %d",
+                                current.reserved(), quantity));
+            }
+            expected.put(entry.getKey(),
+                    new StockLevel(current.available() - availableSign * quantity, current.reserved() - quantity));
+        }
+        count(operation, "ok");
+
+        Map<Long, int[]> deltas = deltas(quantities, -availableSign, -1);
+        Runnable apply = () -> {
+            deltas.forEach((productId, delta) -> adjust(productId, delta[0], delta[1]));
+            journalQuietly(deltas);
+            publish(deltas.keySet());
+        };
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            apply.run();
+        } else {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    if (status == STATUS_COMMITTED) {
+                        apply.run();
+                    }
+                }
+            });
+        }
+        return expected;
+    }
+
+    /**
+     * Възстановяване от журнала и зареждане на клетките - веднъж, преди първата операция
+     */
+    private void ensureLoaded() {
+        if (!enabled) {
+            throw new IllegalStateException("Stock reservation ledger is disabled");
+        }
+        if (loaded) {
+            return;
+        }
+        synchronized (this) {
+            if (loaded) {
+                return;
+            }
+            try {
+                Long stored = checkpointRepository.findLastSequence(LEDGER_NAME);
+                long checkpoint = stored != null ? stored : 0L;
+
+                List<StockLedgerJournal.Entry> pending = StockLedgerJournal.read(journalPath).stream()
+                        .filter(entry -> entry.sequence() > checkpoint)
+                        .toList();
+                if (!pending.isEmpty()) {
+                    long recovered = write(pending);
+                    log.warn("Stock ledger recovered {} journal records up to sequence {}", pending.size(), recovered);
+                }
+
+                journal = new StockLedgerJournal(journalPath, checkpoint);
+                // Всичко във файла вече е в базата
+                journal.truncateIfCheckpointed(journal.lastSequence());
+            } catch (IOException e) {
+                throw new UncheckedIOException("Stock ledger journal " + journalPath + " is not readable", e);
+            }
+
+            cells.clear();
+            for (Object[] row : productRepository.findAllStockLevels()) {
+                cells.put((Long) row[0], new AtomicLong(pack(toInt(row[1]), toInt(row[2]))));
+            }
+            loaded = true;
+            log.info("Stock reservation ledger loaded: {} products, journal {}", cells.size(), journal);
+        }
+    }
+
+    /**
+     * Прилага записите към products и checkpoint-а в една транзакция
+     *
+     * @return последният приложен sequence
+     */
+    private long write(List<StockLedgerJournal.Entry> entries) {
+        Map<Long, int[]> totals = new TreeMap<>();
+        long lastSequence = 0;
+        for (StockLedgerJournal.Entry entry : entries) {
+            int[] total = totals.computeIfAbsent(entry.productId(), id -> new int[2]);
+            total[0] += entry.availableDelta();
+            total[1] += entry.reservedDelta();
+            lastSequence = Math.max(lastSequence, entry.sequence());
+        }
+        long checkpoint = lastSequence;
+        flushTransaction.executeWithoutResult(status -> {
+            totals.forEach((productId, total) -> {
+                if (total[0] != 0 || total[1] != 0) {
+                    productRepository.applyStockDelta(productId, total[0], total[1]);
+                }
+            });
+            checkpointRepository.advance(LEDGER_NAME, checkpoint);
+        });
+        return checkpoint;
+    }
+
+    private void journal(Map<Long, int[]> deltas) {
+        try {
+            journal.append(deltas, entry -> {
+                unflushed.add(entry);
+                unflushedCount.incrementAndGet();
+            });
+        } catch (IOException e) {
+            throw new UncheckedIOException("Stock ledger journal write failed", e);
+        }
+    }
+
+    /**
+     * След commit грешката не може да върне транзакцията - само се логва
+     */
+    private void journalQuietly(Map<Long, int[]> deltas) {
+        try {
+            journal(deltas);
+        } catch (Exception e) {
+            log.error("Stock ledger journal write failed after commit for products {}: {}",
+                    deltas.keySet(), e.getMessage());
+        }
+    }
+
+    private void publish(Collection<Long> productIds) {
+        Map<Long, StockLevel> levels = new HashMap<>();
+        for (Long productId : productIds) {
+            AtomicLong cell = cells.get(productId);
+            if (cell != null) {
+                levels.put(productId, level(cell.get()));
+            }
+        }
+        try {
+            catalogSnapshot.recordStock(levels);
+        } catch (Exception e) {
+            log.warn("Catalog stock update failed for products {}: {}", productIds, e.getMessage());
+        }
+    }
+
+    /**
+     * Клетката на продукта; продукт, създаден след зареждането, се чете от базата
+     */
+    private AtomicLong cell(Long productId) {
+        return cells.computeIfAbsent(productId, id -> {
+            List<Object[]> rows = productRepository.findStockLevel(id);
+            if (rows.isEmpty()) {
+                throw new IllegalStateException("Продукт не е намерен: " + id);
+            }
+            return new AtomicLong(pack(toInt(rows.get(0)[1]), toInt(rows.get(0)[2])));
+        });
+    }
+
+    /**
+     * Безусловна промяна (връщане на резервация, прилагане след commit, JPA промяна)
+     */
+    private void adjust(Long productId, int availableDelta, int reservedDelta) {
+        AtomicLong cell = cells.get(productId);
+        if (cell == null) {
+            return;
+        }
+        long current;
+        long next;
+        do {
+            current = cell.get();
+            int available = available(current) + availableDelta;
+            int reserved = reserved(current) + reservedDelta;
+            if (available < 0 || reserved < 0) {
+                log.warn("Stock ledger for product {} would go negative (available {}, reserved {}) - clamped to 0",
+                        productId, available, reserved);
+            }
+            next = pack(Math.max(0, available), Math.max(0, reserved));
+        } while (!cell.compareAndSet(current, next));
+    }
+
+    private void count(String operation, String result) {
+        meterRegistry.counter("stock.ledger.operations", "operation", operation, "result", result).increment();
+    }
+
+    private static Map<Long, int[]> deltas(Map<Long, Integer> quantities, int availableSign, int reservedSign) {
+        Map<Long, int[]> deltas = new TreeMap<>();
+        quantities.forEach((productId, quantity) ->
+                deltas.put(productId, new int[]{availableSign * quantity, reservedSign * quantity}));
+        return deltas;
+    }
+
+    private static int requirePositive(Integer quantity) {
+        if (quantity == null || quantity <= 0) {
+            throw new IllegalArgumentException("Количеството трябва да бъде положително число");
+        }
+        return quantity;
+    }
+
+    private static StockLevel level(long value) {
+        return new StockLevel(available(value), reserved(value));
+    }
+
+    private static long pack(int available, int reserved) {
+        return ((long) available << 32) | (reserved & 0xFFFFFFFFL);
+    }
+
+    private static int available(long value) {
+        return (int) (value >>> 32);
+    }
+
+    private static int reserved(long value) {
+        return (int) value;
+    }
+
+    private static int toInt(Object value) {
+        return value != null ? ((Number) value).intValue() : 0;
+    }
+}
@@ -25,7 +25,8 @@ public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
     /**
      * Configure message broker for routing messages between clients
      *
-     * Използваме "/topic" prefix за broadcast messages (server-to-clients)
+     * Използваме "/topic" prefix за broadcast messages (server-to-clients),
+     * "/queue" за лични отговори през "/user" (напр. сканиране на баркод)
      * и "/app" prefix за client-to-server messages.
      *
      * Simple broker е достатъчен за dashboard functionality, но може
@@ -34,7 +35,7 @@ public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
     @Override
     public void configureMessageBroker(MessageBrokerRegistry config) {
         System.out.println("=== CONFIGURING MESSAGE BROKER ===");
-        config.enableSimpleBroker("/topic");
+        config.enableSimpleBroker("/topic", "/queue");
         config.setApplicationDestinationPrefixes("/app");
         config.setUserDestinationPrefix("/user");
         System.out.println("✓ Message broker configured successfully");
@@ -0,0 +1,97 @@
+package com.yourco.warehouse.controllers;
+
+import com.yourco.warehouse.service.BarcodeService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.CacheControl;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.messaging.handler.annotation.MessageMapping;
+import org.springframework.messaging.handler.annotation.Payload;
+import org.springframework.messaging.simp.annotation.SendToUser;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.security.core.Authentication;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.security.Principal;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * BARCODE SCAN CONTROLLER - СКАНИРАНЕ ПРИ ТОВАРЕНЕ
+ * ================================================
+ * Баркод -> активен продукт от in-memory индекса.
+ * - REST: GET /api/barcodes/scan?code= за единични сканирания
+ * - STOMP: SEND /app/barcodes/scan {code, seq} -> /user/queue/barcodes за непрекъснато
+ *   сканиране през вече отворената WebSocket връзка, без HTTP заявка на всеки баркод;
+ *   seq се връща непроменен, за да се свърже отговорът със сканирането
+ */
+@RestController
+public class BarcodeScanController {
+
+    private static final Logger log = LoggerFactory.getLogger(BarcodeScanController.class);
+
+    private final BarcodeService barcodeService;
+
+    @Autowired
+    public BarcodeScanController(BarcodeService barcodeService) {
+        this.barcodeService = barcodeService;
+    }
+
+    @GetMapping(value = "/api/barcodes/scan", produces = MediaType.APPLICATION_JSON_VALUE)
+    @PreAuthorize("hasRole('ADMIN') or hasRole('EMPLOYER')")
+    public ResponseEntity<Map<String, Object>> scan(@RequestParam("code") String code) {
+        try {
+            return ResponseEntity.ok()
+                    .cacheControl(CacheControl.noStore())
+                    .body(barcodeService.scan(code));
+        } catch (Exception e) {
+            log.error("Error scanning barcode {}: {}", code, e.getMessage());
+            return ResponseEntity.internalServerError()
+                    .body(Map.of("found", false, "barcode", code, "reason", "error"));
+        }
+    }
+
+    /**
+     * STOMP сканиране - SecurityContext не се пренася в message handler-а,
+     * затова ролята се проверява от principal-а на WebSocket сесията
+     */
+    @MessageMapping("/barcodes/scan")
+    @SendToUser(destinations = "/queue/barcodes", broadcast = false)
+    public Map<String, Object> scanMessage(@Payload Map<String, Object> request, Principal principal) {
+        Object seq = request.get("seq");
+        String code = request.get("code") != null ? request.get("code").toString() : null;
+
+        Map<String, Object> response;
+        if (!isWarehouseStaff(principal)) {
+            response = new HashMap<>();
+            response.put("found", false);
+            response.put("barcode", code);
+            response.put("reason", "forbidden");
+        } else {
+            try {
+                response = barcodeService.scan(code);
+            } catch (Exception e) {
+                log.error("Error scanning barcode {} via WebSocket: {}", code, e.getMessage());
+                response = new HashMap<>();
+                response.put("found", false);
+                response.put("barcode", code);
+                response.put("reason", "error");
+            }
+        }
+        response.put("seq", seq);
+        return response;
+    }
+
+    private static boolean isWarehouseStaff(Principal principal) {
+        if (!(principal instanceof Authentication authentication)) {
+            return false;
+        }
+        return authentication.getAuthorities().stream()
+                .anyMatch(authority -> "ROLE_ADMIN".equals(authority.getAuthority())
+                        || "ROLE_EMPLOYER".equals(authority.getAuthority()));
+    }
+}
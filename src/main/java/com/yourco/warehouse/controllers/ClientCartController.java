@@ -1,7 +1,8 @@
 package com.yourco.warehouse.controllers;
 
+import com.yourco.warehouse.components.ClientCounterRegistry;
 import com.yourco.warehouse.dto.CartDTO;
-import com.yourco.warehouse.entity.Order;
+import com.yourco.warehouse.dto.CheckoutResultDTO;
 import com.yourco.warehouse.entity.UserEntity;
 import com.yourco.warehouse.service.ClientOrderService;
 import com.yourco.warehouse.service.impl.CartServiceImpl;
@@ -34,14 +35,17 @@ public class ClientCartController {
     private final CartServiceImpl cartService;
     private final UserService userService;
     private final ClientOrderService clientOrderService;
+    private final ClientCounterRegistry counterRegistry;
 
     @Autowired
     public ClientCartController(CartServiceImpl cartService,
                                 UserService userService,
-                                ClientOrderService clientOrderService) {
+                                ClientOrderService clientOrderService,
+                                ClientCounterRegistry counterRegistry) {
         this.cartService = cartService;
         this.userService = userService;
         this.clientOrderService = clientOrderService;
+        this.counterRegistry = counterRegistry;
     }
 
     /**
@@ -89,14 +93,17 @@ public class ClientCartController {
         }
 
         try {
-            Long userId = userService.getCurrentUser().getId();
+            Long userId = counterRegistry.knownUserId(authentication.getName());
+            if (userId == null) {
+                userId = userService.getCurrentUser().getId();
+            }
 
             // ПОПРАВКА: Връща брой различни артикули, не общо количество
-            Integer uniqueItemsCount = cartService.getCartItems(userId).size();
-            boolean hasItems = cartService.hasItems(userId);
+            // Броячът е кеширан в ClientCounterRegistry и се инвалидира при промяна на количката
+            ClientCounterRegistry.Counts counts = counterRegistry.current(userId, authentication.getName());
 
-            response.put("count", uniqueItemsCount);
-            response.put("hasItems", hasItems);
+            response.put("count", counts.cartCount());
+            response.put("hasItems", counts.cartCount() > 0);
 
             // Кратък cache за count endpoint
             return ResponseEntity.ok()
@@ -409,6 +416,7 @@ public class ClientCartController {
     @PostMapping("/checkout")
     @ResponseBody
     public ResponseEntity<Map<String, Object>> checkoutCart(@RequestParam(required = false) String notes,
+                                                            @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey,
                                                             Authentication authentication) {
         Map<String, Object> response = new HashMap<>();
 
@@ -420,12 +428,14 @@ public class ClientCartController {
             }
 
             UserEntity currentUser = userService.getCurrentUser();
-            Order order = clientOrderService.createOrderFromCart(currentUser.getId(), notes);
+            // Повторен submit със същия ключ (двоен клик, retry) връща вече създадената поръчка
+            CheckoutResultDTO result = clientOrderService.checkout(currentUser.getId(), notes, idempotencyKey);
 
             response.put("success", true);
             response.put("message", "Поръчката е създадена успешно");
-            response.put("orderId", order.getId());
-            response.put("redirectUrl", "/orders/" + order.getId());
+            response.put("orderId", result.getOrderId());
+            response.put("replayed", result.isReplayed());
+            response.put("redirectUrl", "/orders/" + result.getOrderId());
 
 
         } catch (IllegalArgumentException | IllegalStateException e) {
@@ -1,16 +1,25 @@
 package com.yourco.warehouse.controllers;
 
+import com.yourco.warehouse.components.CatalogPayloadCache;
+import com.yourco.warehouse.components.CatalogSnapshotHolder;
+import com.yourco.warehouse.dto.AvailabilityRequestDTO;
 import com.yourco.warehouse.dto.ProductCatalogDTO;
 import com.yourco.warehouse.service.CatalogService;
+import com.yourco.warehouse.utils.CatalogFacetIndex;
 
 import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import jakarta.validation.constraints.Size;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 
+import java.io.IOException;
 import java.math.BigDecimal;
 import java.util.*;
 
@@ -18,6 +27,12 @@ import java.util.*;
 @RequestMapping
 public class ClientCatalogController {
 
+    private static final int DEFAULT_PAGE_SIZE = 50;
+    private static final int MAX_AVAILABILITY_BATCH = 500;
+
+    private static final String HEADER_CATALOG_REVISION = "X-Catalog-Revision";
+    private static final String HEADER_CATALOG_EPOCH = "X-Catalog-Epoch";
+
     private final CatalogService catalogService;
 
     @Autowired
@@ -29,13 +44,68 @@ public class ClientCatalogController {
     // JSON API ENDPOINTS
     // ==========================================
 
+    /**
+     * Активният каталог от in-memory snapshot-а. Версията на snapshot-а е ETag -
+     * при непроменен каталог браузърът получава 304 без body. gzip вариантът има
+     * собствен ETag (суфикс -gz), за да не се смесват двете представяния в кешовете.
+     *
+     * Без параметри връща целия списък. С page/size/sort или cursor връща една
+     * страница: {products, sort, size, offset, total, version, nextCursor}.
+     *
+     * X-Catalog-Revision/X-Catalog-Epoch са отправната точка за /api/products/changes.
+     *
+     * Целият списък се пише от CatalogPayloadCache като готови байтове (gzip, ако
+     * клиентът го приема); докато новата версия се генерира - през Jackson.
+     */
     @GetMapping(value = "/api/products", produces = MediaType.APPLICATION_JSON_VALUE)
     @ResponseBody
-    public ResponseEntity<List<ProductCatalogDTO>> getAllProducts() {
+    public ResponseEntity<?> getAllProducts(
+            @RequestParam(value = "page", required = false) Integer page,
+            @RequestParam(value = "size", required = false) Integer size,
+            @RequestParam(value = "sort", required = false) String sort,
+            @RequestParam(value = "cursor", required = false) String cursor,
+            WebRequest webRequest,
+            HttpServletResponse response) {
+        boolean paged = page != null || size != null || sort != null || cursor != null;
         try {
-            List<ProductCatalogDTO> productDTOs = catalogService.getAllActiveProducts();
+            CatalogSnapshotHolder.Snapshot catalog = catalogService.getActiveCatalog();
+            CatalogPayloadCache.Payload payload = paged ? null : catalogService.getCatalogPayload(catalog);
+            boolean gzip = payload != null && servesGzip(payload, webRequest);
+            String etag = paged ? pageETag(catalog, page, size, sort, cursor)
+                    : gzip ? gzipETag(catalog.etag()) : catalog.etag();
+
+            if (webRequest.checkNotModified(etag)) {
+                return ResponseEntity.status(HttpStatus.NOT_MODIFIED)
+                        .eTag(etag)
+                        .varyBy(HttpHeaders.ACCEPT_ENCODING)
+                        .header(HEADER_CATALOG_REVISION, String.valueOf(catalog.version()))
+                        .header(HEADER_CATALOG_EPOCH, catalog.epoch())
+                        .cacheControl(CacheControl.noCache().cachePrivate())
+                        .build();
+            }
+
+            if (payload != null) {
+                response.setHeader(HttpHeaders.ETAG, etag);
+                response.setHeader(HttpHeaders.CACHE_CONTROL, CacheControl.noCache().cachePrivate().getHeaderValue());
+                response.setHeader(HEADER_CATALOG_REVISION, String.valueOf(catalog.version()));
+                response.setHeader(HEADER_CATALOG_EPOCH, catalog.epoch());
+                writePayload(payload, gzip, response);
+                return null;
+            }
+
+            Object body = paged
+                    ? catalogService.getProductsPage(catalog, sort, page, size != null ? size : DEFAULT_PAGE_SIZE, cursor)
+                    : catalog.products();
             return ResponseEntity.ok()
-                    .body(productDTOs);
+                    .eTag(etag)
+                    .varyBy(HttpHeaders.ACCEPT_ENCODING)
+                    .header(HEADER_CATALOG_REVISION, String.valueOf(catalog.version()))
+                    .header(HEADER_CATALOG_EPOCH, catalog.epoch())
+                    .cacheControl(CacheControl.noCache().cachePrivate())
+                    .body(body);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest()
+                    .body(Map.of("message", "Невалидни параметри за страниране: " + e.getMessage()));
         } catch (Exception e) {
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
                     .body(Collections.emptyList());
@@ -66,7 +136,9 @@ public class ClientCatalogController {
     public ResponseEntity<?> filterProducts(
             @RequestParam(value = "category", required = false) String category,
             @RequestParam(value = "minPrice", required = false) BigDecimal minPrice,
-            @RequestParam(value = "maxPrice", required = false) BigDecimal maxPrice) {
+            @RequestParam(value = "maxPrice", required = false) BigDecimal maxPrice,
+            WebRequest webRequest,
+            HttpServletResponse response) {
         if ((minPrice != null && minPrice.compareTo(BigDecimal.ZERO) < 0) ||
                 (maxPrice != null && maxPrice.compareTo(BigDecimal.ZERO) < 0)) {
             return ResponseEntity.badRequest().body(Collections.emptyList());
@@ -79,6 +151,16 @@ public class ClientCatalogController {
                 return ResponseEntity.badRequest().body(error);
             }
 
+            // Само категория - готовият slice от payload cache-а
+            if (category != null && !category.isBlank() && minPrice == null && maxPrice == null) {
+                CatalogPayloadCache.Payload payload =
+                        catalogService.getCategoryPayload(catalogService.getActiveCatalog(), category);
+                if (payload != null) {
+                    writePayload(payload, servesGzip(payload, webRequest), response);
+                    return null;
+                }
+            }
+
             List<ProductCatalogDTO> productDTOs = catalogService.filterProducts(category, minPrice, maxPrice);
             return ResponseEntity.ok()
                     .body(productDTOs);
@@ -88,6 +170,61 @@ public class ClientCatalogController {
         }
     }
 
+    /**
+     * Филтър + facet броячи в едно извикване - категории, мерни единици и ценова хистограма.
+     * Броячът на всеки facet е с останалите филтри, без собствения му.
+     */
+    @GetMapping(value = "/api/products/facets", produces = MediaType.APPLICATION_JSON_VALUE)
+    @ResponseBody
+    public ResponseEntity<?> getProductFacets(
+            @RequestParam(value = "category", required = false) String category,
+            @RequestParam(value = "unit", required = false) String unit,
+            @RequestParam(value = "minPrice", required = false) BigDecimal minPrice,
+            @RequestParam(value = "maxPrice", required = false) BigDecimal maxPrice) {
+        if ((minPrice != null && minPrice.compareTo(BigDecimal.ZERO) < 0) ||
+                (maxPrice != null && maxPrice.compareTo(BigDecimal.ZERO) < 0) ||
+                (minPrice != null && maxPrice != null && minPrice.compareTo(maxPrice) > 0)) {
+            return ResponseEntity.badRequest().body(Map.of("message", "Невалиден ценови диапазон"));
+        }
+        try {
+            CatalogFacetIndex.FacetResult facets = catalogService.getFacets(category, unit, minPrice, maxPrice);
+
+            Map<String, Object> response = new HashMap<>();
+            response.put("products", facets.products());
+            response.put("total", facets.products().size());
+            response.put("categories", facets.categoryCounts());
+            response.put("units", facets.unitCounts());
+            response.put("priceHistogram", facets.priceHistogram());
+            return ResponseEntity.ok(response);
+        } catch (Exception e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(Map.of("error", "Неуспешно филтриране на каталога"));
+        }
+    }
+
+    /**
+     * Добавените/променените и деактивираните продукти след ревизия {@code since}.
+     * mode=reset означава, че ревизията е твърде стара или от предишен рестарт -
+     * клиентът презарежда /api/products.
+     */
+    @GetMapping(value = "/api/products/changes", produces = MediaType.APPLICATION_JSON_VALUE)
+    @ResponseBody
+    public ResponseEntity<?> getProductChanges(
+            @RequestParam(value = "since") long since,
+            @RequestParam(value = "epoch", required = false) String epoch) {
+        if (since < 0) {
+            return ResponseEntity.badRequest().body(Map.of("message", "Невалидна ревизия"));
+        }
+        try {
+            return ResponseEntity.ok()
+                    .cacheControl(CacheControl.noStore())
+                    .body(catalogService.getChangesSince(since, epoch));
+        } catch (Exception e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(Map.of("error", "Неуспешно зареждане на промените в каталога"));
+        }
+    }
+
     @GetMapping(value = "/api/products/{sku}", produces = MediaType.APPLICATION_JSON_VALUE)
     @ResponseBody
     public ResponseEntity<?> getProductBySku(
@@ -127,9 +264,36 @@ public class ClientCatalogController {
     public ResponseEntity<Map<String, Object>> checkProductAvailability(
             @PathVariable("sku") String sku) {
         try {
-            // в сервиза липсва метод за availability → трябва да се добави там
-            return ResponseEntity.status(HttpStatus.NOT_IMPLEMENTED)
-                    .body(Map.of("message", "Методът за проверка на наличност трябва да се реализира в сервиза"));
+            Map<String, Object> availability = catalogService.getAvailability(List.of(sku), List.of());
+            List<?> items = (List<?>) availability.get("items");
+            if (items.isEmpty()) {
+                return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                        .body(Map.of("message", "Продуктът не е намерен"));
+            }
+            return ResponseEntity.ok(availability);
+        } catch (Exception e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(Map.of("error", "Грешка при проверка на наличност"));
+        }
+    }
+
+    /**
+     * Наличност за много продукти в една заявка - body {skus: [...], ids: [...]}.
+     * Отговорът е от in-memory snapshot-а, без заявка към базата; редовете в items
+     * са масиви по реда на fields.
+     */
+    @PostMapping(value = "/api/products/availability", produces = MediaType.APPLICATION_JSON_VALUE)
+    @ResponseBody
+    public ResponseEntity<Map<String, Object>> checkProductsAvailability(
+            @RequestBody AvailabilityRequestDTO request) {
+        if (request.getSkus().size() + request.getIds().size() > MAX_AVAILABILITY_BATCH) {
+            return ResponseEntity.badRequest()
+                    .body(Map.of("message", "Най-много " + MAX_AVAILABILITY_BATCH + " продукта в една заявка"));
+        }
+        try {
+            return ResponseEntity.ok()
+                    .cacheControl(CacheControl.noStore())
+                    .body(catalogService.getAvailability(request.getSkus(), request.getIds()));
         } catch (Exception e) {
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
                     .body(Map.of("error", "Грешка при проверка на наличност"));
@@ -215,6 +379,61 @@ public class ClientCatalogController {
     // UTILITY METHODS
     // ==========================================
 
+    /**
+     * Пише готовите байтове директно в servlet output-а - gzip варианта или UTF-8 JSON
+     */
+    private static void writePayload(CatalogPayloadCache.Payload payload, boolean gzip,
+                                     HttpServletResponse response) throws IOException {
+        byte[] body = gzip ? payload.gzip() : payload.json();
+
+        response.setStatus(HttpServletResponse.SC_OK);
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        response.setHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        if (gzip) {
+            response.setHeader(HttpHeaders.CONTENT_ENCODING, "gzip");
+        }
+        response.setContentLength(body.length);
+        response.getOutputStream().write(body);
+        response.flushBuffer();
+    }
+
+    /**
+     * gzip вариантът се сервира, ако клиентът го приема и payload-ът е достатъчно голям
+     */
+    private static boolean servesGzip(CatalogPayloadCache.Payload payload, WebRequest webRequest) {
+        return payload.gzip() != null && acceptsGzip(webRequest.getHeader(HttpHeaders.ACCEPT_ENCODING));
+    }
+
+    private static boolean acceptsGzip(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        for (String token : acceptEncoding.split(",")) {
+            String[] parts = token.trim().split(";");
+            if (parts[0].trim().equalsIgnoreCase("gzip")) {
+                return parts.length == 1 || !parts[1].replace(" ", "").equalsIgnoreCase("q=0");
+            }
+        }
+        return false;
+    }
+
+    /**
+     * ETag на gzip варианта - байтовете се различават от identity, затова и strong ETag-ът
+     */
+    private static String gzipETag(String etag) {
+        return etag.substring(0, etag.length() - 1) + "-gz\"";
+    }
+
+    /**
+     * ETag на страница - версията на каталога плюс параметрите на страницата
+     */
+    private static String pageETag(CatalogSnapshotHolder.Snapshot catalog, Integer page, Integer size,
+                                   String sort, String cursor) {
+        String base = catalog.etag().substring(0, catalog.etag().length() - 1);
+        String params = sort + "|" + page + "|" + size + "|" + cursor;
+        return base + "-p" + Integer.toHexString(params.hashCode()) + "\"";
+    }
+
     @GetMapping(value = "/api/catalog/health", produces = MediaType.APPLICATION_JSON_VALUE)
     @ResponseBody
     public ResponseEntity<Map<String, Object>> healthCheck() {
@@ -0,0 +1,107 @@
+package com.yourco.warehouse.controllers;
+
+import com.yourco.warehouse.components.ClientCounterRegistry;
+import com.yourco.warehouse.entity.UserEntity;
+import com.yourco.warehouse.service.UserService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.CacheControl;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.Authentication;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.async.DeferredResult;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * CLIENT COUNTERS CONTROLLER - NAVBAR БРОЯЧИ
+ * ==========================================
+ * Количка и поръчки в един отговор от ClientCounterRegistry. Основният канал е
+ * STOMP /user/queue/counters; /poll е long-poll fallback за клиенти без WebSocket -
+ * заявката виси до промяна на броячите или до long-poll-timeout-ms.
+ */
+@RestController
+@RequestMapping("/api/counters")
+public class ClientCountersController {
+
+    private static final Logger log = LoggerFactory.getLogger(ClientCountersController.class);
+
+    private final ClientCounterRegistry counterRegistry;
+    private final UserService userService;
+    private final long longPollTimeoutMillis;
+
+    @Autowired
+    public ClientCountersController(ClientCounterRegistry counterRegistry,
+                                    UserService userService,
+                                    @Value("${warehouse.client-counters.long-poll-timeout-ms:25000}") long longPollTimeoutMillis) {
+        this.counterRegistry = counterRegistry;
+        this.userService = userService;
+        this.longPollTimeoutMillis = longPollTimeoutMillis;
+    }
+
+    /**
+     * Текущите броячи с версия - отправна точка за /poll
+     */
+    @GetMapping
+    public ResponseEntity<Map<String, Object>> getCounters(Authentication authentication) {
+        if (authentication == null || !authentication.isAuthenticated()) {
+            return ResponseEntity.status(401).body(emptyCounters());
+        }
+
+        try {
+            Long userId = resolveUserId(authentication);
+            if (userId == null) {
+                return ResponseEntity.status(401).body(emptyCounters());
+            }
+            return ResponseEntity.ok()
+                    .cacheControl(CacheControl.noStore())
+                    .body(counterRegistry.current(userId, authentication.getName()).toPayload());
+        } catch (Exception e) {
+            log.error("Грешка при получаване на броячите: {}", e.getMessage());
+            return ResponseEntity.ok(emptyCounters());
+        }
+    }
+
+    /**
+     * Long-poll: отговаря при версия, различна от {@code version}, или след timeout
+     */
+    @GetMapping("/poll")
+    public DeferredResult<Map<String, Object>> pollCounters(@RequestParam(defaultValue = "-1") long version,
+                                                            Authentication authentication) {
+        Long userId = authentication != null && authentication.isAuthenticated()
+                ? resolveUserId(authentication)
+                : null;
+        if (userId == null) {
+            DeferredResult<Map<String, Object>> result = new DeferredResult<>();
+            result.setResult(emptyCounters());
+            return result;
+        }
+        return counterRegistry.await(userId, authentication.getName(), version, longPollTimeoutMillis);
+    }
+
+    // ==========================================
+    // PRIVATE HELPERS
+    // ==========================================
+
+    private Long resolveUserId(Authentication authentication) {
+        Long userId = counterRegistry.knownUserId(authentication.getName());
+        if (userId != null) {
+            return userId;
+        }
+        UserEntity currentUser = userService.getCurrentUser();
+        return currentUser != null ? currentUser.getId() : null;
+    }
+
+    private Map<String, Object> emptyCounters() {
+        Map<String, Object> response = new HashMap<>();
+        response.put("version", 0);
+        response.put("cartCount", 0);
+        response.put("hasItems", false);
+        response.put("pendingCount", 0);
+        response.put("totalCount", 0);
+        return response;
+    }
+}
@@ -1,6 +1,6 @@
 package com.yourco.warehouse.controllers;
 
-import com.yourco.warehouse.entity.enums.OrderStatus;
+import com.yourco.warehouse.components.ClientCounterRegistry;
 import com.yourco.warehouse.entity.Order;
 import com.yourco.warehouse.entity.UserEntity;
 import com.yourco.warehouse.service.ClientOrderService;
@@ -27,11 +27,14 @@ public class ClientOrdersController {
 
     private final ClientOrderService clientOrderService;
     private final UserService userService;
+    private final ClientCounterRegistry counterRegistry;
 
     @Autowired
-    public ClientOrdersController(ClientOrderService clientOrderService, UserService userService) {
+    public ClientOrdersController(ClientOrderService clientOrderService, UserService userService,
+                                  ClientCounterRegistry counterRegistry) {
         this.clientOrderService = clientOrderService;
         this.userService = userService;
+        this.counterRegistry = counterRegistry;
     }
 
 
@@ -126,15 +129,16 @@ public class ClientOrdersController {
                 return ResponseEntity.ok(response);
             }
 
-            UserEntity currentUser = userService.getCurrentUser();
-            List<Order> orders = clientOrderService.getOrdersForClient(currentUser.getId());
+            Long userId = counterRegistry.knownUserId(authentication.getName());
+            if (userId == null) {
+                userId = userService.getCurrentUser().getId();
+            }
 
-            long pendingCount = orders.stream()
-                    .filter(order -> order.getStatus() == OrderStatus.PENDING)
-                    .count();
+            // Кеширано в ClientCounterRegistry - без зареждане на всички поръчки
+            ClientCounterRegistry.Counts counts = counterRegistry.current(userId, authentication.getName());
 
-            response.put("pendingCount", pendingCount);
-            response.put("totalCount", orders.size());
+            response.put("pendingCount", counts.pendingCount());
+            response.put("totalCount", counts.totalCount());
             response.put("success", true);
 
             return ResponseEntity.ok(response);
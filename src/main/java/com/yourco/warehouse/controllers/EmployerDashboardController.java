@@ -2,18 +2,19 @@ package com.yourco.warehouse.controllers;
 
 import com.yourco.warehouse.dto.DashboardDTO;
 import com.yourco.warehouse.dto.OrderDTO;
-import com.yourco.warehouse.entity.Order;
 import com.yourco.warehouse.entity.enums.OrderStatus;
+import com.yourco.warehouse.service.DailyOrderStatsService;
 import com.yourco.warehouse.service.DashboardService;
 import com.yourco.warehouse.service.DashboardBroadcastService;
-import com.yourco.warehouse.repository.OrderRepository;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
 
+import java.time.LocalDate;
 import java.util.*;
 
 /**
@@ -39,7 +40,7 @@ public class EmployerDashboardController {
     // Constructor injection за immutable dependencies
     private final DashboardService dashboardService;
     private final DashboardBroadcastService broadcastService;
-    private final OrderRepository orderRepository;
+    private final DailyOrderStatsService dailyOrderStatsService;
 
     /**
      * Constructor injection осигурява thread-safe dependencies и улеснява unit testing.
@@ -48,10 +49,10 @@ public class EmployerDashboardController {
     @Autowired
     public EmployerDashboardController(DashboardService dashboardService,
                                        DashboardBroadcastService broadcastService,
-                                       OrderRepository orderRepository) {
+                                       DailyOrderStatsService dailyOrderStatsService) {
         this.dashboardService = dashboardService;
         this.broadcastService = broadcastService;
-        this.orderRepository = orderRepository;
+        this.dailyOrderStatsService = dailyOrderStatsService;
     }
 
     // ==========================================
@@ -133,17 +134,29 @@ public class EmployerDashboardController {
      *
      * Връща filtered списък с поръчки за specific tab в dashboard-а.
      * Използва се при tab switching и initial tab load operations.
+     * Keyset pagination: без cursor връща първата страница, а nextCursor
+     * от отговора се подава обратно за следващата. Items не се включват -
+     * зареждат се през /dashboard/order/{orderId}/orderDetailData при нужда.
      */
     @GetMapping("/dashboard/orders/{status}")
     public ResponseEntity<DashboardDTO> getOrdersByStatus(
             @PathVariable String status,
-            @RequestParam(defaultValue = "10") int limit) {
+            @RequestParam(defaultValue = "10") int limit,
+            @RequestParam(required = false) String cursor) {
 
+        OrderStatus orderStatus;
         try {
-            log.debug("Fetching orders by status: {} (limit: {})", status, limit);
+            orderStatus = OrderStatus.valueOf(status.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            log.warn("Invalid order status requested: {}", status);
+            return ResponseEntity.badRequest()
+                    .body(new DashboardDTO("Невалиден статус: " + status));
+        }
+
+        try {
+            log.debug("Fetching orders by status: {} (limit: {}, cursor: {})", status, limit, cursor);
 
-            OrderStatus orderStatus = OrderStatus.valueOf(status.toUpperCase());
-            DashboardDTO orders = dashboardService.getOrdersByStatus(orderStatus, limit);
+            DashboardDTO orders = dashboardService.getOrdersPageByStatus(orderStatus, cursor, limit);
 
             if (orders.getSuccess()) {
                 return ResponseEntity.ok(orders);
@@ -153,9 +166,9 @@ public class EmployerDashboardController {
             }
 
         } catch (IllegalArgumentException e) {
-            log.warn("Invalid order status requested: {}", status);
+            log.warn("Invalid cursor for status {}: {}", status, cursor);
             return ResponseEntity.badRequest()
-                    .body(new DashboardDTO("Невалиден статус: " + status));
+                    .body(new DashboardDTO(e.getMessage()));
         } catch (Exception e) {
             log.error("Error fetching orders by status {}", status, e);
             return ResponseEntity.status(500)
@@ -163,6 +176,73 @@ public class EmployerDashboardController {
         }
     }
 
+    /**
+     * Delta sync след WebSocket reconnect
+     *
+     * Клиентът подава seq и epoch от последния обработен frame на /topic/dashboard/orders
+     * и получава само пропуснатите frames. При рестарт или gap извън replay буфера
+     * отговорът е mode=SNAPSHOT и клиентът презарежда табовете еднократно.
+     * Броячите се връщат винаги - четат се от in-memory registry-то.
+     */
+    @GetMapping("/dashboard/sync")
+    public ResponseEntity<Map<String, Object>> syncSince(
+            @RequestParam(defaultValue = "0") long since,
+            @RequestParam(required = false) String epoch) {
+
+        try {
+            Map<String, Object> response = new HashMap<>(broadcastService.getDeltasSince(since, epoch));
+            response.put("counters", dashboardService.getCounters());
+            response.put("success", true);
+            return ResponseEntity.ok(response);
+
+        } catch (Exception e) {
+            log.error("Error syncing dashboard since {} (epoch {})", since, epoch, e);
+            return ResponseEntity.status(500).body(Map.of(
+                    "success", false,
+                    "message", "Грешка при синхронизация на dashboard-а"
+            ));
+        }
+    }
+
+    /**
+     * Rebuild на дневните статистики за период (включително)
+     *
+     * Преизчислява daily_order_stats от orders таблицата - използва се след
+     * ръчни корекции в базата или при първоначално попълване на историята.
+     * Пуска се при спрян трафик на поръчки - иначе скорошни поръчки може да се
+     * преброят два пъти (виж DailyOrderStatsServiceImpl).
+     */
+    @PostMapping("/dashboard/stats/rebuild")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<Map<String, Object>> rebuildDailyStats(
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to) {
+
+        try {
+            int days = dailyOrderStatsService.rebuild(from, to);
+
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", true);
+            response.put("from", from);
+            response.put("to", to);
+            response.put("daysWithData", days);
+            response.put("message", "Дневните статистики са преизчислени успешно");
+            return ResponseEntity.ok(response);
+
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of(
+                    "success", false,
+                    "message", e.getMessage()
+            ));
+        } catch (Exception e) {
+            log.error("Error rebuilding daily stats for {} - {}", from, to, e);
+            return ResponseEntity.status(500).body(Map.of(
+                    "success", false,
+                    "message", "Грешка при преизчисляване на статистиките"
+            ));
+        }
+    }
+
     // ==========================================
     // NEW ORDER MANAGEMENT ENDPOINTS - нова функционалност
     // ==========================================
@@ -328,36 +408,10 @@ public class EmployerDashboardController {
         try {
             String operatorNote = (String) request.get("operatorNote");
 
-            Optional<Order> orderOpt = orderRepository.findById(orderId);
-            if (orderOpt.isEmpty()) {
-                return ResponseEntity.badRequest()
-                        .body(new DashboardDTO("Поръчката не е намерена"));
-            }
-            String originalStatus = orderOpt.get().getStatus().name();
-
             DashboardDTO response = dashboardService.approveOrderWithCorrections(orderId, operatorNote);
 
             if (response.getSuccess()) {
-                // Broadcast order status change за real-time dashboard updates
-                Map<String, Object> orderData = new HashMap<>();
-                orderData.put("orderId", orderId);
-                orderData.put("operatorNote", operatorNote);
-                orderData.put("hasCorrections", response.getMessage().contains("корекции"));
-
-                broadcastService.broadcastOrderStatusChange(
-                        orderId, "CONFIRMED", originalStatus, orderData);
-
-                // Trigger automatic counter update broadcast
-                DashboardDTO freshCounters = dashboardService.getCounters();
-                if (freshCounters.getSuccess()) {
-                    broadcastService.broadcastCounterUpdate(
-                            freshCounters.getUrgentCount(),
-                            freshCounters.getPendingCount(),
-                            freshCounters.getCompletedCount(),
-                            freshCounters.getCancelledCount(),
-                            freshCounters.getShippedCount()
-                    );
-                }
+                // Status change и counters broadcast-ите идват от OrderTransitionEvent след commit
                 return ResponseEntity.ok(response);
             } else {
                 log.warn("Order approval failed for order {}: {}", orderId, response.getMessage());
@@ -386,35 +440,10 @@ public class EmployerDashboardController {
         try {
             String rejectionReason = (String) request.get("rejectionReason");
 
-            Optional<Order> orderOpt = orderRepository.findById(orderId);
-            if (orderOpt.isEmpty()) {
-                return ResponseEntity.badRequest()
-                        .body(new DashboardDTO("Поръчката не е намерена"));
-            }
-            String originalStatus = orderOpt.get().getStatus().name();
-
             DashboardDTO response = dashboardService.rejectOrderWithNotification(orderId, rejectionReason);
 
             if (response.getSuccess()) {
-                // Broadcast order status change
-                Map<String, Object> orderData = new HashMap<>();
-                orderData.put("orderId", orderId);
-                orderData.put("rejectionReason", rejectionReason);
-
-                broadcastService.broadcastOrderStatusChange(
-                        orderId, "CANCELLED", originalStatus, orderData);
-
-                DashboardDTO freshCounters = dashboardService.getCounters();
-                if (freshCounters.getSuccess()) {
-                    broadcastService.broadcastCounterUpdate(
-                            freshCounters.getUrgentCount(),
-                            freshCounters.getPendingCount(),
-                            freshCounters.getCompletedCount(),
-                            freshCounters.getCancelledCount(),
-                            freshCounters.getShippedCount()
-                    );
-                }
-
+                // Status change и counters broadcast-ите идват от OrderTransitionEvent след commit
                 return ResponseEntity.ok(response);
             } else {
                 log.warn("Order rejection failed for order {}: {}", orderId, response.getMessage());
@@ -526,20 +555,7 @@ public class EmployerDashboardController {
 
             DashboardDTO response = dashboardService.approveOrderWithBatchChanges(orderId, changes, operatorNote, changesSummary);
 
-            if (response.getSuccess()) {
-                broadcastService.broadcastOrderStatusChange(orderId, "CONFIRMED", "PENDING", new HashMap<>());
-                DashboardDTO freshCounters = dashboardService.getCounters();
-                if (freshCounters.getSuccess()) {
-                    broadcastService.broadcastCounterUpdate(
-                            freshCounters.getUrgentCount(),
-                            freshCounters.getPendingCount(),
-                            freshCounters.getCompletedCount(),
-                            freshCounters.getCancelledCount(),
-                            freshCounters.getShippedCount()
-                    );
-                }
-            }
-
+            // Status change и counters broadcast-ите идват от OrderTransitionEvent след commit
             return ResponseEntity.ok(response);
 
         } catch (Exception e) {
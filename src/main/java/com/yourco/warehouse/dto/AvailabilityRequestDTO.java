@@ -0,0 +1,27 @@
+package com.yourco.warehouse.dto;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * DTO за batch проверка на наличност - SKU кодове и/или id-та в една заявка
+ */
+public class AvailabilityRequestDTO {
+
+    @JsonProperty("skus")
+    private List<String> skus = new ArrayList<>();
+
+    @JsonProperty("ids")
+    private List<Long> ids = new ArrayList<>();
+
+    public AvailabilityRequestDTO() {}
+
+    // Getters and Setters
+    public List<String> getSkus() { return skus; }
+    public void setSkus(List<String> skus) { this.skus = skus != null ? skus : new ArrayList<>(); }
+
+    public List<Long> getIds() { return ids; }
+    public void setIds(List<Long> ids) { this.ids = ids != null ? ids : new ArrayList<>(); }
+}
@@ -1,6 +1,7 @@
 package com.yourco.warehouse.dto;
 
 import com.yourco.warehouse.entity.CartItem;
+import com.yourco.warehouse.components.CartStore;
 import com.fasterxml.jackson.annotation.JsonProperty;
 
 import java.math.BigDecimal;
@@ -67,6 +68,28 @@ public class CartItemDTO {
         return dto;
     }
 
+    // Factory method за количка от CartStore - продуктът идва от каталога в паметта
+    public static CartItemDTO from(ProductCatalogDTO product, CartStore.Line line,
+                                   BigDecimal totalPrice, BigDecimal totalPriceWithVat) {
+        CartItemDTO dto = new CartItemDTO();
+
+        dto.productId = product.getId();
+        dto.productSku = product.getSku();
+        dto.productName = product.getName();
+        dto.productUnit = product.getUnit();
+        dto.pricePerUnit = product.getPrice();
+        dto.quantity = line.quantity();
+        dto.available = product.getQuantityAvailable();
+        dto.updatedAt = line.updatedAt();
+
+        dto.totalPrice = totalPrice;
+        dto.totalPriceWithVat = totalPriceWithVat;
+
+        dto.hasStockIssue = line.quantity() > product.getQuantityAvailable();
+
+        return dto;
+    }
+
     // Getters only - NO business logic
     public Long getProductId() { return productId; }
     public String getProductSku() { return productSku; }
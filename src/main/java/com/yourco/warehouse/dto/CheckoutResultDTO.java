@@ -0,0 +1,25 @@
+package com.yourco.warehouse.dto;
+
+/**
+ * DTO за резултат от checkout - новосъздадена поръчка или повторение на вече
+ * изпратен checkout със същия idempotency key
+ */
+public class CheckoutResultDTO {
+
+    private Long orderId;
+    private boolean replayed;
+
+    public CheckoutResultDTO() {}
+
+    public CheckoutResultDTO(Long orderId, boolean replayed) {
+        this.orderId = orderId;
+        this.replayed = replayed;
+    }
+
+    // Getters and Setters
+    public Long getOrderId() { return orderId; }
+    public void setOrderId(Long orderId) { this.orderId = orderId; }
+
+    public boolean isReplayed() { return replayed; }
+    public void setReplayed(boolean replayed) { this.replayed = replayed; }
+}
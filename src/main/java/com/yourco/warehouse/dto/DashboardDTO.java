@@ -2,6 +2,7 @@ package com.yourco.warehouse.dto;
 
 import com.fasterxml.jackson.annotation.JsonProperty;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Единствено DTO за цялата dashboard функционалност
@@ -41,6 +42,10 @@ public class DashboardDTO {
     @JsonProperty("activeClients")
     private Integer activeClients;
 
+    // Percentile-и (секунди) по етап: submitToConfirm, confirmToShipping, shipping
+    @JsonProperty("processingTimes")
+    private Map<String, Map<String, Long>> processingTimes;
+
     // За списъци с поръчки (заменя OrdersListResponseDTO)
     @JsonProperty("orders")
     private List<OrderDTO> orders;
@@ -48,6 +53,13 @@ public class DashboardDTO {
     @JsonProperty("order")
     private OrderDTO order;
 
+    // Keyset pagination за списъци с поръчки
+    @JsonProperty("nextCursor")
+    private String nextCursor;
+
+    @JsonProperty("hasMore")
+    private Boolean hasMore;
+
     // Метаданни
     @JsonProperty("hasUrgentAlerts")
     private Boolean hasUrgentAlerts;
@@ -101,6 +113,9 @@ public class DashboardDTO {
     public String getAvgTime() { return avgTime; }
     public void setAvgTime(String avgTime) { this.avgTime = avgTime; }
 
+    public Map<String, Map<String, Long>> getProcessingTimes() { return processingTimes; }
+    public void setProcessingTimes(Map<String, Map<String, Long>> processingTimes) { this.processingTimes = processingTimes; }
+
     public Integer getActiveClients() { return activeClients; }
     public void setActiveClients(Integer activeClients) { this.activeClients = activeClients; }
 
@@ -111,6 +126,12 @@ public class DashboardDTO {
     public OrderDTO getOrder() { return order; }
     public void setOrder(OrderDTO order) { this.order = order; }
 
+    public String getNextCursor() { return nextCursor; }
+    public void setNextCursor(String nextCursor) { this.nextCursor = nextCursor; }
+
+    public Boolean getHasMore() { return hasMore; }
+    public void setHasMore(Boolean hasMore) { this.hasMore = hasMore; }
+
     public Boolean getHasUrgentAlerts() { return hasUrgentAlerts; }
     public void setHasUrgentAlerts(Boolean hasUrgentAlerts) { this.hasUrgentAlerts = hasUrgentAlerts; }
 
@@ -89,6 +89,28 @@ public class ProductCatalogDTO {
                 .toList();
     }
 
+    /**
+     * Копие със същите данни и нови количества
+     */
+    public ProductCatalogDTO withQuantities(int quantityAvailable, int quantityReserved) {
+        ProductCatalogDTO copy = new ProductCatalogDTO();
+        copy.id = this.id;
+        copy.sku = this.sku;
+        copy.name = this.name;
+        copy.description = this.description;
+        copy.category = this.category;
+        copy.unit = this.unit;
+        copy.price = this.price;
+        copy.priceWithVat = this.priceWithVat;
+        copy.vatRate = this.vatRate;
+        copy.vatAmount = this.vatAmount;
+        copy.active = this.active;
+        copy.quantityAvailable = quantityAvailable;
+        copy.quantityReserved = quantityReserved;
+        copy.actualAvailable = Math.max(0, quantityAvailable - quantityReserved);
+        return copy;
+    }
+
     // Utils
     private BigDecimal calculatePriceWithVat(BigDecimal price, int vatRate) {
         BigDecimal vatMultiplier = BigDecimal.ONE.add(
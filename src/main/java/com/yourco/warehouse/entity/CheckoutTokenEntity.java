@@ -0,0 +1,49 @@
+package com.yourco.warehouse.entity;
+
+import jakarta.persistence.*;
+import java.time.LocalDateTime;
+
+/**
+ * CHECKOUT TOKEN ENTITY - IDEMPOTENCY KEY НА CHECKOUT
+ * ===================================================
+ * Един ред за всеки ключ, подаден от клиента при checkout. Ключът се записва в
+ * същата транзакция като поръчката - при грешка изчезва заедно с нея и клиентът
+ * може да опита отново със същия ключ. Старите редове се трият от
+ * CheckoutTokenCleanupScheduler.
+ */
+@Entity
+@Table(name = "checkout_tokens", indexes = {
+        @Index(name = "idx_checkout_tokens_created_at", columnList = "created_at")
+})
+public class CheckoutTokenEntity {
+
+    // userId + ":" + ключа от клиента - ключовете на различни потребители не се засичат
+    @Id
+    @Column(name = "token_key", length = 150)
+    private String tokenKey;
+
+    @Column(name = "user_id", nullable = false)
+    private Long userId;
+
+    @Column(name = "order_id")
+    private Long orderId;
+
+    @Column(name = "created_at", nullable = false)
+    private LocalDateTime createdAt;
+
+    // Constructors
+    public CheckoutTokenEntity() {}
+
+    // Getters and Setters
+    public String getTokenKey() { return tokenKey; }
+    public void setTokenKey(String tokenKey) { this.tokenKey = tokenKey; }
+
+    public Long getUserId() { return userId; }
+    public void setUserId(Long userId) { this.userId = userId; }
+
+    public Long getOrderId() { return orderId; }
+    public void setOrderId(Long orderId) { this.orderId = orderId; }
+
+    public LocalDateTime getCreatedAt() { return createdAt; }
+    public void setCreatedAt(LocalDateTime createdAt) { this.createdAt = createdAt; }
+}
@@ -0,0 +1,45 @@
+package com.yourco.warehouse.entity;
+
+import jakarta.persistence.*;
+import java.time.LocalDate;
+
+/**
+ * DAILY ORDER CLIENT ENTITY
+ * =========================
+ * Множество (ден, клиент) - позволява client_count в daily_order_stats
+ * да се поддържа инкрементално без COUNT(DISTINCT) върху orders.
+ */
+@Entity
+@Table(name = "daily_order_clients", uniqueConstraints = {
+        @UniqueConstraint(columnNames = {"stat_date", "client_id"})
+})
+public class DailyOrderClientEntity {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "stat_date", nullable = false)
+    private LocalDate statDate;
+
+    @Column(name = "client_id", nullable = false)
+    private Long clientId;
+
+    // Constructors
+    public DailyOrderClientEntity() {}
+
+    public DailyOrderClientEntity(LocalDate statDate, Long clientId) {
+        this.statDate = statDate;
+        this.clientId = clientId;
+    }
+
+    // Getters and Setters
+    public Long getId() { return id; }
+    public void setId(Long id) { this.id = id; }
+
+    public LocalDate getStatDate() { return statDate; }
+    public void setStatDate(LocalDate statDate) { this.statDate = statDate; }
+
+    public Long getClientId() { return clientId; }
+    public void setClientId(Long clientId) { this.clientId = clientId; }
+}
@@ -0,0 +1,91 @@
+package com.yourco.warehouse.entity;
+
+import jakarta.persistence.*;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+/**
+ * DAILY ORDER STATS ENTITY - ROLLUP ПО ДНИ
+ * ========================================
+ * Един ред на ден с предварително агрегирани статистики за dashboard-а.
+ * Обновява се инкрементално при submit/confirm/cancel и може да се
+ * rebuild-не от orders таблицата за произволен период.
+ */
+@Entity
+@Table(name = "daily_order_stats")
+public class DailyOrderStatsEntity {
+
+    @Id
+    @Column(name = "stat_date", nullable = false)
+    private LocalDate statDate;
+
+    // Поръчки подадени през деня (независимо от статуса)
+    @Column(name = "submitted_count", nullable = false)
+    private Integer submittedCount = 0;
+
+    // Уникални клиенти с поръчка подадена през деня
+    @Column(name = "client_count", nullable = false)
+    private Integer clientCount = 0;
+
+    // Поръчки одобрени през деня
+    @Column(name = "confirmed_count", nullable = false)
+    private Integer confirmedCount = 0;
+
+    // Поръчки отказани през деня
+    @Column(name = "cancelled_count", nullable = false)
+    private Integer cancelledCount = 0;
+
+    // Оборот от одобрените през деня поръчки (total_gross)
+    @Column(name = "revenue", nullable = false, precision = 15, scale = 2)
+    private BigDecimal revenue = BigDecimal.ZERO;
+
+    // Сума от времената submitted -> confirmed за одобрените през деня поръчки
+    @Column(name = "processing_seconds_sum", nullable = false)
+    private Long processingSecondsSum = 0L;
+
+    @Column(name = "updated_at")
+    private LocalDateTime updatedAt;
+
+    // Constructors
+    public DailyOrderStatsEntity() {}
+
+    public DailyOrderStatsEntity(LocalDate statDate) {
+        this.statDate = statDate;
+    }
+
+    /**
+     * Средно време за обработка в часове, или 0 ако няма одобрени поръчки
+     */
+    public double getAverageProcessingHours() {
+        if (confirmedCount == null || confirmedCount == 0 || processingSecondsSum == null) {
+            return 0.0;
+        }
+        return processingSecondsSum / (double) confirmedCount / 3600.0;
+    }
+
+    // Getters and Setters
+    public LocalDate getStatDate() { return statDate; }
+    public void setStatDate(LocalDate statDate) { this.statDate = statDate; }
+
+    public Integer getSubmittedCount() { return submittedCount; }
+    public void setSubmittedCount(Integer submittedCount) { this.submittedCount = submittedCount; }
+
+    public Integer getClientCount() { return clientCount; }
+    public void setClientCount(Integer clientCount) { this.clientCount = clientCount; }
+
+    public Integer getConfirmedCount() { return confirmedCount; }
+    public void setConfirmedCount(Integer confirmedCount) { this.confirmedCount = confirmedCount; }
+
+    public Integer getCancelledCount() { return cancelledCount; }
+    public void setCancelledCount(Integer cancelledCount) { this.cancelledCount = cancelledCount; }
+
+    public BigDecimal getRevenue() { return revenue; }
+    public void setRevenue(BigDecimal revenue) { this.revenue = revenue; }
+
+    public Long getProcessingSecondsSum() { return processingSecondsSum; }
+    public void setProcessingSecondsSum(Long processingSecondsSum) { this.processingSecondsSum = processingSecondsSum; }
+
+    public LocalDateTime getUpdatedAt() { return updatedAt; }
+    public void setUpdatedAt(LocalDateTime updatedAt) { this.updatedAt = updatedAt; }
+}
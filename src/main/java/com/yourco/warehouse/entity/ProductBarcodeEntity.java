@@ -0,0 +1,86 @@
+package com.yourco.warehouse.entity;
+
+import jakarta.persistence.*;
+import java.time.LocalDateTime;
+
+/**
+ * Баркод на продукт. Един продукт може да има няколко баркода (различни опаковки,
+ * доставчици), но всеки баркод сочи към точно един продукт.
+ * Записите идват от колоната barcode при импорт на стока.
+ */
+@Entity
+@Table(name = "product_barcodes", indexes = {
+        @Index(name = "idx_barcode_unique", columnList = "barcode", unique = true),
+        @Index(name = "idx_barcode_product", columnList = "product_id")
+})
+public class ProductBarcodeEntity {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(nullable = false, length = 64)
+    private String barcode;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "product_id", nullable = false)
+    private ProductEntity product;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "import_event_id")
+    private ImportEventEntity importEvent;
+
+    @Column(nullable = false, updatable = false)
+    private LocalDateTime createdAt;
+
+    @PrePersist
+    protected void onCreate() {
+        createdAt = LocalDateTime.now();
+    }
+
+    // Конструктори
+    public ProductBarcodeEntity() {
+    }
+
+    public ProductBarcodeEntity(String barcode, ProductEntity product) {
+        this.barcode = barcode;
+        this.product = product;
+    }
+
+    // Getters и Setters
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public String getBarcode() {
+        return barcode;
+    }
+
+    public void setBarcode(String barcode) {
+        this.barcode = barcode;
+    }
+
+    public ProductEntity getProduct() {
+        return product;
+    }
+
+    public void setProduct(ProductEntity product) {
+        this.product = product;
+    }
+
+    public ImportEventEntity getImportEvent() {
+        return importEvent;
+    }
+
+    public void setImportEvent(ImportEventEntity importEvent) {
+        this.importEvent = importEvent;
+    }
+
+    public LocalDateTime getCreatedAt() {
+        return createdAt;
+    }
+}
@@ -1,9 +1,11 @@
 package com.yourco.warehouse.entity;
 
+import com.yourco.warehouse.components.ProductChangeListener;
 import com.yourco.warehouse.entity.enums.AdjustmentReasonEnum;
 import com.yourco.warehouse.entity.enums.AdjustmentTypeEnum;
 import jakarta.persistence.*;
 import jakarta.validation.constraints.*;
+import org.hibernate.annotations.DynamicUpdate;
 import java.math.BigDecimal;
 import java.math.RoundingMode;
 import java.time.LocalDate;
@@ -12,7 +14,13 @@ import java.util.ArrayList;
 import java.util.List;
 
 @Entity
-@Table(name = "products")
+@Table(name = "products", indexes = {
+        @Index(name = "idx_products_updated_at", columnList = "updated_at")
+})
+@EntityListeners(ProductChangeListener.class)
+// Само променените колони - UPDATE на цена/име не презаписва количествата,
+// които StockReservationLedger обновява с относителни UPDATE-и
+@DynamicUpdate
 public class ProductEntity {
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
@@ -21,6 +29,12 @@ public class ProductEntity {
     @Column(name = "created_at", nullable = false, updatable = false)
     private LocalDateTime createdAt;
 
+    // Поддържа се от MySQL при всяка промяна на реда (вкл. bulk UPDATE-и) - по него
+    // CatalogSnapshotHolder засича промени, направени от други нодове
+    @Column(name = "updated_at", insertable = false, updatable = false,
+            columnDefinition = "DATETIME(6) NOT NULL DEFAULT CURRENT_TIMESTAMP(6) ON UPDATE CURRENT_TIMESTAMP(6)")
+    private LocalDateTime updatedAt;
+
     @Column(nullable = false, unique = true, length = 50)
     @NotBlank(message = "SKU не може да бъде празно")
     @Pattern(regexp = "^[A-Z0-9-_]+$", message = "SKU може да съдържа само главни букви, цифри, тире и долна черта")
@@ -71,6 +85,14 @@ public class ProductEntity {
     @Column(name = "quantity_reserved", nullable = false)
     private Integer quantityReserved = 0;
 
+    // Количествата при последното зареждане/запис - ProductChangeListener подава
+    // разликата към StockReservationLedger
+    @Transient
+    private int persistedQuantityAvailable;
+
+    @Transient
+    private int persistedQuantityReserved;
+
 
     // Конструктор
     public ProductEntity() {}
@@ -102,6 +124,10 @@ public class ProductEntity {
         this.createdAt = createdAt;
     }
 
+    public LocalDateTime getUpdatedAt() {
+        return updatedAt;
+    }
+
     public String getSku() {
         return sku;
     }
@@ -224,6 +250,19 @@ public class ProductEntity {
         this.priceHistory = priceHistory;
     }
 
+    public int getQuantityAvailableDelta() {
+        return (quantityAvailable != null ? quantityAvailable : 0) - persistedQuantityAvailable;
+    }
+
+    public int getQuantityReservedDelta() {
+        return (quantityReserved != null ? quantityReserved : 0) - persistedQuantityReserved;
+    }
+
+    public void markQuantitiesPersisted() {
+        this.persistedQuantityAvailable = quantityAvailable != null ? quantityAvailable : 0;
+        this.persistedQuantityReserved = quantityReserved != null ? quantityReserved : 0;
+    }
+
     public Integer getQuantityTotal() {
         return quantityAvailable + quantityReserved;
     }
@@ -0,0 +1,50 @@
+package com.yourco.warehouse.entity;
+
+import jakarta.persistence.*;
+import java.time.LocalDateTime;
+
+/**
+ * SCHEDULER LEASE ENTITY - CLUSTER LOCK ЗА SCHEDULED JOBS
+ * =======================================================
+ * Един ред на job. Притежателят (owner_id) има право да изпълнява job-а до lease_until;
+ * fencing_token расте при всяка смяна на притежателя.
+ */
+@Entity
+@Table(name = "scheduler_leases")
+public class SchedulerLeaseEntity {
+
+    @Id
+    @Column(name = "job_name", length = 100)
+    private String jobName;
+
+    @Column(name = "owner_id", nullable = false, length = 150)
+    private String ownerId;
+
+    @Column(name = "fencing_token", nullable = false)
+    private Long fencingToken;
+
+    @Column(name = "lease_until", nullable = false)
+    private LocalDateTime leaseUntil;
+
+    @Column(name = "renewed_at", nullable = false)
+    private LocalDateTime renewedAt;
+
+    // Constructors
+    public SchedulerLeaseEntity() {}
+
+    // Getters and Setters
+    public String getJobName() { return jobName; }
+    public void setJobName(String jobName) { this.jobName = jobName; }
+
+    public String getOwnerId() { return ownerId; }
+    public void setOwnerId(String ownerId) { this.ownerId = ownerId; }
+
+    public Long getFencingToken() { return fencingToken; }
+    public void setFencingToken(Long fencingToken) { this.fencingToken = fencingToken; }
+
+    public LocalDateTime getLeaseUntil() { return leaseUntil; }
+    public void setLeaseUntil(LocalDateTime leaseUntil) { this.leaseUntil = leaseUntil; }
+
+    public LocalDateTime getRenewedAt() { return renewedAt; }
+    public void setRenewedAt(LocalDateTime renewedAt) { this.renewedAt = renewedAt; }
+}
@@ -0,0 +1,39 @@
+package com.yourco.warehouse.entity;
+
+import jakarta.persistence.*;
+import java.time.LocalDateTime;
+
+/**
+ * STOCK LEDGER CHECKPOINT ENTITY - ДОКЪДЕ ЖУРНАЛЪТ Е В БАЗАТА
+ * ===========================================================
+ * Последният sequence от журнала на StockReservationLedger, чиито делти вече са
+ * приложени върху products. Обновява се в същата транзакция като делтите, така че
+ * при възстановяване след срив нито един запис не се прилага два пъти.
+ */
+@Entity
+@Table(name = "stock_ledger_checkpoints")
+public class StockLedgerCheckpointEntity {
+
+    @Id
+    @Column(name = "ledger_name", length = 100)
+    private String ledgerName;
+
+    @Column(name = "last_sequence", nullable = false)
+    private Long lastSequence;
+
+    @Column(name = "updated_at", nullable = false)
+    private LocalDateTime updatedAt;
+
+    // Constructors
+    public StockLedgerCheckpointEntity() {}
+
+    // Getters and Setters
+    public String getLedgerName() { return ledgerName; }
+    public void setLedgerName(String ledgerName) { this.ledgerName = ledgerName; }
+
+    public Long getLastSequence() { return lastSequence; }
+    public void setLastSequence(Long lastSequence) { this.lastSequence = lastSequence; }
+
+    public LocalDateTime getUpdatedAt() { return updatedAt; }
+    public void setUpdatedAt(LocalDateTime updatedAt) { this.updatedAt = updatedAt; }
+}
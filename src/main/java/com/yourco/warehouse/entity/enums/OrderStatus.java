@@ -1,10 +1,29 @@
-
 package com.yourco.warehouse.entity.enums;
 
+import java.util.EnumSet;
+import java.util.Set;
+
 public enum OrderStatus {
     PENDING,    // нова поръчка (първите 12 часа)
     URGENT,     // поръчка Приоритетни
     CONFIRMED,  // обработена/одобрена поръчка
     SHIPPED,    // изпратена поръчка (доставка в процес)
-    CANCELLED   // отказана поръчка
+    CANCELLED;  // отказана поръчка
+
+    /**
+     * Статуси от които е позволен преход към този статус
+     * PENDING се създава само при checkout - няма входящи преходи
+     */
+    public Set<OrderStatus> allowedSources() {
+        return switch (this) {
+            case PENDING -> EnumSet.noneOf(OrderStatus.class);
+            case URGENT -> EnumSet.of(PENDING);
+            case CONFIRMED, CANCELLED -> EnumSet.of(PENDING, URGENT);
+            case SHIPPED -> EnumSet.of(CONFIRMED);
+        };
+    }
+
+    public boolean canTransitionTo(OrderStatus target) {
+        return target != null && target.allowedSources().contains(this);
+    }
 }
@@ -174,6 +174,53 @@ public class OrderMapper {
         return dto;
     }
 
+    /**
+     * Map-ва ред от findOrderPageByStatus* projection заявките към OrderDTO без items.
+     * Редът е: id, status, total_net, total_gross, submitted_at, confirmed_at, shipped_at,
+     * client_id, username, company_name, phone, location, items_count
+     */
+    public OrderDTO toSummaryDTO(Object[] row) {
+        OrderDTO dto = new OrderDTO();
+        dto.setId(((Number) row[0]).longValue());
+        dto.setStatus((String) row[1]);
+        dto.setTotalNet(toBigDecimal(row[2]));
+        dto.setTotalGross(toBigDecimal(row[3]));
+        dto.setSubmittedAt(toLocalDateTime(row[4]));
+        dto.setConfirmedAt(toLocalDateTime(row[5]));
+        dto.setShippedAt(toLocalDateTime(row[6]));
+        dto.setClientId(row[7] != null ? ((Number) row[7]).longValue() : null);
+        dto.setClientName((String) row[8]);
+        dto.setClientCompany((String) row[9]);
+        dto.setClientPhone((String) row[10]);
+        dto.setClientLocation((String) row[11]);
+        dto.setItemsCount(row[12] != null ? ((Number) row[12]).intValue() : 0);
+        dto.setTimeAgo(formatTimeAgo(dto.getSubmittedAt()));
+        return dto;
+    }
+
+    private BigDecimal toBigDecimal(Object value) {
+        if (value == null) {
+            return BigDecimal.ZERO;
+        }
+        if (value instanceof BigDecimal decimal) {
+            return decimal;
+        }
+        return new BigDecimal(value.toString());
+    }
+
+    private LocalDateTime toLocalDateTime(Object value) {
+        if (value == null) {
+            return null;
+        }
+        if (value instanceof LocalDateTime dateTime) {
+            return dateTime;
+        }
+        if (value instanceof java.sql.Timestamp timestamp) {
+            return timestamp.toLocalDateTime();
+        }
+        return LocalDateTime.parse(value.toString().replace(' ', 'T'));
+    }
+
     private String formatTimeAgo(LocalDateTime submittedAt) {
         if (submittedAt == null) {
             return "Неизвестно";
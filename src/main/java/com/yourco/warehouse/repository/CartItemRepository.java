@@ -8,6 +8,7 @@ import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Optional;
 
@@ -21,6 +22,29 @@ public interface CartItemRepository extends JpaRepository<CartItem, Long> {
             "ORDER BY c.updatedAt DESC")
     List<CartItem> findByUserIdWithProducts(@Param("userId") Long userId);
 
+    // Само (productId, quantity) за checkout - без да се зареждат продуктите преди lock-а
+    @Query("SELECT c.product.id, c.quantity FROM CartItem c " +
+            "WHERE c.user.id = :userId AND c.product.active = true")
+    List<Object[]> findCheckoutLinesByUserId(@Param("userId") Long userId);
+
+    // (productId, quantity, updatedAt) за зареждане на количката в CartStore
+    @Query("SELECT c.product.id, c.quantity, c.updatedAt FROM CartItem c WHERE c.user.id = :userId")
+    List<Object[]> findCartLinesByUserId(@Param("userId") Long userId);
+
+    // Write-behind от CartStore - записва реда независимо дали вече съществува
+    @Modifying
+    @Query(value = """
+        INSERT INTO cart_items (user_id, product_id, quantity, created_at, updated_at)
+        VALUES (:userId, :productId, :quantity, :updatedAt, :updatedAt)
+        ON DUPLICATE KEY UPDATE
+            quantity = :quantity,
+            updated_at = :updatedAt
+        """, nativeQuery = true)
+    int upsertLine(@Param("userId") Long userId,
+                   @Param("productId") Long productId,
+                   @Param("quantity") Integer quantity,
+                   @Param("updatedAt") LocalDateTime updatedAt);
+
     // Намира конкретен елемент в кошницата по потребител и продукт
     @Query("SELECT c FROM CartItem c " +
             "WHERE c.user.id = :userId AND c.product.id = :productId")
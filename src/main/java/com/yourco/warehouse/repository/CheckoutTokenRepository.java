@@ -0,0 +1,48 @@
+package com.yourco.warehouse.repository;
+
+import com.yourco.warehouse.entity.CheckoutTokenEntity;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * CHECKOUT TOKEN REPOSITORY
+ * =========================
+ * claim() е INSERT IGNORE - при паралелен запис със същия ключ InnoDB чака
+ * другата транзакция: след commit връща 0, след rollback записва реда и връща 1.
+ */
+@Repository
+public interface CheckoutTokenRepository extends JpaRepository<CheckoutTokenEntity, String> {
+
+    /**
+     * @return 1 ако ключът е нов, 0 ако вече е използван
+     */
+    @Modifying
+    @Query(value = "INSERT IGNORE INTO checkout_tokens (token_key, user_id, created_at) VALUES (:tokenKey, :userId, NOW())",
+            nativeQuery = true)
+    int claim(@Param("tokenKey") String tokenKey, @Param("userId") Long userId);
+
+    @Modifying
+    @Query("UPDATE CheckoutTokenEntity t SET t.orderId = :orderId WHERE t.tokenKey = :tokenKey")
+    int attachOrder(@Param("tokenKey") String tokenKey, @Param("orderId") Long orderId);
+
+    /**
+     * Locking read - вижда последния commit-нат ред, а не snapshot-а на транзакцията
+     */
+    @Query(value = "SELECT order_id FROM checkout_tokens WHERE token_key = :tokenKey LOCK IN SHARE MODE",
+            nativeQuery = true)
+    Long findOrderId(@Param("tokenKey") String tokenKey);
+
+    /**
+     * Границата е по часовника на базата - същия, с който claim() записва created_at,
+     * така че разминаване в часовника на нода не трие ключове по-рано
+     */
+    @Modifying
+    @Transactional
+    @Query(value = "DELETE FROM checkout_tokens WHERE created_at < NOW() - INTERVAL :hours HOUR",
+            nativeQuery = true)
+    int deleteOlderThanHours(@Param("hours") int hours);
+}
@@ -0,0 +1,172 @@
+package com.yourco.warehouse.repository;
+
+import com.yourco.warehouse.entity.DailyOrderStatsEntity;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * DAILY ORDER STATS REPOSITORY - ИНКРЕМЕНТАЛЕН ROLLUP
+ * ===================================================
+ * Всички update-и са атомарни UPSERT-и (INSERT ... ON DUPLICATE KEY UPDATE),
+ * така че конкурентни поръчки не губят инкременти и не се чете реда преди запис.
+ * Отрицателен delta (изтриване/компенсация) за ден без ред създава ред с 0, не с -1.
+ */
+@Repository
+public interface DailyOrderStatsRepository extends JpaRepository<DailyOrderStatsEntity, LocalDate> {
+
+    List<DailyOrderStatsEntity> findByStatDateBetweenOrderByStatDateAsc(LocalDate fromDate, LocalDate toDate);
+
+    // ==========================================
+    // ИНКРЕМЕНТАЛНИ UPDATE-И
+    // ==========================================
+
+    @Modifying
+    @Query(value = """
+        INSERT INTO daily_order_stats
+            (stat_date, submitted_count, client_count, confirmed_count, cancelled_count,
+             revenue, processing_seconds_sum, updated_at)
+        VALUES (:statDate, GREATEST(:delta, 0), 0, 0, 0, 0, 0, NOW())
+        ON DUPLICATE KEY UPDATE
+            submitted_count = GREATEST(submitted_count + :delta, 0),
+            updated_at = NOW()
+        """, nativeQuery = true)
+    int addSubmitted(@Param("statDate") LocalDate statDate, @Param("delta") int delta);
+
+    @Modifying
+    @Query(value = """
+        INSERT INTO daily_order_stats
+            (stat_date, submitted_count, client_count, confirmed_count, cancelled_count,
+             revenue, processing_seconds_sum, updated_at)
+        VALUES (:statDate, 0, GREATEST(:delta, 0), 0, 0, 0, 0, NOW())
+        ON DUPLICATE KEY UPDATE
+            client_count = GREATEST(client_count + :delta, 0),
+            updated_at = NOW()
+        """, nativeQuery = true)
+    int addClient(@Param("statDate") LocalDate statDate, @Param("delta") int delta);
+
+    @Modifying
+    @Query(value = """
+        INSERT INTO daily_order_stats
+            (stat_date, submitted_count, client_count, confirmed_count, cancelled_count,
+             revenue, processing_seconds_sum, updated_at)
+        VALUES (:statDate, 0, 0, 1, 0, :revenue, :processingSeconds, NOW())
+        ON DUPLICATE KEY UPDATE
+            confirmed_count = confirmed_count + 1,
+            revenue = revenue + :revenue,
+            processing_seconds_sum = processing_seconds_sum + :processingSeconds,
+            updated_at = NOW()
+        """, nativeQuery = true)
+    int addConfirmed(@Param("statDate") LocalDate statDate,
+                     @Param("revenue") BigDecimal revenue,
+                     @Param("processingSeconds") long processingSeconds);
+
+    @Modifying
+    @Query(value = """
+        INSERT INTO daily_order_stats
+            (stat_date, submitted_count, client_count, confirmed_count, cancelled_count,
+             revenue, processing_seconds_sum, updated_at)
+        VALUES (:statDate, 0, 0, 0, 1, 0, 0, NOW())
+        ON DUPLICATE KEY UPDATE
+            cancelled_count = cancelled_count + 1,
+            updated_at = NOW()
+        """, nativeQuery = true)
+    int addCancelled(@Param("statDate") LocalDate statDate);
+
+    // ==========================================
+    // DISTINCT CLIENTS - daily_order_clients
+    // ==========================================
+
+    /**
+     * @return 1 ако клиентът е нов за деня, 0 ако вече е записан
+     */
+    @Modifying
+    @Query(value = "INSERT IGNORE INTO daily_order_clients (stat_date, client_id) VALUES (:statDate, :clientId)",
+            nativeQuery = true)
+    int insertClientIfAbsent(@Param("statDate") LocalDate statDate, @Param("clientId") Long clientId);
+
+    /**
+     * Премахва клиента от деня само ако няма други поръчки подадени през същия ден
+     *
+     * @return 1 ако клиентът е премахнат
+     */
+    @Modifying
+    @Query(value = """
+        DELETE FROM daily_order_clients
+        WHERE stat_date = :statDate AND client_id = :clientId
+          AND NOT EXISTS (
+              SELECT 1 FROM orders o
+              WHERE o.client_id = :clientId
+                AND o.submitted_at >= :dayStart AND o.submitted_at < :dayEnd)
+        """, nativeQuery = true)
+    int deleteClientIfNoOrders(@Param("statDate") LocalDate statDate,
+                               @Param("clientId") Long clientId,
+                               @Param("dayStart") LocalDateTime dayStart,
+                               @Param("dayEnd") LocalDateTime dayEnd);
+
+    // ==========================================
+    // REBUILD - пълно преизчисляване за период
+    // ==========================================
+
+    @Modifying
+    @Query(value = "DELETE FROM daily_order_stats WHERE stat_date BETWEEN :fromDate AND :toDate", nativeQuery = true)
+    int deleteStatsBetween(@Param("fromDate") LocalDate fromDate, @Param("toDate") LocalDate toDate);
+
+    @Modifying
+    @Query(value = "DELETE FROM daily_order_clients WHERE stat_date BETWEEN :fromDate AND :toDate", nativeQuery = true)
+    int deleteClientsBetween(@Param("fromDate") LocalDate fromDate, @Param("toDate") LocalDate toDate);
+
+    @Modifying
+    @Query(value = """
+        INSERT INTO daily_order_clients (stat_date, client_id)
+        SELECT DISTINCT DATE(submitted_at), client_id
+        FROM orders
+        WHERE submitted_at >= :start AND submitted_at < :end
+        """, nativeQuery = true)
+    int rebuildClients(@Param("start") LocalDateTime start, @Param("end") LocalDateTime end);
+
+    @Modifying
+    @Query(value = """
+        INSERT INTO daily_order_stats
+            (stat_date, submitted_count, client_count, confirmed_count, cancelled_count,
+             revenue, processing_seconds_sum, updated_at)
+        SELECT DATE(submitted_at), COUNT(*), COUNT(DISTINCT client_id), 0, 0, 0, 0, NOW()
+        FROM orders
+        WHERE submitted_at >= :start AND submitted_at < :end
+        GROUP BY DATE(submitted_at)
+        """, nativeQuery = true)
+    int rebuildSubmitted(@Param("start") LocalDateTime start, @Param("end") LocalDateTime end);
+
+    @Modifying
+    @Query(value = """
+        INSERT INTO daily_order_stats
+            (stat_date, submitted_count, client_count, confirmed_count, cancelled_count,
+             revenue, processing_seconds_sum, updated_at)
+        SELECT agg.stat_date, 0, 0, agg.confirmed, agg.cancelled, agg.revenue, agg.seconds, NOW()
+        FROM (
+            SELECT DATE(confirmed_at) AS stat_date,
+                   SUM(CASE WHEN status IN ('CONFIRMED', 'SHIPPED') THEN 1 ELSE 0 END) AS confirmed,
+                   SUM(CASE WHEN status = 'CANCELLED' THEN 1 ELSE 0 END) AS cancelled,
+                   COALESCE(SUM(CASE WHEN status IN ('CONFIRMED', 'SHIPPED') THEN total_gross ELSE 0 END), 0) AS revenue,
+                   COALESCE(SUM(CASE WHEN status IN ('CONFIRMED', 'SHIPPED')
+                       THEN TIMESTAMPDIFF(SECOND, submitted_at, confirmed_at) ELSE 0 END), 0) AS seconds
+            FROM orders
+            WHERE confirmed_at >= :start AND confirmed_at < :end
+            GROUP BY DATE(confirmed_at)
+        ) agg
+        ON DUPLICATE KEY UPDATE
+            confirmed_count = agg.confirmed,
+            cancelled_count = agg.cancelled,
+            revenue = agg.revenue,
+            processing_seconds_sum = agg.seconds,
+            updated_at = NOW()
+        """, nativeQuery = true)
+    int rebuildConfirmed(@Param("start") LocalDateTime start, @Param("end") LocalDateTime end);
+}
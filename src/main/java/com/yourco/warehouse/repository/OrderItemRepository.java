@@ -9,6 +9,10 @@ import org.springframework.stereotype.Repository;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.math.BigDecimal;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 @Repository
 public interface OrderItemRepository extends JpaRepository<OrderItem, Long> {
@@ -22,4 +26,31 @@ public interface OrderItemRepository extends JpaRepository<OrderItem, Long> {
             "AND oi.order.status IN ('PENDING', 'URGENT')")
     @Transactional(readOnly = true)
     BigDecimal getReservedQuantityByUser(@Param("userId") Long userId, @Param("productId") Long productId);
+
+    /**
+     * Резервираното от user в PENDING/URGENT поръчки за много продукти с една GROUP BY заявка
+     * Редовете са [productId, SUM(qty)]; продукти без резервация липсват
+     */
+    @Query("SELECT oi.product.id, COALESCE(SUM(oi.qty), 0) FROM OrderItem oi " +
+            "WHERE oi.order.client.id = :userId " +
+            "AND oi.product.id IN :productIds " +
+            "AND oi.order.status IN ('PENDING', 'URGENT') " +
+            "GROUP BY oi.product.id")
+    @Transactional(readOnly = true)
+    List<Object[]> sumReservedQuantityByUserGroupedByProduct(@Param("userId") Long userId,
+                                                             @Param("productIds") Collection<Long> productIds);
+
+    /**
+     * productId -> резервирано от user количество; липсващ ключ означава 0
+     */
+    default Map<Long, Integer> getReservedQuantitiesByUser(Long userId, Collection<Long> productIds) {
+        Map<Long, Integer> reserved = new HashMap<>();
+        if (userId == null || productIds == null || productIds.isEmpty()) {
+            return reserved;
+        }
+        for (Object[] row : sumReservedQuantityByUserGroupedByProduct(userId, productIds)) {
+            reserved.put((Long) row[0], ((Number) row[1]).intValue());
+        }
+        return reserved;
+    }
 }
@@ -19,8 +19,10 @@ import jakarta.persistence.QueryHint;
 
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 /**
  * УЛТРА-ОПТИМИЗИРАНО ORDER REPOSITORY
@@ -69,7 +71,7 @@ public interface OrderRepository extends JpaRepository<Order, Long> {
             status,
             COUNT(*) as count
         FROM orders 
-        WHERE status IN ('PENDING', 'URGENT', 'CONFIRMED', 'CANCELLED')
+        WHERE status IN ('PENDING', 'URGENT', 'CONFIRMED', 'SHIPPED', 'CANCELLED')
         GROUP BY status
         """, nativeQuery = true)
     @QueryHints({
@@ -79,32 +81,42 @@ public interface OrderRepository extends JpaRepository<Order, Long> {
     @Transactional(readOnly = true)
     List<Object[]> getAllStatusCounts();
 
+    /**
+     * Броят поръчки на клиента по статус - за ClientCounterRegistry (navbar badge-ове)
+     */
+    @Query("SELECT o.status, COUNT(o) FROM Order o WHERE o.client.id = :clientId GROUP BY o.status")
+    @Transactional(readOnly = true)
+    List<Object[]> countByClientGroupedByStatus(@Param("clientId") Long clientId);
+
+    /**
+     * Клиентите на поръчките от списъка - за инвалидиране на броячите след status transition
+     */
+    @Query("SELECT DISTINCT o.client.id FROM Order o WHERE o.id IN :orderIds")
+    @Transactional(readOnly = true)
+    List<Long> findClientIdsByOrderIds(@Param("orderIds") Collection<Long> orderIds);
+
     // ==========================================
     // ОПТИМИЗИРАНИ DAILY STATISTICS
     // ==========================================
 
     /**
-     * MEGA-ОПТИМИЗИРАНА Daily Stats - Всички в една заявка
-     * Вместо 4 отделни заявки, правим само една с complex aggregation
+     * Времена по етапи за rebuild на latency histogram-ите - едно streaming минаване
+     * fetchSize = Integer.MIN_VALUE кара MySQL драйвера да стриймва ред по ред
+     * вместо да зарежда целия резултат в паметта. Stream-ът трябва да се консумира
+     * в транзакция и да се затвори.
      */
     @Query(value = """
-        SELECT 
-            COUNT(CASE WHEN status = 'CONFIRMED' THEN 1 END) as processed_count,
-            COALESCE(SUM(CASE WHEN status = 'CONFIRMED' THEN total_gross ELSE 0 END), 0) as daily_revenue,
-            AVG(CASE WHEN confirmed_at IS NOT NULL 
-                THEN TIMESTAMPDIFF(HOUR, submitted_at, confirmed_at) 
-                ELSE NULL END) as avg_processing_hours,
-            COUNT(DISTINCT client_id) as unique_clients
-        FROM orders 
-        WHERE submitted_at >= :startDate AND submitted_at <= :endDate
+        SELECT submitted_at, confirmed_at, shipping_started_at, shipping_duration_seconds
+        FROM orders
+        WHERE status IN ('CONFIRMED', 'SHIPPED')
+          AND confirmed_at IS NOT NULL
+          AND confirmed_at >= :since
         """, nativeQuery = true)
     @QueryHints({
             @QueryHint(name = "org.hibernate.readOnly", value = "true"),
-            @QueryHint(name = "org.hibernate.fetchSize", value = "1")
+            @QueryHint(name = "org.hibernate.fetchSize", value = "-2147483648")
     })
-    @Transactional(readOnly = true)
-    Object[] getDailyStatsSuperFast(@Param("startDate") LocalDateTime startDate,
-                                    @Param("endDate") LocalDateTime endDate);
+    Stream<Object[]> streamStageTimestamps(@Param("since") LocalDateTime since);
 
     // ==========================================
     // PROJECTION-BASED ORDER LISTS (Само нужните данни)
@@ -136,6 +148,59 @@ public interface OrderRepository extends JpaRepository<Order, Long> {
     List<Object[]> findOrderProjectionsByStatus(@Param("status") String status,
                                                 @Param("limit") int limit);
 
+    /**
+     * KEYSET PAGINATION - първа страница на dashboard списък по статус
+     * Само колоните нужни за order card-а + брой артикули, без зареждане на items.
+     * Подреждането (submitted_at DESC, id DESC) съвпада с idx_orders_status_submitted.
+     */
+    @Query(value = """
+        SELECT
+            o.id, o.status, o.total_net, o.total_gross, o.submitted_at,
+            o.confirmed_at, o.shipped_at,
+            c.id AS client_id, c.username, c.company_name, c.phone, c.location,
+            (SELECT COUNT(*) FROM order_items oi WHERE oi.order_id = o.id) AS items_count
+        FROM orders o
+        INNER JOIN users c ON o.client_id = c.id
+        WHERE o.status = :status
+        ORDER BY o.submitted_at DESC, o.id DESC
+        LIMIT :limit
+        """, nativeQuery = true)
+    @QueryHints({
+            @QueryHint(name = "org.hibernate.readOnly", value = "true"),
+            @QueryHint(name = "org.hibernate.fetchSize", value = "50")
+    })
+    @Transactional(readOnly = true)
+    List<Object[]> findOrderPageByStatus(@Param("status") String status,
+                                         @Param("limit") int limit);
+
+    /**
+     * KEYSET PAGINATION - следваща страница след cursor (submittedAt, id)
+     * Цената не зависи от това колко назад в историята е страницата.
+     */
+    @Query(value = """
+        SELECT
+            o.id, o.status, o.total_net, o.total_gross, o.submitted_at,
+            o.confirmed_at, o.shipped_at,
+            c.id AS client_id, c.username, c.company_name, c.phone, c.location,
+            (SELECT COUNT(*) FROM order_items oi WHERE oi.order_id = o.id) AS items_count
+        FROM orders o
+        INNER JOIN users c ON o.client_id = c.id
+        WHERE o.status = :status
+          AND (o.submitted_at < :cursorSubmittedAt
+               OR (o.submitted_at = :cursorSubmittedAt AND o.id < :cursorId))
+        ORDER BY o.submitted_at DESC, o.id DESC
+        LIMIT :limit
+        """, nativeQuery = true)
+    @QueryHints({
+            @QueryHint(name = "org.hibernate.readOnly", value = "true"),
+            @QueryHint(name = "org.hibernate.fetchSize", value = "50")
+    })
+    @Transactional(readOnly = true)
+    List<Object[]> findOrderPageByStatusAfter(@Param("status") String status,
+                                              @Param("cursorSubmittedAt") LocalDateTime cursorSubmittedAt,
+                                              @Param("cursorId") Long cursorId,
+                                              @Param("limit") int limit);
+
     /**
      * УЛТРА-БЪРЗ Urgent Orders - Само projection без JOINs където е възможно
      */
@@ -332,13 +397,19 @@ public interface OrderRepository extends JpaRepository<Order, Long> {
 
 
     /**
-     * Recent orders с оптимизация
+     * Recent orders - първо само ID-тата с LIMIT, после fetch join само за тях
+     * (fetch join + LIMIT в една заявка кара Hibernate да пагинира в паметта)
      */
+    @Query("SELECT o.id FROM Order o ORDER BY o.submittedAt DESC, o.id DESC")
+    @Transactional(readOnly = true)
+    List<Long> findRecentOrderIds(Pageable pageable);
+
     @Query(value = """
         SELECT DISTINCT o FROM Order o 
         LEFT JOIN FETCH o.client 
         LEFT JOIN FETCH o.items oi 
         LEFT JOIN FETCH oi.product 
+        WHERE o.id IN :ids
         ORDER BY o.submittedAt DESC
         """)
     @QueryHints({
@@ -346,19 +417,151 @@ public interface OrderRepository extends JpaRepository<Order, Long> {
             @QueryHint(name = "org.hibernate.fetchSize", value = "50")
     })
     @Transactional(readOnly = true)
-    List<Order> findAllOrdersOrderBySubmittedAtDesc();
+    List<Order> findByIdInWithItems(@Param("ids") List<Long> ids);
 
     default List<Order> findRecentOrders(int limit) {
-        return findAllOrdersOrderBySubmittedAtDesc().stream()
-                .limit(limit)
-                .collect(java.util.stream.Collectors.toList());
+        List<Long> ids = findRecentOrderIds(org.springframework.data.domain.PageRequest.of(0, limit));
+        if (ids.isEmpty()) {
+            return List.of();
+        }
+        return findByIdInWithItems(ids);
     }
 
-    @Query("SELECT o FROM Order o WHERE o.status = :status AND o.submittedAt < :cutoffTime")
-    List<Order> findByStatusAndSubmittedAtBefore(
-            @Param("status") OrderStatus status,
-            @Param("cutoffTime") LocalDateTime cutoffTime
-    );
+    /**
+     * id и submittedAt на всички поръчки със статус - rebuild на URGENT deadline опашката
+     */
+    @Query("SELECT o.id, o.submittedAt FROM Order o WHERE o.status = :status")
+    List<Object[]> findIdAndSubmittedAtByStatus(@Param("status") OrderStatus status);
+
+    @Query("SELECT o.id, o.submittedAt FROM Order o WHERE o.status = :status AND o.submittedAt >= :since")
+    List<Object[]> findIdAndSubmittedAtByStatusSince(@Param("status") OrderStatus status,
+                                                     @Param("since") LocalDateTime since);
+
+    // ==========================================
+    // STATUS TRANSITIONS - compare-and-set (OrderStateMachine)
+    // ==========================================
+
+    /**
+     * Данните за одобрение без зареждане на Order entity-то - по един ред на продукт:
+     * [productId, SUM(qty), submitted_at, total_gross, has_modifications].
+     * Поръчка без артикули връща един ред с productId NULL, несъществуваща - нито един.
+     */
+    @Query(value = """
+        SELECT oi.product_id, COALESCE(SUM(oi.qty), 0), o.submitted_at, o.total_gross, o.has_modifications
+        FROM orders o
+        LEFT JOIN order_items oi ON oi.order_id = o.id
+        WHERE o.id = :orderId
+        GROUP BY oi.product_id, o.submitted_at, o.total_gross, o.has_modifications
+        ORDER BY oi.product_id
+        """, nativeQuery = true)
+    List<Object[]> findApprovalRows(@Param("orderId") Long orderId);
+
+    /**
+     * Добавя бележка към modification_note (CONCAT_WS пропуска NULL) - UPDATE само на
+     * бележката и флага, не на целия ред
+     */
+    @Modifying
+    @Query(value = """
+        UPDATE orders
+        SET modification_note = CONCAT_WS(:separator, modification_note, :note),
+            has_modifications = TRUE
+        WHERE id = :orderId
+        """, nativeQuery = true)
+    int appendModificationNote(@Param("orderId") Long orderId,
+                               @Param("note") String note,
+                               @Param("separator") String separator);
+
+    /**
+     * Сменя статуса само ако текущият е :expected
+     * confirmed_at се записва при CONFIRMED/CANCELLED, shipped_at и продължителността - при SHIPPED
+     *
+     * @return 1 при успех, 0 ако статусът вече е друг
+     */
+    @Modifying
+    @Query(value = """
+        UPDATE orders
+        SET status = :target,
+            confirmed_at = CASE WHEN :target IN ('CONFIRMED', 'CANCELLED') THEN :now ELSE confirmed_at END,
+            shipped_at = CASE WHEN :target = 'SHIPPED' THEN :now ELSE shipped_at END,
+            shipping_duration_seconds = CASE WHEN :target = 'SHIPPED'
+                THEN :shippingDurationSeconds ELSE shipping_duration_seconds END
+        WHERE id = :orderId AND status = :expected
+        """, nativeQuery = true)
+    int compareAndSetStatus(@Param("orderId") Long orderId,
+                            @Param("expected") String expected,
+                            @Param("target") String target,
+                            @Param("now") LocalDateTime now,
+                            @Param("shippingDurationSeconds") int shippingDurationSeconds);
+
+    /**
+     * Заключва поръчките от списъка, които все още са в статус :expected.
+     * Заключените id-та са точно тези, които bulkCompareAndSetStatus ще промени.
+     */
+    @Query(value = "SELECT id FROM orders WHERE id IN (:orderIds) AND status = :expected ORDER BY id FOR UPDATE",
+            nativeQuery = true)
+    List<Long> lockIdsByStatus(@Param("orderIds") Collection<Long> orderIds,
+                               @Param("expected") String expected);
+
+    /**
+     * Bulk вариант на compareAndSetStatus - един UPDATE за всички id-та
+     *
+     * @return броят променени поръчки
+     */
+    @Modifying
+    @Query(value = """
+        UPDATE orders
+        SET status = :target,
+            confirmed_at = CASE WHEN :target IN ('CONFIRMED', 'CANCELLED') THEN :now ELSE confirmed_at END
+        WHERE id IN (:orderIds) AND status = :expected
+        """, nativeQuery = true)
+    int bulkCompareAndSetStatus(@Param("orderIds") Collection<Long> orderIds,
+                                @Param("expected") String expected,
+                                @Param("target") String target,
+                                @Param("now") LocalDateTime now);
+
+    /**
+     * bulkCompareAndSetStatus за scheduled job - UPDATE-ът минава само ако lease-ът на job-а
+     * все още е на :owner със същия fencing token. Проверката на lease реда е в същия
+     * statement (и го заключва за четене до commit), така че нод с изгубен lease
+     * променя 0 реда вместо да пише след като друг нод е поел job-а.
+     *
+     * @return броят променени поръчки (0 ако lease-ът е изгубен)
+     */
+    @Modifying
+    @Query(value = """
+        UPDATE orders
+        SET status = :target,
+            confirmed_at = CASE WHEN :target IN ('CONFIRMED', 'CANCELLED') THEN :now ELSE confirmed_at END
+        WHERE id IN (:orderIds) AND status = :expected
+          AND EXISTS (
+              SELECT 1 FROM scheduler_leases l
+              WHERE l.job_name = :jobName AND l.owner_id = :owner AND l.fencing_token = :token
+                AND l.lease_until >= CURRENT_TIMESTAMP)
+        """, nativeQuery = true)
+    int fencedBulkCompareAndSetStatus(@Param("orderIds") Collection<Long> orderIds,
+                                      @Param("expected") String expected,
+                                      @Param("target") String target,
+                                      @Param("now") LocalDateTime now,
+                                      @Param("jobName") String jobName,
+                                      @Param("owner") String owner,
+                                      @Param("token") long token);
+
+    /**
+     * Прекратено товарене - поръчката остава CONFIRMED, изчиства се само камионът
+     */
+    @Modifying
+    @Query(value = "UPDATE orders SET truck_number = NULL WHERE id = :orderId AND status = 'CONFIRMED'",
+            nativeQuery = true)
+    int clearTruckNumber(@Param("orderId") Long orderId);
+
+    /**
+     * Изтрива поръчката само ако все още е PENDING - конкурентно одобрение печели
+     *
+     * @return 1 ако поръчката е изтрита
+     */
+    @Modifying
+    @Query(value = "DELETE FROM orders WHERE id = :orderId AND status = 'PENDING'", nativeQuery = true)
+    int deleteIfPending(@Param("orderId") Long orderId);
 
     /**
      * Оптимизирана заявка за поръчки по client ID
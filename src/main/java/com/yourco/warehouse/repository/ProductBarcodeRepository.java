@@ -0,0 +1,56 @@
+package com.yourco.warehouse.repository;
+
+import com.yourco.warehouse.entity.ProductBarcodeEntity;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Repository за баркодовете на продуктите.
+ * Сканирането не минава оттук - BarcodeIndex държи картата в паметта и пита базата
+ * само при непознат баркод.
+ */
+@Repository
+public interface ProductBarcodeRepository extends JpaRepository<ProductBarcodeEntity, Long> {
+
+    /**
+     * Всички двойки [barcode, productId] - за построяване на in-memory индекса
+     * Проекция без зареждане на entities
+     */
+    @Query("SELECT b.barcode, b.product.id FROM ProductBarcodeEntity b")
+    List<Object[]> findAllBarcodeMappings();
+
+    /**
+     * Двойките [barcode, productId] за вече съществуващите баркодове от списъка
+     */
+    @Query("SELECT b.barcode, b.product.id FROM ProductBarcodeEntity b WHERE b.barcode IN :barcodes")
+    List<Object[]> findMappingsByBarcodeIn(@Param("barcodes") Collection<String> barcodes);
+
+    /**
+     * productId за баркода или null - за баркод, записан от друг нод
+     */
+    @Query("SELECT b.product.id FROM ProductBarcodeEntity b WHERE b.barcode = :barcode")
+    Long findProductIdByBarcode(@Param("barcode") String barcode);
+
+    /**
+     * INSERT IGNORE по idx_barcode_unique - при паралелен импорт със същия баркод InnoDB
+     * чака другата транзакция: след commit връща 0, след rollback записва реда и връща 1.
+     *
+     * @return 1 ако баркодът е записан, 0 ако вече принадлежи на продукт
+     */
+    @Modifying
+    @Query(value = "INSERT IGNORE INTO product_barcodes (barcode, product_id, import_event_id, created_at) " +
+            "VALUES (:barcode, :productId, :importEventId, NOW())",
+            nativeQuery = true)
+    int insertIfAbsent(@Param("barcode") String barcode,
+                       @Param("productId") Long productId,
+                       @Param("importEventId") Long importEventId);
+
+    @Query("SELECT b.barcode FROM ProductBarcodeEntity b WHERE b.product.id = :productId ORDER BY b.id")
+    List<String> findBarcodesByProductId(@Param("productId") Long productId);
+}
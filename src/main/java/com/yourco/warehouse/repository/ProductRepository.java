@@ -7,12 +7,14 @@ import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.math.BigDecimal;
+import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Optional;
 
@@ -113,7 +115,6 @@ public interface ProductRepository extends JpaRepository<ProductEntity, Long> {
      */
     @Query("SELECT DISTINCT p.category FROM ProductEntity p WHERE p.active = true AND p.category IS NOT NULL")
     @QueryHints({
-            @QueryHint(name = "org.hibernate.cacheable", value = "true"),
             @QueryHint(name = "org.hibernate.readOnly", value = "true")
     })
     List<String> findDistinctCategories();
@@ -123,7 +124,6 @@ public interface ProductRepository extends JpaRepository<ProductEntity, Long> {
      */
     @Query("SELECT DISTINCT p.unit FROM ProductEntity p WHERE p.active = true AND p.unit IS NOT NULL ORDER BY p.unit")
     @QueryHints({
-            @QueryHint(name = "org.hibernate.cacheable", value = "true"),
             @QueryHint(name = "org.hibernate.readOnly", value = "true")
     })
     List<String> findAllActiveUnits();
@@ -148,6 +148,31 @@ public interface ProductRepository extends JpaRepository<ProductEntity, Long> {
     @Query("SELECT MIN(p.price), MAX(p.price), AVG(p.price) FROM ProductEntity p WHERE p.active = true")
     Object[] getPriceStatistics();
 
+    /**
+     * Контролна стойност за CatalogMetadataAggregate: [COUNT, MIN, MAX, SUM] на цените
+     * на активните продукти (null цена се брои като 0, както в ProductCatalogDTO)
+     */
+    @Query("SELECT COUNT(p), MIN(COALESCE(p.price, 0)), MAX(COALESCE(p.price, 0)), SUM(COALESCE(p.price, 0)) " +
+            "FROM ProductEntity p WHERE p.active = true")
+    List<Object[]> getActivePriceAggregate();
+
+    /**
+     * Контролна стойност за наличностите в snapshot-а: [SUM(available), SUM(reserved)] на активните продукти
+     */
+    @Query("SELECT COALESCE(SUM(p.quantityAvailable), 0), COALESCE(SUM(p.quantityReserved), 0) " +
+            "FROM ProductEntity p WHERE p.active = true")
+    List<Object[]> getActiveStockTotals();
+
+    /**
+     * Продукти, чийто ред е променен след момента (updated_at се поддържа от базата) -
+     * включително деактивирани; синхронизация на каталога между нодовете
+     */
+    @Query("SELECT p FROM ProductEntity p WHERE p.updatedAt > :since")
+    List<ProductEntity> findChangedSince(@Param("since") LocalDateTime since);
+
+    @Query("SELECT MAX(p.updatedAt) FROM ProductEntity p")
+    LocalDateTime findLatestUpdate();
+
     // ==========================================
     // LEGACY SUPPORT (оставени за съвместимост)
     // ==========================================
@@ -181,6 +206,41 @@ public interface ProductRepository extends JpaRepository<ProductEntity, Long> {
     @Query("SELECT p FROM ProductEntity p WHERE p.id = :id")
     Optional<ProductEntity> findByIdWithLock(@Param("id") Long id);
 
+    /**
+     * Заключва всички продукти наведнъж във възходящ ред на id
+     * Еднаквият ред на заключване предотвратява deadlock между конкурентни поръчки
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT p FROM ProductEntity p WHERE p.id IN :ids ORDER BY p.id ASC")
+    List<ProductEntity> findAllByIdInForUpdate(@Param("ids") List<Long> ids);
+
+    /**
+     * Продукти в реда на id без lock - резервациите се правят в StockReservationLedger
+     */
+    @Query("SELECT p FROM ProductEntity p WHERE p.id IN :ids ORDER BY p.id ASC")
+    List<ProductEntity> findAllByIdInOrderById(@Param("ids") List<Long> ids);
+
+    /**
+     * (id, quantityAvailable, quantityReserved) за всички продукти - зареждане на ledger-а
+     */
+    @Query("SELECT p.id, p.quantityAvailable, p.quantityReserved FROM ProductEntity p")
+    List<Object[]> findAllStockLevels();
+
+    @Query("SELECT p.id, p.quantityAvailable, p.quantityReserved FROM ProductEntity p WHERE p.id = :id")
+    List<Object[]> findStockLevel(@Param("id") Long id);
+
+    /**
+     * Write-behind от ledger-а - относителна промяна, не презаписва паралелни промени
+     */
+    @Modifying
+    @Query("UPDATE ProductEntity p " +
+            "SET p.quantityAvailable = p.quantityAvailable + :availableDelta, " +
+            "p.quantityReserved = p.quantityReserved + :reservedDelta " +
+            "WHERE p.id = :id")
+    int applyStockDelta(@Param("id") Long id,
+                        @Param("availableDelta") int availableDelta,
+                        @Param("reservedDelta") int reservedDelta);
+
     /**
      * Batch заявка за намиране на продукти по списък от SKU кодове.
      * Оптимизирана с индекс и batch fetching за светкавична скорост.
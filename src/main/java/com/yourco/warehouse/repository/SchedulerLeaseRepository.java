@@ -0,0 +1,86 @@
+package com.yourco.warehouse.repository;
+
+import com.yourco.warehouse.entity.SchedulerLeaseEntity;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+/**
+ * SCHEDULER LEASE REPOSITORY
+ * ==========================
+ * Всички проверки за изтичане използват часовника на базата (CURRENT_TIMESTAMP),
+ * така че разминаване в часовниците на нодовете не води до двама притежатели.
+ * SQL-ът е общ за MySQL и H2.
+ */
+@Repository
+public interface SchedulerLeaseRepository extends JpaRepository<SchedulerLeaseEntity, String> {
+
+    /**
+     * Взима или подновява lease-а, ако е свободен (изтекъл) или вече е наш.
+     * fencing_token се увеличава само при смяна на притежателя - присвояването
+     * му стои преди owner_id, защото MySQL прилага SET изразите отляво надясно.
+     *
+     * @return 1 ако lease-ът е наш
+     */
+    @Modifying
+    @Query(value = """
+        UPDATE scheduler_leases
+        SET fencing_token = CASE WHEN owner_id = :owner THEN fencing_token ELSE fencing_token + 1 END,
+            owner_id = :owner,
+            lease_until = TIMESTAMPADD(SECOND, :leaseSeconds, CURRENT_TIMESTAMP),
+            renewed_at = CURRENT_TIMESTAMP
+        WHERE job_name = :jobName AND (owner_id = :owner OR lease_until < CURRENT_TIMESTAMP)
+        """, nativeQuery = true)
+    int tryAcquire(@Param("jobName") String jobName,
+                   @Param("owner") String owner,
+                   @Param("leaseSeconds") long leaseSeconds);
+
+    /**
+     * Първо изпълнение на job-а в клъстера - дублиран ключ означава, че друг нод е бил по-бърз
+     */
+    @Modifying
+    @Query(value = """
+        INSERT INTO scheduler_leases (job_name, owner_id, fencing_token, lease_until, renewed_at)
+        VALUES (:jobName, :owner, 1, TIMESTAMPADD(SECOND, :leaseSeconds, CURRENT_TIMESTAMP), CURRENT_TIMESTAMP)
+        """, nativeQuery = true)
+    int insertLease(@Param("jobName") String jobName,
+                    @Param("owner") String owner,
+                    @Param("leaseSeconds") long leaseSeconds);
+
+    /**
+     * Подновява lease-а само ако все още е наш със същия token
+     */
+    @Modifying
+    @Query(value = """
+        UPDATE scheduler_leases
+        SET lease_until = TIMESTAMPADD(SECOND, :leaseSeconds, CURRENT_TIMESTAMP),
+            renewed_at = CURRENT_TIMESTAMP
+        WHERE job_name = :jobName AND owner_id = :owner AND fencing_token = :token
+          AND lease_until >= CURRENT_TIMESTAMP
+        """, nativeQuery = true)
+    int renew(@Param("jobName") String jobName,
+              @Param("owner") String owner,
+              @Param("token") long token,
+              @Param("leaseSeconds") long leaseSeconds);
+
+    @Query(value = """
+        SELECT fencing_token FROM scheduler_leases
+        WHERE job_name = :jobName AND owner_id = :owner AND lease_until >= CURRENT_TIMESTAMP
+        """, nativeQuery = true)
+    Long findActiveToken(@Param("jobName") String jobName,
+                         @Param("owner") String owner);
+
+    /**
+     * Освобождава lease-а при спиране на нода, за да не чакат останалите изтичането му
+     */
+    @Modifying
+    @Query(value = """
+        UPDATE scheduler_leases SET lease_until = TIMESTAMPADD(SECOND, -1, CURRENT_TIMESTAMP)
+        WHERE job_name = :jobName AND owner_id = :owner AND fencing_token = :token
+        """, nativeQuery = true)
+    int release(@Param("jobName") String jobName,
+                @Param("owner") String owner,
+                @Param("token") long token);
+}
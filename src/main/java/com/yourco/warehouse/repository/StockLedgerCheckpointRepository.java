@@ -0,0 +1,30 @@
+package com.yourco.warehouse.repository;
+
+import com.yourco.warehouse.entity.StockLedgerCheckpointEntity;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+/**
+ * STOCK LEDGER CHECKPOINT REPOSITORY
+ * ==================================
+ * Checkpoint-ът само расте - GREATEST пази от връщане назад при повторен flush.
+ */
+@Repository
+public interface StockLedgerCheckpointRepository extends JpaRepository<StockLedgerCheckpointEntity, String> {
+
+    @Query("SELECT c.lastSequence FROM StockLedgerCheckpointEntity c WHERE c.ledgerName = :ledgerName")
+    Long findLastSequence(@Param("ledgerName") String ledgerName);
+
+    @Modifying
+    @Query(value = """
+        INSERT INTO stock_ledger_checkpoints (ledger_name, last_sequence, updated_at)
+        VALUES (:ledgerName, :sequence, NOW())
+        ON DUPLICATE KEY UPDATE
+            last_sequence = GREATEST(last_sequence, :sequence),
+            updated_at = NOW()
+        """, nativeQuery = true)
+    int advance(@Param("ledgerName") String ledgerName, @Param("sequence") long sequence);
+}
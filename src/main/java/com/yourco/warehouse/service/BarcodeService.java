@@ -0,0 +1,24 @@
+package com.yourco.warehouse.service;
+
+import com.yourco.warehouse.entity.ImportEventEntity;
+import com.yourco.warehouse.entity.ProductEntity;
+
+import java.util.Map;
+
+public interface BarcodeService {
+
+    /**
+     * Записва баркодовете от импорт към продукта. Клетката може да съдържа няколко
+     * баркода, разделени със запетая, точка и запетая, | или интервал.
+     * Баркод, който вече принадлежи на друг продукт, се пропуска.
+     *
+     * @return броят на новозаписаните баркодове
+     */
+    int attachBarcodes(ProductEntity product, String rawBarcodes, ImportEventEntity importEvent);
+
+    /**
+     * Сканиране - баркодът към активен продукт от in-memory индекса, без заявка към базата
+     * Response: {found, barcode, product} или {found: false, barcode, reason}
+     */
+    Map<String, Object> scan(String barcode);
+}
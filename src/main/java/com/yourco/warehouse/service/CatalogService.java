@@ -1,6 +1,9 @@
 package com.yourco.warehouse.service;
 
+import com.yourco.warehouse.components.CatalogPayloadCache;
+import com.yourco.warehouse.components.CatalogSnapshotHolder;
 import com.yourco.warehouse.dto.ProductCatalogDTO;
+import com.yourco.warehouse.utils.CatalogFacetIndex;
 import org.springframework.cache.annotation.Cacheable;
 
 import java.math.BigDecimal;
@@ -12,6 +15,22 @@ public interface CatalogService {
 
     List<ProductCatalogDTO> getAllActiveProducts();
 
+    /**
+     * Текущият immutable snapshot на каталога - продуктите и версията (ETag) са консистентни
+     */
+    CatalogSnapshotHolder.Snapshot getActiveCatalog();
+
+    /**
+     * Готовите JSON/gzip байтове на целия каталог за тази версия на snapshot-а
+     * или null, докато още се генерират
+     */
+    CatalogPayloadCache.Payload getCatalogPayload(CatalogSnapshotHolder.Snapshot catalog);
+
+    /**
+     * Готовите байтове на продуктите от една категория (подредени по име) или null
+     */
+    CatalogPayloadCache.Payload getCategoryPayload(CatalogSnapshotHolder.Snapshot catalog, String category);
+
     List<String> getAllCategories();
 
     Optional<ProductCatalogDTO> getProductById(Long id);
@@ -20,8 +39,35 @@ public interface CatalogService {
 
     List<ProductCatalogDTO> filterProducts(String category, BigDecimal minPrice, BigDecimal maxPrice);
 
+    /**
+     * Филтрираните продукти и броячите по категория, мерна единица и ценови кофи - без заявка към базата
+     */
+    CatalogFacetIndex.FacetResult getFacets(String category, String unit, BigDecimal minPrice, BigDecimal maxPrice);
+
     List<ProductCatalogDTO> sortProducts(List<ProductCatalogDTO> products, String sortBy);
 
+    /**
+     * Страница от каталога в подредба name|name-desc|price|price-desc - по номер на страница
+     * или по nextCursor от предишната страница
+     *
+     * @throws IllegalArgumentException при невалиден sort или cursor
+     */
+    Map<String, Object> getProductsPage(CatalogSnapshotHolder.Snapshot catalog, String sort,
+                                        Integer page, int size, String cursor);
+
+    /**
+     * Промените в каталога след ревизия {@code since}: {mode: delta|reset, revision, epoch,
+     * updated, deactivated}. При reset клиентът презарежда целия каталог.
+     */
+    Map<String, Object> getChangesSince(long since, String epoch);
+
+    /**
+     * Наличностите на много продукти наведнъж, от един и същ snapshot:
+     * {revision, fields, items, missingSkus, missingIds}. Всеки ред в items е
+     * [id, sku, available, reserved, actualAvailable]; неактивни и непознати продукти са в missing*.
+     */
+    Map<String, Object> getAvailability(List<String> skus, List<Long> ids);
+
     long countActiveProductsByCategory(String category);
 
     Map<String, BigDecimal> getPriceStatistics();
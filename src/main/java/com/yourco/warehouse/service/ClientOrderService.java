@@ -1,5 +1,6 @@
 package com.yourco.warehouse.service;
 
+import com.yourco.warehouse.dto.CheckoutResultDTO;
 import com.yourco.warehouse.dto.OrderDTO;
 import com.yourco.warehouse.entity.Order;
 import org.springframework.data.domain.Page;
@@ -22,6 +23,18 @@ public interface ClientOrderService {
      */
     Order createOrderFromCart(Long userId, String notes);
 
+    /**
+     * Checkout с idempotency key - повторна заявка със същия ключ връща вече
+     * създадената поръчка, без да пипа наличностите
+     * @param userId ID на потребителя
+     * @param notes бележки към поръчката (може да е null)
+     * @param idempotencyKey ключ, генериран от клиента за този checkout (null - без защита)
+     * @return ID на поръчката и дали е повторение
+     * @throws IllegalArgumentException ако количката е празна, няма достатъчно наличност или ключът е невалиден
+     * @throws IllegalStateException ако поръчката със същия ключ още се обработва
+     */
+    CheckoutResultDTO checkout(Long userId, String notes, String idempotencyKey);
+
     /**
      * Получава поръчка по ID за конкретен клиент
      * @param orderId ID на поръчката
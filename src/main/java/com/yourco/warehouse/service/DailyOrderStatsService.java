@@ -0,0 +1,49 @@
+package com.yourco.warehouse.service;
+
+import com.yourco.warehouse.entity.DailyOrderStatsEntity;
+import com.yourco.warehouse.entity.Order;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+/**
+ * Service за дневния rollup на поръчките (daily_order_stats)
+ * Dashboard-ът чете един ред на ден вместо да зарежда всички поръчки за деня
+ */
+public interface DailyOrderStatsService {
+
+    /**
+     * Нова поръчка е подадена - брои се към деня на submittedAt
+     */
+    void recordSubmitted(Order order);
+
+    /**
+     * Поръчка е одобрена - оборот и време за обработка към деня на confirmedAt
+     */
+    void recordConfirmed(LocalDateTime submittedAt, LocalDateTime confirmedAt, BigDecimal totalGross);
+
+    /**
+     * Поръчка е отказана от служител - брои се към деня на confirmedAt
+     */
+    void recordCancelled(Order order);
+
+    /**
+     * Поръчка е изтрита от клиента преди обработка - премахва се от деня на submittedAt
+     */
+    void recordDeleted(Order order);
+
+    /**
+     * Статистики за деня - празен ред ако за деня няма поръчки
+     */
+    DailyOrderStatsEntity getStatsForDay(LocalDate day);
+
+    /**
+     * Преизчислява rollup-а от orders таблицата за периода (включително).
+     * Пуска се само при спрян трафик на поръчки - инкремент, пристигнал след
+     * rebuild-а за вече преброена поръчка, се брои повторно.
+     *
+     * @return брой дни с данни след rebuild
+     */
+    int rebuild(LocalDate fromDate, LocalDate toDate);
+}
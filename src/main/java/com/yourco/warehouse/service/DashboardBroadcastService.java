@@ -220,4 +220,22 @@ public interface DashboardBroadcastService {
      * @param alertData detailed information за alert context и required actions
      */
     void broadcastUrgentAlert(String alertType, String alertMessage, Map<String, Object> alertData);
+
+    // ==========================================
+    // RESYNC - delta sync след reconnect
+    // ==========================================
+
+    /**
+     * Връща order frames изпуснати след seq since
+     *
+     * Клиентът пази seq и epoch от последния обработен frame на /topic/dashboard/orders.
+     * След reconnect иска само липсващите frames вместо да презарежда всички табове.
+     * Ако epoch-ът е различен (рестарт) или липсващите frames вече не са в replay буфера,
+     * се връща mode=SNAPSHOT и клиентът прави еднократен пълен reload.
+     *
+     * @param since последният обработен seq (0 ако клиентът няма такъв)
+     * @param epoch epoch от последния обработен frame, null ако клиентът няма такъв
+     * @return mode (DELTA/SNAPSHOT), epoch, seq (текущ), events (пропуснатите frames при DELTA)
+     */
+    Map<String, Object> getDeltasSince(long since, String epoch);
 }
\ No newline at end of file
@@ -64,6 +64,21 @@ public interface DashboardService {
      */
     DashboardDTO getOrdersByStatus(OrderStatus status, int limit);
 
+    /**
+     * Получава страница от поръчки по статус чрез keyset pagination
+     *
+     * Връща lightweight projections (без items - те се зареждат при отваряне
+     * на поръчката) подредени по (submittedAt, id) DESC. Цената на заявката
+     * не зависи от размера на историята за статуса.
+     *
+     * @param status статус на поръчките за филтриране
+     * @param cursor nextCursor от предишната страница или null за първа страница
+     * @param limit размер на страницата
+     * @return DashboardDTO с orders, nextCursor и hasMore
+     * @throws IllegalArgumentException при невалиден cursor
+     */
+    DashboardDTO getOrdersPageByStatus(OrderStatus status, String cursor, int limit);
+
     // ==========================================
     // ORDER DETAILS & INFORMATION - детайлна информация
     // ==========================================
@@ -1,5 +1,6 @@
 package com.yourco.warehouse.service;
 
+import com.yourco.warehouse.components.CatalogChangedEvent;
 import com.yourco.warehouse.dto.InventoryAdjustmentDTO;
 import com.yourco.warehouse.dto.ProductAdminDTO;
 import com.yourco.warehouse.dto.ProductStatsDTO;
@@ -27,4 +28,10 @@ public interface InventoryBroadcastService {
      * Ще обнови counters-ите на всички admin dashboard-ове
      */
     void broadcastStatsUpdate(ProductStatsDTO stats);
-}
\ No newline at end of file
+
+    /**
+     * Broadcast на нова ревизия на каталога към всички клиенти (не само admin)
+     * Компактен delta - само наличностите и id-тата, които клиентът трябва да дозареди
+     */
+    void broadcastCatalogChanges(CatalogChangedEvent event);
+}
@@ -0,0 +1,53 @@
+package com.yourco.warehouse.service;
+
+import com.yourco.warehouse.dto.ProductAdminDTO;
+import com.yourco.warehouse.entity.Order;
+import com.yourco.warehouse.entity.ProductEntity;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Bulk движения на наличности за цяла поръчка
+ * Всички продукти на поръчката се заключват с една заявка (сортирани по id)
+ * и промените се записват като един batch - вместо findById + save за всеки ред.
+ * При включен StockReservationLedger движенията минават през него без DB lock.
+ */
+public interface StockMovementService {
+
+    /**
+     * Продуктите, върху които ще се резервира/освобождава, сортирани по id.
+     * Без ledger са заключени (SELECT ... FOR UPDATE); с ledger се четат без lock.
+     */
+    List<ProductEntity> lockForReservation(Collection<Long> productIds);
+
+    /**
+     * Резервира количествата (productId -> бройки) - всичко или нищо
+     *
+     * @param products резултатът от lockForReservation за същите продукти
+     */
+    void reserve(List<ProductEntity> products, Map<Long, Integer> quantities);
+
+    /**
+     * Освобождава резервирани количества (productId -> бройки)
+     *
+     * @param products резултатът от lockForReservation за същите продукти
+     */
+    void release(List<ProductEntity> products, Map<Long, Integer> quantities);
+
+    /**
+     * Одобрение - намалява available и reserved с количествата от поръчката
+     * (productId -> бройки); поръчката не се зарежда
+     *
+     * @return засегнатите продукти след промяната, сортирани по id
+     */
+    List<ProductAdminDTO> confirmSale(Long orderId, Map<Long, Integer> quantities);
+
+    /**
+     * Отказ - освобождава резервациите на поръчката
+     *
+     * @return засегнатите продукти след промяната, сортирани по id
+     */
+    List<ProductAdminDTO> releaseReservations(Order order);
+}
@@ -0,0 +1,117 @@
+package com.yourco.warehouse.service.impl;
+
+import com.yourco.warehouse.components.BarcodeIndex;
+import com.yourco.warehouse.components.CatalogSnapshotHolder;
+import com.yourco.warehouse.dto.ProductCatalogDTO;
+import com.yourco.warehouse.entity.ImportEventEntity;
+import com.yourco.warehouse.entity.ProductEntity;
+import com.yourco.warehouse.repository.ProductBarcodeRepository;
+import com.yourco.warehouse.service.BarcodeService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+@Service
+public class BarcodeServiceImpl implements BarcodeService {
+
+    private static final Logger log = LoggerFactory.getLogger(BarcodeServiceImpl.class);
+
+    private static final Pattern BARCODE_SEPARATORS = Pattern.compile("[,;|\\s]+");
+
+    private final ProductBarcodeRepository barcodeRepository;
+    private final BarcodeIndex barcodeIndex;
+    private final CatalogSnapshotHolder catalogSnapshot;
+
+    @Autowired
+    public BarcodeServiceImpl(ProductBarcodeRepository barcodeRepository,
+                              BarcodeIndex barcodeIndex,
+                              CatalogSnapshotHolder catalogSnapshot) {
+        this.barcodeRepository = barcodeRepository;
+        this.barcodeIndex = barcodeIndex;
+        this.catalogSnapshot = catalogSnapshot;
+    }
+
+    // ==========================================
+    // IMPORT
+    // ==========================================
+
+    @Override
+    public int attachBarcodes(ProductEntity product, String rawBarcodes, ImportEventEntity importEvent) {
+        if (rawBarcodes == null || rawBarcodes.isBlank() || product.getId() == null) {
+            return 0;
+        }
+
+        Set<String> barcodes = new LinkedHashSet<>();
+        for (String part : BARCODE_SEPARATORS.split(rawBarcodes.trim())) {
+            String normalized = BarcodeIndex.normalize(part);
+            if (normalized != null) {
+                barcodes.add(normalized);
+            }
+        }
+        if (barcodes.isEmpty()) {
+            return 0;
+        }
+
+        // Един SELECT за всички баркодове на реда
+        Map<String, Long> existing = new HashMap<>();
+        barcodeRepository.findMappingsByBarcodeIn(barcodes)
+                .forEach(row -> existing.put((String) row[0], (Long) row[1]));
+
+        Long importEventId = importEvent != null ? importEvent.getId() : null;
+        int attached = 0;
+        for (String barcode : barcodes) {
+            Long ownerId = existing.get(barcode);
+            if (ownerId == null) {
+                // Паралелен импорт може да запише същия баркод след SELECT-а - INSERT IGNORE
+                // не прекъсва confirmImport с duplicate key
+                if (barcodeRepository.insertIfAbsent(barcode, product.getId(), importEventId) == 1) {
+                    barcodeIndex.register(barcode, product.getId());
+                    attached++;
+                    continue;
+                }
+                ownerId = barcodeRepository.findProductIdByBarcode(barcode);
+            }
+            if (!product.getId().equals(ownerId)) {
+                log.warn("Баркод {} вече принадлежи на продукт {} - пропуснат за продукт {}",
+                        barcode, ownerId, product.getId());
+            }
+        }
+        return attached;
+    }
+
+    // ==========================================
+    // SCAN
+    // ==========================================
+
+    @Override
+    public Map<String, Object> scan(String barcode) {
+        Map<String, Object> response = new HashMap<>();
+        response.put("barcode", barcode);
+
+        Long productId = barcodeIndex.resolve(barcode);
+        if (productId == null) {
+            response.put("found", false);
+            response.put("reason", "unknown");
+            return response;
+        }
+
+        ProductCatalogDTO product = catalogSnapshot.current().byId().get(productId);
+        if (product == null) {
+            response.put("found", false);
+            response.put("productId", productId);
+            response.put("reason", "inactive");
+            return response;
+        }
+
+        response.put("found", true);
+        response.put("product", product);
+        return response;
+    }
+}
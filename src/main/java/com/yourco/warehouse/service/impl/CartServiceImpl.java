@@ -1,15 +1,14 @@
 package com.yourco.warehouse.service.impl;
 
+import com.yourco.warehouse.components.CartStore;
+import com.yourco.warehouse.components.CatalogSnapshotHolder;
+import com.yourco.warehouse.components.ClientCounterRegistry;
 import com.yourco.warehouse.dto.CartDTO;
 import com.yourco.warehouse.dto.CartItemDTO;
-import com.yourco.warehouse.entity.CartItem;
+import com.yourco.warehouse.dto.ProductCatalogDTO;
 import com.yourco.warehouse.entity.ProductEntity;
-import com.yourco.warehouse.entity.UserEntity;
-import com.yourco.warehouse.repository.CartItemRepository;
-import com.yourco.warehouse.repository.OrderItemRepository;
-import com.yourco.warehouse.repository.ProductRepository;
-import com.yourco.warehouse.repository.UserRepository;
 import com.yourco.warehouse.service.CartService;
+import com.yourco.warehouse.service.StockMovementService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -18,103 +17,110 @@ import org.springframework.transaction.annotation.Transactional;
 
 import java.math.BigDecimal;
 import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
-import java.util.Optional;
-
+import java.util.Map;
+
+/**
+ * CART SERVICE - КОЛИЧКАТА ОТ CartStore, ПРОДУКТИТЕ ОТ КАТАЛОГА В ПАМЕТТА
+ * =====================================================================
+ * Добавяне, промяна на количество и изтриване не пишат в базата синхронно -
+ * CartStore записва cart_items на заден план. Наличността се проверява срещу
+ * CatalogSnapshotHolder; окончателната проверка под lock е при checkout.
+ * Продукти извън каталога (деактивирани) не се показват и не се броят.
+ */
 @Service
-@Transactional
 public class CartServiceImpl implements CartService {
 
     private static final Logger log = LoggerFactory.getLogger(CartServiceImpl.class);
 
-    private final CartItemRepository cartItemRepository;
-    private final ProductRepository productRepository;
-    private final UserRepository userRepository;
-    private final OrderItemRepository orderItemRepository;
+    private final CartStore cartStore;
+    private final CatalogSnapshotHolder catalogSnapshot;
+    private final StockMovementService stockMovementService;
+    private final ClientCounterRegistry counterRegistry;
 
     @Autowired
-    public CartServiceImpl(CartItemRepository cartItemRepository,
-                           ProductRepository productRepository,
-                           UserRepository userRepository,
-                           OrderItemRepository orderItemRepository) {
-        this.cartItemRepository = cartItemRepository;
-        this.productRepository = productRepository;
-        this.userRepository = userRepository;
-        this.orderItemRepository = orderItemRepository;
+    public CartServiceImpl(CartStore cartStore,
+                           CatalogSnapshotHolder catalogSnapshot,
+                           StockMovementService stockMovementService,
+                           ClientCounterRegistry counterRegistry) {
+        this.cartStore = cartStore;
+        this.catalogSnapshot = catalogSnapshot;
+        this.stockMovementService = stockMovementService;
+        this.counterRegistry = counterRegistry;
     }
 
     @Override
     public String addToCart(Long userId, Long productId, Integer quantity) {
         validateInputs(userId, productId, quantity);
 
-        UserEntity user = getUserById(userId);
-        ProductEntity product = getActiveProductById(productId);
+        ProductCatalogDTO product = getActiveProductById(productId);
+        Map<Long, Integer> reservedByUser = cartStore.reservedByUser(userId, List.of(productId));
 
-        // Проверка за наличност според новата логика
-        Optional<CartItem> existingItem = cartItemRepository.findByUserIdAndProductId(userId, productId);
-        int totalQuantityNeeded = quantity;
+        String message = cartStore.update(userId, cart -> {
+            // Проверка за наличност според новата логика
+            boolean existing = cart.contains(productId);
+            int totalQuantityNeeded = quantity + cart.quantity(productId);
 
-        if (existingItem.isPresent()) {
-            totalQuantityNeeded += existingItem.get().getQuantity();
-        }
+            int maxOrderable = getMaxOrderableQuantity(product, reservedByUser);
+            if (totalQuantityNeeded > maxOrderable) {
+                int userReserved = maxOrderable - product.getQuantityAvailable();
 
-        int maxOrderable = getMaxOrderableQuantity(userId, product);
-        if (totalQuantityNeeded > maxOrderable) {
-            int userReserved = maxOrderable - product.getQuantityAvailable();
-
-            String message;
-            if (userReserved > 0) {
-                message = String.format("⚠️ Вече имате поръчка за %d бр. от този артикул. Налични в склада: %d бр. Не можете да поръчате повече.",
-                        userReserved, product.getQuantityAvailable());
-            } else {
-                message = String.format("⚠️ Налични са само %d бр. в склада. Не можете да поръчате %d бр.",
-                        product.getQuantityAvailable(), totalQuantityNeeded);
-            }
+                String message;
+                if (userReserved > 0) {
+                    message = String.format("⚠️ Вече имате поръчка за %d бр. от този артикул. Налични в склада: %d бр. Не можете да поръчате повече.",
+                            userReserved, product.getQuantityAvailable());
+                } else {
+                    message = String.format("⚠️ Налични са само %d бр. в склада. Не можете да поръчате %d бр.",
+                            product.getQuantityAvailable(), totalQuantityNeeded);
+                }
 
-            throw new IllegalArgumentException(message);
-        }
+                throw new IllegalArgumentException(message);
+            }
 
-        // Добавяне или обновяване
-        if (existingItem.isPresent()) {
-            CartItem item = existingItem.get();
-            item.setQuantity(totalQuantityNeeded);
-            cartItemRepository.save(item);
-            return String.format("Обновено количество: %d", totalQuantityNeeded);
-        } else {
-            CartItem newItem = new CartItem(user, product, quantity);
-            cartItemRepository.save(newItem);
-            return String.format("Добавен: %s", product.getName());
-        }
+            // Добавяне или обновяване
+            cart.set(productId, totalQuantityNeeded);
+            return existing
+                    ? String.format("Обновено количество: %d", totalQuantityNeeded)
+                    : String.format("Добавен: %s", product.getName());
+        });
+        counterRegistry.cartChanged(userId);
+        return message;
     }
 
     @Override
     public boolean updateQuantity(Long userId, Long productId, Integer newQuantity) {
         validateInputs(userId, productId, newQuantity);
 
-        CartItem cartItem = cartItemRepository.findByUserIdAndProductId(userId, productId)
-                .orElseThrow(() -> new IllegalArgumentException("Артикулът не е намерен в количката"));
-
-        ProductEntity product = cartItem.getProduct();
+        Map<Long, Integer> reservedByUser = cartStore.reservedByUser(userId, List.of(productId));
 
-        int maxOrderable = getMaxOrderableQuantity(userId, product);
-        if (newQuantity > maxOrderable) {
-            int userReserved = maxOrderable - product.getQuantityAvailable();
-
-            String message;
-            if (userReserved > 0) {
-                message = String.format("⚠️ Вече имате поръчка за %d бр. Налични в склада: %d бр. Максимум можете да поръчате общо: %d бр.",
-                        userReserved, product.getQuantityAvailable(), maxOrderable);
-            } else {
-                message = String.format("⚠️ Налични са само %d бр. в склада.",
-                        product.getQuantityAvailable());
+        cartStore.update(userId, cart -> {
+            ProductCatalogDTO product = catalogSnapshot.current().byId().get(productId);
+            if (!cart.contains(productId) || product == null) {
+                throw new IllegalArgumentException("Артикулът не е намерен в количката");
             }
 
-            throw new IllegalArgumentException(message);
-        }
+            int maxOrderable = getMaxOrderableQuantity(product, reservedByUser);
+            if (newQuantity > maxOrderable) {
+                int userReserved = maxOrderable - product.getQuantityAvailable();
 
-        cartItem.setQuantity(newQuantity);
-        cartItemRepository.save(cartItem);
+                String message;
+                if (userReserved > 0) {
+                    message = String.format("⚠️ Вече имате поръчка за %d бр. Налични в склада: %d бр. Максимум можете да поръчате общо: %d бр.",
+                            userReserved, product.getQuantityAvailable(), maxOrderable);
+                } else {
+                    message = String.format("⚠️ Налични са само %d бр. в склада.",
+                            product.getQuantityAvailable());
+                }
 
+                throw new IllegalArgumentException(message);
+            }
+
+            cart.set(productId, newQuantity);
+            return true;
+        });
+        counterRegistry.cartChanged(userId);
         return true;
     }
 
@@ -124,12 +130,13 @@ public class CartServiceImpl implements CartService {
             throw new IllegalArgumentException("ID-тата не могат да бъдат null");
         }
 
-        CartItem cartItem = cartItemRepository.findByUserIdAndProductId(userId, productId)
-                .orElseThrow(() -> new IllegalArgumentException("Артикулът не е намерен в количката"));
-
-        String productSku = cartItem.getProduct().getSku();
-        cartItemRepository.delete(cartItem);
-
+        cartStore.update(userId, cart -> {
+            if (!cart.remove(productId)) {
+                throw new IllegalArgumentException("Артикулът не е намерен в количката");
+            }
+            return true;
+        });
+        counterRegistry.cartChanged(userId);
         return true;
     }
 
@@ -139,58 +146,56 @@ public class CartServiceImpl implements CartService {
             throw new IllegalArgumentException("User ID не може да бъде null");
         }
 
-        List<CartItem> items = cartItemRepository.findByUserIdWithProducts(userId);
-        int count = items.size();
-
-        if (count > 0) {
-            cartItemRepository.deleteAllByUserId(userId);
-        }
-
+        int count = cartStore.update(userId, cart -> {
+            int active = activeLines(cart).size();
+            if (!cart.isEmpty()) {
+                cart.clear();
+            }
+            return active;
+        });
+        counterRegistry.cartChanged(userId);
         return count;
     }
 
     @Override
-    @Transactional(readOnly = true)
     public CartDTO getCart(Long userId) {
         if (userId == null) {
             throw new IllegalArgumentException("User ID не може да бъде null");
         }
 
-        List<CartItem> cartItems = cartItemRepository.findByUserIdWithProducts(userId);
+        List<CartLine> cartLines = cartStore.read(userId, this::activeLines);
 
-        if (cartItems.isEmpty()) {
+        if (cartLines.isEmpty()) {
             return CartDTO.create(List.of(), 0, 0,
                     BigDecimal.ZERO, BigDecimal.ZERO, BigDecimal.ZERO);
         }
 
-        return buildCartDTO(cartItems);
+        return buildCartDTO(cartLines);
     }
 
     @Override
-    @Transactional(readOnly = true)
     public List<CartItemDTO> getCartItems(Long userId) {
         if (userId == null) {
             throw new IllegalArgumentException("User ID не може да бъде null");
         }
 
-        List<CartItem> cartItems = cartItemRepository.findByUserIdWithProducts(userId);
-        return cartItems.stream()
+        return cartStore.read(userId, this::activeLines).stream()
                 .map(this::buildCartItemDTO)
                 .toList();
     }
 
     @Override
-    @Transactional(readOnly = true)
     public Integer getCartItemCount(Long userId) {
         if (userId == null) return 0;
-        return cartItemRepository.countItemsByUserId(userId);
+        return cartStore.read(userId, cart -> activeLines(cart).stream()
+                .mapToInt(line -> line.line().quantity())
+                .sum());
     }
 
     @Override
-    @Transactional(readOnly = true)
     public boolean hasItems(Long userId) {
         if (userId == null) return false;
-        return cartItemRepository.hasItemsByUserId(userId);
+        return cartStore.read(userId, cart -> !activeLines(cart).isEmpty());
     }
 
 
@@ -198,21 +203,26 @@ public class CartServiceImpl implements CartService {
     @Override
     @Transactional
     public boolean reserveCartItems(Long userId) {
-        List<CartItem> items = cartItemRepository.findByUserIdWithProducts(userId);
+        Map<Long, Integer> quantities = activeQuantities(userId);
 
-        if (items.isEmpty()) {
+        if (quantities.isEmpty()) {
             throw new IllegalStateException("Количката е празна");
         }
 
-        // ВАЖНО: Използваме pessimistic lock за да заключим продуктите
-        for (CartItem item : items) {
-            ProductEntity product = productRepository.findByIdWithLock(item.getProduct().getId())
-                    .orElseThrow(() -> new IllegalStateException("Продукт не е намерен"));
+        // Резервираното от user-а за всички артикули - една заявка вместо една на ред
+        Map<Long, Integer> reservedByUser = cartStore.reservedByUser(userId, quantities.keySet());
+
+        // ВАЖНО: Заключваме всички продукти с една заявка, подредени по id -
+        // паралелни checkout-и вземат lock-овете в един и същ ред и не се блокират взаимно
+        List<ProductEntity> lockedProducts = stockMovementService.lockForReservation(quantities.keySet());
+
+        for (ProductEntity product : lockedProducts) {
+            int quantity = quantities.get(product.getId());
 
             // НОВА ЛОГИКА: Проверка с отчитане на вече резервираните от user-а
-            int maxOrderable = getMaxOrderableQuantity(userId, product);
+            int maxOrderable = product.getQuantityAvailable() + reservedByUser.getOrDefault(product.getId(), 0);
 
-            if (item.getQuantity() > maxOrderable) {
+            if (quantity > maxOrderable) {
                 int userReserved = maxOrderable - product.getQuantityAvailable();
 
                 String message;
@@ -226,29 +236,27 @@ public class CartServiceImpl implements CartService {
 
                 throw new IllegalArgumentException(message);
             }
-
-            product.reserveQuantity(item.getQuantity());
-            productRepository.save(product);
         }
 
+        stockMovementService.reserve(lockedProducts, quantities);
         return true;
     }
 
 
 
     @Override
+    @Transactional
     public boolean releaseCartReservations(Long userId) {
-        List<CartItem> items = cartItemRepository.findByUserIdWithProducts(userId);
-
-        for (CartItem item : items) {
-            ProductEntity product = item.getProduct();
-            try {
-                product.releaseReservation(item.getQuantity());
-                productRepository.save(product);
-            } catch (Exception e) {
-                log.warn("Грешка при освобождаване на резервация за {}: {}",
-                        product.getSku(), e.getMessage());
-            }
+        Map<Long, Integer> quantities = activeQuantities(userId);
+        if (quantities.isEmpty()) {
+            return true;
+        }
+
+        try {
+            stockMovementService.release(stockMovementService.lockForReservation(quantities.keySet()), quantities);
+        } catch (Exception e) {
+            log.warn("Грешка при освобождаване на резервации за потребител {}: {}", userId, e.getMessage());
+            return false;
         }
 
         return true;
@@ -256,31 +264,29 @@ public class CartServiceImpl implements CartService {
 
 
     @Override
-    @Transactional(readOnly = true)
     public boolean validateCartStock(Long userId) {
-        List<CartItem> items = cartItemRepository.findByUserIdWithProducts(userId);
+        List<CartLine> cartLines = cartStore.read(userId, this::activeLines);
+        Map<Long, Integer> reservedByUser = cartStore.reservedByUser(userId,
+                cartLines.stream().map(line -> line.product().getId()).toList());
 
-        return items.stream().allMatch(item -> {
-            ProductEntity product = item.getProduct();
-            int maxOrderable = getMaxOrderableQuantity(userId, product);
-            return product.isActive() && item.getQuantity() <= maxOrderable;
-        });
+        return cartLines.stream().allMatch(line ->
+                line.line().quantity() <= getMaxOrderableQuantity(line.product(), reservedByUser));
     }
 
 
     // ==================== PRIVATE HELPER METHODS ====================
 
-    private CartDTO buildCartDTO(List<CartItem> cartItems) {
-        List<CartItemDTO> itemDTOs = cartItems.stream()
+    private CartDTO buildCartDTO(List<CartLine> cartLines) {
+        List<CartItemDTO> itemDTOs = cartLines.stream()
                 .map(this::buildCartItemDTO)
                 .toList();
 
         // Единствено изчисление на всички суми
-        CartTotals totals = calculateTotals(cartItems);
+        CartTotals totals = calculateTotals(cartLines);
 
         return CartDTO.create(
                 itemDTOs,
-                cartItems.size(),
+                cartLines.size(),
                 totals.totalQuantity,
                 totals.totalWithoutVat,
                 totals.totalWithVat,
@@ -288,28 +294,29 @@ public class CartServiceImpl implements CartService {
         );
     }
 
-    private CartItemDTO buildCartItemDTO(CartItem cartItem) {
-        BigDecimal itemPrice = cartItem.getProduct().getPrice();
-        BigDecimal itemPriceWithVat = cartItem.getProduct().getPriceWithVat();
-        BigDecimal quantity = BigDecimal.valueOf(cartItem.getQuantity());
+    private CartItemDTO buildCartItemDTO(CartLine cartLine) {
+        BigDecimal itemPrice = cartLine.product().getPrice();
+        BigDecimal itemPriceWithVat = cartLine.product().getPriceWithVat();
+        BigDecimal quantity = BigDecimal.valueOf(cartLine.line().quantity());
 
         BigDecimal totalPrice = itemPrice.multiply(quantity).setScale(2, RoundingMode.HALF_UP);
         BigDecimal totalPriceWithVat = itemPriceWithVat.multiply(quantity).setScale(2, RoundingMode.HALF_UP);
 
-        return CartItemDTO.from(cartItem, totalPrice, totalPriceWithVat);
+        return CartItemDTO.from(cartLine.product(), cartLine.line(), totalPrice, totalPriceWithVat);
     }
 
-    private CartTotals calculateTotals(List<CartItem> cartItems) {
+    private CartTotals calculateTotals(List<CartLine> cartLines) {
         int totalQuantity = 0;
         BigDecimal totalWithoutVat = BigDecimal.ZERO;
         BigDecimal totalWithVat = BigDecimal.ZERO;
 
-        for (CartItem item : cartItems) {
-            totalQuantity += item.getQuantity();
+        for (CartLine cartLine : cartLines) {
+            int lineQuantity = cartLine.line().quantity();
+            totalQuantity += lineQuantity;
 
-            BigDecimal itemPrice = item.getProduct().getPrice();
-            BigDecimal itemPriceWithVat = item.getProduct().getPriceWithVat();
-            BigDecimal quantity = BigDecimal.valueOf(item.getQuantity());
+            BigDecimal itemPrice = cartLine.product().getPrice();
+            BigDecimal itemPriceWithVat = cartLine.product().getPriceWithVat();
+            BigDecimal quantity = BigDecimal.valueOf(lineQuantity);
 
             totalWithoutVat = totalWithoutVat.add(itemPrice.multiply(quantity));
             totalWithVat = totalWithVat.add(itemPriceWithVat.multiply(quantity));
@@ -323,6 +330,28 @@ public class CartServiceImpl implements CartService {
         return new CartTotals(totalQuantity, totalWithoutVat, totalWithVat, vatAmount);
     }
 
+    /**
+     * Редовете с активни продукти (подредени по последна промяна) заедно с продукта от каталога
+     */
+    private List<CartLine> activeLines(CartStore.UserCart cart) {
+        Map<Long, ProductCatalogDTO> catalog = catalogSnapshot.current().byId();
+        List<CartLine> cartLines = new ArrayList<>();
+        for (CartStore.Line line : cart.lines()) {
+            ProductCatalogDTO product = catalog.get(line.productId());
+            if (product != null) {
+                cartLines.add(new CartLine(product, line));
+            }
+        }
+        return cartLines;
+    }
+
+    private Map<Long, Integer> activeQuantities(Long userId) {
+        Map<Long, Integer> quantities = new HashMap<>();
+        cartStore.read(userId, this::activeLines)
+                .forEach(line -> quantities.put(line.product().getId(), line.line().quantity()));
+        return quantities;
+    }
+
     private void validateInputs(Long userId, Long productId, Integer quantity) {
         if (userId == null) {
             throw new IllegalArgumentException("User ID не може да бъде null");
@@ -335,22 +364,21 @@ public class CartServiceImpl implements CartService {
         }
     }
 
-    private UserEntity getUserById(Long userId) {
-        return userRepository.findById(userId)
-                .orElseThrow(() -> new IllegalArgumentException("Потребителят не съществува"));
-    }
-
-    private ProductEntity getActiveProductById(Long productId) {
-        ProductEntity product = productRepository.findById(productId)
-                .orElseThrow(() -> new IllegalArgumentException("Продуктът не съществува"));
+    private ProductCatalogDTO getActiveProductById(Long productId) {
+        ProductCatalogDTO product = catalogSnapshot.current().byId().get(productId);
 
-        if (!product.isActive()) {
-            throw new IllegalArgumentException("Продуктът не е активен");
+        // Каталогът съдържа само активни продукти
+        if (product == null) {
+            throw new IllegalArgumentException("Продуктът не съществува или не е активен");
         }
 
         return product;
     }
 
+    // Ред от количката с продукта от каталога
+    private record CartLine(ProductCatalogDTO product, CartStore.Line line) {
+    }
+
     // Helper class за изчислените суми
     private static class CartTotals {
         final int totalQuantity;
@@ -372,9 +400,8 @@ public class CartServiceImpl implements CartService {
      * Изчислява максималното количество което user може да поръча
      * @return quantityAvailable + вече резервираното от този user
      */
-    private int getMaxOrderableQuantity(Long userId, ProductEntity product) {
+    private int getMaxOrderableQuantity(ProductCatalogDTO product, Map<Long, Integer> reservedByUser) {
         int available = product.getQuantityAvailable();
-        BigDecimal reserved = orderItemRepository.getReservedQuantityByUser(userId, product.getId());
-        return available + reserved.intValue();
+        return available + reservedByUser.getOrDefault(product.getId(), 0);
     }
-}
\ No newline at end of file
+}
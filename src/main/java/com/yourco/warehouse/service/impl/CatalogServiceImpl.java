@@ -1,15 +1,20 @@
 package com.yourco.warehouse.service.impl;
 
+import com.yourco.warehouse.components.CatalogPayloadCache;
+import com.yourco.warehouse.components.CatalogSnapshotHolder;
 import com.yourco.warehouse.dto.ProductCatalogDTO;
-import com.yourco.warehouse.entity.ProductEntity;
 import com.yourco.warehouse.repository.ProductRepository;
 import com.yourco.warehouse.service.CatalogService;
+import com.yourco.warehouse.utils.CatalogFacetIndex;
+import com.yourco.warehouse.utils.CatalogMetadataAggregate;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
 
 import java.math.BigDecimal;
 import java.math.RoundingMode;
+import java.nio.charset.StandardCharsets;
+import java.text.CollationKey;
 import java.text.Collator;
 import java.util.*;
 
@@ -18,31 +23,55 @@ public class CatalogServiceImpl implements CatalogService {
 
     private static final Logger log = LoggerFactory.getLogger(CatalogServiceImpl.class);
 
+    private static final int SEARCH_RESULT_LIMIT = 100;
+    private static final int MAX_PAGE_SIZE = 200;
+    private static final List<String> AVAILABILITY_FIELDS =
+            List.of("id", "sku", "available", "reserved", "actualAvailable");
+
+    // RuleBasedCollator синхронизира вътрешно - една инстанция за всички заявки
+    private static final Collator BG_COLLATOR = Collator.getInstance(new Locale("bg", "BG"));
+
     private final ProductRepository productRepository;
+    private final CatalogSnapshotHolder catalogSnapshot;
+    private final CatalogPayloadCache payloadCache;
 
-    public CatalogServiceImpl(ProductRepository productRepository) {
+    public CatalogServiceImpl(ProductRepository productRepository,
+                              CatalogSnapshotHolder catalogSnapshot,
+                              CatalogPayloadCache payloadCache) {
         this.productRepository = productRepository;
+        this.catalogSnapshot = catalogSnapshot;
+        this.payloadCache = payloadCache;
     }
 
     @Override
     public List<ProductCatalogDTO> getAllActiveProducts() {
         try {
-            List<ProductEntity> entities = productRepository.findAllByActiveTrue();
-            log.debug("Loaded {} active products", entities.size());
-            return ProductCatalogDTO.from(entities);
+            return catalogSnapshot.current().products();
         } catch (Exception e) {
             log.error("Error fetching active products", e);
             return Collections.emptyList();
         }
     }
 
+    @Override
+    public CatalogSnapshotHolder.Snapshot getActiveCatalog() {
+        return catalogSnapshot.current();
+    }
+
+    @Override
+    public CatalogPayloadCache.Payload getCatalogPayload(CatalogSnapshotHolder.Snapshot catalog) {
+        return payloadCache.catalog(catalog);
+    }
+
+    @Override
+    public CatalogPayloadCache.Payload getCategoryPayload(CatalogSnapshotHolder.Snapshot catalog, String category) {
+        return payloadCache.category(catalog, category);
+    }
+
     @Override
     public List<String> getAllCategories() {
         try {
-            List<String> categories = productRepository.findDistinctCategories();
-            categories.removeIf(Objects::isNull);
-            categories.sort(Collator.getInstance(new Locale("bg", "BG")));
-            return categories;
+            return catalogSnapshot.current().metadata().categories();
         } catch (Exception e) {
             log.error("Error fetching categories", e);
             return Collections.emptyList();
@@ -52,9 +81,7 @@ public class CatalogServiceImpl implements CatalogService {
     @Override
     public Optional<ProductCatalogDTO> getProductById(Long id) {
         if (id == null) return Optional.empty();
-        return productRepository.findById(id)
-                .filter(ProductEntity::isActive)
-                .map(ProductCatalogDTO::from);
+        return Optional.ofNullable(catalogSnapshot.current().byId().get(id));
     }
 
     @Override
@@ -64,15 +91,10 @@ public class CatalogServiceImpl implements CatalogService {
         try {
             String trimmedQuery = sanitizeSearchQuery(query);
 
-            // Direct SKU match (case-insensitive)
-            Optional<ProductEntity> direct = productRepository.findBySkuAndActiveTrue(trimmedQuery.toUpperCase());
-            if (direct.isPresent()) {
-                return List.of(ProductCatalogDTO.from(direct.get()));
-            }
-
-            List<ProductEntity> results = productRepository.searchActiveProducts(trimmedQuery);
+            // In-memory index - точното SKU съвпадение се класира първо
+            List<ProductCatalogDTO> results = catalogSnapshot.search(trimmedQuery, SEARCH_RESULT_LIMIT);
             log.debug("Search for '{}' returned {} results", trimmedQuery, results.size());
-            return ProductCatalogDTO.from(results);
+            return results;
         } catch (Exception e) {
             log.error("Error searching products with query '{}': {}", query, e.getMessage());
             return Collections.emptyList();
@@ -82,22 +104,23 @@ public class CatalogServiceImpl implements CatalogService {
     @Override
     public List<ProductCatalogDTO> filterProducts(String category, BigDecimal minPrice, BigDecimal maxPrice) {
         try {
-            String normalizedCategory = (category != null && !category.trim().isEmpty()) ?
-                    category.trim() : null;
-            List<ProductEntity> results = productRepository.findActiveProductsWithFilters(normalizedCategory, minPrice, maxPrice);
-            return ProductCatalogDTO.from(results);
+            return catalogSnapshot.current().facets().filter(category, null, minPrice, maxPrice);
         } catch (Exception e) {
             log.error("Error filtering products", e);
             return Collections.emptyList();
         }
     }
 
+    @Override
+    public CatalogFacetIndex.FacetResult getFacets(String category, String unit, BigDecimal minPrice, BigDecimal maxPrice) {
+        return catalogSnapshot.current().facets().facets(category, unit, minPrice, maxPrice);
+    }
+
     @Override
     public List<ProductCatalogDTO> sortProducts(List<ProductCatalogDTO> products, String sortBy) {
         if (products == null || products.isEmpty()) return Collections.emptyList();
 
         List<ProductCatalogDTO> sorted = new ArrayList<>(products);
-        Collator bgCollator = Collator.getInstance(new Locale("bg", "BG"));
 
         switch (sortBy) {
             case "price":
@@ -107,10 +130,10 @@ public class CatalogServiceImpl implements CatalogService {
                 sorted.sort(Comparator.comparing(ProductCatalogDTO::getPrice).reversed());
                 break;
             case "name":
-                sorted.sort(Comparator.comparing(ProductCatalogDTO::getName, bgCollator));
+                sorted.sort(byCollationKey(sorted));
                 break;
             case "name-desc":
-                sorted.sort(Comparator.comparing(ProductCatalogDTO::getName, bgCollator).reversed());
+                sorted.sort(byCollationKey(sorted).reversed());
                 break;
             default:
                 log.warn("Unknown sort option '{}'. Returning unsorted list.", sortBy);
@@ -118,13 +141,107 @@ public class CatalogServiceImpl implements CatalogService {
         return sorted;
     }
 
+    @Override
+    public Map<String, Object> getProductsPage(CatalogSnapshotHolder.Snapshot catalog, String sort,
+                                               Integer page, int size, String cursor) {
+        int pageSize = Math.max(1, Math.min(size, MAX_PAGE_SIZE));
+        CatalogFacetIndex.SortOrder sortOrder = CatalogFacetIndex.SortOrder.fromKey(sort);
+        int offset;
+
+        if (cursor != null && !cursor.isBlank()) {
+            // Cursor: sort:lastId:nextOffset - продължава след последния продукт дори ако каталогът се е променил
+            String[] parts = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8).split(":");
+            if (parts.length != 3) {
+                throw new IllegalArgumentException("Invalid cursor");
+            }
+            sortOrder = CatalogFacetIndex.SortOrder.fromKey(parts[0]);
+            int afterLast = catalog.facets().offsetAfter(sortOrder, Long.parseLong(parts[1]));
+            offset = afterLast >= 0 ? afterLast : Integer.parseInt(parts[2]);
+        } else {
+            offset = Math.max(0, page != null ? page : 0) * pageSize;
+        }
+
+        CatalogFacetIndex.Page result = catalog.facets().page(sortOrder, offset, pageSize);
+        int nextOffset = result.offset() + result.products().size();
+
+        Map<String, Object> response = new HashMap<>();
+        response.put("products", result.products());
+        response.put("sort", sortOrder.getKey());
+        response.put("size", pageSize);
+        response.put("offset", result.offset());
+        response.put("total", result.total());
+        response.put("version", catalog.version());
+        if (nextOffset < result.total() && !result.products().isEmpty()) {
+            ProductCatalogDTO last = result.products().get(result.products().size() - 1);
+            String raw = sortOrder.getKey() + ":" + last.getId() + ":" + nextOffset;
+            response.put("nextCursor", Base64.getUrlEncoder().withoutPadding()
+                    .encodeToString(raw.getBytes(StandardCharsets.UTF_8)));
+        } else {
+            response.put("nextCursor", null);
+        }
+        return response;
+    }
+
+    @Override
+    public Map<String, Object> getChangesSince(long since, String epoch) {
+        CatalogSnapshotHolder.ChangeSet changes = catalogSnapshot.changesSince(since, epoch);
+
+        Map<String, Object> response = new HashMap<>();
+        response.put("mode", changes.reset() ? "reset" : "delta");
+        response.put("revision", changes.revision());
+        response.put("epoch", changes.epoch());
+        response.put("updated", changes.updated());
+        response.put("deactivated", changes.deactivated());
+        return response;
+    }
+
+    @Override
+    public Map<String, Object> getAvailability(List<String> skus, List<Long> ids) {
+        CatalogSnapshotHolder.Snapshot catalog = catalogSnapshot.current();
+        Map<Long, ProductCatalogDTO> found = new LinkedHashMap<>();
+        List<String> missingSkus = new ArrayList<>();
+        List<Long> missingIds = new ArrayList<>();
+
+        for (String sku : skus) {
+            ProductCatalogDTO product = sku != null ? catalog.bySku().get(sku.trim()) : null;
+            if (product != null) {
+                found.putIfAbsent(product.getId(), product);
+            } else {
+                missingSkus.add(sku);
+            }
+        }
+        for (Long id : ids) {
+            ProductCatalogDTO product = id != null ? catalog.byId().get(id) : null;
+            if (product != null) {
+                found.putIfAbsent(product.getId(), product);
+            } else {
+                missingIds.add(id);
+            }
+        }
+
+        List<Object[]> items = new ArrayList<>(found.size());
+        for (ProductCatalogDTO product : found.values()) {
+            items.add(new Object[]{product.getId(), product.getSku(), product.getQuantityAvailable(),
+                    product.getQuantityReserved(), product.getActualAvailable()});
+        }
+
+        Map<String, Object> response = new HashMap<>();
+        response.put("revision", catalog.version());
+        response.put("fields", AVAILABILITY_FIELDS);
+        response.put("items", items);
+        response.put("missingSkus", missingSkus);
+        response.put("missingIds", missingIds);
+        return response;
+    }
+
     @Override
     public long countActiveProductsByCategory(String category) {
         try {
+            CatalogMetadataAggregate.Metadata metadata = catalogSnapshot.current().metadata();
             if (category == null || category.isBlank()) {
-                return productRepository.countByActiveTrue();
+                return metadata.totalProducts();
             }
-            return productRepository.countByCategoryAndActiveTrue(category);
+            return metadata.countByCategory(category);
         } catch (Exception e) {
             log.error("Error counting products by category", e);
             return 0;
@@ -134,16 +251,11 @@ public class CatalogServiceImpl implements CatalogService {
     @Override
     public Map<String, BigDecimal> getPriceStatistics() {
         try {
-            Object[] stats = productRepository.getPriceStatistics();
-            BigDecimal min = (stats != null && stats.length > 0 && stats[0] != null) ? (BigDecimal) stats[0] : BigDecimal.ZERO;
-            BigDecimal max = (stats != null && stats.length > 1 && stats[1] != null) ? (BigDecimal) stats[1] : BigDecimal.ZERO;
-            BigDecimal avg = (stats != null && stats.length > 2 && stats[2] != null) ?
-                    ((BigDecimal) stats[2]).setScale(2, RoundingMode.HALF_UP) : BigDecimal.ZERO;
-
+            CatalogMetadataAggregate.Metadata metadata = catalogSnapshot.current().metadata();
             Map<String, BigDecimal> result = new HashMap<>();
-            result.put("minPrice", min);
-            result.put("maxPrice", max);
-            result.put("avgPrice", avg);
+            result.put("minPrice", metadata.minPrice());
+            result.put("maxPrice", metadata.maxPrice());
+            result.put("avgPrice", metadata.avgPrice().setScale(2, RoundingMode.HALF_UP));
             return result;
         } catch (Exception e) {
             log.error("Error fetching price statistics", e);
@@ -155,11 +267,23 @@ public class CatalogServiceImpl implements CatalogService {
         }
     }
 
+    /**
+     * Comparator по предварително изчислени CollationKey-и - колацията се прави
+     * веднъж на продукт, а не при всяко сравнение
+     */
+    private static Comparator<ProductCatalogDTO> byCollationKey(List<ProductCatalogDTO> products) {
+        Map<ProductCatalogDTO, CollationKey> keys = new IdentityHashMap<>(products.size());
+        for (ProductCatalogDTO product : products) {
+            keys.put(product, BG_COLLATOR.getCollationKey(product.getName() != null ? product.getName() : ""));
+        }
+        return Comparator.comparing(keys::get);
+    }
+
     // Helper method за sanitizing на search query
     private String sanitizeSearchQuery(String query) {
         if (query == null) return "";
-        return query.trim()
-                .replaceAll("[<>\"'%;()&+]", "") // Remove dangerous chars
-                .substring(0, Math.min(query.length(), 100)); // Limit length
+        String cleaned = query.trim()
+                .replaceAll("[<>\"'%;()&+]", ""); // Remove dangerous chars
+        return cleaned.substring(0, Math.min(cleaned.length(), 100)); // Limit length
     }
 }
\ No newline at end of file
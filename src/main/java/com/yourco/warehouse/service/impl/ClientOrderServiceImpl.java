@@ -1,15 +1,22 @@
 package com.yourco.warehouse.service.impl;
 
+import com.yourco.warehouse.components.CartStore;
+import com.yourco.warehouse.components.ClientCounterRegistry;
+import com.yourco.warehouse.components.OrderCounterRegistry;
+import com.yourco.warehouse.components.OrderStatusScheduler;
+import com.yourco.warehouse.dto.CheckoutResultDTO;
 import com.yourco.warehouse.dto.OrderDTO;
 import com.yourco.warehouse.entity.*;
 import com.yourco.warehouse.entity.enums.OrderStatus;
 import com.yourco.warehouse.mapper.OrderMapper;
+import com.yourco.warehouse.repository.CartItemRepository;
+import com.yourco.warehouse.repository.CheckoutTokenRepository;
 import com.yourco.warehouse.repository.OrderRepository;
 import com.yourco.warehouse.repository.OrderItemRepository;
 import com.yourco.warehouse.repository.ProductRepository;
 import com.yourco.warehouse.repository.UserRepository;
 import com.yourco.warehouse.service.*;
-import com.yourco.warehouse.dto.CartItemDTO;
+import io.micrometer.core.instrument.MeterRegistry;
 import jakarta.persistence.EntityManager;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -18,6 +25,7 @@ import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.interceptor.TransactionAspectSupport;
 
 import java.math.BigDecimal;
 import java.math.RoundingMode;
@@ -30,6 +38,8 @@ public class ClientOrderServiceImpl implements ClientOrderService {
 
     private static final Logger log = LoggerFactory.getLogger(ClientOrderServiceImpl.class);
 
+    private static final int MAX_IDEMPOTENCY_KEY_LENGTH = 100;
+
     private final OrderRepository orderRepository;
     private final OrderItemRepository orderItemRepository;
     private final ProductRepository productRepository;
@@ -40,6 +50,15 @@ public class ClientOrderServiceImpl implements ClientOrderService {
     private final InventoryBroadcastService inventoryBroadcastService;
     private final ProductService productService;
     private final DashboardBroadcastService dashboardBroadcastService;
+    private final OrderCounterRegistry counterRegistry;
+    private final DailyOrderStatsService dailyOrderStatsService;
+    private final OrderStatusScheduler orderStatusScheduler;
+    private final CartItemRepository cartItemRepository;
+    private final StockMovementService stockMovementService;
+    private final CheckoutTokenRepository checkoutTokenRepository;
+    private final MeterRegistry meterRegistry;
+    private final CartStore cartStore;
+    private final ClientCounterRegistry clientCounterRegistry;
 
     @Autowired
     public ClientOrderServiceImpl(OrderRepository orderRepository,
@@ -51,7 +70,16 @@ public class ClientOrderServiceImpl implements ClientOrderService {
                                   DashboardBroadcastService broadcastService,
                                   InventoryBroadcastService inventoryBroadcastService,
                                   ProductService productService,
-                                  DashboardBroadcastService dashboardBroadcastService) {
+                                  DashboardBroadcastService dashboardBroadcastService,
+                                  OrderCounterRegistry counterRegistry,
+                                  DailyOrderStatsService dailyOrderStatsService,
+                                  OrderStatusScheduler orderStatusScheduler,
+                                  CartItemRepository cartItemRepository,
+                                  StockMovementService stockMovementService,
+                                  CheckoutTokenRepository checkoutTokenRepository,
+                                  MeterRegistry meterRegistry,
+                                  CartStore cartStore,
+                                  ClientCounterRegistry clientCounterRegistry) {
         this.orderRepository = orderRepository;
         this.orderItemRepository = orderItemRepository;
         this.productRepository = productRepository;
@@ -62,97 +90,166 @@ public class ClientOrderServiceImpl implements ClientOrderService {
         this.inventoryBroadcastService = inventoryBroadcastService;
         this.productService = productService;
         this.dashboardBroadcastService = dashboardBroadcastService;
+        this.counterRegistry = counterRegistry;
+        this.dailyOrderStatsService = dailyOrderStatsService;
+        this.orderStatusScheduler = orderStatusScheduler;
+        this.cartItemRepository = cartItemRepository;
+        this.stockMovementService = stockMovementService;
+        this.checkoutTokenRepository = checkoutTokenRepository;
+        this.meterRegistry = meterRegistry;
+        this.cartStore = cartStore;
+        this.clientCounterRegistry = clientCounterRegistry;
     }
 
+    /**
+     * Checkout в един проход:
+     * 1 заявка за количката (само productId/qty), 1 SELECT ... FOR UPDATE за всички
+     * продукти подредени по id (без deadlock между паралелни checkout-и), 1 заявка за
+     * вече резервираното от клиента. Валидацията и резервацията са в паметта върху
+     * заключените редове; UPDATE-ите на продуктите излизат batch-нато при flush.
+     * С StockReservationLedger продуктите не се заключват, а резервацията е атомарна в паметта.
+     */
     @Override
     public Order createOrderFromCart(Long userId, String notes) {
         // 1. Намери потребителя
         UserEntity client = userRepository.findById(userId)
                 .orElseThrow(() -> new IllegalArgumentException("Потребителят не съществува"));
 
-        // 2. Вземи артикулите от количката
-        List<CartItemDTO> cartItems = cartService.getCartItems(userId);
-        if (cartItems.isEmpty()) {
+        // 2. Редовете от количката - TreeMap дава реда на заключване по id.
+        //    Незаписаните промени от CartStore се записват преди четенето
+        cartStore.flush(userId);
+        Map<Long, Integer> quantities = new TreeMap<>();
+        for (Object[] line : cartItemRepository.findCheckoutLinesByUserId(userId)) {
+            quantities.merge((Long) line[0], (Integer) line[1], Integer::sum);
+        }
+        if (quantities.isEmpty()) {
             throw new IllegalArgumentException("Количката е празна");
         }
 
-        // 3. Валидирай наличностите
-        if (!cartService.validateCartStock(userId)) {
-            throw new IllegalArgumentException("Някои артикули няма достатъчно наличност");
-        }
+        // 3. Заключи всички продукти с една заявка
+        List<ProductEntity> products = stockMovementService.lockForReservation(quantities.keySet());
+        Map<Long, Integer> reservedByClient = orderItemRepository.getReservedQuantitiesByUser(userId, quantities.keySet());
 
-        // 4. Резервирай количествата
-        if (!cartService.reserveCartItems(userId)) {
-            throw new IllegalStateException("Грешка при резервиране на количествата");
-        }
-
-        try {
-            // 5. Създай поръчката
-            Order order = new Order();
-            order.setClient(client);
-            order.setStatus(OrderStatus.PENDING);
-            order.setNotes(notes != null ? notes.trim() : "");
-            order.setSubmittedAt(LocalDateTime.now());
-
-            // 6. Добави артикулите
-            for (CartItemDTO cartItem : cartItems) {
-                ProductEntity product = productRepository.findById(cartItem.getProductId())
-                        .orElseThrow(() -> new IllegalStateException("Продукт не е намерен: " + cartItem.getProductId()));
-
-                OrderItem orderItem = new OrderItem();
-                orderItem.setProduct(product);
-                orderItem.setQty(BigDecimal.valueOf(cartItem.getQuantity()));
-                orderItem.setUnitPrice(cartItem.getPricePerUnit());
-                order.addItem(orderItem);
+        // 4. Валидирай в паметта
+        for (ProductEntity product : products) {
+            int quantity = quantities.get(product.getId());
+            if (!product.isActive()) {
+                throw new IllegalArgumentException(
+                        String.format("⚠️ Артикул '%s' вече не е наличен.", product.getName()));
             }
 
-            // 7. Изчисли общите суми
-            order = recalculateOrderTotals(order);
+            int maxOrderable = getMaxOrderableQuantity(product, reservedByClient);
+            if (quantity > maxOrderable) {
+                int userReserved = maxOrderable - product.getQuantityAvailable();
+
+                String message;
+                if (userReserved > 0) {
+                    message = String.format("⚠️ Артикул '%s': Вече имате поръчка за %d бр. Налични в склада: %d бр. Не можете да поръчате общо повече от %d бр.",
+                            product.getName(), userReserved, product.getQuantityAvailable(), maxOrderable);
+                } else {
+                    message = String.format("⚠️ Артикул '%s': Налични са само %d бр. в склада.",
+                            product.getName(), product.getQuantityAvailable());
+                }
 
-            // 8. Запази поръчката
-            Order savedOrder = orderRepository.save(order);
-
-            // 9. Изчисти количката
-            cartService.clearCart(userId);
-
-            // ✅ 10. НОВО - Broadcast новата поръчка към всички dashboard-ове
-            try {
-                Map<String, Object> orderData = new HashMap<>();
-                orderData.put("orderId", savedOrder.getId());
-                orderData.put("clientName", client.getUsername());
-                orderData.put("status", savedOrder.getStatus().name());
-                orderData.put("itemsCount", savedOrder.getItems().size());
-                orderData.put("totalGross", savedOrder.getTotalGross());
-                orderData.put("submittedAt", savedOrder.getSubmittedAt());
-                orderData.put("isUrgent", savedOrder.getStatus() == OrderStatus.URGENT);
-
-                broadcastService.broadcastNewOrder(savedOrder.getId(), orderData);
-
-                // ✅ изчислява counters-ите
-                Long urgentCount = orderRepository.countByStatus(OrderStatus.URGENT);
-                Long pendingCount = orderRepository.countByStatus(OrderStatus.PENDING);
-                Long confirmedCount = orderRepository.countByStatus(OrderStatus.CONFIRMED);
-                Long shippedCount = orderRepository.countByStatus(OrderStatus.SHIPPED);
-                Long cancelledCount = orderRepository.countByStatus(OrderStatus.CANCELLED);
-
-                broadcastService.broadcastCounterUpdate(urgentCount, pendingCount, confirmedCount, shippedCount, cancelledCount);
-
-            } catch (Exception e) {
-                log.warn("Failed to broadcast new order {}: {}", savedOrder.getId(), e.getMessage());
-                // Продължаваме - поръчката е създадена успешно
+                throw new IllegalArgumentException(message);
             }
+        }
+        stockMovementService.reserve(products, quantities);
+
+        // 5. Създай поръчката от заключените продукти
+        Order order = new Order();
+        order.setClient(client);
+        order.setStatus(OrderStatus.PENDING);
+        order.setNotes(notes != null ? notes.trim() : "");
+        order.setSubmittedAt(LocalDateTime.now());
+
+        for (ProductEntity product : products) {
+            OrderItem orderItem = new OrderItem();
+            orderItem.setProduct(product);
+            orderItem.setQty(BigDecimal.valueOf(quantities.get(product.getId())));
+            orderItem.setUnitPrice(product.getPrice());
+            order.addItem(orderItem);
+        }
+
+        // 6. Изчисли общите суми
+        order = recalculateOrderTotals(order);
+
+        // 7. Запази поръчката (items през cascade)
+        Order savedOrder = orderRepository.save(order);
+        counterRegistry.recordCreated(savedOrder.getStatus());
+        dailyOrderStatsService.recordSubmitted(savedOrder);
+        orderStatusScheduler.schedule(savedOrder.getId(), savedOrder.getSubmittedAt());
+
+        // 8. Изчисти количката - при грешка преди това rollback-ът връща и резервациите
+        cartItemRepository.deleteAllByUserId(userId);
+        cartStore.discardAfterCommit(userId);
+        clientCounterRegistry.cartChanged(userId);
+        clientCounterRegistry.ordersChanged(userId);
 
-            return savedOrder;
+        // 9. Broadcast новата поръчка към всички dashboard-ове
+        try {
+            Map<String, Object> orderData = new HashMap<>();
+            orderData.put("orderId", savedOrder.getId());
+            orderData.put("clientName", client.getUsername());
+            orderData.put("status", savedOrder.getStatus().name());
+            orderData.put("itemsCount", savedOrder.getItems().size());
+            orderData.put("totalGross", savedOrder.getTotalGross());
+            orderData.put("submittedAt", savedOrder.getSubmittedAt());
+            orderData.put("isUrgent", savedOrder.getStatus() == OrderStatus.URGENT);
+
+            broadcastService.broadcastNewOrder(savedOrder.getId(), orderData);
+
+            // ✅ counters-ите идват от in-memory registry - без COUNT заявки
+            Map<OrderStatus, Long> counts = counterRegistry.snapshot();
+            broadcastService.broadcastCounterUpdate(
+                    counts.get(OrderStatus.URGENT),
+                    counts.get(OrderStatus.PENDING),
+                    counts.get(OrderStatus.CONFIRMED),
+                    counts.get(OrderStatus.CANCELLED),
+                    counts.get(OrderStatus.SHIPPED));
 
         } catch (Exception e) {
-            // При грешка освободи резервациите
-            try {
-                cartService.releaseCartReservations(userId);
-            } catch (Exception releaseError) {
-                log.error("Грешка при освобождаване на резервации: {}", releaseError.getMessage());
+            log.warn("Failed to broadcast new order {}: {}", savedOrder.getId(), e.getMessage());
+            // Продължаваме - поръчката е създадена успешно
+        }
+
+        return savedOrder;
+    }
+
+    /**
+     * Idempotent checkout: ключът се записва (INSERT IGNORE) преди резервацията и в
+     * същата транзакция. Повторна заявка със същия ключ чака първата да приключи -
+     * след commit получава нейната поръчка, след rollback минава нормалния път.
+     * Micrometer: checkout.submissions{result=created|replayed}
+     */
+    @Override
+    public CheckoutResultDTO checkout(Long userId, String notes, String idempotencyKey) {
+        if (idempotencyKey == null || idempotencyKey.isBlank()) {
+            Order order = createOrderFromCart(userId, notes);
+            meterRegistry.counter("checkout.submissions", "result", "created").increment();
+            return new CheckoutResultDTO(order.getId(), false);
+        }
+
+        String key = idempotencyKey.trim();
+        if (key.length() > MAX_IDEMPOTENCY_KEY_LENGTH) {
+            throw new IllegalArgumentException("Невалиден ключ на заявката");
+        }
+        String tokenKey = userId + ":" + key;
+
+        if (checkoutTokenRepository.claim(tokenKey, userId) == 0) {
+            Long orderId = checkoutTokenRepository.findOrderId(tokenKey);
+            if (orderId == null) {
+                throw new IllegalStateException("Поръчката все още се обработва. Моля, изчакайте.");
             }
-            throw e;
+            meterRegistry.counter("checkout.submissions", "result", "replayed").increment();
+            log.info("Checkout replay for user {}: returning existing order {}", userId, orderId);
+            return new CheckoutResultDTO(orderId, true);
         }
+
+        Order order = createOrderFromCart(userId, notes);
+        checkoutTokenRepository.attachOrder(tokenKey, order.getId());
+        meterRegistry.counter("checkout.submissions", "result", "created").increment();
+        return new CheckoutResultDTO(order.getId(), false);
     }
 
     @Override
@@ -206,8 +303,8 @@ public class ClientOrderServiceImpl implements ClientOrderService {
                 .findFirst()
                 .orElseThrow(() -> new IllegalArgumentException("Артикулът не е намерен в поръчката"));
 
-        ProductEntity product = productRepository.findByIdWithLock(productId)
-                .orElseThrow(() -> new IllegalArgumentException("Продуктът не съществува"));
+        List<ProductEntity> locked = stockMovementService.lockForReservation(List.of(productId));
+        ProductEntity product = locked.get(0);
 
         int currentReserved = orderItem.getQty().intValue();
         int difference = newQuantity - currentReserved;
@@ -222,15 +319,14 @@ public class ClientOrderServiceImpl implements ClientOrderService {
                 throw new IllegalStateException(
                         String.format("Няма достатъчно наличност. Максимално възможно: %d", maxPossible));
             }
-            product.reserveQuantity(difference);
+            stockMovementService.reserve(locked, Map.of(productId, difference));
         } else {
             // Намаляваме количеството - освобождаваме резервация
-            product.releaseReservation(Math.abs(difference));
+            stockMovementService.release(locked, Map.of(productId, Math.abs(difference)));
         }
 
         orderItem.setQty(BigDecimal.valueOf(newQuantity));
 
-        productRepository.save(product);
         orderRepository.save(order);
 
         return true;
@@ -252,12 +348,8 @@ public class ClientOrderServiceImpl implements ClientOrderService {
                 .findFirst()
                 .orElseThrow(() -> new IllegalArgumentException("Артикулът не е намерен в поръчката"));
 
-        // ✅ ПОПРАВКА: Зареди product с lock
-        ProductEntity product = productRepository.findByIdWithLock(productId)
-                .orElseThrow(() -> new IllegalArgumentException("Продуктът не е намерен"));
-
-        product.releaseReservation(orderItem.getQty().intValue());
-        productRepository.save(product);
+        stockMovementService.release(stockMovementService.lockForReservation(List.of(productId)),
+                Map.of(productId, orderItem.getQty().intValue()));
 
         order.getItems().remove(orderItem);
 
@@ -349,19 +441,18 @@ public class ClientOrderServiceImpl implements ClientOrderService {
 
             // 5. Обработи премахванията (артикули които не са в новия списък)
             List<OrderItem> itemsToRemove = new ArrayList<>();
+            Map<Long, Integer> removedQuantities = new HashMap<>();
 
             for (OrderItem item : new ArrayList<>(order.getItems())) {
                 if (!itemUpdates.containsKey(item.getProduct().getId())) {
-                    // ✅ ПОПРАВКА: Зареди product с lock
-                    Long productId = item.getProduct().getId();
-                    ProductEntity product = productRepository.findByIdWithLock(productId)
-                            .orElseThrow(() -> new IllegalStateException("Продукт не е намерен"));
-
-                    product.releaseReservation(item.getQty().intValue());
-                    productRepository.save(product);
+                    removedQuantities.merge(item.getProduct().getId(), item.getQty().intValue(), Integer::sum);
                     itemsToRemove.add(item);
                 }
             }
+            if (!removedQuantities.isEmpty()) {
+                stockMovementService.release(stockMovementService.lockForReservation(removedQuantities.keySet()),
+                        removedQuantities);
+            }
 
             // 6. Премахни артикулите от поръчката
             for (OrderItem itemToRemove : itemsToRemove) {
@@ -370,6 +461,12 @@ public class ClientOrderServiceImpl implements ClientOrderService {
             }
 
             // 7. Обработи обновяванията на количествата
+            // Резервираното от клиента за всички продукти - една заявка вместо една на ред
+            Map<Long, Integer> reservedByClient =
+                    orderItemRepository.getReservedQuantitiesByUser(clientId, itemUpdates.keySet());
+            Map<Long, Integer> toReserve = new HashMap<>();
+            Map<Long, Integer> toRelease = new HashMap<>();
+
             for (Map.Entry<Long, Integer> entry : itemUpdates.entrySet()) {
                 Long productId = entry.getKey();
                 Integer newQuantity = entry.getValue();
@@ -398,7 +495,7 @@ public class ClientOrderServiceImpl implements ClientOrderService {
 
                 // Проверка на наличност ако увеличаваме
                 if (difference > 0) {
-                    int maxOrderable = getMaxOrderableQuantity(clientId, product);
+                    int maxOrderable = getMaxOrderableQuantity(product, reservedByClient);
 
                     if (currentReserved + difference > maxOrderable) {
                         // Не можем да увеличим толкова
@@ -420,13 +517,11 @@ public class ClientOrderServiceImpl implements ClientOrderService {
                     }
 
                     if (difference > 0) {
-                        product.reserveQuantity(difference);
-                        productRepository.save(product);
+                        toReserve.put(productId, difference);
                     }
                 } else if (difference < 0) {
                     // Намаляваме - освободи излишното
-                    product.releaseReservation(Math.abs(difference));
-                    productRepository.save(product);
+                    toRelease.put(productId, Math.abs(difference));
                 }
 
                 // Обнови количеството
@@ -434,6 +529,19 @@ public class ClientOrderServiceImpl implements ClientOrderService {
                 updatedItems.add(product.getName() + " (нова бройка: " + newQuantity + ")");
             }
 
+            // Всички промени по наличностите наведнъж - един lock в реда на id
+            if (!toReserve.isEmpty() || !toRelease.isEmpty()) {
+                Set<Long> changedIds = new HashSet<>(toReserve.keySet());
+                changedIds.addAll(toRelease.keySet());
+                List<ProductEntity> locked = stockMovementService.lockForReservation(changedIds);
+                if (!toRelease.isEmpty()) {
+                    stockMovementService.release(locked, toRelease);
+                }
+                if (!toReserve.isEmpty()) {
+                    stockMovementService.reserve(locked, toReserve);
+                }
+            }
+
             // 8. Преизчисли общите суми
             order = recalculateOrderTotals(order);
 
@@ -461,10 +569,13 @@ public class ClientOrderServiceImpl implements ClientOrderService {
             result.put("totals", totals);
 
         } catch (IllegalArgumentException | IllegalStateException e) {
+            // Частичните промени по поръчката и наличностите не трябва да се commit-ват
+            TransactionAspectSupport.currentTransactionStatus().setRollbackOnly();
             result.put("success", false);
             result.put("message", e.getMessage());
             log.warn("Валидационна грешка при batch обновяване на поръчка {}: {}", orderId, e.getMessage());
         } catch (Exception e) {
+            TransactionAspectSupport.currentTransactionStatus().setRollbackOnly();
             result.put("success", false);
             result.put("message", "Възникна грешка при обновяването на поръчката");
             log.error("Грешка при batch обновяване на поръчка {}: {}", orderId, e.getMessage(), e);
@@ -509,7 +620,7 @@ public class ClientOrderServiceImpl implements ClientOrderService {
             // 4. Запази списък с productId и quantities ПРЕДИ да изтриеш нещо
             Map<Long, Integer> reservationsToRelease = new HashMap<>();
             for (OrderItem item : order.getItems()) {
-                reservationsToRelease.put(item.getProduct().getId(), item.getQty().intValue());
+                reservationsToRelease.merge(item.getProduct().getId(), item.getQty().intValue(), Integer::sum);
             }
 
             // 5. ПЪРВО: Изтрий order items
@@ -518,21 +629,17 @@ public class ClientOrderServiceImpl implements ClientOrderService {
             orderItemRepository.deleteAll(itemsToDelete);
             orderItemRepository.flush();
 
-            // 6. ВТОРО: Изтрий order
-            orderRepository.delete(order);
-            orderRepository.flush();
+            // 6. ВТОРО: Изтрий order - само ако все още е PENDING (конкурентно одобрение печели)
+            if (orderRepository.deleteIfPending(orderId) == 0) {
+                throw new IllegalStateException("Поръчката вече е обработена от служител");
+            }
+            counterRegistry.recordRemoved(OrderStatus.PENDING);
+            dailyOrderStatsService.recordDeleted(order);
+            clientCounterRegistry.ordersChanged(clientId);
 
             // 7. ТРЕТО: СЕГА освободи резервациите (след като order и items са изтрити)
-            for (Map.Entry<Long, Integer> entry : reservationsToRelease.entrySet()) {
-                Long productId = entry.getKey();
-                Integer quantity = entry.getValue();
-
-                ProductEntity product = productRepository.findByIdWithLock(productId)
-                        .orElseThrow(() -> new IllegalStateException("Продукт не е намерен"));
-
-                product.releaseReservation(quantity);
-                productRepository.saveAndFlush(product);
-            }
+            stockMovementService.release(stockMovementService.lockForReservation(reservationsToRelease.keySet()),
+                    reservationsToRelease);
 
             result.put("success", true);
             result.put("message", "Поръчката е отказана успешно и изтрита");
@@ -541,6 +648,7 @@ public class ClientOrderServiceImpl implements ClientOrderService {
 
         } catch (Exception e) {
             log.error("Error cancelling order {}: {}", orderId, e.getMessage(), e);
+            TransactionAspectSupport.currentTransactionStatus().setRollbackOnly();
             result.put("success", false);
             result.put("message", "Грешка при отказване на поръчката: " + e.getMessage());
             return result;
@@ -551,9 +659,8 @@ public class ClientOrderServiceImpl implements ClientOrderService {
     /**
      * Изчислява максималното количество което user може да поръча
      */
-    private int getMaxOrderableQuantity(Long userId, ProductEntity product) {
+    private int getMaxOrderableQuantity(ProductEntity product, Map<Long, Integer> reservedByUser) {
         int available = product.getQuantityAvailable();
-        BigDecimal reserved = orderItemRepository.getReservedQuantityByUser(userId, product.getId());
-        return available + reserved.intValue();
+        return available + reservedByUser.getOrDefault(product.getId(), 0);
     }
 }
\ No newline at end of file
@@ -0,0 +1,189 @@
+package com.yourco.warehouse.service.impl;
+
+import com.yourco.warehouse.entity.DailyOrderStatsEntity;
+import com.yourco.warehouse.entity.Order;
+import com.yourco.warehouse.repository.DailyOrderStatsRepository;
+import com.yourco.warehouse.service.DailyOrderStatsService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+/**
+ * DAILY ORDER STATS SERVICE IMPLEMENTATION
+ * ========================================
+ * Инкрементите се прилагат след commit на бизнес транзакцията в отделна
+ * кратка транзакция. Така checkout/approve не държат row lock върху реда
+ * за деня през цялото си времетраене, а rollback-ната поръчка не се брои.
+ * Ако инкремент се изгуби (crash между двете транзакции), rebuild() го възстановява -
+ * ръчно в maintenance прозорец или при стартиране на единствения нод
+ * (warehouse.stats.rebuild-today-on-startup, изключено по подразбиране).
+ *
+ * ВАЖНО: rebuild() не е синхронизиран с инкрементите. Поръчка, commit-ната преди
+ * rebuild-а, чийто after-commit инкремент пристига след него, се брои два пъти.
+ * Rebuild се пуска само при спрян трафик на поръчки (maintenance прозорец или
+ * стартиране на единствения нод). При rolling deploy на няколко нода стартовият
+ * rebuild трябва да остане изключен.
+ */
+@Service
+public class DailyOrderStatsServiceImpl implements DailyOrderStatsService {
+
+    private static final Logger log = LoggerFactory.getLogger(DailyOrderStatsServiceImpl.class);
+
+    private final DailyOrderStatsRepository statsRepository;
+    private final TransactionTemplate rollupTransaction;
+    private final boolean rebuildTodayOnStartup;
+
+    @Autowired
+    public DailyOrderStatsServiceImpl(DailyOrderStatsRepository statsRepository,
+                                      PlatformTransactionManager transactionManager,
+                                      @Value("${warehouse.stats.rebuild-today-on-startup:false}") boolean rebuildTodayOnStartup) {
+        this.statsRepository = statsRepository;
+        this.rebuildTodayOnStartup = rebuildTodayOnStartup;
+        this.rollupTransaction = new TransactionTemplate(transactionManager);
+        this.rollupTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuildTodayOnStartup() {
+        if (!rebuildTodayOnStartup) {
+            return;
+        }
+        try {
+            LocalDate today = LocalDate.now();
+            // Извикване през this заобикаля transactional proxy-то
+            rollupTransaction.executeWithoutResult(status -> rebuild(today, today));
+        } catch (Exception e) {
+            log.error("Грешка при rebuild на дневните статистики при стартиране: {}", e.getMessage());
+        }
+    }
+
+    // ==========================================
+    // ИНКРЕМЕНТАЛНИ UPDATE-И
+    // ==========================================
+
+    @Override
+    public void recordSubmitted(Order order) {
+        if (order.getSubmittedAt() == null || order.getClient() == null) {
+            return;
+        }
+        LocalDate day = order.getSubmittedAt().toLocalDate();
+        Long clientId = order.getClient().getId();
+
+        afterCommit(() -> {
+            statsRepository.addSubmitted(day, 1);
+            if (statsRepository.insertClientIfAbsent(day, clientId) > 0) {
+                statsRepository.addClient(day, 1);
+            }
+        });
+    }
+
+    @Override
+    public void recordConfirmed(LocalDateTime submittedAt, LocalDateTime confirmedAt, BigDecimal totalGross) {
+        if (confirmedAt == null) {
+            return;
+        }
+        LocalDate day = confirmedAt.toLocalDate();
+        BigDecimal revenue = totalGross != null ? totalGross : BigDecimal.ZERO;
+        long processingSeconds = submittedAt != null
+                ? Math.max(0, Duration.between(submittedAt, confirmedAt).getSeconds())
+                : 0;
+
+        afterCommit(() -> statsRepository.addConfirmed(day, revenue, processingSeconds));
+    }
+
+    @Override
+    public void recordCancelled(Order order) {
+        LocalDate day = order.getConfirmedAt() != null ? order.getConfirmedAt().toLocalDate() : LocalDate.now();
+        afterCommit(() -> statsRepository.addCancelled(day));
+    }
+
+    @Override
+    public void recordDeleted(Order order) {
+        if (order.getSubmittedAt() == null || order.getClient() == null) {
+            return;
+        }
+        LocalDate day = order.getSubmittedAt().toLocalDate();
+        Long clientId = order.getClient().getId();
+
+        afterCommit(() -> {
+            statsRepository.addSubmitted(day, -1);
+            if (statsRepository.deleteClientIfNoOrders(day, clientId,
+                    day.atStartOfDay(), day.plusDays(1).atStartOfDay()) > 0) {
+                statsRepository.addClient(day, -1);
+            }
+        });
+    }
+
+    // ==========================================
+    // READ & REBUILD
+    // ==========================================
+
+    @Override
+    @Transactional(readOnly = true)
+    public DailyOrderStatsEntity getStatsForDay(LocalDate day) {
+        return statsRepository.findById(day).orElseGet(() -> new DailyOrderStatsEntity(day));
+    }
+
+    @Override
+    @Transactional
+    public int rebuild(LocalDate fromDate, LocalDate toDate) {
+        if (fromDate == null || toDate == null || toDate.isBefore(fromDate)) {
+            throw new IllegalArgumentException("Невалиден период за rebuild");
+        }
+
+        LocalDateTime start = fromDate.atStartOfDay();
+        LocalDateTime end = toDate.plusDays(1).atStartOfDay();
+
+        statsRepository.deleteClientsBetween(fromDate, toDate);
+        statsRepository.deleteStatsBetween(fromDate, toDate);
+
+        statsRepository.rebuildClients(start, end);
+        statsRepository.rebuildSubmitted(start, end);
+        statsRepository.rebuildConfirmed(start, end);
+
+        int days = statsRepository.findByStatDateBetweenOrderByStatDateAsc(fromDate, toDate).size();
+        log.info("Daily order stats rebuilt for {} - {} ({} days with data)", fromDate, toDate, days);
+        return days;
+    }
+
+    // ==========================================
+    // PRIVATE HELPERS
+    // ==========================================
+
+    private void afterCommit(Runnable update) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    runInOwnTransaction(update);
+                }
+            });
+        } else {
+            runInOwnTransaction(update);
+        }
+    }
+
+    private void runInOwnTransaction(Runnable update) {
+        try {
+            rollupTransaction.executeWithoutResult(status -> update.run());
+        } catch (Exception e) {
+            // Rollup-ът е производни данни - не проваляме бизнес операцията
+            log.error("Грешка при обновяване на дневните статистики: {}", e.getMessage());
+        }
+    }
+}
@@ -1,19 +1,37 @@
 package com.yourco.warehouse.service.impl;
 
+import com.yourco.warehouse.components.DashboardReplayBuffer;
+import com.yourco.warehouse.components.OrderCounterRegistry;
+import com.yourco.warehouse.components.OrderTransitionEvent;
+import com.yourco.warehouse.entity.enums.OrderStatus;
 import com.yourco.warehouse.service.DashboardBroadcastService;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.event.EventListener;
 import org.springframework.messaging.simp.SimpMessagingTemplate;
 import org.springframework.messaging.simp.user.SimpUserRegistry;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
 
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * DASHBOARD BROADCAST SERVICE IMPLEMENTATION - WEBSOCKET-BASED REAL-TIME COMMUNICATION
@@ -39,6 +57,19 @@ import java.util.concurrent.atomic.AtomicInteger;
  * - Monitoring capabilities за operational visibility
  * - Performance optimization за high-throughput scenarios
  * - Security integration със Spring Security context
+ *
+ * Coalescing pipeline:
+ * - Counter update-ите в рамките на прозореца (warehouse.broadcast.coalesce-window-ms)
+ *   се свиват до последния snapshot - клиентите получават само крайното състояние
+ * - Order събитията от един tick се изпращат в един BATCH frame към /topic/dashboard/orders
+ *   (единично събитие се изпраща без обвивка, както досега)
+ * - Flush се планира при първото събитие след предишния flush, така че последното
+ *   състояние винаги се доставя; прозорец 0 изключва coalescing-а
+ *
+ * Sequenced delta protocol:
+ * - Всеки counters/orders frame носи монотонен seq за topic-а и epoch на инстанцията
+ * - Order frames се пазят в DashboardReplayBuffer - клиентът след reconnect
+ *   извиква /employer/dashboard/sync?since=N и получава само пропуснатото
  */
 @Service
 public class DashboardBroadcastServiceImpl implements DashboardBroadcastService {
@@ -53,9 +84,14 @@ public class DashboardBroadcastServiceImpl implements DashboardBroadcastService
     private static final String TOPIC_ALERTS = "/topic/dashboard/alerts";
     private static final String USER_NOTIFICATIONS = "/user/notifications";
 
+    // Максимален брой order събития в един BATCH frame
+    private static final int MAX_BATCH_EVENTS = 100;
+
     // Dependencies injected via constructor for immutability
     private final SimpMessagingTemplate messagingTemplate;
     private final SimpUserRegistry userRegistry;
+    private final DashboardReplayBuffer replayBuffer;
+    private final OrderCounterRegistry counterRegistry;
 
     // Performance и monitoring metrics
     private final AtomicInteger messagesSent = new AtomicInteger(0);
@@ -63,6 +99,18 @@ public class DashboardBroadcastServiceImpl implements DashboardBroadcastService
     private volatile LocalDateTime lastHeartbeat;
     private volatile boolean serviceHealthy = true;
 
+    // Coalescing state - последният counter snapshot и натрупаните order събития за текущия tick
+    private final long coalesceWindowMs;
+    private final ScheduledExecutorService flushExecutor;
+    private final AtomicReference<Map<String, Object>> pendingCounters = new AtomicReference<>();
+    private final ConcurrentLinkedQueue<Map<String, Object>> pendingOrderEvents = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean flushScheduled = new AtomicBoolean(false);
+
+    // Frame metrics - requested (извиквания), sent (реално изпратени frames), saved (спестени чрез coalescing)
+    private final AtomicLong framesRequested = new AtomicLong(0);
+    private final AtomicLong framesSent = new AtomicLong(0);
+    private final AtomicLong framesSaved = new AtomicLong(0);
+
     /**
      * Constructor injection осигурява immutable dependencies и улеснява testing.
      * SimpMessagingTemplate е Spring's high-level abstraction за WebSocket messaging.
@@ -70,16 +118,46 @@ public class DashboardBroadcastServiceImpl implements DashboardBroadcastService
      */
     @Autowired
     public DashboardBroadcastServiceImpl(SimpMessagingTemplate messagingTemplate,
-                                         SimpUserRegistry userRegistry) {
+                                         SimpUserRegistry userRegistry,
+                                         DashboardReplayBuffer replayBuffer,
+                                         OrderCounterRegistry counterRegistry,
+                                         MeterRegistry meterRegistry,
+                                         @Value("${warehouse.broadcast.coalesce-window-ms:200}") long coalesceWindowMs) {
         this.messagingTemplate = messagingTemplate;
         this.userRegistry = userRegistry;
+        this.replayBuffer = replayBuffer;
+        this.counterRegistry = counterRegistry;
         this.lastHeartbeat = LocalDateTime.now();
-
-        log.info("DashboardBroadcastService initialized with WebSocket/STOMP messaging");
+        this.coalesceWindowMs = Math.max(0, coalesceWindowMs);
+        this.flushExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "dashboard-broadcast-flush");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        FunctionCounter.builder("dashboard.broadcast.frames.requested", framesRequested, AtomicLong::get)
+                .description("Dashboard broadcast calls before coalescing")
+                .register(meterRegistry);
+        FunctionCounter.builder("dashboard.broadcast.frames.sent", framesSent, AtomicLong::get)
+                .description("WebSocket frames actually sent to dashboard topics")
+                .register(meterRegistry);
+        FunctionCounter.builder("dashboard.broadcast.frames.saved", framesSaved, AtomicLong::get)
+                .description("Frames saved by counter coalescing and order event batching")
+                .register(meterRegistry);
+
+        log.info("DashboardBroadcastService initialized with WebSocket/STOMP messaging (coalesce window: {} ms)",
+                this.coalesceWindowMs);
         log.info("Broadcasting destinations configured: counters={}, orders={}, alerts={}",
                 TOPIC_COUNTERS, TOPIC_ORDERS, TOPIC_ALERTS);
     }
 
+    @PreDestroy
+    public void shutdown() {
+        // Изпрати натрупаното преди спиране, за да не се изгуби последното състояние
+        flushExecutor.shutdown();
+        flush();
+    }
+
     // ==========================================
     // COUNTER UPDATES - за real-time dashboard statistics
     // ==========================================
@@ -109,13 +187,11 @@ public class DashboardBroadcastServiceImpl implements DashboardBroadcastService
             counterData.put("shippedCount", shippedCount != null ? shippedCount : 0L);
             counterData.put("timestamp", LocalDateTime.now().format(DateTimeFormatter.ISO_LOCAL_DATE_TIME));
             counterData.put("hasUrgentAlerts", urgentCount != null && urgentCount > 0);
-            counterData.put("totalActive", urgentCount + pendingCount + shippedCount);
-
-            messagingTemplate.convertAndSend(TOPIC_COUNTERS, counterData);
-            messagesSent.incrementAndGet();
+            counterData.put("totalActive", (urgentCount != null ? urgentCount : 0L)
+                    + (pendingCount != null ? pendingCount : 0L)
+                    + (shippedCount != null ? shippedCount : 0L));
 
-            log.info("Counter update broadcasted successfully to {} active connections",
-                    getActiveConnectionCount());
+            enqueueCounters(counterData);
 
         } catch (Exception e) {
             messagesFailures.incrementAndGet();
@@ -157,12 +233,9 @@ public class DashboardBroadcastServiceImpl implements DashboardBroadcastService
             eventData.put("workflowStage", mapStatusToWorkflowStage(newStatus));
 
             // Broadcast to all dashboard clients subscribed to orders topic
-            messagingTemplate.convertAndSend(TOPIC_ORDERS, eventData);
+            enqueueOrderEvent(eventData);
 
-            messagesSent.incrementAndGet();
-
-            log.info("Order status change broadcasted successfully (order: {}, connections: {})",
-                    orderId, getActiveConnectionCount());
+            log.debug("Order status change queued for broadcast (order: {})", orderId);
 
         } catch (Exception e) {
             messagesFailures.incrementAndGet();
@@ -192,12 +265,9 @@ public class DashboardBroadcastServiceImpl implements DashboardBroadcastService
 
 
             // Broadcast to all dashboard clients
-            messagingTemplate.convertAndSend(TOPIC_ORDERS, eventData);
+            enqueueOrderEvent(eventData);
 
-            messagesSent.incrementAndGet();
-
-            log.info("New order broadcasted successfully (order: {}, urgent: {}, connections: {})",
-                    orderId, eventData.get("isUrgent"), getActiveConnectionCount());
+            log.debug("New order queued for broadcast (order: {})", orderId);
 
         } catch (Exception e) {
             messagesFailures.incrementAndGet();
@@ -236,12 +306,9 @@ public class DashboardBroadcastServiceImpl implements DashboardBroadcastService
             // eventData.put("operatorId", getCurrentOperatorId());
             // eventData.put("operatorName", getCurrentOperatorName());
 
-            messagingTemplate.convertAndSend(TOPIC_ORDERS, eventData);
-
-            messagesSent.incrementAndGet();
+            enqueueOrderEvent(eventData);
 
-            log.info("Order modification broadcasted successfully (order: {}, type: {}, connections: {})",
-                    orderId, modificationType, getActiveConnectionCount());
+            log.debug("Order modification queued for broadcast (order: {}, type: {})", orderId, modificationType);
 
         } catch (Exception e) {
             messagesFailures.incrementAndGet();
@@ -480,6 +547,172 @@ public class DashboardBroadcastServiceImpl implements DashboardBroadcastService
         broadcastNewOrder(event.getOrderId(), event.getOrderData());
     }
 
+    /**
+     * Статус преходи от OrderStateMachine - broadcast-ват се след commit заедно
+     * с актуалните броячи от registry-то, така че нито контролерите, нито
+     * scheduler-ът трябва да помнят да broadcast-ват сами
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void handleOrderTransitionEvent(OrderTransitionEvent event) {
+        Map<String, Object> orderData = new HashMap<>();
+        orderData.put("orderId", event.orderId());
+        if (event.reason() != null) {
+            orderData.put("reason", event.reason());
+        }
+
+        broadcastOrderStatusChange(event.orderId(), event.to().name(), event.from().name(), orderData);
+
+        Map<OrderStatus, Long> counts = counterRegistry.snapshot();
+        broadcastCounterUpdate(
+                counts.get(OrderStatus.URGENT),
+                counts.get(OrderStatus.PENDING),
+                counts.get(OrderStatus.CONFIRMED),
+                counts.get(OrderStatus.CANCELLED),
+                counts.get(OrderStatus.SHIPPED)
+        );
+    }
+
+    // ==========================================
+    // RESYNC - delta sync след reconnect
+    // ==========================================
+
+    /**
+     * {@inheritDoc}
+     *
+     * Implementation Notes:
+     * - Клиент без epoch няма baseline - винаги получава SNAPSHOT
+     * - Frames с seq <= since, дошли и по WebSocket след reconnect, клиентът игнорира по seq
+     */
+    @Override
+    public Map<String, Object> getDeltasSince(long since, String epoch) {
+        Map<String, Object> response = new HashMap<>();
+        response.put("epoch", replayBuffer.getEpoch());
+
+        List<Map<String, Object>> frames = null;
+        if (epoch != null && epoch.equals(replayBuffer.getEpoch())) {
+            frames = replayBuffer.framesSince(TOPIC_ORDERS, since);
+        }
+
+        if (frames == null) {
+            response.put("mode", "SNAPSHOT");
+            response.put("seq", replayBuffer.getLatestSeq(TOPIC_ORDERS));
+            response.put("events", List.of());
+            log.debug("Dashboard resync since {} (epoch {}) - gap outside replay buffer, sending snapshot", since, epoch);
+        } else {
+            response.put("mode", "DELTA");
+            response.put("seq", frames.isEmpty() ? since : frames.get(frames.size() - 1).get("seq"));
+            response.put("events", frames);
+            log.debug("Dashboard resync since {} - {} missed frames", since, frames.size());
+        }
+        response.put("countersSeq", replayBuffer.getLatestSeq(TOPIC_COUNTERS));
+
+        return response;
+    }
+
+    // ==========================================
+    // COALESCING PIPELINE - counters и order events
+    // ==========================================
+
+    private void enqueueCounters(Map<String, Object> counterData) {
+        framesRequested.incrementAndGet();
+        if (coalesceWindowMs == 0) {
+            sendFrame(TOPIC_COUNTERS, counterData);
+            return;
+        }
+        // Само последният snapshot има значение - предишният непратен се заменя
+        if (pendingCounters.getAndSet(counterData) != null) {
+            framesSaved.incrementAndGet();
+        }
+        scheduleFlush();
+    }
+
+    private void enqueueOrderEvent(Map<String, Object> eventData) {
+        framesRequested.incrementAndGet();
+        if (coalesceWindowMs == 0) {
+            sendFrame(TOPIC_ORDERS, eventData);
+            return;
+        }
+        pendingOrderEvents.add(eventData);
+        scheduleFlush();
+    }
+
+    private void scheduleFlush() {
+        if (flushScheduled.compareAndSet(false, true)) {
+            try {
+                flushExecutor.schedule(this::flush, coalesceWindowMs, TimeUnit.MILLISECONDS);
+            } catch (Exception e) {
+                // Executor-ът е спрян (shutdown) - изпращаме директно
+                flushScheduled.set(false);
+                flush();
+            }
+        }
+    }
+
+    /**
+     * Изпраща натрупаното за tick-а. Флагът се сваля преди четенето, така че всяко
+     * събитие дошло след това планира нов flush - последното състояние не се губи.
+     */
+    private void flush() {
+        flushScheduled.set(false);
+
+        Map<String, Object> counters = pendingCounters.getAndSet(null);
+        if (counters != null) {
+            sendFrame(TOPIC_COUNTERS, counters);
+        }
+
+        List<Map<String, Object>> events = new ArrayList<>();
+        Map<String, Object> event;
+        while ((event = pendingOrderEvents.poll()) != null) {
+            events.add(event);
+            if (events.size() == MAX_BATCH_EVENTS) {
+                sendOrderFrame(events);
+                events = new ArrayList<>();
+            }
+        }
+        if (!events.isEmpty()) {
+            sendOrderFrame(events);
+        }
+    }
+
+    private void sendOrderFrame(List<Map<String, Object>> events) {
+        if (events.size() == 1) {
+            sendFrame(TOPIC_ORDERS, events.get(0));
+            return;
+        }
+
+        Map<String, Object> batch = new HashMap<>();
+        batch.put("eventType", "BATCH");
+        batch.put("events", events);
+        batch.put("timestamp", LocalDateTime.now().format(DateTimeFormatter.ISO_LOCAL_DATE_TIME));
+        batch.put("messageId", generateMessageId());
+
+        sendFrame(TOPIC_ORDERS, batch);
+        framesSaved.addAndGet(events.size() - 1);
+    }
+
+    /**
+     * synchronized - seq-ът се присвоява и frame-ът се изпраща атомарно,
+     * така че клиентите получават frames в реда на seq
+     */
+    private synchronized void sendFrame(String destination, Map<String, Object> payload) {
+        try {
+            replayBuffer.append(destination, payload);
+            messagingTemplate.convertAndSend(destination, payload);
+            messagesSent.incrementAndGet();
+            framesSent.incrementAndGet();
+
+            log.debug("Frame sent to {} (requested: {}, sent: {}, saved: {})",
+                    destination, framesRequested.get(), framesSent.get(), framesSaved.get());
+
+        } catch (Exception e) {
+            messagesFailures.incrementAndGet();
+            if (TOPIC_COUNTERS.equals(destination)) {
+                serviceHealthy = false;
+            }
+            log.error("Failed to send dashboard frame to {}", destination, e);
+        }
+    }
+
     // ==========================================
     // PRIVATE HELPER METHODS - internal utilities
     // ==========================================
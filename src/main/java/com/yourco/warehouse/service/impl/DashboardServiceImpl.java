@@ -1,9 +1,14 @@
 package com.yourco.warehouse.service.impl;
 
+import com.yourco.warehouse.components.OrderCounterRegistry;
+import com.yourco.warehouse.components.OrderLatencyHistograms;
+import com.yourco.warehouse.components.OrderStateMachine;
+import com.yourco.warehouse.components.OrderTransitionEvent;
 import com.yourco.warehouse.dto.ClientDTO;
 import com.yourco.warehouse.dto.DashboardDTO;
 import com.yourco.warehouse.dto.OrderDTO;
 import com.yourco.warehouse.dto.ProductAdminDTO;
+import com.yourco.warehouse.entity.DailyOrderStatsEntity;
 import com.yourco.warehouse.entity.Order;
 import com.yourco.warehouse.entity.OrderItem;
 import com.yourco.warehouse.entity.ProductEntity;
@@ -13,9 +18,11 @@ import com.yourco.warehouse.entity.enums.UserStatus;
 import com.yourco.warehouse.mapper.OrderMapper;
 import com.yourco.warehouse.repository.OrderRepository;
 import com.yourco.warehouse.repository.ProductRepository;
+import com.yourco.warehouse.service.DailyOrderStatsService;
 import com.yourco.warehouse.service.DashboardService;
 import com.yourco.warehouse.service.InventoryBroadcastService;
 import com.yourco.warehouse.service.ProductService;
+import com.yourco.warehouse.service.StockMovementService;
 import com.yourco.warehouse.service.UserService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -24,10 +31,12 @@ import org.springframework.security.web.webauthn.management.PublicKeyCredentialU
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Isolation;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.interceptor.TransactionAspectSupport;
 
 import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
-import java.time.LocalTime;
 import java.util.*;
 
 /**
@@ -41,12 +50,19 @@ public class DashboardServiceImpl implements DashboardService {
 
     private static final Logger log = LoggerFactory.getLogger(DashboardServiceImpl.class);
 
+    private static final int MAX_ORDER_PAGE_SIZE = 100;
+
     private final OrderRepository orderRepository;
     private final OrderMapper orderMapper;
     private final UserService userService;
     private final ProductRepository productRepository;
     private final InventoryBroadcastService inventoryBroadcastService;
     private final ProductService productService;
+    private final OrderCounterRegistry counterRegistry;
+    private final DailyOrderStatsService dailyOrderStatsService;
+    private final OrderLatencyHistograms latencyHistograms;
+    private final StockMovementService stockMovementService;
+    private final OrderStateMachine orderStateMachine;
 
     @Autowired
     public DashboardServiceImpl(OrderRepository orderRepository,
@@ -54,13 +70,23 @@ public class DashboardServiceImpl implements DashboardService {
                                 UserService userService,
                                 ProductRepository productRepository,
                                 InventoryBroadcastService inventoryBroadcastService,
-                                ProductService productService) {
+                                ProductService productService,
+                                OrderCounterRegistry counterRegistry,
+                                DailyOrderStatsService dailyOrderStatsService,
+                                OrderLatencyHistograms latencyHistograms,
+                                StockMovementService stockMovementService,
+                                OrderStateMachine orderStateMachine) {
         this.orderRepository = orderRepository;
         this.orderMapper = orderMapper;
         this.userService = userService;
         this.productRepository = productRepository;
         this.inventoryBroadcastService = inventoryBroadcastService;
         this.productService = productService;
+        this.counterRegistry = counterRegistry;
+        this.dailyOrderStatsService = dailyOrderStatsService;
+        this.latencyHistograms = latencyHistograms;
+        this.stockMovementService = stockMovementService;
+        this.orderStateMachine = orderStateMachine;
     }
 
     // ==========================================
@@ -74,23 +100,19 @@ public class DashboardServiceImpl implements DashboardService {
 
             DashboardDTO dashboard = new DashboardDTO();
 
-            // ✅ ПОПРАВЕНО: Правилни броячи
-            dashboard.setUrgentCount(orderRepository.countByStatus(OrderStatus.URGENT));
-            dashboard.setPendingCount(orderRepository.countByStatus(OrderStatus.PENDING));
-            dashboard.setShippedCount(orderRepository.countByStatus(OrderStatus.SHIPPED));
-            dashboard.setCompletedCount(orderRepository.countByStatus(OrderStatus.CONFIRMED));
-            dashboard.setCancelledCount(orderRepository.countByStatus(OrderStatus.CANCELLED));
+            // Броячите идват от in-memory registry - без COUNT заявки
+            applyCounters(dashboard);
 
-            dashboard.setHasUrgentAlerts(dashboard.getUrgentCount() > 0);
+            // Днешни статистики - един ред от daily_order_stats
+            DailyOrderStatsEntity today = dailyOrderStatsService.getStatsForDay(LocalDate.now());
 
-            // Днешни статистики
-            LocalDateTime startOfDay = LocalDateTime.now().with(LocalTime.MIN);
-            LocalDateTime endOfDay = LocalDateTime.now().with(LocalTime.MAX);
+            dashboard.setProcessed(today.getSubmittedCount());
+            dashboard.setRevenue(String.format("%.2f", today.getRevenue()));
+            dashboard.setAvgTime(String.format("%.1fч", today.getAverageProcessingHours()));
+            dashboard.setActiveClients(today.getClientCount());
 
-            dashboard.setProcessed(getTodayProcessedOrders(startOfDay, endOfDay));
-            dashboard.setRevenue(getTodayRevenue(startOfDay, endOfDay));
-            dashboard.setAvgTime("0.0ч");
-            dashboard.setActiveClients(getTodayActiveClients(startOfDay, endOfDay));
+            // p50/p90/p99 по етап от in-memory histogram-ите (секунди)
+            dashboard.setProcessingTimes(latencyHistograms.snapshot());
 
             dashboard.setMessage("Dashboard данните са заредени успешно");
 
@@ -110,13 +132,7 @@ public class DashboardServiceImpl implements DashboardService {
 
             DashboardDTO dashboard = new DashboardDTO();
 
-            dashboard.setUrgentCount(orderRepository.countByStatus(OrderStatus.URGENT));
-            dashboard.setPendingCount(orderRepository.countByStatus(OrderStatus.PENDING));
-            dashboard.setCompletedCount(orderRepository.countByStatus(OrderStatus.CONFIRMED));
-            dashboard.setCancelledCount(orderRepository.countByStatus(OrderStatus.CANCELLED));
-            dashboard.setShippedCount(orderRepository.countByStatus(OrderStatus.SHIPPED));
-
-            dashboard.setHasUrgentAlerts(dashboard.getUrgentCount() > 0);
+            applyCounters(dashboard);
             dashboard.setMessage("Броячите са обновени успешно");
 
             log.debug("Counters updated: urgent={}, pending={}, completed={}, cancelled={}, shipped={}",
@@ -133,22 +149,37 @@ public class DashboardServiceImpl implements DashboardService {
     }
 
     @Override
-    @Transactional
     public DashboardDTO getOrdersByStatus(OrderStatus status, int limit) {
+        return getOrdersPageByStatus(status, null, limit);
+    }
+
+    @Override
+    public DashboardDTO getOrdersPageByStatus(OrderStatus status, String cursor, int limit) {
+        // Cursor-ът се валидира извън try - невалиден cursor е грешка на клиента
+        OrderPageCursor after = cursor != null && !cursor.isBlank() ? OrderPageCursor.decode(cursor) : null;
+        int pageSize = Math.max(1, Math.min(limit, MAX_ORDER_PAGE_SIZE));
+
         try {
-            log.debug("Fetching orders by status: {} (limit: {})", status, limit);
+            log.debug("Fetching orders page by status: {} (limit: {}, cursor: {})", status, pageSize, cursor);
 
-            List<Order> orders = orderRepository.findByStatusOrderBySubmittedAtDesc(status)
-                    .stream()
-                    .limit(limit)
-                    .toList();
+            // Взимаме един ред повече за да знаем дали има следваща страница
+            List<Object[]> rows = after == null
+                    ? orderRepository.findOrderPageByStatus(status.name(), pageSize + 1)
+                    : orderRepository.findOrderPageByStatusAfter(status.name(), after.submittedAt(), after.id(), pageSize + 1);
 
-            List<OrderDTO> orderDTOs = orders.stream()
-                    .map(orderMapper::toDTO)
+            boolean hasMore = rows.size() > pageSize;
+            List<OrderDTO> orderDTOs = rows.stream()
+                    .limit(pageSize)
+                    .map(orderMapper::toSummaryDTO)
                     .toList();
 
             DashboardDTO dashboard = new DashboardDTO();
             dashboard.setOrders(orderDTOs);
+            dashboard.setHasMore(hasMore);
+            if (hasMore) {
+                OrderDTO last = orderDTOs.get(orderDTOs.size() - 1);
+                dashboard.setNextCursor(new OrderPageCursor(last.getSubmittedAt(), last.getId()).encode());
+            }
             dashboard.setMessage(String.format("Намерени са %d поръчки със статус %s",
                     orderDTOs.size(), status.name()));
 
@@ -387,53 +418,52 @@ public class DashboardServiceImpl implements DashboardService {
     @Transactional
     public DashboardDTO approveOrderWithCorrections(Long orderId, String operatorNote) {
         try {
-            Optional<Order> orderOpt = orderRepository.findById(orderId);
-            if (orderOpt.isEmpty()) {
-                return new DashboardDTO("Поръчката не е намерена");
-            }
-
-            Order order = orderOpt.get();
-
-            if (order.getStatus() != OrderStatus.PENDING && order.getStatus() != OrderStatus.URGENT) {
-                return new DashboardDTO("Поръчката не може да бъде одобрена в текущия статус: " + order.getStatus());
+            // Compare-and-set PENDING/URGENT -> CONFIRMED по id - без SELECT на поръчката;
+            // при конкурентно одобрение/отказ само един печели
+            OrderTransitionEvent event;
+            try {
+                event = orderStateMachine.transition(orderId, OrderStatus.CONFIRMED, operatorNote);
+            } catch (IllegalStateException e) {
+                TransactionAspectSupport.currentTransactionStatus().setRollbackOnly();
+                return orderRepository.existsById(orderId)
+                        ? new DashboardDTO("Поръчката не може да бъде одобрена в текущия си статус")
+                        : new DashboardDTO("Поръчката не е намерена");
+            }
+
+            // Количества по продукт + полетата за статистиките с една заявка
+            Map<Long, Integer> quantities = new TreeMap<>();
+            LocalDateTime submittedAt = null;
+            BigDecimal totalGross = BigDecimal.ZERO;
+            boolean hasModifications = false;
+            for (Object[] row : orderRepository.findApprovalRows(orderId)) {
+                if (row[0] != null) {
+                    quantities.put(((Number) row[0]).longValue(), ((Number) row[1]).intValue());
+                }
+                submittedAt = toLocalDateTime(row[2]);
+                totalGross = row[3] != null ? (BigDecimal) row[3] : BigDecimal.ZERO;
+                hasModifications = row[4] != null && toBoolean(row[4]);
             }
 
-            // ✅ Потвърди продажбата при одобрение
-            for (OrderItem item : order.getItems()) {
-                ProductEntity product = productRepository.findById(item.getProduct().getId())
-                        .orElseThrow(() -> new IllegalStateException("Продукт не е намерен: " + item.getProduct().getId()));
-
-                int quantity = item.getQty().intValue();
-                product.confirmSale(quantity);
-                productRepository.save(product);
+            // ✅ Потвърди продажбата при одобрение - всички продукти с един lock и един batch
+            List<ProductAdminDTO> affectedProducts = stockMovementService.confirmSale(orderId, quantities);
 
-                log.debug("Confirmed sale for product {}: {} units. Available: {}, Reserved: {}",
-                        product.getName(), quantity, product.getQuantityAvailable(), product.getQuantityReserved());
-
-                // ✅ НОВО - Broadcast промяната в инвентара
+            // ✅ НОВО - Broadcast промяната в инвентара
+            for (ProductAdminDTO product : affectedProducts) {
                 try {
-                    ProductAdminDTO productDTO = ProductAdminDTO.from(product);
-                    inventoryBroadcastService.broadcastProductUpdate(productDTO, "confirmed");
-                    log.debug("Broadcasted inventory update for product: {}", product.getName());
+                    inventoryBroadcastService.broadcastProductUpdate(product, "confirmed");
                 } catch (Exception e) {
                     log.warn("Failed to broadcast product update for {}: {}", product.getName(), e.getMessage());
                 }
             }
 
-            // Одобри поръчката
-            order.setStatus(OrderStatus.CONFIRMED);
-            order.setConfirmedAt(LocalDateTime.now());
-
+            // Само бележката и флагът - статусът и confirmed_at вече са записани от CAS-а
             if (operatorNote != null && !operatorNote.trim().isEmpty()) {
-                String existingNote = order.getModificationNote();
-                String finalNote = existingNote != null ?
-                        existingNote + "\n\nБележка при одобрение: " + operatorNote :
-                        "Бележка при одобрение: " + operatorNote;
-                order.setModificationNote(finalNote);
-                order.setHasModifications(true);
+                orderRepository.appendModificationNote(orderId, "Бележка при одобрение: " + operatorNote, "\n\n");
+                hasModifications = true;
             }
 
-            orderRepository.save(order);
+            dailyOrderStatsService.recordConfirmed(submittedAt, event.occurredAt(), totalGross);
+            latencyHistograms.recordConfirmed(submittedAt, event.occurredAt());
 
             // ✅ НОВО - Broadcast обновени статистики
             try {
@@ -446,7 +476,7 @@ public class DashboardServiceImpl implements DashboardService {
             DashboardDTO response = new DashboardDTO();
             response.setSuccess(true);
 
-            if (order.getHasModifications() != null && order.getHasModifications()) {
+            if (hasModifications) {
                 response.setMessage("Поръчката е одобрена с корекции. Клиентът ще получи уведомление и детайли за корекцията");
             } else {
                 response.setMessage("Поръчката е одобрена успешно!");
@@ -456,6 +486,8 @@ public class DashboardServiceImpl implements DashboardService {
 
         } catch (Exception e) {
             log.error("Грешка при одобряване на поръчка {}: {}", orderId, e.getMessage());
+            // Грешката се връща като DTO - преходът и наличностите не трябва да се commit-ват
+            TransactionAspectSupport.currentTransactionStatus().setRollbackOnly();
             return new DashboardDTO("Грешка при одобряване: " + e.getMessage());
         }
     }
@@ -483,22 +515,16 @@ public class DashboardServiceImpl implements DashboardService {
                 return new DashboardDTO("Поръчката ви вече е потвърдена и не може да бъде отказана");
             }
 
-            // ✅ НОВО: Освобождава резервациите за всички артикули
-            for (OrderItem item : order.getItems()) {
-                ProductEntity product = item.getProduct();
-                Integer quantity = item.getQty().intValue();
+            // Compare-and-set PENDING/URGENT -> CANCELLED - вече отказана или изпратена поръчка не се отказва повторно
+            orderStateMachine.transition(order, OrderStatus.CANCELLED, rejectionReason);
 
-                // Освобождаваме резервацията
-                product.releaseReservation(quantity);
-                productRepository.save(product);
-            }
+            // ✅ НОВО: Освобождава резервациите за всички артикули - един lock и един batch
+            stockMovementService.releaseReservations(order);
 
-            // Отказва поръчката
-            order.setStatus(OrderStatus.CANCELLED);
             order.setModificationNote("Отказана: " + rejectionReason);
-            order.setConfirmedAt(LocalDateTime.now());
 
             orderRepository.save(order);
+            dailyOrderStatsService.recordCancelled(order);
 
             // ✅ НОВО: Broadcast обновени статистики за инвентара
             try {
@@ -516,6 +542,7 @@ public class DashboardServiceImpl implements DashboardService {
 
         } catch (Exception e) {
             log.error("Грешка при отказване на поръчка {}", orderId, e);
+            TransactionAspectSupport.currentTransactionStatus().setRollbackOnly();
             return new DashboardDTO("Грешка при отказване на поръчката: " + e.getMessage());
         }
     }
@@ -629,6 +656,30 @@ public class DashboardServiceImpl implements DashboardService {
     // PRIVATE HELPER METHODS
     // ==========================================
 
+    private void applyCounters(DashboardDTO dashboard) {
+        Map<OrderStatus, Long> counts = counterRegistry.snapshot();
+        dashboard.setUrgentCount(counts.get(OrderStatus.URGENT));
+        dashboard.setPendingCount(counts.get(OrderStatus.PENDING));
+        dashboard.setCompletedCount(counts.get(OrderStatus.CONFIRMED));
+        dashboard.setCancelledCount(counts.get(OrderStatus.CANCELLED));
+        dashboard.setShippedCount(counts.get(OrderStatus.SHIPPED));
+        dashboard.setHasUrgentAlerts(dashboard.getUrgentCount() > 0);
+    }
+
+    private static LocalDateTime toLocalDateTime(Object value) {
+        if (value instanceof java.sql.Timestamp timestamp) {
+            return timestamp.toLocalDateTime();
+        }
+        return value instanceof LocalDateTime dateTime ? dateTime : null;
+    }
+
+    private static boolean toBoolean(Object value) {
+        if (value instanceof Boolean flag) {
+            return flag;
+        }
+        return value instanceof Number number && number.intValue() != 0;
+    }
+
     private void recalculateOrderTotals(Order order) {
         BigDecimal totalNet = BigDecimal.ZERO;
 
@@ -646,46 +697,6 @@ public class DashboardServiceImpl implements DashboardService {
         order.setTotalGross(totalGross);
     }
 
-    private Integer getTodayProcessedOrders(LocalDateTime startOfDay, LocalDateTime endOfDay) {
-        try {
-            // Всички поръчки създадени днес (независимо от статуса)
-            List<Order> todayOrders = orderRepository.findBySubmittedAtBetween(startOfDay, endOfDay);
-            return todayOrders.size();
-        } catch (Exception e) {
-            return 0;
-        }
-    }
-
-    private String getTodayRevenue(LocalDateTime startOfDay, LocalDateTime endOfDay) {
-        try {
-            // Директно само потвърдените поръчки днес - по-бързо!
-            List<Order> todayConfirmed = orderRepository.findByStatusAndConfirmedAtBetween(
-                    OrderStatus.CONFIRMED, startOfDay, endOfDay);
-
-            BigDecimal totalRevenue = todayConfirmed.stream()
-                    .map(Order::getTotalGross)
-                    .reduce(BigDecimal.ZERO, BigDecimal::add);
-
-            return String.format("%.2f", totalRevenue);
-        } catch (Exception e) {
-            return "0.00";
-        }
-    }
-
-    private Integer getTodayActiveClients(LocalDateTime startOfDay, LocalDateTime endOfDay) {
-        try {
-            // Всички поръчки създадени днес
-            List<Order> todayOrders = orderRepository.findBySubmittedAtBetween(startOfDay, endOfDay);
-            long uniqueClients = todayOrders.stream()
-                    .map(order -> order.getClient().getId())
-                    .distinct()
-                    .count();
-            return Math.toIntExact(uniqueClients);
-        } catch (Exception e) {
-            return 0;
-        }
-    }
-
     @Override
     public DashboardDTO validateInventoryForOrderChanges(Long orderId, List<Map<String, Object>> changes) {
         try {
@@ -833,4 +844,27 @@ public class DashboardServiceImpl implements DashboardService {
             return new ClientDTO(0L, "error", "Грешка при зареждане", "", "", "", UserStatus.ACTIVE);
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Keyset cursor (submittedAt, id) за списъците с поръчки - opaque за клиента
+     */
+    private record OrderPageCursor(LocalDateTime submittedAt, Long id) {
+
+        String encode() {
+            String raw = submittedAt + "|" + id;
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+        }
+
+        static OrderPageCursor decode(String cursor) {
+            try {
+                String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+                int separator = raw.lastIndexOf('|');
+                return new OrderPageCursor(
+                        LocalDateTime.parse(raw.substring(0, separator)),
+                        Long.parseLong(raw.substring(separator + 1)));
+            } catch (Exception e) {
+                throw new IllegalArgumentException("Невалиден cursor: " + cursor);
+            }
+        }
+    }
+}
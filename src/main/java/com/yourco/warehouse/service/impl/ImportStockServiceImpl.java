@@ -4,6 +4,7 @@ import com.yourco.warehouse.dto.importSystem.*;
 import com.yourco.warehouse.entity.*;
 import com.yourco.warehouse.entity.enums.*;
 import com.yourco.warehouse.repository.*;
+import com.yourco.warehouse.service.BarcodeService;
 import com.yourco.warehouse.service.FileParserService;
 import com.yourco.warehouse.service.ImportStockService;
 import com.yourco.warehouse.service.ImportValidationService;
@@ -38,6 +39,7 @@ public class ImportStockServiceImpl implements ImportStockService {
     private final ImportEventItemRepository importEventItemRepository;
     private final PurchasePriceHistoryRepository priceHistoryRepository;
     private final InventoryAdjustmentRepository adjustmentRepository;
+    private final BarcodeService barcodeService;
 
     // In-memory storage за import sessions
     // За production с множество сървъри използвай Redis или database
@@ -52,7 +54,8 @@ public class ImportStockServiceImpl implements ImportStockService {
             ImportEventRepository importEventRepository,
             ImportEventItemRepository importEventItemRepository,
             PurchasePriceHistoryRepository priceHistoryRepository,
-            InventoryAdjustmentRepository adjustmentRepository) {
+            InventoryAdjustmentRepository adjustmentRepository,
+            BarcodeService barcodeService) {
         this.fileParserService = fileParserService;
         this.validationService = validationService;
         this.pricingService = pricingService;
@@ -61,6 +64,7 @@ public class ImportStockServiceImpl implements ImportStockService {
         this.importEventItemRepository = importEventItemRepository;
         this.priceHistoryRepository = priceHistoryRepository;
         this.adjustmentRepository = adjustmentRepository;
+        this.barcodeService = barcodeService;
     }
 
     @Override
@@ -332,6 +336,21 @@ public class ImportStockServiceImpl implements ImportStockService {
                     .filter(ValidatedItemDTO::isSelected)
                     .collect(Collectors.toList());
 
+            // Съществуващите продукти се заключват наведнъж във възходящ ред на id (като
+            // checkout-а) - количеството им се записва абсолютно, а резервациите и
+            // write-behind на StockReservationLedger го променят относително.
+            // processExistingProduct получава вече заключените инстанции от сесията.
+            List<Long> existingIds = selectedItems.stream()
+                    .filter(item -> !item.isNewProduct())
+                    .map(ValidatedItemDTO::getExistingProductId)
+                    .filter(Objects::nonNull)
+                    .distinct()
+                    .sorted()
+                    .collect(Collectors.toList());
+            if (!existingIds.isEmpty()) {
+                productRepository.findAllByIdInForUpdate(existingIds);
+            }
+
             for (ValidatedItemDTO item : selectedItems) {
                 if (item.isNewProduct()) {
                     processNewProduct(item, importEvent);
@@ -378,6 +397,9 @@ public class ImportStockServiceImpl implements ImportStockService {
 
         product = productRepository.save(product);
 
+        // Баркодовете от файла - за сканиране по време на товарене
+        barcodeService.attachBarcodes(product, item.getBarcode(), importEvent);
+
         // Създаваме price history запис
         PurchasePriceHistoryEntity priceHistory = new PurchasePriceHistoryEntity();
         priceHistory.setProduct(product);
@@ -448,6 +470,9 @@ public class ImportStockServiceImpl implements ImportStockService {
 
         productRepository.save(product);
 
+        // Нови баркодове (напр. нова опаковка) се добавят към съществуващите
+        barcodeService.attachBarcodes(product, item.getBarcode(), importEvent);
+
         // Създаваме price history запис
         PurchasePriceHistoryEntity priceHistory = new PurchasePriceHistoryEntity();
         priceHistory.setProduct(product);
@@ -53,7 +53,9 @@ public class InventoryAdjustmentServiceImpl implements InventoryAdjustmentServic
     public ProductAdminDTO createAdjustment(InventoryAdjustmentDTO dto, String username) {
         log.info("Creating adjustment for product: {}, type: {}", dto.getProductId(), dto.getAdjustmentType());
 
-        ProductEntity product = productRepository.findById(dto.getProductId())
+        // Заключен ред - количеството се записва абсолютно, а write-behind на
+        // StockReservationLedger и checkout-ите го променят относително
+        ProductEntity product = productRepository.findByIdWithLock(dto.getProductId())
                 .orElseThrow(() -> new IllegalArgumentException("Продуктът не е намерен"));
 
         int currentQty = product.getQuantityAvailable() != null ? product.getQuantityAvailable() : 0;
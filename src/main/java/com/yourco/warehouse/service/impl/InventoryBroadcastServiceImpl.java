@@ -1,16 +1,19 @@
 package com.yourco.warehouse.service.impl;
 
+import com.yourco.warehouse.components.CatalogChangedEvent;
 import com.yourco.warehouse.dto.InventoryAdjustmentDTO;
 import com.yourco.warehouse.dto.ProductAdminDTO;
 import com.yourco.warehouse.dto.ProductStatsDTO;
 import com.yourco.warehouse.service.InventoryBroadcastService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.context.event.EventListener;
 import org.springframework.messaging.simp.SimpMessagingTemplate;
 import org.springframework.stereotype.Service;
 
 import java.time.LocalDateTime;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -27,6 +30,9 @@ public class InventoryBroadcastServiceImpl implements InventoryBroadcastService
     private static final String TOPIC_ADJUSTMENTS = "/topic/inventory/adjustments";
     private static final String TOPIC_STATS = "/topic/inventory/stats";
 
+    // Публичен topic за каталога - абонират се всички логнати клиенти
+    private static final String TOPIC_CATALOG_AVAILABILITY = "/topic/catalog/availability";
+
     private final SimpMessagingTemplate messagingTemplate;
 
     public InventoryBroadcastServiceImpl(SimpMessagingTemplate messagingTemplate) {
@@ -86,4 +92,38 @@ public class InventoryBroadcastServiceImpl implements InventoryBroadcastService
             log.error("Failed to broadcast stats", e);
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Payload: {revision, epoch, availability: [{id, available, reserved}], changed: [id], removed: [id]}
+     * Клиентът прилага наличностите директно, а за changed/removed или пропусната ревизия
+     * дозарежда /api/products/changes?since=
+     */
+    @Override
+    @EventListener
+    public void broadcastCatalogChanges(CatalogChangedEvent event) {
+        try {
+            List<Map<String, Object>> availability = event.updated().stream()
+                    .map(product -> {
+                        Map<String, Object> delta = new HashMap<>();
+                        delta.put("id", product.getId());
+                        delta.put("available", product.getQuantityAvailable());
+                        delta.put("reserved", product.getQuantityReserved());
+                        return delta;
+                    })
+                    .toList();
+
+            Map<String, Object> payload = new HashMap<>();
+            payload.put("revision", event.revision());
+            payload.put("epoch", event.epoch());
+            payload.put("availability", availability);
+            payload.put("changed", event.detailsChanged());
+            payload.put("removed", event.deactivated());
+
+            messagingTemplate.convertAndSend(TOPIC_CATALOG_AVAILABILITY, payload);
+
+            log.debug("Catalog revision {} broadcasted ({} products)", event.revision(), availability.size());
+        } catch (Exception e) {
+            log.error("Failed to broadcast catalog changes", e);
+        }
+    }
+}
@@ -1,5 +1,7 @@
 package com.yourco.warehouse.service.impl;
 
+import com.yourco.warehouse.components.OrderLatencyHistograms;
+import com.yourco.warehouse.components.OrderStateMachine;
 import com.yourco.warehouse.dto.ProductAdminDTO;
 import com.yourco.warehouse.entity.*;
 import com.yourco.warehouse.entity.enums.OrderStatus;
@@ -49,6 +51,8 @@ public class OrderLoadingServiceImpl implements OrderLoadingService {
     private final ProductRepository productRepository;
     private final InventoryBroadcastService broadcastService;
     private final ProductService productService;
+    private final OrderLatencyHistograms latencyHistograms;
+    private final OrderStateMachine orderStateMachine;
 
     @Autowired
     public OrderLoadingServiceImpl(OrderRepository orderRepository,
@@ -57,7 +61,9 @@ public class OrderLoadingServiceImpl implements OrderLoadingService {
                                    UserRepository userRepository,
                                    ProductRepository productRepository,
                                    InventoryBroadcastService broadcastService,
-                                   ProductService productService) {
+                                   ProductService productService,
+                                   OrderLatencyHistograms latencyHistograms,
+                                   OrderStateMachine orderStateMachine) {
         this.orderRepository = orderRepository;
         this.shippedProcessRepository = shippedProcessRepository;
         this.userService = userService;
@@ -65,6 +71,8 @@ public class OrderLoadingServiceImpl implements OrderLoadingService {
         this.productRepository = productRepository;
         this.broadcastService = broadcastService;
         this.productService = productService;
+        this.latencyHistograms = latencyHistograms;
+        this.orderStateMachine = orderStateMachine;
     }
 
     @Override
@@ -94,6 +102,7 @@ public class OrderLoadingServiceImpl implements OrderLoadingService {
             order.setTruckNumber(truckNumber);
             order.setShippingStartedAt(LocalDateTime.now());
             orderRepository.save(order);
+            latencyHistograms.recordShippingStarted(order);
 
             return Map.of(
                     "success", true,
@@ -168,20 +177,14 @@ public class OrderLoadingServiceImpl implements OrderLoadingService {
                 throw new RuntimeException("Не всички артикули са маркирани като заредени");
             }
 
-            // Намери поръчката за финализиране
-            Order order = orderRepository.findById(session.getOrderId())
-                    .orElseThrow(() -> new RuntimeException("Поръчката не е намерена"));
-
             // Изчисли времето за товарене
             LocalDateTime startTime = session.getStartedAt();
             LocalDateTime endTime = LocalDateTime.now();
             long durationSeconds = Duration.between(startTime, endTime).getSeconds();
 
-            // Финализирай поръчката като SHIPPED
-            order.setStatus(OrderStatus.SHIPPED);
-            order.setShippedAt(endTime);
-            order.setShippingDurationSeconds((int) durationSeconds);
-            orderRepository.save(order);
+            // Финализирай поръчката като SHIPPED - CONFIRMED -> SHIPPED без зареждане на поръчката
+            orderStateMachine.ship(session.getOrderId(), (int) durationSeconds);
+            latencyHistograms.recordShipped(durationSeconds);
 
 
             // ✅ НОВО - Обнови статистиките в admin панела
@@ -347,19 +350,15 @@ public class OrderLoadingServiceImpl implements OrderLoadingService {
                 throw new RuntimeException("Само " + session.getEmployeeUsername() + " или администратор може да прекрати товаренето");
             }
 
-            // Намери поръчката
-            Order order = orderRepository.findById(session.getOrderId())
-                    .orElseThrow(() -> new RuntimeException("Поръчката не е намерена"));
-
             // Изчисли времето на сесията
             LocalDateTime startTime = session.getStartedAt();
             LocalDateTime endTime = LocalDateTime.now();
             long durationSeconds = Duration.between(startTime, endTime).getSeconds();
 
-            // Върни поръчката в CONFIRMED статус
-            order.setStatus(OrderStatus.CONFIRMED);
-            order.setTruckNumber(null); // Изчистваме камиона
-            orderRepository.save(order);
+            // Поръчката остава CONFIRMED през цялото товарене - изчистваме само камиона
+            if (orderRepository.clearTruckNumber(session.getOrderId()) == 0) {
+                throw new RuntimeException("Поръчката не е намерена или вече не е в статус CONFIRMED");
+            }
 
             // Логвай операцията
             log.warn("Loading cancelled for order {} by {} (session owner: {}). Reason: {}. Duration: {}s",
@@ -1,5 +1,6 @@
 package com.yourco.warehouse.service.impl;
 
+import com.yourco.warehouse.components.CatalogSnapshotHolder;
 import com.yourco.warehouse.dto.ProductAdminDTO;
 import com.yourco.warehouse.dto.ProductStatsDTO;
 import com.yourco.warehouse.entity.InventoryAdjustmentEntity;
@@ -17,6 +18,10 @@ import java.math.BigDecimal;
 import java.math.RoundingMode;
 import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 @Service
 public class ProductServiceImpl implements ProductService {
@@ -24,10 +29,15 @@ public class ProductServiceImpl implements ProductService {
     private static final Logger log = LoggerFactory.getLogger(ProductServiceImpl.class);
     private final ProductRepository productRepository;
     private final InventoryAdjustmentRepository inventoryAdjustmentRepository;
+    private final CatalogSnapshotHolder catalogSnapshot;
 
-    public ProductServiceImpl(ProductRepository productRepository, InventoryAdjustmentRepository inventoryAdjustmentRepository) {
+    private static final int ADMIN_SEARCH_LIMIT = 1000;
+
+    public ProductServiceImpl(ProductRepository productRepository, InventoryAdjustmentRepository inventoryAdjustmentRepository,
+                              CatalogSnapshotHolder catalogSnapshot) {
         this.productRepository = productRepository;
         this.inventoryAdjustmentRepository = inventoryAdjustmentRepository;
+        this.catalogSnapshot = catalogSnapshot;
     }
 
     // ===== СЪЩЕСТВУВАЩ МЕТОД =====
@@ -48,8 +58,14 @@ public class ProductServiceImpl implements ProductService {
 
         // Логика за филтриране - МИНИМАЛЕН КОД, МАКСИМАЛНА ЕФЕКТИВНОСТ
         if (search != null && !search.trim().isEmpty()) {
-            // Search в име или SKU
-            entities = productRepository.searchActiveProducts(search);
+            // Search в SKU, име и описание през in-memory index-а, после entities по id в реда на класирането
+            List<Long> ids = catalogSnapshot.searchIds(search, ADMIN_SEARCH_LIMIT);
+            Map<Long, ProductEntity> byId = productRepository.findAllById(ids).stream()
+                    .collect(Collectors.toMap(ProductEntity::getId, Function.identity()));
+            entities = ids.stream()
+                    .map(byId::get)
+                    .filter(Objects::nonNull)
+                    .toList();
             // Допълнителни филтри ако има
             if (category != null) {
                 entities = entities.stream()
@@ -128,8 +144,8 @@ public class ProductServiceImpl implements ProductService {
     public ProductAdminDTO updateProduct(Long id, ProductAdminDTO dto) {
         log.info("Updating product: {}", id);
 
-        // Намираме съществуващия
-        ProductEntity existing = productRepository.findById(id)
+        // Намираме съществуващия - заключен, защото количествата се записват абсолютно
+        ProductEntity existing = productRepository.findByIdWithLock(id)
                 .orElseThrow(() -> new IllegalArgumentException("Продуктът не е намерен: " + id));
 
         // Проверка дали SKU се променя и дали новият не е зает
@@ -259,7 +275,7 @@ public class ProductServiceImpl implements ProductService {
                 .reduce(BigDecimal.ZERO, BigDecimal::add);
 
         // Categories count
-        long categoriesCount = productRepository.findDistinctCategories().size();
+        long categoriesCount = catalogSnapshot.current().metadata().categories().size();
 
         log.debug("Stats calculated - total: {}, active: {}, lowStock: {}, outOfStock: {}, " +
                         "valueWithoutVat: {}, valueWithVat: {}, categories: {}",
@@ -282,15 +298,13 @@ public class ProductServiceImpl implements ProductService {
 
 
     @Override
-    @Transactional(readOnly = true)
     public List<String> getAllCategories() {
-        return productRepository.findDistinctCategories();
+        return catalogSnapshot.current().metadata().categories();
     }
 
     @Override
-    @Transactional(readOnly = true)
     public List<String> getAllUnits() {
-        return productRepository.findAllActiveUnits();
+        return catalogSnapshot.current().metadata().units();
     }
 
     @Override
@@ -299,7 +313,7 @@ public class ProductServiceImpl implements ProductService {
         log.info("Adjusting inventory for product: {}, type: {}, quantity: {}",
                 productId, type, quantity);
 
-        ProductEntity entity = productRepository.findById(productId)
+        ProductEntity entity = productRepository.findByIdWithLock(productId)
                 .orElseThrow(() -> new IllegalArgumentException("Продуктът не е намерен: " + productId));
 
         int currentQty = entity.getQuantityAvailable() != null ? entity.getQuantityAvailable() : 0;
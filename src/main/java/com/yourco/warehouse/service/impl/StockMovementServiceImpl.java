@@ -0,0 +1,235 @@
+package com.yourco.warehouse.service.impl;
+
+import com.yourco.warehouse.components.StockReservationLedger;
+import com.yourco.warehouse.dto.ProductAdminDTO;
+import com.yourco.warehouse.entity.Order;
+import com.yourco.warehouse.entity.OrderItem;
+import com.yourco.warehouse.entity.ProductEntity;
+import com.yourco.warehouse.repository.ProductRepository;
+import com.yourco.warehouse.service.StockMovementService;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.LockModeType;
+import org.hibernate.Session;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.hibernate.persister.entity.EntityPersister;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.function.BiConsumer;
+
+/**
+ * STOCK MOVEMENT SERVICE IMPLEMENTATION
+ * =====================================
+ * 1. Количествата се агрегират по продукт (TreeMap - сортирани по id)
+ * 2. Една SELECT ... FOR UPDATE заявка заключва всички продукти във възходящ ред
+ *    на id - две конкурентни поръчки с общи продукти не могат да се deadlock-нат.
+ *    Продукти, заредени в persistence context-а преди lock-а (напр. fetch join с
+ *    readOnly hint), се refresh-ват след него - иначе промените се смятат върху
+ *    количества отпреди lock-а
+ * 3. Промените минават през domain методите на ProductEntity (валидацията остава там)
+ * 4. Hibernate flush-ва UPDATE-ите като един JDBC batch (hibernate.jdbc.batch_size)
+ *
+ * При включен StockReservationLedger стъпки 2-4 се заменят с атомарни операции в
+ * паметта; products се обновява от write-behind-а на ledger-а.
+ */
+@Service
+public class StockMovementServiceImpl implements StockMovementService {
+
+    private static final Logger log = LoggerFactory.getLogger(StockMovementServiceImpl.class);
+
+    private final ProductRepository productRepository;
+    private final StockReservationLedger reservationLedger;
+    private final EntityManager entityManager;
+
+    @Autowired
+    public StockMovementServiceImpl(ProductRepository productRepository,
+                                    StockReservationLedger reservationLedger,
+                                    EntityManager entityManager) {
+        this.productRepository = productRepository;
+        this.reservationLedger = reservationLedger;
+        this.entityManager = entityManager;
+    }
+
+    @Override
+    @Transactional
+    public List<ProductEntity> lockForReservation(Collection<Long> productIds) {
+        List<Long> ids = new ArrayList<>(new TreeSet<>(productIds));
+        if (ids.isEmpty()) {
+            return List.of();
+        }
+        List<ProductEntity> products = reservationLedger.isEnabled()
+                ? productRepository.findAllByIdInOrderById(ids)
+                : lockProducts(ids);
+        if (products.size() != ids.size()) {
+            throw new IllegalStateException("Някои продукти вече не съществуват");
+        }
+        return products;
+    }
+
+    @Override
+    @Transactional
+    public void reserve(List<ProductEntity> products, Map<Long, Integer> quantities) {
+        if (reservationLedger.isEnabled()) {
+            reservationLedger.reserve(quantities);
+            return;
+        }
+        applyToLocked(products, quantities, ProductEntity::reserveQuantity);
+    }
+
+    @Override
+    @Transactional
+    public void release(List<ProductEntity> products, Map<Long, Integer> quantities) {
+        if (reservationLedger.isEnabled()) {
+            reservationLedger.release(quantities);
+            return;
+        }
+        applyToLocked(products, quantities, ProductEntity::releaseReservation);
+    }
+
+    @Override
+    @Transactional
+    public List<ProductAdminDTO> confirmSale(Long orderId, Map<Long, Integer> quantities) {
+        if (quantities.isEmpty()) {
+            return List.of();
+        }
+        List<Long> ids = new ArrayList<>(new TreeSet<>(quantities.keySet()));
+        if (reservationLedger.isEnabled()) {
+            Map<Long, StockReservationLedger.StockLevel> levels = reservationLedger.confirmSale(quantities);
+            return toDTOs(productRepository.findAllByIdInOrderById(ids), levels);
+        }
+        return ProductAdminDTO.from(applyMovement(orderId, ids, quantities, ProductEntity::confirmSale));
+    }
+
+    @Override
+    @Transactional
+    public List<ProductAdminDTO> releaseReservations(Order order) {
+        if (reservationLedger.isEnabled()) {
+            Map<Long, Integer> quantities = quantitiesOf(order);
+            return toDTOs(productsOf(order), reservationLedger.release(quantities));
+        }
+        Map<Long, Integer> quantities = quantitiesOf(order);
+        return ProductAdminDTO.from(applyMovement(order.getId(), new ArrayList<>(quantities.keySet()),
+                quantities, ProductEntity::releaseReservation));
+    }
+
+    // ==========================================
+    // PRIVATE HELPERS
+    // ==========================================
+
+    /**
+     * @param ids ключовете на quantities във възходящ ред
+     */
+    private List<ProductEntity> applyMovement(Long orderId, List<Long> ids, Map<Long, Integer> quantities,
+                                              BiConsumer<ProductEntity, Integer> movement) {
+        if (ids.isEmpty()) {
+            return List.of();
+        }
+
+        List<ProductEntity> products = lockProducts(ids);
+        if (products.size() != ids.size()) {
+            throw new IllegalStateException("Продукт от поръчка " + orderId + " не е намерен");
+        }
+
+        applyToLocked(products, quantities, movement);
+
+        log.debug("Stock movement for order {} applied to {} products", orderId, products.size());
+        return products;
+    }
+
+    /**
+     * Заключва продуктите (ids във възходящ ред) и гарантира, че върнатите entity-та
+     * носят заключените стойности. SELECT ... FOR UPDATE връща вече managed инстанциите
+     * без да ги презареди, затова заредените преди lock-а се refresh-ват - редовете
+     * вече са наши, така че refresh-ът не променя реда на заключване.
+     */
+    private List<ProductEntity> lockProducts(List<Long> ids) {
+        Set<Long> preloaded = managedProductIds(ids);
+        List<ProductEntity> products = productRepository.findAllByIdInForUpdate(ids);
+        if (preloaded.isEmpty()) {
+            return products;
+        }
+
+        Session session = entityManager.unwrap(Session.class);
+        for (ProductEntity product : products) {
+            if (preloaded.contains(product.getId())) {
+                // Read-only entity-та (org.hibernate.readOnly hint) не се flush-ват
+                session.setReadOnly(product, false);
+                entityManager.refresh(product, LockModeType.PESSIMISTIC_WRITE);
+            }
+        }
+        log.debug("Refreshed {} products loaded before the stock lock", preloaded.size());
+        return products;
+    }
+
+    /**
+     * Id-тата на продуктите, които вече са заредени (не proxy) в текущия persistence context
+     */
+    private Set<Long> managedProductIds(List<Long> ids) {
+        SessionImplementor session = entityManager.unwrap(SessionImplementor.class);
+        EntityPersister persister = session.getFactory().getMappingMetamodel()
+                .getEntityDescriptor(ProductEntity.class);
+
+        Set<Long> managed = new HashSet<>();
+        for (Long id : ids) {
+            if (session.getPersistenceContextInternal().getEntity(session.generateEntityKey(id, persister)) != null) {
+                managed.add(id);
+            }
+        }
+        return managed;
+    }
+
+    private void applyToLocked(List<ProductEntity> products, Map<Long, Integer> quantities,
+                               BiConsumer<ProductEntity, Integer> movement) {
+        for (ProductEntity product : products) {
+            Integer quantity = quantities.get(product.getId());
+            if (quantity != null) {
+                movement.accept(product, quantity);
+            }
+        }
+        productRepository.saveAll(products);
+    }
+
+    private Map<Long, Integer> quantitiesOf(Order order) {
+        Map<Long, Integer> quantities = new TreeMap<>();
+        for (OrderItem item : order.getItems()) {
+            quantities.merge(item.getProduct().getId(), item.getQty().intValue(), Integer::sum);
+        }
+        return quantities;
+    }
+
+    private List<ProductEntity> productsOf(Order order) {
+        Map<Long, ProductEntity> products = new TreeMap<>();
+        for (OrderItem item : order.getItems()) {
+            products.putIfAbsent(item.getProduct().getId(), item.getProduct());
+        }
+        return new ArrayList<>(products.values());
+    }
+
+    /**
+     * Продуктите (сортирани по id) с количествата от ledger-а - entity-тата в базата
+     * изостават с неприложените от write-behind записи
+     */
+    private List<ProductAdminDTO> toDTOs(List<ProductEntity> products, Map<Long, StockReservationLedger.StockLevel> levels) {
+        List<ProductAdminDTO> result = new ArrayList<>(products.size());
+        for (ProductEntity product : products) {
+            StockReservationLedger.StockLevel level = levels.get(product.getId());
+            ProductAdminDTO dto = ProductAdminDTO.from(product);
+            dto.setQuantityAvailable(level.available());
+            dto.setQuantityReserved(level.reserved());
+            dto.setActualAvailable(level.available() - level.reserved());
+            result.add(dto);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,428 @@
+package com.yourco.warehouse.utils;
+
+import com.yourco.warehouse.dto.ProductCatalogDTO;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.text.CollationKey;
+import java.text.Collator;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Колонен facet index над активните продукти в каталога
+ *
+ * Позицията на продукта в списъка е номерът му във всеки bitmap:
+ * - категория -> BitSet, мерна единица -> BitSet
+ * - цените (в стотинки) са сортирани заедно с позициите - ценови диапазон е
+ *   два binary search-а и последователен отрязък
+ * - предварително изчислени подредби по име (кеширани български CollationKey-и) и по цена,
+ *   плюс обратните им индекси - страница от каталога е O(размер на страницата)
+ *
+ * Index-ът е immutable - строи се наново само когато се промени набор продукти,
+ * категория, мерна единица или цена (промени в наличности го преизползват).
+ * Броячите за всеки facet се смятат с всички останали филтри, без собствения му -
+ * така dropdown-ът показва колко продукта би дал всеки избор.
+ */
+public final class CatalogFacetIndex {
+
+    public static final int PRICE_BUCKETS = 10;
+
+    /**
+     * Подредбите, по които каталогът се връща на страници
+     */
+    public enum SortOrder {
+        NAME("name"), NAME_DESC("name-desc"), PRICE("price"), PRICE_DESC("price-desc");
+
+        private final String key;
+
+        SortOrder(String key) {
+            this.key = key;
+        }
+
+        public String getKey() {
+            return key;
+        }
+
+        public boolean isDescending() {
+            return this == NAME_DESC || this == PRICE_DESC;
+        }
+
+        /**
+         * @throws IllegalArgumentException при непозната стойност
+         */
+        public static SortOrder fromKey(String key) {
+            if (key == null || key.isBlank()) {
+                return NAME;
+            }
+            for (SortOrder order : values()) {
+                if (order.key.equals(key)) {
+                    return order;
+                }
+            }
+            throw new IllegalArgumentException("Unknown sort: " + key);
+        }
+    }
+
+    private final List<ProductCatalogDTO> products;
+    private final Map<String, BitSet> categoryBitmaps;
+    private final Map<String, BitSet> unitBitmaps;
+    private final long[] sortedPriceCents;
+    private final int[] positionsByPrice;
+    private final int[] positionsByName;
+    private final int[] nameRankByPosition;
+    private final int[] priceRankByPosition;
+    private final Map<Long, Integer> positionById;
+    private final List<String> categories;
+    private final BitSet all;
+    private final long priceSumCents;
+
+    /**
+     * Резултат от един filter - продуктите (по име) и броячите по facet
+     */
+    public record FacetResult(List<ProductCatalogDTO> products,
+                              Map<String, Integer> categoryCounts,
+                              Map<String, Integer> unitCounts,
+                              List<PriceBucket> priceHistogram) {
+    }
+
+    public record PriceBucket(BigDecimal from, BigDecimal to, int count) {
+    }
+
+    /**
+     * Страница в дадена подредба - offset е позицията на първия елемент в нея
+     */
+    public record Page(List<ProductCatalogDTO> products, int offset, int total) {
+    }
+
+    public CatalogFacetIndex(List<ProductCatalogDTO> products) {
+        this.products = List.copyOf(products);
+        int size = this.products.size();
+
+        Map<String, BitSet> byCategory = new HashMap<>();
+        Map<String, BitSet> byUnit = new HashMap<>();
+        Map<Long, Integer> byId = new HashMap<>(size * 2);
+        Integer[] byPrice = new Integer[size];
+        Integer[] byName = new Integer[size];
+        long[] cents = new long[size];
+        CollationKey[] nameKeys = new CollationKey[size];
+        long sum = 0;
+
+        // Collator-ът се ползва само тук - веднъж на продукт; сортирането сравнява готовите ключове
+        Collator collator = Collator.getInstance(new Locale("bg", "BG"));
+
+        for (int position = 0; position < size; position++) {
+            ProductCatalogDTO product = this.products.get(position);
+            byCategory.computeIfAbsent(nvl(product.getCategory()), key -> new BitSet(size)).set(position);
+            byUnit.computeIfAbsent(nvl(product.getUnit()), key -> new BitSet(size)).set(position);
+            byId.put(product.getId(), position);
+            cents[position] = toCents(product.getPrice());
+            nameKeys[position] = collator.getCollationKey(nvl(product.getName()));
+            sum += cents[position];
+            byPrice[position] = position;
+            byName[position] = position;
+        }
+
+        Comparator<Integer> byIdTieBreak = Comparator.comparingLong(position -> this.products.get(position).getId());
+        Arrays.sort(byName, ((Comparator<Integer>) (a, b) -> nameKeys[a].compareTo(nameKeys[b])).thenComparing(byIdTieBreak));
+
+        this.nameRankByPosition = new int[size];
+        for (int rank = 0; rank < size; rank++) {
+            nameRankByPosition[byName[rank]] = rank;
+        }
+        Arrays.sort(byPrice, Comparator.<Integer>comparingLong(position -> cents[position])
+                .thenComparingInt(position -> nameRankByPosition[position]));
+
+        this.sortedPriceCents = new long[size];
+        this.positionsByPrice = new int[size];
+        this.positionsByName = new int[size];
+        this.priceRankByPosition = new int[size];
+        for (int i = 0; i < size; i++) {
+            positionsByPrice[i] = byPrice[i];
+            sortedPriceCents[i] = cents[byPrice[i]];
+            positionsByName[i] = byName[i];
+            priceRankByPosition[byPrice[i]] = i;
+        }
+
+        List<String> sortedCategories = new ArrayList<>();
+        byCategory.keySet().stream().filter(category -> !category.isBlank()).forEach(sortedCategories::add);
+        sortedCategories.sort(collator);
+
+        this.categoryBitmaps = byCategory;
+        this.unitBitmaps = byUnit;
+        this.positionById = byId;
+        this.categories = Collections.unmodifiableList(sortedCategories);
+        this.all = new BitSet(size);
+        this.all.set(0, size);
+        this.priceSumCents = sum;
+    }
+
+    private CatalogFacetIndex(CatalogFacetIndex source, List<ProductCatalogDTO> products) {
+        this.products = products;
+        this.categoryBitmaps = source.categoryBitmaps;
+        this.unitBitmaps = source.unitBitmaps;
+        this.sortedPriceCents = source.sortedPriceCents;
+        this.positionsByPrice = source.positionsByPrice;
+        this.positionsByName = source.positionsByName;
+        this.nameRankByPosition = source.nameRankByPosition;
+        this.priceRankByPosition = source.priceRankByPosition;
+        this.positionById = source.positionById;
+        this.categories = source.categories;
+        this.all = source.all;
+        this.priceSumCents = source.priceSumCents;
+    }
+
+    /**
+     * Същите bitmaps върху нови DTO-та на същите позиции - за промени, които
+     * не засягат facet полетата (наличности, описание)
+     */
+    public CatalogFacetIndex withProducts(List<ProductCatalogDTO> sameLayoutProducts) {
+        if (sameLayoutProducts.size() != products.size()) {
+            throw new IllegalArgumentException("Facet layout mismatch: " + sameLayoutProducts.size() + " != " + products.size());
+        }
+        return new CatalogFacetIndex(this, List.copyOf(sameLayoutProducts));
+    }
+
+    // ==========================================
+    // QUERIES
+    // ==========================================
+
+    /**
+     * Продукти по всички зададени филтри (null = без филтър), подредени по име
+     */
+    public List<ProductCatalogDTO> filter(String category, String unit, BigDecimal minPrice, BigDecimal maxPrice) {
+        BitSet matches = match(category, unit, minPrice, maxPrice);
+        return collectByName(matches);
+    }
+
+    /**
+     * Филтрираните продукти и броячите за всеки facet в едно минаване
+     */
+    public FacetResult facets(String category, String unit, BigDecimal minPrice, BigDecimal maxPrice) {
+        BitSet categoryFilter = categoryFilter(category);
+        BitSet unitFilter = unitFilter(unit);
+        BitSet priceFilter = priceFilter(minPrice, maxPrice);
+
+        BitSet matches = and(categoryFilter, unitFilter, priceFilter);
+
+        return new FacetResult(
+                collectByName(matches),
+                counts(categoryBitmaps, and(unitFilter, priceFilter), true),
+                counts(unitBitmaps, and(categoryFilter, priceFilter), false),
+                histogram(and(categoryFilter, unitFilter)));
+    }
+
+    /**
+     * Страница от {@code size} продукта в подредбата, започвайки от {@code offset}
+     */
+    public Page page(SortOrder sort, int offset, int size) {
+        int total = products.size();
+        int from = Math.max(0, Math.min(offset, total));
+        int to = Math.min(total, from + Math.max(0, size));
+        int[] permutation = sort == SortOrder.NAME || sort == SortOrder.NAME_DESC ? positionsByName : positionsByPrice;
+
+        List<ProductCatalogDTO> result = new ArrayList<>(to - from);
+        for (int i = from; i < to; i++) {
+            int rank = sort.isDescending() ? total - 1 - i : i;
+            result.add(products.get(permutation[rank]));
+        }
+        return new Page(result, from, total);
+    }
+
+    /**
+     * Позицията в подредбата непосредствено след продукта - за cursor продължение.
+     * Ако продуктът вече не е в каталога, връща -1.
+     */
+    public int offsetAfter(SortOrder sort, long productId) {
+        Integer position = positionById.get(productId);
+        if (position == null) {
+            return -1;
+        }
+        int[] ranks = sort == SortOrder.NAME || sort == SortOrder.NAME_DESC ? nameRankByPosition : priceRankByPosition;
+        int rank = ranks[position];
+        return (sort.isDescending() ? products.size() - 1 - rank : rank) + 1;
+    }
+
+    public int size() {
+        return products.size();
+    }
+
+    public int countByCategory(String category) {
+        BitSet bitmap = categoryBitmaps.get(nvl(category).trim());
+        return bitmap != null ? bitmap.cardinality() : 0;
+    }
+
+    public List<String> getCategories() {
+        return categories;
+    }
+
+    public BigDecimal getMinPrice() {
+        return sortedPriceCents.length > 0 ? fromCents(sortedPriceCents[0]) : BigDecimal.ZERO;
+    }
+
+    public BigDecimal getMaxPrice() {
+        return sortedPriceCents.length > 0 ? fromCents(sortedPriceCents[sortedPriceCents.length - 1]) : BigDecimal.ZERO;
+    }
+
+    public BigDecimal getAvgPrice() {
+        if (sortedPriceCents.length == 0) {
+            return BigDecimal.ZERO;
+        }
+        return BigDecimal.valueOf(priceSumCents)
+                .divide(BigDecimal.valueOf(sortedPriceCents.length), 0, RoundingMode.HALF_UP)
+                .movePointLeft(2);
+    }
+
+    // ==========================================
+    // BITMAP HELPERS
+    // ==========================================
+
+    private BitSet match(String category, String unit, BigDecimal minPrice, BigDecimal maxPrice) {
+        return and(categoryFilter(category), unitFilter(unit), priceFilter(minPrice, maxPrice));
+    }
+
+    /**
+     * null означава "без филтър"; празен BitSet - нищо не съвпада
+     */
+    private BitSet categoryFilter(String category) {
+        if (category == null || category.isBlank()) {
+            return null;
+        }
+        return categoryBitmaps.getOrDefault(category.trim(), new BitSet());
+    }
+
+    private BitSet unitFilter(String unit) {
+        if (unit == null || unit.isBlank()) {
+            return null;
+        }
+        return unitBitmaps.getOrDefault(unit.trim(), new BitSet());
+    }
+
+    private BitSet priceFilter(BigDecimal minPrice, BigDecimal maxPrice) {
+        if (minPrice == null && maxPrice == null) {
+            return null;
+        }
+        int from = minPrice != null ? lowerBound(toCents(minPrice)) : 0;
+        int to = maxPrice != null ? upperBound(toCents(maxPrice)) : sortedPriceCents.length;
+
+        BitSet result = new BitSet(products.size());
+        for (int i = from; i < to; i++) {
+            result.set(positionsByPrice[i]);
+        }
+        return result;
+    }
+
+    private BitSet and(BitSet... filters) {
+        BitSet result = null;
+        for (BitSet filter : filters) {
+            if (filter == null) {
+                continue;
+            }
+            if (result == null) {
+                result = (BitSet) filter.clone();
+            } else {
+                result.and(filter);
+            }
+        }
+        return result != null ? result : all;
+    }
+
+    private List<ProductCatalogDTO> collectByName(BitSet matches) {
+        List<ProductCatalogDTO> result = new ArrayList<>(matches.cardinality());
+        for (int position : positionsByName) {
+            if (matches.get(position)) {
+                result.add(products.get(position));
+            }
+        }
+        return result;
+    }
+
+    private Map<String, Integer> counts(Map<String, BitSet> bitmaps, BitSet base, boolean sortedCategories) {
+        Map<String, Integer> result = new LinkedHashMap<>();
+        Iterable<String> keys = sortedCategories ? categories : bitmaps.keySet();
+        for (String key : keys) {
+            BitSet bitmap = (BitSet) bitmaps.get(key).clone();
+            bitmap.and(base);
+            result.put(key, bitmap.cardinality());
+        }
+        return result;
+    }
+
+    private List<PriceBucket> histogram(BitSet base) {
+        if (sortedPriceCents.length == 0) {
+            return Collections.emptyList();
+        }
+        long min = sortedPriceCents[0];
+        long max = sortedPriceCents[sortedPriceCents.length - 1];
+        long width = Math.max(1, (max - min + PRICE_BUCKETS) / PRICE_BUCKETS);
+
+        int[] counts = new int[PRICE_BUCKETS];
+        for (int i = 0; i < sortedPriceCents.length; i++) {
+            if (base.get(positionsByPrice[i])) {
+                int bucket = (int) Math.min(PRICE_BUCKETS - 1, (sortedPriceCents[i] - min) / width);
+                counts[bucket]++;
+            }
+        }
+
+        List<PriceBucket> buckets = new ArrayList<>(PRICE_BUCKETS);
+        for (int bucket = 0; bucket < PRICE_BUCKETS; bucket++) {
+            long from = min + bucket * width;
+            buckets.add(new PriceBucket(fromCents(from), fromCents(from + width), counts[bucket]));
+        }
+        return buckets;
+    }
+
+    /**
+     * Първата позиция с цена >= cents
+     */
+    private int lowerBound(long cents) {
+        int low = 0;
+        int high = sortedPriceCents.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (sortedPriceCents[mid] < cents) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Първата позиция с цена > cents
+     */
+    private int upperBound(long cents) {
+        int low = 0;
+        int high = sortedPriceCents.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (sortedPriceCents[mid] <= cents) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private static long toCents(BigDecimal price) {
+        return price == null ? 0 : price.movePointRight(2).setScale(0, RoundingMode.HALF_UP).longValue();
+    }
+
+    private static BigDecimal fromCents(long cents) {
+        return BigDecimal.valueOf(cents, 2);
+    }
+
+    private static String nvl(String value) {
+        return value != null ? value : "";
+    }
+}
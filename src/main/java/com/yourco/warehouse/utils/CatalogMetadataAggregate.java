@@ -0,0 +1,160 @@
+package com.yourco.warehouse.utils;
+
+import com.yourco.warehouse.dto.ProductCatalogDTO;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.text.Collator;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Агрегирани метаданни на каталога, поддържани инкрементално
+ *
+ * Броячи по категория и мерна единица, брой, сума и multiset от цените (в стотинки).
+ * add/remove на продукт е O(1) за броячите и O(log n) за min/max - без обхождане
+ * на каталога. Сортираните списъци с категории/единици се пресортират само когато
+ * се появи или изчезне категория/единица.
+ *
+ * Не е thread-safe - достъпът минава през CatalogSnapshotHolder под неговия lock;
+ * навън се подава само immutable Metadata.
+ */
+public class CatalogMetadataAggregate {
+
+    private final Collator collator = Collator.getInstance(new Locale("bg", "BG"));
+
+    private final Map<String, Integer> categoryCounts = new HashMap<>();
+    private final Map<String, Integer> unitCounts = new HashMap<>();
+    private final TreeMap<Long, Integer> priceCents = new TreeMap<>();
+    private long priceSumCents = 0;
+    private int productCount = 0;
+
+    // null = трябва да се пресортира
+    private List<String> sortedCategories;
+    private List<String> sortedUnits;
+
+    /**
+     * Immutable изглед - categories/units са сортирани по български (без празната категория)
+     */
+    public record Metadata(int totalProducts,
+                           List<String> categories,
+                           Map<String, Integer> categoryCounts,
+                           List<String> units,
+                           Map<String, Integer> unitCounts,
+                           BigDecimal minPrice,
+                           BigDecimal maxPrice,
+                           BigDecimal priceSum,
+                           BigDecimal avgPrice) {
+
+        public int countByCategory(String category) {
+            return categoryCounts.getOrDefault(category != null ? category.trim() : "", 0);
+        }
+    }
+
+    // ==========================================
+    // MUTATIONS
+    // ==========================================
+
+    public void add(ProductCatalogDTO product) {
+        productCount++;
+        if (increment(categoryCounts, key(product.getCategory()), 1)) {
+            sortedCategories = null;
+        }
+        if (increment(unitCounts, key(product.getUnit()), 1)) {
+            sortedUnits = null;
+        }
+        long cents = toCents(product.getPrice());
+        priceCents.merge(cents, 1, Integer::sum);
+        priceSumCents += cents;
+    }
+
+    public void remove(ProductCatalogDTO product) {
+        productCount--;
+        if (increment(categoryCounts, key(product.getCategory()), -1)) {
+            sortedCategories = null;
+        }
+        if (increment(unitCounts, key(product.getUnit()), -1)) {
+            sortedUnits = null;
+        }
+        long cents = toCents(product.getPrice());
+        priceCents.computeIfPresent(cents, (price, count) -> count > 1 ? count - 1 : null);
+        priceSumCents -= cents;
+    }
+
+    public void clear() {
+        categoryCounts.clear();
+        unitCounts.clear();
+        priceCents.clear();
+        priceSumCents = 0;
+        productCount = 0;
+        sortedCategories = null;
+        sortedUnits = null;
+    }
+
+    // ==========================================
+    // VIEW
+    // ==========================================
+
+    public Metadata view() {
+        if (sortedCategories == null) {
+            sortedCategories = sortedKeys(categoryCounts);
+        }
+        if (sortedUnits == null) {
+            sortedUnits = sortedKeys(unitCounts);
+        }
+
+        BigDecimal avg = productCount > 0
+                ? BigDecimal.valueOf(priceSumCents).divide(BigDecimal.valueOf(productCount), 0, RoundingMode.HALF_UP).movePointLeft(2)
+                : BigDecimal.ZERO;
+        return new Metadata(
+                productCount,
+                sortedCategories,
+                Map.copyOf(categoryCounts),
+                sortedUnits,
+                Map.copyOf(unitCounts),
+                priceCents.isEmpty() ? BigDecimal.ZERO : fromCents(priceCents.firstKey()),
+                priceCents.isEmpty() ? BigDecimal.ZERO : fromCents(priceCents.lastKey()),
+                fromCents(priceSumCents),
+                avg);
+    }
+
+    // ==========================================
+    // PRIVATE HELPERS
+    // ==========================================
+
+    /**
+     * @return true ако ключът се е появил или изчезнал
+     */
+    private static boolean increment(Map<String, Integer> counts, String key, int delta) {
+        Integer next = counts.merge(key, delta, Integer::sum);
+        if (next != null && next <= 0) {
+            counts.remove(key);
+            return true;
+        }
+        return next != null && next == delta;
+    }
+
+    private List<String> sortedKeys(Map<String, Integer> counts) {
+        List<String> keys = new ArrayList<>();
+        counts.keySet().stream().filter(key -> !key.isBlank()).forEach(keys::add);
+        keys.sort(collator);
+        return Collections.unmodifiableList(keys);
+    }
+
+    private static String key(String value) {
+        return value != null ? value.trim() : "";
+    }
+
+    public static long toCents(BigDecimal price) {
+        return price != null ? price.movePointRight(2).setScale(0, RoundingMode.HALF_UP).longValue() : 0L;
+    }
+
+    private static BigDecimal fromCents(long cents) {
+        return BigDecimal.valueOf(cents, 2);
+    }
+}
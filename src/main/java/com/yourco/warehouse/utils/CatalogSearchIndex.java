@@ -0,0 +1,254 @@
+package com.yourco.warehouse.utils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * In-memory inverted index за търсене в каталога по SKU, име и описание
+ *
+ * Текстът минава през SearchTextNormalizer (кирилица/латиница, главни/малки).
+ * За всяка дума се индексират trigram-ите ѝ и префиксите с дължина 1-2, така че:
+ * - заявка от 3+ символа намира кандидатите чрез сечение на trigram posting-ите
+ * - заявка от 1-2 символа намира думите, започващи с тях
+ * Кандидатите се проверяват срещу реалния текст (trigram-ите дават false positives)
+ * и се класират: точно SKU > префикс на SKU > дума от името започва със заявката >
+ * съдържа се в името > съдържа се в описанието.
+ *
+ * Промените (put/remove) са инкрементални; четенията вървят паралелно под read lock.
+ */
+public class CatalogSearchIndex {
+
+    private static final int SCORE_SKU_EXACT = 1000;
+    private static final int SCORE_SKU_PREFIX = 120;
+    private static final int SCORE_SKU_CONTAINS = 60;
+    private static final int SCORE_NAME_WORD_PREFIX = 50;
+    private static final int SCORE_NAME_CONTAINS = 20;
+    private static final int SCORE_DESCRIPTION_CONTAINS = 5;
+
+    private final Map<String, Set<Long>> postings = new HashMap<>();
+    private final Map<Long, Document> documents = new HashMap<>();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private record Document(String sku, String name, String description, Set<String> keys) {
+    }
+
+    private record Hit(long id, int score, int nameLength) {
+    }
+
+    private static final Comparator<Hit> RANKING = Comparator
+            .comparingInt(Hit::score)
+            .thenComparing(Comparator.comparingInt(Hit::nameLength).reversed())
+            .thenComparing(Comparator.comparingLong(Hit::id).reversed());
+
+    // ==========================================
+    // MUTATIONS
+    // ==========================================
+
+    /**
+     * Добавя или заменя документа за продукта
+     */
+    public void put(long id, String sku, String name, String description) {
+        String normalizedSku = SearchTextNormalizer.normalize(sku);
+        String normalizedName = SearchTextNormalizer.normalize(name);
+        String normalizedDescription = SearchTextNormalizer.normalize(description);
+
+        Set<String> keys = new HashSet<>();
+        collectKeys(normalizedSku, keys);
+        collectKeys(normalizedName, keys);
+        collectKeys(normalizedDescription, keys);
+        Document document = new Document(normalizedSku, normalizedName, normalizedDescription, keys);
+
+        lock.writeLock().lock();
+        try {
+            unindex(id, documents.put(id, document));
+            for (String key : keys) {
+                postings.computeIfAbsent(key, k -> new HashSet<>()).add(id);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void remove(long id) {
+        lock.writeLock().lock();
+        try {
+            unindex(id, documents.remove(id));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void clear() {
+        lock.writeLock().lock();
+        try {
+            postings.clear();
+            documents.clear();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return documents.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // ==========================================
+    // SEARCH
+    // ==========================================
+
+    /**
+     * Id-тата на най-добрите {@code limit} съвпадения, подредени по релевантност
+     */
+    public List<Long> search(String query, int limit) {
+        List<String> tokens = SearchTextNormalizer.tokens(query);
+        if (tokens.isEmpty() || limit <= 0) {
+            return Collections.emptyList();
+        }
+        String wholeQuery = String.join(" ", tokens);
+
+        lock.readLock().lock();
+        try {
+            Set<Long> candidates = candidatesFor(tokens);
+            if (candidates.isEmpty()) {
+                return Collections.emptyList();
+            }
+
+            PriorityQueue<Hit> top = new PriorityQueue<>(limit + 1, RANKING);
+            for (Long id : candidates) {
+                Document document = documents.get(id);
+                int score = score(document, tokens, wholeQuery);
+                if (score <= 0) {
+                    continue;
+                }
+                top.add(new Hit(id, score, document.name().length()));
+                if (top.size() > limit) {
+                    top.poll();
+                }
+            }
+
+            List<Long> result = new ArrayList<>(top.size());
+            while (!top.isEmpty()) {
+                result.add(top.poll().id());
+            }
+            Collections.reverse(result);
+            return result;
+
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // ==========================================
+    // PRIVATE HELPERS
+    // ==========================================
+
+    /**
+     * Сечение на posting-ите за всички думи от заявката, започвайки от най-малкия
+     */
+    private Set<Long> candidatesFor(List<String> tokens) {
+        List<Set<Long>> sets = new ArrayList<>();
+        for (String token : tokens) {
+            for (String key : queryKeys(token)) {
+                Set<Long> posting = postings.get(key);
+                if (posting == null) {
+                    return Collections.emptySet();
+                }
+                sets.add(posting);
+            }
+        }
+        sets.sort(Comparator.comparingInt(Set::size));
+
+        Set<Long> result = new HashSet<>(sets.get(0));
+        for (int i = 1; i < sets.size() && !result.isEmpty(); i++) {
+            result.retainAll(sets.get(i));
+        }
+        return result;
+    }
+
+    private static int score(Document document, List<String> tokens, String wholeQuery) {
+        int score = document.sku().equals(wholeQuery) ? SCORE_SKU_EXACT : 0;
+
+        for (String token : tokens) {
+            int tokenScore = 0;
+            if (document.sku().startsWith(token)) {
+                tokenScore = SCORE_SKU_PREFIX;
+            } else if (document.sku().contains(token)) {
+                tokenScore = SCORE_SKU_CONTAINS;
+            }
+
+            int nameIndex = document.name().indexOf(token);
+            if (nameIndex == 0 || (nameIndex > 0 && document.name().contains(" " + token))) {
+                tokenScore = Math.max(tokenScore, SCORE_NAME_WORD_PREFIX);
+            } else if (nameIndex > 0) {
+                tokenScore = Math.max(tokenScore, SCORE_NAME_CONTAINS);
+            }
+
+            if (tokenScore == 0 && document.description().contains(token)) {
+                tokenScore = SCORE_DESCRIPTION_CONTAINS;
+            }
+            if (tokenScore == 0) {
+                return 0;
+            }
+            score += tokenScore;
+        }
+        return score;
+    }
+
+    private void unindex(long id, Document previous) {
+        if (previous == null) {
+            return;
+        }
+        for (String key : previous.keys()) {
+            Set<Long> posting = postings.get(key);
+            if (posting != null) {
+                posting.remove(id);
+                if (posting.isEmpty()) {
+                    postings.remove(key);
+                }
+            }
+        }
+    }
+
+    private static void collectKeys(String normalizedText, Set<String> keys) {
+        if (normalizedText.isEmpty()) {
+            return;
+        }
+        for (String word : normalizedText.split(" ")) {
+            keys.add("^" + word.charAt(0));
+            if (word.length() >= 2) {
+                keys.add("^" + word.substring(0, 2));
+            }
+            for (int i = 0; i + 3 <= word.length(); i++) {
+                keys.add(word.substring(i, i + 3));
+            }
+        }
+    }
+
+    /**
+     * Ключовете, които трябва да присъстват в документ, съдържащ думата
+     */
+    private static List<String> queryKeys(String token) {
+        if (token.length() < 3) {
+            return List.of("^" + token);
+        }
+        List<String> keys = new ArrayList<>(token.length() - 2);
+        for (int i = 0; i + 3 <= token.length(); i++) {
+            keys.add(token.substring(i, i + 3));
+        }
+        return keys;
+    }
+}
@@ -0,0 +1,104 @@
+package com.yourco.warehouse.utils;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histogram с фиксирана памет и логаритмични кофи (HDR-style)
+ *
+ * Стойностите под 16 се броят точно. Над тях всяка степен на двойката се дели
+ * на 16 линейни под-кофи, така че относителната грешка на percentile-ите е под ~6%
+ * за целия диапазон на long, при 960 брояча независимо от броя записи.
+ * record() е lock-free; четенията са приблизителни при конкурентни записи.
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKET_COUNT = (Long.SIZE - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+    private final AtomicLong totalCount = new AtomicLong();
+    private final AtomicLong totalSum = new AtomicLong();
+    private final AtomicLong maxValue = new AtomicLong();
+
+    public void record(long value) {
+        long normalized = Math.max(0, value);
+        counts.incrementAndGet(indexFor(normalized));
+        totalCount.incrementAndGet();
+        totalSum.addAndGet(normalized);
+        maxValue.accumulateAndGet(normalized, Math::max);
+    }
+
+    /**
+     * Добавя записите на other към този histogram (обединяване на времеви прозорци)
+     */
+    public void add(LatencyHistogram other) {
+        for (int index = 0; index < BUCKET_COUNT; index++) {
+            long count = other.counts.get(index);
+            if (count != 0) {
+                counts.addAndGet(index, count);
+            }
+        }
+        totalCount.addAndGet(other.totalCount.get());
+        totalSum.addAndGet(other.totalSum.get());
+        maxValue.accumulateAndGet(other.maxValue.get(), Math::max);
+    }
+
+    /**
+     * Стойност под която попадат q (0..1) от записите - средата на съответната кофа
+     */
+    public long percentile(double q) {
+        long total = totalCount.get();
+        if (total == 0) {
+            return 0;
+        }
+
+        long target = Math.max(1, (long) Math.ceil(q * total));
+        long cumulative = 0;
+        for (int index = 0; index < BUCKET_COUNT; index++) {
+            cumulative += counts.get(index);
+            if (cumulative >= target) {
+                return Math.min(midpointFor(index), maxValue.get());
+            }
+        }
+        return maxValue.get();
+    }
+
+    public long getCount() {
+        return totalCount.get();
+    }
+
+    public long getMax() {
+        return maxValue.get();
+    }
+
+    public double getMean() {
+        long total = totalCount.get();
+        return total == 0 ? 0.0 : totalSum.get() / (double) total;
+    }
+
+    // ==========================================
+    // BUCKET MATH
+    // ==========================================
+
+    static int indexFor(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int magnitude = 63 - Long.numberOfLeadingZeros(value);
+        int shift = magnitude - SUB_BUCKET_BITS;
+        int subBucket = (int) (value >>> shift) & (SUB_BUCKETS - 1);
+        return (shift + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    static long midpointFor(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int shift = index / SUB_BUCKETS - 1;
+        int subBucket = index % SUB_BUCKETS;
+        long lowest = ((long) (SUB_BUCKETS + subBucket)) << shift;
+        return lowest + ((1L << shift) >> 1);
+    }
+}
@@ -0,0 +1,125 @@
+package com.yourco.warehouse.utils;
+
+import java.time.Clock;
+import java.time.LocalDate;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Плъзгащ се прозорец от дневни LatencyHistogram-и
+ *
+ * Всеки запис отива в histogram-а на своя ден; percentile-ите се смятат само
+ * от последните windowDays дни, така че старите данни отпадат изцяло вместо да
+ * теглят percentile-ите към историята. Паметта е windowDays histogram-а.
+ * Обединеният изглед се кешира за VIEW_TTL_MILLIS - Micrometer gauge-овете
+ * четат няколко percentile-а един след друг.
+ */
+public class RollingLatencyHistogram {
+
+    private static final long VIEW_TTL_MILLIS = 1000;
+
+    private record Slice(long epochDay, LatencyHistogram histogram) {
+    }
+
+    private record View(long builtAt, LatencyHistogram histogram) {
+    }
+
+    private final int windowDays;
+    private final Clock clock;
+    private final AtomicReferenceArray<Slice> slices;
+    private volatile View view;
+
+    public RollingLatencyHistogram(int windowDays) {
+        this(windowDays, Clock.systemDefaultZone());
+    }
+
+    public RollingLatencyHistogram(int windowDays, Clock clock) {
+        if (windowDays < 1) {
+            throw new IllegalArgumentException("windowDays must be positive");
+        }
+        this.windowDays = windowDays;
+        this.clock = clock;
+        this.slices = new AtomicReferenceArray<>(windowDays);
+    }
+
+    public void record(long value) {
+        record(LocalDate.now(clock), value);
+    }
+
+    /**
+     * Записва стойност към деня day; дни извън прозореца се игнорират,
+     * бъдещи дни се броят към днешния
+     */
+    public void record(LocalDate day, long value) {
+        long today = LocalDate.now(clock).toEpochDay();
+        long epochDay = Math.min(day.toEpochDay(), today);
+        if (epochDay <= today - windowDays) {
+            return;
+        }
+        LatencyHistogram histogram = sliceFor(epochDay);
+        if (histogram != null) {
+            histogram.record(value);
+            view = null;
+        }
+    }
+
+    public long percentile(double q) {
+        return view().percentile(q);
+    }
+
+    public long getCount() {
+        return view().getCount();
+    }
+
+    public long getMax() {
+        return view().getMax();
+    }
+
+    public double getMean() {
+        return view().getMean();
+    }
+
+    // ==========================================
+    // PRIVATE HELPERS
+    // ==========================================
+
+    private LatencyHistogram view() {
+        long now = clock.millis();
+        View current = view;
+        if (current != null && now - current.builtAt() < VIEW_TTL_MILLIS) {
+            return current.histogram();
+        }
+
+        long oldest = LocalDate.now(clock).toEpochDay() - windowDays;
+        LatencyHistogram merged = new LatencyHistogram();
+        for (int index = 0; index < windowDays; index++) {
+            Slice slice = slices.get(index);
+            if (slice != null && slice.epochDay() > oldest) {
+                merged.add(slice.histogram());
+            }
+        }
+        view = new View(now, merged);
+        return merged;
+    }
+
+    /**
+     * Histogram-ът на деня; слотът на отпаднал ден се преизползва.
+     *
+     * @return null ако слотът вече е зает от по-нов ден
+     */
+    private LatencyHistogram sliceFor(long epochDay) {
+        int index = (int) Math.floorMod(epochDay, (long) windowDays);
+        while (true) {
+            Slice slice = slices.get(index);
+            if (slice != null && slice.epochDay() == epochDay) {
+                return slice.histogram();
+            }
+            if (slice != null && slice.epochDay() > epochDay) {
+                return null;
+            }
+            Slice fresh = new Slice(epochDay, new LatencyHistogram());
+            if (slices.compareAndSet(index, slice, fresh)) {
+                return fresh.histogram();
+            }
+        }
+    }
+}
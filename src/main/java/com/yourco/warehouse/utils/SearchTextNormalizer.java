@@ -0,0 +1,90 @@
+package com.yourco.warehouse.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Нормализация на текст за търсене в каталога
+ *
+ * Всичко се свежда до една каноничната форма: малки букви, българската кирилица
+ * транслитерирана на латиница (обтекаемата система - ж->zh, щ->sht, ю->yu...),
+ * а всичко освен букви и цифри става интервал. Така "Кабел", "кабел", "KABEL"
+ * и "kabel" дават едно и също, и латинско SKU се намира с кирилска заявка.
+ */
+public final class SearchTextNormalizer {
+
+    private static final String[] CYRILLIC_TO_LATIN = new String[64];
+
+    static {
+        String[][] pairs = {
+                {"а", "a"}, {"б", "b"}, {"в", "v"}, {"г", "g"}, {"д", "d"}, {"е", "e"},
+                {"ж", "zh"}, {"з", "z"}, {"и", "i"}, {"й", "y"}, {"к", "k"}, {"л", "l"},
+                {"м", "m"}, {"н", "n"}, {"о", "o"}, {"п", "p"}, {"р", "r"}, {"с", "s"},
+                {"т", "t"}, {"у", "u"}, {"ф", "f"}, {"х", "h"}, {"ц", "ts"}, {"ч", "ch"},
+                {"ш", "sh"}, {"щ", "sht"}, {"ъ", "a"}, {"ы", "y"}, {"ь", "y"}, {"э", "e"},
+                {"ю", "yu"}, {"я", "ya"}
+        };
+        for (String[] pair : pairs) {
+            CYRILLIC_TO_LATIN[pair[0].charAt(0) - 'а'] = pair[1];
+        }
+    }
+
+    private SearchTextNormalizer() {
+    }
+
+    /**
+     * Каноничната форма на текста - думите са разделени с единичен интервал
+     */
+    public static String normalize(String text) {
+        if (text == null || text.isEmpty()) {
+            return "";
+        }
+
+        StringBuilder result = new StringBuilder(text.length() + 8);
+        boolean pendingSpace = false;
+
+        for (int i = 0; i < text.length(); i++) {
+            char c = Character.toLowerCase(text.charAt(i));
+            if (c == 'ѝ') {
+                c = 'и';
+            } else if (c == 'ё') {
+                c = 'е';
+            }
+
+            String mapped = null;
+            if (c >= 'а' && c <= 'я') {
+                mapped = CYRILLIC_TO_LATIN[c - 'а'];
+            } else if ((c >= 'a' && c <= 'z') || (c >= '0' && c <= '9')) {
+                mapped = String.valueOf(c);
+            }
+
+            if (mapped == null) {
+                pendingSpace = result.length() > 0;
+                continue;
+            }
+            if (pendingSpace) {
+                result.append(' ');
+                pendingSpace = false;
+            }
+            result.append(mapped);
+        }
+        return result.toString();
+    }
+
+    /**
+     * Думите от каноничната форма
+     */
+    public static List<String> tokens(String text) {
+        String normalized = normalize(text);
+        List<String> tokens = new ArrayList<>();
+        if (normalized.isEmpty()) {
+            return tokens;
+        }
+        for (String token : normalized.split(" ")) {
+            if (!token.isEmpty()) {
+                tokens.add(token);
+            }
+        }
+        return tokens;
+    }
+}
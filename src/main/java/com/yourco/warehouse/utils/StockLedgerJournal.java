@@ -0,0 +1,191 @@
+package com.yourco.warehouse.utils;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Append-only журнал на движенията по наличностите
+ *
+ * Всеки ред е "sequence;productId;availableDelta;reservedDelta". Записите получават
+ * монотонен sequence под write lock-а, така че редът във файла и в sink-а съвпада
+ * с реда на sequence-ите. fsync е групов - нишка, чийто запис вече е покрит от
+ * чужд force(), не прави свой.
+ *
+ * Журналът се изчиства изцяло, когато всичко записано в него е отразено в базата
+ * (checkpoint == последния sequence). Непълен последен ред (срив по време на запис)
+ * се игнорира при четене.
+ */
+public class StockLedgerJournal implements AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(StockLedgerJournal.class);
+
+    private final Path path;
+    private final FileChannel channel;
+
+    private final Object writeLock = new Object();
+    private final Object forceLock = new Object();
+
+    private long sequence;
+    private volatile long forcedSequence;
+
+    public record Entry(long sequence, long productId, int availableDelta, int reservedDelta) {
+    }
+
+    /**
+     * @param sequenceFloor най-малкият sequence, от който да продължи номерацията
+     *                      (checkpoint-ът в базата - журналът може да е изчистен)
+     */
+    public StockLedgerJournal(Path path, long sequenceFloor) throws IOException {
+        this.path = path;
+        if (path.getParent() != null) {
+            Files.createDirectories(path.getParent());
+        }
+        long lastInFile = 0;
+        for (Entry entry : read(path)) {
+            lastInFile = Math.max(lastInFile, entry.sequence());
+        }
+        this.sequence = Math.max(lastInFile, sequenceFloor);
+        this.forcedSequence = sequence;
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        this.channel.position(channel.size());
+    }
+
+    // ==========================================
+    // READ
+    // ==========================================
+
+    /**
+     * Всички цели записи във файла по реда на записване
+     */
+    public static List<Entry> read(Path path) throws IOException {
+        List<Entry> entries = new ArrayList<>();
+        if (!Files.exists(path)) {
+            return entries;
+        }
+        try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.US_ASCII)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                Entry entry = parse(line);
+                if (entry == null) {
+                    log.warn("Stock ledger journal {}: ignoring incomplete record '{}'", path, line);
+                    break;
+                }
+                entries.add(entry);
+            }
+        }
+        return entries;
+    }
+
+    public long lastSequence() {
+        synchronized (writeLock) {
+            return sequence;
+        }
+    }
+
+    // ==========================================
+    // WRITE
+    // ==========================================
+
+    /**
+     * Записва делтите (productId -> {availableDelta, reservedDelta}) и връща след fsync.
+     * sink получава записите под write lock-а - в реда на sequence-ите.
+     */
+    public List<Entry> append(Map<Long, int[]> deltas, Consumer<Entry> sink) throws IOException {
+        List<Entry> entries = new ArrayList<>(deltas.size());
+        long last;
+        synchronized (writeLock) {
+            StringBuilder lines = new StringBuilder(deltas.size() * 32);
+            for (Map.Entry<Long, int[]> delta : deltas.entrySet()) {
+                Entry entry = new Entry(++sequence, delta.getKey(), delta.getValue()[0], delta.getValue()[1]);
+                lines.append(entry.sequence()).append(';')
+                        .append(entry.productId()).append(';')
+                        .append(entry.availableDelta()).append(';')
+                        .append(entry.reservedDelta()).append('\n');
+                entries.add(entry);
+            }
+            ByteBuffer buffer = ByteBuffer.wrap(lines.toString().getBytes(StandardCharsets.US_ASCII));
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            entries.forEach(sink);
+            last = sequence;
+        }
+        force(last);
+        return entries;
+    }
+
+    /**
+     * Изчиства файла, ако всички записи до момента са отразени в базата
+     */
+    public boolean truncateIfCheckpointed(long checkpoint) throws IOException {
+        synchronized (writeLock) {
+            if (checkpoint < sequence || channel.size() == 0) {
+                return false;
+            }
+            channel.truncate(0);
+            channel.position(0);
+            channel.force(true);
+            return true;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    @Override
+    public String toString() {
+        return path.toString();
+    }
+
+    // ==========================================
+    // PRIVATE HELPERS
+    // ==========================================
+
+    /**
+     * Групов fsync - един force() покрива всички записи, направени преди него
+     */
+    private void force(long upTo) throws IOException {
+        if (forcedSequence >= upTo) {
+            return;
+        }
+        synchronized (forceLock) {
+            if (forcedSequence >= upTo) {
+                return;
+            }
+            long target;
+            synchronized (writeLock) {
+                target = sequence;
+            }
+            channel.force(false);
+            forcedSequence = target;
+        }
+    }
+
+    private static Entry parse(String line) {
+        String[] parts = line.split(";");
+        if (parts.length != 4) {
+            return null;
+        }
+        try {
+            return new Entry(Long.parseLong(parts[0]), Long.parseLong(parts[1]),
+                    Integer.parseInt(parts[2]), Integer.parseInt(parts[3]));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
@@ -14,6 +14,9 @@ class CartPanel {
         this.currentData = null;
         this.itemElements = new Map(); // Map за бързо намиране на DOM елементи
 
+        // Idempotency key на текущия checkout - пази се до успех, за да са повторенията безопасни
+        this.checkoutKey = null;
+
         this.init();
     }
 
@@ -100,6 +103,18 @@ class CartPanel {
         return headers;
     }
 
+    /**
+     * Idempotency key за checkout - един и същ при двоен клик и повторен опит
+     */
+    getCheckoutKey() {
+        if (!this.checkoutKey) {
+            this.checkoutKey = window.crypto?.randomUUID
+                ? window.crypto.randomUUID()
+                : `${Date.now().toString(36)}-${Math.random().toString(36).slice(2)}-${Math.random().toString(36).slice(2)}`;
+        }
+        return this.checkoutKey;
+    }
+
     /**
      * OPTIMIZED зареждане - инкрементални updates
      */
@@ -649,9 +664,12 @@ class CartPanel {
         try {
             const notes = notesTextarea?.value?.trim() || '';
 
+            const headers = this.getPostHeaders();
+            headers['Idempotency-Key'] = this.getCheckoutKey();
+
             const response = await fetch('/api/cart/checkout', {
                 method: 'POST',
-                headers: this.getPostHeaders(),
+                headers: headers,
                 body: `notes=${encodeURIComponent(notes)}`,
                 credentials: 'include'
             });
@@ -660,7 +678,8 @@ class CartPanel {
             const data = await response.json();
 
             if (data.success) {
-                // УСПЕХ - Затваряме и пренасочваме
+                // УСПЕХ - Затваряме и пренасочваме; следващият checkout получава нов ключ
+                this.checkoutKey = null;
                 window.toastManager?.success(data.message || 'Поръчката е създадена успешно!');
 
                 modal.remove();
@@ -37,6 +37,12 @@ class CatalogManager {
         this.selectedRows = new Set(); // За batch operations
         this.isKeyboardMode = false; // За keyboard navigation
 
+        // Live sync - ревизията на заредения каталог и STOMP връзката
+        this.catalogRevision = null;
+        this.catalogEpoch = null;
+        this.stompClient = null;
+        this.syncInProgress = false;
+
         this.init();
     }
 
@@ -45,6 +51,7 @@ class CatalogManager {
             this.setupEventListeners();
             this.setupKeyboardHandlers(); // НОВ
             await this.loadProducts();
+            this.connectLiveUpdates();
         } catch (error) {
             console.error('Initialization error:', error);
             window.toastManager.error('Грешка при инициализация на каталога');
@@ -137,10 +144,10 @@ class CatalogManager {
             const response = await fetch('/api/products', {
                 method: 'GET',
                 credentials: 'include',
-                cache: 'no-store',
+                // Revalidate с ETag - непроменен каталог идва като 304 от HTTP кеша
+                cache: 'no-cache',
                 headers: {
-                    'Accept': 'application/json',
-                    'Cache-Control': 'no-cache'
+                    'Accept': 'application/json'
                 }
             });
 
@@ -150,6 +157,8 @@ class CatalogManager {
 
             this.products = await response.json();
             this.filteredProducts = [...this.products];
+            this.catalogRevision = parseInt(response.headers.get('X-Catalog-Revision'), 10) || null;
+            this.catalogEpoch = response.headers.get('X-Catalog-Epoch');
 
             this.populateCategories();
             this.applyFilters();
@@ -163,6 +172,127 @@ class CatalogManager {
         }
     }
 
+    // ==========================================
+    // LIVE UPDATES - delta-и вместо презареждане
+    // ==========================================
+
+    /**
+     * Абонамент за /topic/catalog/availability. Наличностите се прилагат директно;
+     * нови/променени продукти или пропусната ревизия се дозареждат от /api/products/changes
+     */
+    connectLiveUpdates() {
+        if (typeof SockJS === 'undefined' || typeof StompJs === 'undefined') return;
+
+        try {
+            this.stompClient = StompJs.Stomp.over(() => new SockJS('/ws/dashboard'));
+            this.stompClient.debug = () => {};
+            this.stompClient.reconnectDelay = 5000;
+
+            this.stompClient.onConnect = () => {
+                this.stompClient.subscribe('/topic/catalog/availability', (message) => {
+                    try {
+                        this.handleCatalogDelta(JSON.parse(message.body));
+                    } catch (error) {
+                        console.error('Invalid catalog delta:', error);
+                    }
+                });
+                // Промени докато връзката е била прекъсната
+                this.syncCatalogChanges();
+            };
+
+            this.stompClient.activate();
+        } catch (error) {
+            console.error('Failed to connect catalog live updates:', error);
+        }
+    }
+
+    handleCatalogDelta(delta) {
+        if (this.catalogRevision === null || delta.revision <= this.catalogRevision) return;
+
+        const needsSync = delta.epoch !== this.catalogEpoch
+            || delta.revision !== this.catalogRevision + 1
+            || (delta.changed && delta.changed.length > 0)
+            || (delta.removed && delta.removed.length > 0);
+        if (needsSync) {
+            this.syncCatalogChanges();
+            return;
+        }
+
+        const byId = new Map(this.products.map(p => [p.id, p]));
+        (delta.availability || []).forEach(item => {
+            const product = byId.get(item.id);
+            if (!product) return;
+            product.quantityAvailable = item.available;
+            product.quantityReserved = item.reserved;
+            product.actualAvailable = Math.max(0, (item.available || 0) - (item.reserved || 0));
+        });
+
+        this.catalogRevision = delta.revision;
+        this.refreshAfterLiveUpdate(false);
+    }
+
+    async syncCatalogChanges() {
+        if (this.syncInProgress || this.catalogRevision === null) return;
+        this.syncInProgress = true;
+
+        try {
+            const params = new URLSearchParams({ since: this.catalogRevision, epoch: this.catalogEpoch || '' });
+            const response = await fetch(`/api/products/changes?${params}`, {
+                method: 'GET',
+                credentials: 'include',
+                headers: { 'Accept': 'application/json' }
+            });
+            if (!response.ok) {
+                throw new Error(`HTTP error! status: ${response.status}`);
+            }
+
+            const changes = await response.json();
+            if (changes.mode === 'reset') {
+                await this.loadProducts();
+                return;
+            }
+            if (changes.revision <= this.catalogRevision) return;
+
+            const removed = new Set(changes.deactivated || []);
+            const updated = new Map((changes.updated || []).map(p => [p.id, p]));
+            const categoriesBefore = this.products.map(p => p.category).join('|');
+
+            this.products = this.products
+                .filter(p => !removed.has(p.id))
+                .map(p => {
+                    const next = updated.get(p.id);
+                    if (next) updated.delete(p.id);
+                    return next || p;
+                })
+                .concat([...updated.values()]);
+
+            this.catalogRevision = changes.revision;
+            this.refreshAfterLiveUpdate(categoriesBefore !== this.products.map(p => p.category).join('|'));
+
+        } catch (error) {
+            console.error('Error syncing catalog changes:', error);
+        } finally {
+            this.syncInProgress = false;
+        }
+    }
+
+    /**
+     * Пререндерира със запазени филтри, страница и избрана категория (страницата се свива, ако вече я няма)
+     */
+    refreshAfterLiveUpdate(categoriesChanged) {
+        if (categoriesChanged) {
+            const selectedCategory = this.categoryFilter?.value || '';
+            this.populateCategories();
+            if (this.categoryFilter) this.categoryFilter.value = selectedCategory;
+        }
+        const totalPages = () => Math.max(1, Math.ceil(this.filteredProducts.length / this.perPage));
+        this.applyFilters();
+        if (this.currentPage > totalPages()) {
+            this.currentPage = totalPages();
+            this.renderProducts();
+        }
+    }
+
     populateCategories() {
         if (!this.categoryFilter) return;
 
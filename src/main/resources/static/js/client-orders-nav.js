@@ -966,6 +966,9 @@ class OrdersNavManager {
     }
 
     setupAutoRefresh() {
+        // На клиентските страници badge-ът се обновява от clientCounters.js (push/long-poll)
+        if (window.ClientCounters) return;
+
         this.refreshInterval = setInterval(() => {
             this.loadOrdersCount();
         }, 120000);
@@ -0,0 +1,166 @@
+/**
+ * CLIENT COUNTERS - PUSH/LONG-POLL ЗА NAVBAR BADGE-ОВЕТЕ
+ * =====================================================
+ * Броят артикули в количката и чакащите поръчки идват по STOMP на
+ * /user/queue/counters. Без WebSocket (или докато връзката е прекъсната)
+ * се ползва long-poll към /api/counters/poll - заявката чака промяна на сървъра,
+ * вместо да се повтаря на интервал.
+ */
+class ClientCounters {
+    constructor() {
+        this.version = -1;
+        this.lastPendingCount = null;
+        this.stompClient = null;
+        this.pushConnected = false;
+        this.polling = false;
+        this.stopped = false;
+
+        this.init();
+    }
+
+    async init() {
+        const authenticated = await this.load();
+        if (!authenticated) return;
+
+        if (!this.connectPush()) {
+            this.startLongPoll();
+        }
+    }
+
+    /**
+     * Текущите броячи - при старт и след (повторно) свързване
+     */
+    async load() {
+        try {
+            const response = await fetch('/api/counters', { credentials: 'include' });
+            if (response.status === 401) {
+                this.stopped = true;
+                return false;
+            }
+            if (response.ok) {
+                this.apply(await response.json());
+            }
+        } catch (error) {
+            console.log('Could not load counters:', error.message);
+        }
+        return true;
+    }
+
+    connectPush() {
+        if (typeof SockJS === 'undefined' || typeof StompJs === 'undefined') return false;
+
+        try {
+            this.stompClient = StompJs.Stomp.over(() => new SockJS('/ws/dashboard'));
+            this.stompClient.debug = () => {};
+            this.stompClient.reconnectDelay = 5000;
+
+            this.stompClient.onConnect = () => {
+                this.pushConnected = true;
+                this.stompClient.subscribe('/user/queue/counters', (message) => {
+                    try {
+                        this.apply(JSON.parse(message.body));
+                    } catch (error) {
+                        console.error('Invalid counters message:', error);
+                    }
+                });
+                // Промени докато връзката е била прекъсната
+                this.load();
+            };
+
+            this.stompClient.onWebSocketClose = () => {
+                this.pushConnected = false;
+                this.startLongPoll();
+            };
+
+            this.stompClient.activate();
+            return true;
+        } catch (error) {
+            console.error('Failed to connect counters push:', error);
+            return false;
+        }
+    }
+
+    /**
+     * Long-poll докато няма push връзка - всеки отговор е нова версия или timeout
+     */
+    async startLongPoll() {
+        if (this.polling || this.stopped) return;
+        this.polling = true;
+        let failures = 0;
+
+        while (!this.pushConnected && !this.stopped) {
+            try {
+                const response = await fetch(`/api/counters/poll?version=${this.version}`, {
+                    credentials: 'include'
+                });
+                if (response.status === 401) {
+                    this.stopped = true;
+                    break;
+                }
+                if (!response.ok) {
+                    throw new Error(`HTTP ${response.status}`);
+                }
+
+                const data = await response.json();
+                if (!data.version) {
+                    // Сесията е изтекла
+                    this.stopped = true;
+                    break;
+                }
+                this.apply(data);
+                failures = 0;
+            } catch (error) {
+                // Изтекла сесия връща HTML страница - след няколко поредни грешки спираме
+                if (++failures >= 10) {
+                    this.stopped = true;
+                    break;
+                }
+                await this.delay(5000);
+            }
+        }
+
+        this.polling = false;
+    }
+
+    apply(data) {
+        if (!data || typeof data.version !== 'number') return;
+        this.version = data.version;
+
+        const cartCount = data.cartCount || 0;
+        if (window.cartManager) {
+            window.cartManager.updateCacheCount(cartCount);
+            window.cartManager.setBadge(cartCount);
+        }
+
+        const pendingCount = data.pendingCount || 0;
+        if (window.ordersNavManager && pendingCount !== this.lastPendingCount) {
+            window.ordersNavManager.updateBadge(pendingCount);
+        }
+        this.lastPendingCount = pendingCount;
+    }
+
+    delay(ms) {
+        return new Promise(resolve => setTimeout(resolve, ms));
+    }
+
+    destroy() {
+        this.stopped = true;
+        if (this.stompClient) {
+            this.stompClient.deactivate();
+        }
+    }
+}
+
+// Initialize when DOM is ready
+document.addEventListener('DOMContentLoaded', () => {
+    window.clientCounters = new ClientCounters();
+});
+
+// Cleanup on page unload
+window.addEventListener('beforeunload', () => {
+    if (window.clientCounters) {
+        window.clientCounters.destroy();
+    }
+});
+
+window.ClientCounters = ClientCounters;
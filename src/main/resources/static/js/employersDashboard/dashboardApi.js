@@ -35,6 +35,12 @@ class DashboardApi {
         this.onNewOrder = null;
         this.onConnectionStatus = null;
 
+        // Sequenced delta protocol - последният обработен seq/epoch за resync след reconnect
+        this.streamEpoch = null;
+        this.lastOrderSeq = 0;
+        this.lastCountersSeq = 0;
+        this.hasConnectedOnce = false;
+
         // Request caching for performance
         this.cache = new Map();
         this.cacheTimeout = 30000; // 30 seconds
@@ -151,6 +157,12 @@ class DashboardApi {
 
                 this.subscribeToChannels();
 
+                // След reconnect - вземи само изпуснатото докато връзката е била прекъсната
+                if (this.hasConnectedOnce) {
+                    this.syncMissedUpdates();
+                }
+                this.hasConnectedOnce = true;
+
                 if (this.onConnectionStatus) {
                     this.onConnectionStatus(true);
                 }
@@ -201,42 +213,114 @@ class DashboardApi {
     subscribeToChannels() {
 
         // Subscribe to dashboard counters updates
-        this.orderSubscription = this.stompClient.subscribe('/topic/dashboard/orders', (message) => {
+        this.counterSubscription = this.stompClient.subscribe('/topic/dashboard/counters', (message) => {
             try {
                 const data = JSON.parse(message.body);
-                console.log('Received order update:', data.eventType, data.orderId);
 
-                // Предай събитието към manager-а за обработка
-                if (this.onOrderUpdate) {
-                    this.onOrderUpdate(data);
+                // Броячите са състояние - по-стар frame от вече обработения се пропуска
+                if (data.epoch === this.streamEpoch && data.seq <= this.lastCountersSeq) {
+                    return;
+                }
+                this.lastCountersSeq = data.seq;
+
+                if (this.onCountersUpdate) {
+                    this.onCountersUpdate(data);
                 }
 
             } catch (error) {
-                console.error('Error processing order update:', error);
+                console.error('Error processing counters update:', error);
             }
         });
 
         // Subscribe to order status changes
         this.orderSubscription = this.stompClient.subscribe('/topic/dashboard/orders', (message) => {
             try {
-                const data = JSON.parse(message.body);
-                console.log('Received order update:', data.eventType, data.orderId);
+                this.handleOrderFrames([JSON.parse(message.body)]);
+            } catch (error) {
+                console.error('Error processing order update:', error);
+            }
+        });
+    }
+
+    /**
+     * Обработва order frames от WebSocket или от /sync - всеки seq се обработва само веднъж
+     */
+    handleOrderFrames(frames) {
+        const events = [];
+        frames.forEach(frame => {
+            if (frame.epoch === this.streamEpoch && frame.seq <= this.lastOrderSeq) {
+                return; // вече обработен (дошъл и по WebSocket, и през /sync)
+            }
+            this.streamEpoch = frame.epoch;
+            this.lastOrderSeq = frame.seq;
+            events.push(...this.unpackOrderFrame(frame));
+        });
+
+        if (events.length === 0) {
+            return;
+        }
+
+        //  обновяване - един рефреш за всички frames, дори когато сървърът е групирал няколко събития
+        if (window.mainDashboard?.manager) {
+            window.mainDashboard.manager.refreshAllTabs();
+        }
+
+        // Предай събитията към manager-а за обработка
+        events.forEach(data => {
+            console.log('Received order update:', data.eventType, data.orderId);
+            if (this.onOrderUpdate) {
+                this.onOrderUpdate(data);
+            }
+        });
+    }
+
+    /**
+     * Delta sync - иска само frames изпуснати след последния обработен seq.
+     * Извиква се след reconnect и периодично докато WebSocket е прекъснат.
+     */
+    async syncMissedUpdates() {
+        try {
+            const epochParam = this.streamEpoch ? `&epoch=${encodeURIComponent(this.streamEpoch)}` : '';
+            const response = await this.makeRequest('GET', `/sync?since=${this.lastOrderSeq}${epochParam}`);
+            const data = await response.json();
+
+            if (!data.success) {
+                return;
+            }
 
-                //  обновяване
+            if (data.counters?.success && this.onCountersUpdate) {
+                this.onCountersUpdate(data.counters);
+            }
+
+            if (data.mode === 'SNAPSHOT') {
+                // Gap-ът е извън replay буфера или сървърът е рестартиран - еднократен пълен reload
+                console.log('Dashboard resync: snapshot required');
+                this.streamEpoch = data.epoch;
+                this.lastOrderSeq = data.seq;
+                this.lastCountersSeq = data.countersSeq;
+                this.clearCache();
                 if (window.mainDashboard?.manager) {
-                    // Форсирай рефреш на всички табове веднага
                     window.mainDashboard.manager.refreshAllTabs();
                 }
+                return;
+            }
 
-                // Broadcast събитието
-                if (this.onOrderUpdate) {
-                    this.onOrderUpdate(data);
-                }
+            console.log(`Dashboard resync: ${data.events.length} missed frames`);
+            this.handleOrderFrames(data.events);
 
-            } catch (error) {
-                console.error('Error processing order update:', error);
-            }
-        });
+        } catch (error) {
+            console.error('Error syncing missed dashboard updates:', error);
+        }
+    }
+
+    /**
+     * Сървърът групира събитията в рамките на coalescing прозореца в един BATCH frame
+     */
+    unpackOrderFrame(data) {
+        if (data && data.eventType === 'BATCH' && Array.isArray(data.events)) {
+            return data.events;
+        }
+        return [data];
     }
 
     /**
@@ -311,12 +395,14 @@ class DashboardApi {
 
     /**
      * Get orders by status with optional limit
+     * cursor = nextCursor от предишния отговор за следващата страница (keyset pagination)
      */
-    async getOrdersByStatus(status, limit = 10) {
-        const cacheKey = `orders_${status}_${limit}`;
+    async getOrdersByStatus(status, limit = 10, cursor = null) {
+        const cacheKey = `orders_${status}_${limit}_${cursor || ''}`;
 
         try {
-            const response = await this.makeRequest('GET', `/orders/${status}?limit=${limit}`);
+            const cursorParam = cursor ? `&cursor=${encodeURIComponent(cursor)}` : '';
+            const response = await this.makeRequest('GET', `/orders/${status}?limit=${limit}${cursorParam}`);
             const data = await response.json();
 
             // Cache for shorter time since order data changes frequently
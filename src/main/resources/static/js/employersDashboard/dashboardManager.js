@@ -333,8 +333,7 @@ class DashboardManager {
         if (connected) {
             console.log('WebSocket connected - real-time updates active');
         } else {
-            console.log('WebSocket disconnected - switching to polling mode');
-            this.refreshAllTabs();
+            console.log('WebSocket disconnected - switching to delta sync mode');
         }
     }
 
@@ -385,14 +384,15 @@ class DashboardManager {
     }
 
     /**
-     * Start auto-refresh timer (fallback when WebSocket is down)
+     * Start auto-refresh timer (fallback when WebSocket is down) - delta sync вместо пълен reload
      */
     startAutoRefresh() {
         this.autoRefreshInterval = setInterval(() => {
             // Проверка: refresh само ако WebSocket НЕ работи
             if (!this.isConnected) {
-                console.log('Auto-refreshing all tabs (WebSocket down)');
-                this.refreshAllTabs();
+                // Само пропуснатите събития - пълен reload само ако сървърът върне SNAPSHOT
+                console.log('Syncing missed updates (WebSocket down)');
+                this.api.syncMissedUpdates();
             } else {
                 console.log('WebSocket active - skipping auto-refresh');
             }
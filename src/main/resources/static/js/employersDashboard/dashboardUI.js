@@ -205,7 +205,17 @@ class DashboardUI {
 
             if (statElements.processed) statElements.processed.textContent = dailyStats.processed;
             if (statElements.revenue) statElements.revenue.textContent = dailyStats.revenue;
-            if (statElements.avgTime) statElements.avgTime.textContent = dailyStats.avgTime;
+            if (statElements.avgTime) {
+                statElements.avgTime.textContent = dailyStats.avgTime;
+
+                // Percentile-и на обработката (submitted -> confirmed) като tooltip
+                const processing = dailyStats.processingTimes?.submitToConfirm;
+                if (processing && processing.count > 0) {
+                    const hours = (seconds) => (seconds / 3600).toFixed(1) + 'ч';
+                    statElements.avgTime.title =
+                        `p50: ${hours(processing.p50)} · p90: ${hours(processing.p90)} · p99: ${hours(processing.p99)}`;
+                }
+            }
             if (statElements.activeClients) statElements.activeClients.textContent = dailyStats.activeClients;
 
             console.log('✓ Daily stats updated');
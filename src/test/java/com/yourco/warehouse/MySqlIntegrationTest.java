@@ -0,0 +1,70 @@
+package com.yourco.warehouse;
+
+import com.yourco.warehouse.entity.ProductEntity;
+import com.yourco.warehouse.entity.UserEntity;
+import com.yourco.warehouse.entity.enums.Role;
+import com.yourco.warehouse.entity.enums.UserStatus;
+import com.yourco.warehouse.repository.ProductRepository;
+import com.yourco.warehouse.repository.UserRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.testcontainers.containers.MySQLContainer;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Общата основа на интеграционните тестове - цялото приложение срещу истински MySQL
+ *
+ * Native заявките (ON DUPLICATE KEY UPDATE, FOR UPDATE, GREATEST) и поведението на
+ * InnoDB lock-овете не се емулират коректно от in-memory база, затова контейнерът е
+ * MySQL 8. Един контейнер за всички тестови класове; без Docker тестовете се пропускат.
+ */
+@SpringBootTest
+@Testcontainers(disabledWithoutDocker = true)
+public abstract class MySqlIntegrationTest {
+
+    private static final MySQLContainer<?> MYSQL = new MySQLContainer<>("mysql:8.0");
+
+    private static final AtomicLong SEQUENCE = new AtomicLong(System.currentTimeMillis() % 1_000_000);
+
+    @Autowired
+    protected UserRepository userRepository;
+
+    @Autowired
+    protected ProductRepository productRepository;
+
+    @DynamicPropertySource
+    static void mysqlProperties(DynamicPropertyRegistry registry) {
+        MYSQL.start();
+        registry.add("spring.datasource.url", MYSQL::getJdbcUrl);
+        registry.add("spring.datasource.username", MYSQL::getUsername);
+        registry.add("spring.datasource.password", MYSQL::getPassword);
+    }
+
+    // ==========================================
+    // FIXTURES - уникални имена, базата е обща за всички тестове
+    // ==========================================
+
+    protected UserEntity createClient() {
+        UserEntity client = new UserEntity();
+        client.setUsername("client-" + SEQUENCE.incrementAndGet());
+        client.setPasswordHash("{noop}test");
+        client.setRole(Role.CLIENT);
+        client.setUserStatus(UserStatus.ACTIVE);
+        client.setCreatedAt(LocalDateTime.now());
+        return userRepository.save(client);
+    }
+
+    protected ProductEntity createProduct(int quantityAvailable) {
+        ProductEntity product = new ProductEntity("T-" + SEQUENCE.incrementAndGet(), "Тестов продукт",
+                "бр.", BigDecimal.TEN, 20, LocalDateTime.now());
+        product.setCategory("Тест");
+        product.setQuantityAvailable(quantityAvailable);
+        return productRepository.save(product);
+    }
+}
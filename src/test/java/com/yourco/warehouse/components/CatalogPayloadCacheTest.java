@@ -0,0 +1,127 @@
+package com.yourco.warehouse.components;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.yourco.warehouse.dto.ProductCatalogDTO;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Байтове и CPU: готовият payload срещу Jackson + gzip на всяка заявка
+ */
+class CatalogPayloadCacheTest {
+
+    private static final Logger log = LoggerFactory.getLogger(CatalogPayloadCacheTest.class);
+
+    private static final int PRODUCTS = 5_000;
+    private static final int REQUESTS = 50;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    void gzipVariantDecodesToTheSameJson() throws IOException {
+        CatalogPayloadCache.Payload payload = CatalogPayloadCache.encode(objectMapper, products(PRODUCTS));
+
+        assertArrayEquals(payload.json(), gunzip(payload.gzip()));
+        assertArrayEquals(objectMapper.writeValueAsBytes(products(PRODUCTS)), payload.json());
+    }
+
+    @Test
+    void smallPayloadIsNotCompressed() throws IOException {
+        assertNull(CatalogPayloadCache.encode(objectMapper, products(1)).gzip());
+    }
+
+    @Test
+    void cachedPayloadSavesBytesAndCpu() throws IOException {
+        List<ProductCatalogDTO> products = products(PRODUCTS);
+        CatalogPayloadCache.Payload payload = CatalogPayloadCache.encode(objectMapper, products);
+
+        log.info("Catalog of {} products: {} bytes JSON, {} bytes gzip",
+                PRODUCTS, payload.json().length, payload.gzip().length);
+        assertTrue(payload.gzip().length * 4 < payload.json().length, "gzip should save at least 75%");
+
+        for (int i = 0; i < REQUESTS / 5; i++) {
+            perRequestEncoding(products);
+            cachedWrite(payload);
+        }
+
+        long started = System.nanoTime();
+        for (int i = 0; i < REQUESTS; i++) {
+            perRequestEncoding(products);
+        }
+        long perRequestNanos = System.nanoTime() - started;
+
+        started = System.nanoTime();
+        for (int i = 0; i < REQUESTS; i++) {
+            cachedWrite(payload);
+        }
+        long cachedNanos = System.nanoTime() - started;
+
+        log.info("Per request: Jackson + gzip {} us, cached bytes {} us",
+                perRequestNanos / REQUESTS / 1_000, cachedNanos / REQUESTS / 1_000);
+        assertTrue(cachedNanos < perRequestNanos, "cached bytes should be cheaper than encoding per request");
+    }
+
+    // ==========================================
+    // PRIVATE HELPERS
+    // ==========================================
+
+    /**
+     * Досегашният път - сериализация и компресия (default ниво, както server.compression)
+     */
+    private int perRequestEncoding(List<ProductCatalogDTO> products) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            objectMapper.writeValue(gzip, products);
+        }
+        return out.size();
+    }
+
+    private static int cachedWrite(CatalogPayloadCache.Payload payload) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(payload.gzip().length);
+        out.write(payload.gzip());
+        return out.size();
+    }
+
+    private static byte[] gunzip(byte[] compressed) throws IOException {
+        try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(compressed))) {
+            return in.readAllBytes();
+        }
+    }
+
+    static List<ProductCatalogDTO> products(int count) {
+        List<ProductCatalogDTO> products = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            ProductCatalogDTO product = new ProductCatalogDTO();
+            product.setId((long) i);
+            product.setSku(String.format("SKU-%05d", i));
+            product.setName("Продукт " + i);
+            product.setDescription("Описание на продукт " + i);
+            product.setCategory("Категория " + (i % 20));
+            product.setUnit("бр.");
+            product.setPrice(BigDecimal.valueOf(100 + i % 500, 2));
+            product.setVatRate(20);
+            product.setPriceWithVat(BigDecimal.valueOf(120 + i % 600, 2));
+            product.setVatAmount(BigDecimal.valueOf(20 + i % 100, 2));
+            product.setActive(true);
+            product.setQuantityAvailable(i % 300);
+            product.setQuantityReserved(i % 7);
+            product.setActualAvailable(Math.max(0, i % 300 - i % 7));
+            products.add(product);
+        }
+        return products;
+    }
+}
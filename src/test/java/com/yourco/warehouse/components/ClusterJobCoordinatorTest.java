@@ -0,0 +1,238 @@
+package com.yourco.warehouse.components;
+
+import com.yourco.warehouse.entity.Order;
+import com.yourco.warehouse.entity.UserEntity;
+import com.yourco.warehouse.entity.enums.OrderStatus;
+import com.yourco.warehouse.entity.enums.Role;
+import com.yourco.warehouse.entity.enums.UserStatus;
+import com.yourco.warehouse.repository.OrderRepository;
+import com.yourco.warehouse.repository.SchedulerLeaseRepository;
+import com.yourco.warehouse.repository.UserRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Два нода (два ClusterJobCoordinator-а) върху една и съща база
+ *
+ * SQL-ът на SchedulerLeaseRepository е общ за MySQL и H2, затова тестът е на H2 в
+ * MySQL режим и минава без Docker. Lease-овете са от 1 секунда - изтичането се чака
+ * реално, часовникът е този на базата.
+ */
+@DataJpaTest
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@TestPropertySource(properties = {
+        "spring.datasource.url=jdbc:h2:mem:leases;MODE=MySQL;DB_CLOSE_DELAY=-1;IGNORE_UNKNOWN_SETTINGS=TRUE",
+        "spring.datasource.driver-class-name=org.h2.Driver",
+        "spring.datasource.username=sa",
+        "spring.datasource.password=",
+        "spring.jpa.hibernate.ddl-auto=create-drop"
+})
+class ClusterJobCoordinatorTest {
+
+    private static final Duration SHORT_LEASE = Duration.ofSeconds(1);
+    private static final Duration LONG_LEASE = Duration.ofMinutes(5);
+    private static final long EXPIRY_WAIT_MS = 2_500;
+
+    private static final AtomicInteger JOB_SEQUENCE = new AtomicInteger();
+
+    @Autowired
+    private SchedulerLeaseRepository leaseRepository;
+
+    @Autowired
+    private OrderRepository orderRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private ClusterJobCoordinator nodeA;
+    private ClusterJobCoordinator nodeB;
+    private String jobName;
+
+    @BeforeEach
+    void startNodes() {
+        nodeA = new ClusterJobCoordinator(leaseRepository, transactionManager, new SimpleMeterRegistry(), "node-a");
+        nodeB = new ClusterJobCoordinator(leaseRepository, transactionManager, new SimpleMeterRegistry(), "node-b");
+        // Базата е обща за тестовете - всеки тест има собствен job
+        jobName = "test-job-" + JOB_SEQUENCE.incrementAndGet();
+    }
+
+    @AfterEach
+    void stopNodes() {
+        nodeA.shutdown();
+        nodeB.shutdown();
+    }
+
+    // ==========================================
+    // EXCLUSIVE
+    // ==========================================
+
+    @Test
+    void onlyOneNodeHoldsTheLease() {
+        assertTrue(nodeA.runExclusive(jobName, LONG_LEASE, lease -> { }));
+        assertFalse(nodeB.runExclusive(jobName, LONG_LEASE, lease -> fail()));
+
+        // Притежателят остава същият между tick-овете
+        assertTrue(nodeA.runExclusive(jobName, LONG_LEASE, lease -> assertFalse(lease.isNewlyAcquired())));
+        assertTrue(nodeA.isHeld(jobName));
+        assertFalse(nodeB.isHeld(jobName));
+    }
+
+    @Test
+    void concurrentFirstRunExecutesOnOneNode() throws Exception {
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicInteger executed = new AtomicInteger();
+        Callable<Boolean> tickA = tick(nodeA, start, executed);
+        Callable<Boolean> tickB = tick(nodeB, start, executed);
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            List<Future<Boolean>> results = List.of(executor.submit(tickA), executor.submit(tickB));
+            start.countDown();
+
+            int succeeded = 0;
+            for (Future<Boolean> result : results) {
+                if (result.get(30, TimeUnit.SECONDS)) {
+                    succeeded++;
+                }
+            }
+            assertEquals(1, succeeded, "nodes that ran the job");
+            assertEquals(1, executed.get(), "job executions");
+            assertTrue(nodeA.isHeld(jobName) ^ nodeB.isHeld(jobName), "exactly one node holds the lease");
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    // ==========================================
+    // TAKEOVER
+    // ==========================================
+
+    @Test
+    void otherNodeTakesOverAfterExpiry() throws InterruptedException {
+        AtomicReference<ClusterJobCoordinator.JobLease> first = new AtomicReference<>();
+        AtomicReference<ClusterJobCoordinator.JobLease> second = new AtomicReference<>();
+
+        assertTrue(nodeA.runExclusive(jobName, SHORT_LEASE, first::set));
+        assertFalse(nodeB.runExclusive(jobName, SHORT_LEASE, lease -> fail()));
+
+        // Нод A е "паднал" - не подновява и lease-ът изтича
+        Thread.sleep(EXPIRY_WAIT_MS);
+
+        assertTrue(nodeB.runExclusive(jobName, SHORT_LEASE, second::set));
+        assertTrue(second.get().isNewlyAcquired());
+        assertEquals("node-b", second.get().getOwnerId());
+        assertEquals(first.get().getToken() + 1, second.get().getToken(), "fencing token grows on takeover");
+
+        assertFalse(nodeA.runExclusive(jobName, LONG_LEASE, lease -> fail()));
+        assertFalse(nodeA.isHeld(jobName));
+        assertTrue(nodeB.isHeld(jobName));
+    }
+
+    // ==========================================
+    // FENCING
+    // ==========================================
+
+    @Test
+    void staleTokenFencedUpdateChangesNothing() throws InterruptedException {
+        Long orderId = createPendingOrder();
+        AtomicReference<ClusterJobCoordinator.JobLease> stale = new AtomicReference<>();
+
+        assertTrue(nodeA.runExclusive(jobName, SHORT_LEASE, stale::set));
+        Thread.sleep(EXPIRY_WAIT_MS);
+
+        assertTrue(nodeB.runExclusive(jobName, LONG_LEASE, current -> {
+            // Нод A се "събужда" след паузата и пише с token-а, който вече не е валиден
+            assertEquals(0, fencedConfirm(orderId, stale.get()), "stale token must not change rows");
+            assertThrows(IllegalStateException.class, stale.get()::verify);
+
+            assertEquals(1, fencedConfirm(orderId, current));
+        }));
+
+        assertEquals(OrderStatus.CONFIRMED, orderRepository.findById(orderId).orElseThrow().getStatus());
+    }
+
+    @Test
+    void expiredLeaseFencedUpdateChangesNothingBeforeTakeover() throws InterruptedException {
+        Long orderId = createPendingOrder();
+        AtomicReference<ClusterJobCoordinator.JobLease> expired = new AtomicReference<>();
+
+        assertTrue(nodeA.runExclusive(jobName, SHORT_LEASE, expired::set));
+        Thread.sleep(EXPIRY_WAIT_MS);
+
+        // Никой не е поел lease-а, но token-ът е изтекъл
+        assertEquals(0, fencedConfirm(orderId, expired.get()));
+        assertEquals(OrderStatus.PENDING, orderRepository.findById(orderId).orElseThrow().getStatus());
+    }
+
+    // ==========================================
+    // HELPERS
+    // ==========================================
+
+    private Callable<Boolean> tick(ClusterJobCoordinator node, CountDownLatch start, AtomicInteger executed) {
+        return () -> {
+            start.await();
+            return node.runExclusive(jobName, LONG_LEASE, lease -> executed.incrementAndGet());
+        };
+    }
+
+    private int fencedConfirm(Long orderId, ClusterJobCoordinator.JobLease lease) {
+        Integer updated = new TransactionTemplate(transactionManager).execute(status ->
+                orderRepository.fencedBulkCompareAndSetStatus(List.of(orderId),
+                        OrderStatus.PENDING.name(), OrderStatus.CONFIRMED.name(), LocalDateTime.now(),
+                        lease.getJobName(), lease.getOwnerId(), lease.getToken()));
+        assertNotNull(updated);
+        return updated;
+    }
+
+    private Long createPendingOrder() {
+        UserEntity client = new UserEntity();
+        client.setUsername("lease-client-" + jobName);
+        client.setPasswordHash("{noop}test");
+        client.setRole(Role.CLIENT);
+        client.setUserStatus(UserStatus.ACTIVE);
+        client.setCreatedAt(LocalDateTime.now());
+        client = userRepository.save(client);
+
+        Order order = new Order();
+        order.setClient(client);
+        order.setStatus(OrderStatus.PENDING);
+        order.setSubmittedAt(LocalDateTime.now());
+        return orderRepository.save(order).getId();
+    }
+
+    private static void fail() {
+        throw new AssertionError("job must not run on a node without the lease");
+    }
+}
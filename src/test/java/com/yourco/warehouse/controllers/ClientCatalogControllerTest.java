@@ -0,0 +1,101 @@
+package com.yourco.warehouse.controllers;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.yourco.warehouse.components.CatalogPayloadCache;
+import com.yourco.warehouse.components.CatalogSnapshotHolder;
+import com.yourco.warehouse.dto.ProductCatalogDTO;
+import com.yourco.warehouse.service.CatalogService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+class ClientCatalogControllerTest {
+
+    private static final String ETAG = "\"catalog-e1-7\"";
+    private static final String GZIP_ETAG = "\"catalog-e1-7-gz\"";
+
+    private MockMvc mockMvc;
+    private CatalogPayloadCache.Payload payload;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        List<ProductCatalogDTO> products = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            ProductCatalogDTO product = new ProductCatalogDTO();
+            product.setId((long) i);
+            product.setSku("SKU-" + i);
+            product.setName("Продукт " + i);
+            products.add(product);
+        }
+        byte[] json = new ObjectMapper().writeValueAsBytes(products);
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(compressed)) {
+            gzip.write(json);
+        }
+        payload = new CatalogPayloadCache.Payload(json, compressed.toByteArray());
+
+        CatalogSnapshotHolder.Snapshot snapshot = new CatalogSnapshotHolder.Snapshot(
+                7L, "e1", ETAG, products, Map.of(), Map.of(), null, null);
+        CatalogService catalogService = mock(CatalogService.class);
+        when(catalogService.getActiveCatalog()).thenReturn(snapshot);
+        when(catalogService.getCatalogPayload(any())).thenReturn(payload);
+
+        mockMvc = MockMvcBuilders.standaloneSetup(new ClientCatalogController(catalogService)).build();
+    }
+
+    @Test
+    void gzipClientGetsGzipBytesWithTheirOwnETag() throws Exception {
+        mockMvc.perform(get("/api/products").header(HttpHeaders.ACCEPT_ENCODING, "gzip, deflate"))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, GZIP_ETAG))
+                .andExpect(header().string(HttpHeaders.CONTENT_ENCODING, "gzip"))
+                .andExpect(header().string(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING))
+                .andExpect(content().bytes(payload.gzip()));
+    }
+
+    @Test
+    void identityClientGetsPlainJson() throws Exception {
+        mockMvc.perform(get("/api/products"))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, ETAG))
+                .andExpect(header().doesNotExist(HttpHeaders.CONTENT_ENCODING))
+                .andExpect(content().bytes(payload.json()));
+
+        mockMvc.perform(get("/api/products").header(HttpHeaders.ACCEPT_ENCODING, "gzip;q=0"))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, ETAG));
+    }
+
+    @Test
+    void gzipETagRevalidatesOnlyTheGzipVariant() throws Exception {
+        mockMvc.perform(get("/api/products")
+                        .header(HttpHeaders.ACCEPT_ENCODING, "gzip")
+                        .header(HttpHeaders.IF_NONE_MATCH, GZIP_ETAG))
+                .andExpect(status().isNotModified());
+
+        mockMvc.perform(get("/api/products").header(HttpHeaders.IF_NONE_MATCH, GZIP_ETAG))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, ETAG))
+                .andExpect(content().bytes(payload.json()));
+
+        mockMvc.perform(get("/api/products").header(HttpHeaders.IF_NONE_MATCH, ETAG))
+                .andExpect(status().isNotModified());
+    }
+}
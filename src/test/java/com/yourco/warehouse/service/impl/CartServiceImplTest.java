@@ -0,0 +1,139 @@
+package com.yourco.warehouse.service.impl;
+
+import com.yourco.warehouse.MySqlIntegrationTest;
+import com.yourco.warehouse.entity.CartItem;
+import com.yourco.warehouse.entity.Order;
+import com.yourco.warehouse.entity.OrderItem;
+import com.yourco.warehouse.entity.ProductEntity;
+import com.yourco.warehouse.entity.UserEntity;
+import com.yourco.warehouse.entity.enums.OrderStatus;
+import com.yourco.warehouse.repository.CartItemRepository;
+import com.yourco.warehouse.repository.OrderItemRepository;
+import com.yourco.warehouse.repository.OrderRepository;
+import com.yourco.warehouse.service.CartService;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.TestPropertySource;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Резервираното от клиента се чете с една GROUP BY заявка, независимо от размера на количката
+ *
+ * Броенето е по заявка (Hibernate Statistics по HQL), а не общият брой statement-и -
+ * scheduler-ите на приложението пускат свои заявки паралелно с теста.
+ */
+@TestPropertySource(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+class CartServiceImplTest extends MySqlIntegrationTest {
+
+    private static final int CART_LINES = 60;
+
+    private static final String GROUPED_QUERY = "oi.product.id IN :productIds";
+    private static final String PER_PRODUCT_QUERY = "oi.product.id = :productId";
+
+    @Autowired
+    private OrderRepository orderRepository;
+
+    @Autowired
+    private OrderItemRepository orderItemRepository;
+
+    @Autowired
+    private CartItemRepository cartItemRepository;
+
+    @Autowired
+    private CartService cartService;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    private Statistics statistics;
+
+    @BeforeEach
+    void setUp() {
+        statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+    }
+
+    @Test
+    void reservedQuantitiesForSixtyProductsTakeOneGroupedQuery() {
+        UserEntity client = createClient();
+        List<ProductEntity> products = createProducts(CART_LINES);
+        saveOrder(client, OrderStatus.PENDING, products, 2);
+        saveOrder(client, OrderStatus.URGENT, products.subList(0, 10), 1);
+        saveOrder(client, OrderStatus.CONFIRMED, products, 5);
+        List<Long> productIds = products.stream().map(ProductEntity::getId).toList();
+
+        statistics.clear();
+        Map<Long, Integer> reserved = orderItemRepository.getReservedQuantitiesByUser(client.getId(), productIds);
+
+        assertEquals(1, executions(GROUPED_QUERY));
+        assertEquals(0, executions(PER_PRODUCT_QUERY));
+        assertEquals(CART_LINES, reserved.size());
+        for (int i = 0; i < CART_LINES; i++) {
+            assertEquals(i < 10 ? 3 : 2, reserved.get(productIds.get(i)));
+        }
+    }
+
+    @Test
+    void cartValidationQueriesDoNotGrowWithCartSize() {
+        for (int lines : new int[]{1, CART_LINES}) {
+            UserEntity client = createClient();
+            List<ProductEntity> products = createProducts(lines);
+            saveOrder(client, OrderStatus.PENDING, products, 1);
+            for (ProductEntity product : products) {
+                cartItemRepository.save(new CartItem(client, product, 1));
+            }
+
+            statistics.clear();
+            assertTrue(cartService.validateCartStock(client.getId()));
+
+            assertEquals(1, executions(GROUPED_QUERY), lines + " lines");
+            assertEquals(0, executions(PER_PRODUCT_QUERY), lines + " lines");
+        }
+    }
+
+    // ==========================================
+    // PRIVATE HELPERS
+    // ==========================================
+
+    private long executions(String queryFragment) {
+        return Arrays.stream(statistics.getQueries())
+                .filter(query -> query.contains(queryFragment))
+                .mapToLong(query -> statistics.getQueryStatistics(query).getExecutionCount())
+                .sum();
+    }
+
+    private List<ProductEntity> createProducts(int count) {
+        List<ProductEntity> products = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            products.add(createProduct(100));
+        }
+        return products;
+    }
+
+    private void saveOrder(UserEntity client, OrderStatus status, List<ProductEntity> products, int quantity) {
+        Order order = new Order();
+        order.setClient(client);
+        order.setStatus(status);
+        order.setSubmittedAt(LocalDateTime.now());
+        for (ProductEntity product : products) {
+            OrderItem item = new OrderItem();
+            item.setProduct(product);
+            item.setQty(BigDecimal.valueOf(quantity));
+            item.setUnitPrice(product.getPrice());
+            order.addItem(item);
+        }
+        orderRepository.save(order);
+    }
+}
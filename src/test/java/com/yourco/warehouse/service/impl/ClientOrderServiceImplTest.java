@@ -0,0 +1,151 @@
+package com.yourco.warehouse.service.impl;
+
+import com.yourco.warehouse.MySqlIntegrationTest;
+import com.yourco.warehouse.entity.CartItem;
+import com.yourco.warehouse.entity.ProductEntity;
+import com.yourco.warehouse.entity.UserEntity;
+import com.yourco.warehouse.repository.CartItemRepository;
+import com.yourco.warehouse.service.ClientOrderService;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.TestPropertySource;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 200 едновременни checkout-а върху малко "горещи" продукта
+ *
+ * Количките съдържат едни и същи продукти в различен ред - при заключване в реда
+ * на количката това води до deadlock-и. Общото търсене е над наличното, така че
+ * част от поръчките се отказват по бизнес причина; всички останали грешки (deadlock,
+ * lock timeout, изчерпан pool) провалят теста.
+ */
+@TestPropertySource(properties = {
+        "spring.datasource.hikari.maximum-pool-size=50",
+        "spring.datasource.hikari.connection-timeout=60000"
+})
+class ClientOrderServiceImplTest extends MySqlIntegrationTest {
+
+    private static final Logger log = LoggerFactory.getLogger(ClientOrderServiceImplTest.class);
+
+    private static final int CHECKOUTS = 200;
+    private static final int HOT_PRODUCTS = 10;
+    private static final int LINES_PER_CART = 4;
+    private static final int QUANTITY_PER_LINE = 2;
+    private static final int STOCK_PER_PRODUCT = 150;
+
+    @Autowired
+    private ClientOrderService clientOrderService;
+
+    @Autowired
+    private CartItemRepository cartItemRepository;
+
+    @Test
+    void concurrentCheckoutsOnHotProductsNeitherDeadlockNorOversell() throws Exception {
+        List<ProductEntity> hotProducts = new ArrayList<>();
+        for (int i = 0; i < HOT_PRODUCTS; i++) {
+            hotProducts.add(createProduct(STOCK_PER_PRODUCT));
+        }
+
+        Random random = new Random(42);
+        Map<Long, Map<Long, Integer>> carts = new LinkedHashMap<>();
+        for (int i = 0; i < CHECKOUTS; i++) {
+            UserEntity client = createClient();
+            List<ProductEntity> shuffled = new ArrayList<>(hotProducts);
+            Collections.shuffle(shuffled, random);
+
+            Map<Long, Integer> cart = new LinkedHashMap<>();
+            for (ProductEntity product : shuffled.subList(0, LINES_PER_CART)) {
+                cartItemRepository.save(new CartItem(client, product, QUANTITY_PER_LINE));
+                cart.put(product.getId(), QUANTITY_PER_LINE);
+            }
+            carts.put(client.getId(), cart);
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(CHECKOUTS);
+        CountDownLatch start = new CountDownLatch(1);
+        ConcurrentLinkedQueue<Long> succeeded = new ConcurrentLinkedQueue<>();
+        ConcurrentLinkedQueue<Throwable> unexpected = new ConcurrentLinkedQueue<>();
+        AtomicInteger rejected = new AtomicInteger();
+        AtomicInteger deadlocks = new AtomicInteger();
+
+        try {
+            for (Long userId : carts.keySet()) {
+                executor.execute(() -> {
+                    try {
+                        start.await();
+                        clientOrderService.createOrderFromCart(userId, "concurrency test");
+                        succeeded.add(userId);
+                    } catch (IllegalArgumentException | IllegalStateException e) {
+                        rejected.incrementAndGet();
+                    } catch (Throwable e) {
+                        if (isDeadlock(e)) {
+                            deadlocks.incrementAndGet();
+                        }
+                        unexpected.add(e);
+                    }
+                });
+            }
+            start.countDown();
+            executor.shutdown();
+            assertTrue(executor.awaitTermination(5, TimeUnit.MINUTES), "checkouts did not finish");
+        } finally {
+            executor.shutdownNow();
+        }
+
+        log.info("{} checkouts: {} created, {} rejected, {} errors",
+                CHECKOUTS, succeeded.size(), rejected.get(), unexpected.size());
+        assertEquals(0, deadlocks.get(), "deadlocks");
+        assertTrue(unexpected.isEmpty(), () -> "unexpected errors: " + unexpected.stream()
+                .map(Throwable::toString).toList());
+        assertEquals(CHECKOUTS, succeeded.size() + rejected.get());
+        assertTrue(succeeded.size() > 0, "no checkout succeeded");
+
+        Map<Long, Integer> expectedReserved = new HashMap<>();
+        for (Long userId : succeeded) {
+            carts.get(userId).forEach((productId, quantity) -> expectedReserved.merge(productId, quantity, Integer::sum));
+        }
+
+        int totalReserved = 0;
+        for (ProductEntity hot : hotProducts) {
+            ProductEntity product = productRepository.findById(hot.getId()).orElseThrow();
+            int reserved = product.getQuantityReserved();
+            assertEquals(STOCK_PER_PRODUCT, product.getQuantityAvailable(), "available of " + product.getSku());
+            assertEquals(expectedReserved.getOrDefault(product.getId(), 0), reserved, "reserved of " + product.getSku());
+            assertTrue(reserved <= STOCK_PER_PRODUCT, "oversold " + product.getSku());
+            totalReserved += reserved;
+        }
+        assertEquals(succeeded.size() * LINES_PER_CART * QUANTITY_PER_LINE, totalReserved);
+
+        for (Long userId : succeeded) {
+            assertTrue(cartItemRepository.findCheckoutLinesByUserId(userId).isEmpty(), "cart not cleared");
+        }
+    }
+
+    private static boolean isDeadlock(Throwable error) {
+        for (Throwable cause = error; cause != null; cause = cause.getCause()) {
+            String message = cause.getMessage();
+            if (message != null && message.contains("Deadlock")) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
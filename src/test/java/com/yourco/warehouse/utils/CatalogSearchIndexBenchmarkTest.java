@@ -0,0 +1,161 @@
+package com.yourco.warehouse.utils;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Индексът срещу LIKE '%q%' сканиране при 50 000 продукта
+ *
+ * Сканирането тук е in-memory еквивалентът на searchActiveProducts
+ * (LOWER(name) LIKE '%q%' OR LOWER(sku) LIKE '%q%') - без мрежа и диск,
+ * т.е. долна граница на цената на SQL пътя.
+ */
+class CatalogSearchIndexBenchmarkTest {
+
+    private static final Logger log = LoggerFactory.getLogger(CatalogSearchIndexBenchmarkTest.class);
+
+    private static final int PRODUCTS = 50_000;
+    private static final int ROUNDS = 50;
+    private static final long MAX_AVERAGE_MICROS = 1_000;
+    private static final long MAX_BUILD_MILLIS = 10_000;
+
+    private static final String[] NOUNS = {
+            "Кабел", "Болт", "Гайка", "Шайба", "Винт", "Дюбел", "Тръба", "Лента", "Ключ", "Крушка",
+            "Контакт", "Шнур", "Щепсел", "Маркуч", "Боя", "Лепило", "Силикон", "Пирон", "Панта", "Ключалка"
+    };
+    private static final String[] ADJECTIVES = {
+            "меден", "поцинкован", "бял", "черен", "стоманен", "пластмасов", "усилен", "гъвкав"
+    };
+    private static final String[] SIZES = {"М6", "М8", "М10", "10мм", "20мм", "2.5", "1/2", "3/4"};
+
+    private static final List<String[]> ROWS = new ArrayList<>(PRODUCTS);
+    private static final CatalogSearchIndex INDEX = new CatalogSearchIndex();
+
+    private static final List<String> QUERIES = List.of(
+            "кабел меден", "shtepsel", "гайка", "лепило", "silikon usilen", "маркуч гъвкав", "sku 01234", "ключалка");
+
+    @BeforeAll
+    static void buildCatalog() {
+        Random random = new Random(42);
+        for (int i = 0; i < PRODUCTS; i++) {
+            String sku = String.format(Locale.ROOT, "SKU-%05d", i);
+            String name = NOUNS[random.nextInt(NOUNS.length)] + " "
+                    + ADJECTIVES[random.nextInt(ADJECTIVES.length)] + " "
+                    + SIZES[random.nextInt(SIZES.length)];
+            String description = "Партида " + random.nextInt(1000) + ", "
+                    + ADJECTIVES[random.nextInt(ADJECTIVES.length)];
+            ROWS.add(new String[]{sku, name, description});
+        }
+
+        long started = System.nanoTime();
+        for (int i = 0; i < PRODUCTS; i++) {
+            String[] row = ROWS.get(i);
+            INDEX.put(i, row[0], row[1], row[2]);
+        }
+        long buildMillis = (System.nanoTime() - started) / 1_000_000;
+        log.info("Index build: {} products in {} ms", PRODUCTS, buildMillis);
+        assertTrue(buildMillis < MAX_BUILD_MILLIS, "index build " + buildMillis + " ms");
+    }
+
+    @Test
+    void indexMatchesTheSameProductsAsAFullScan() {
+        for (String query : QUERIES) {
+            Set<Long> expected = normalizedScan(query);
+            Set<Long> actual = new HashSet<>(INDEX.search(query, PRODUCTS));
+            assertEquals(expected, actual, query);
+        }
+    }
+
+    @Test
+    void exactSkuIsTheTopHit() {
+        assertEquals(1234L, INDEX.search("SKU-01234", 10).get(0));
+        assertEquals(1234L, INDEX.search("ску-01234", 10).get(0));
+    }
+
+    @Test
+    void topKSearchStaysInMicroseconds() {
+        for (int i = 0; i < ROUNDS / 5; i++) {
+            for (String query : QUERIES) {
+                INDEX.search(query, 20);
+                likeScan(query);
+            }
+        }
+
+        long indexNanos = 0;
+        long scanNanos = 0;
+        int searches = 0;
+        for (int i = 0; i < ROUNDS; i++) {
+            for (String query : QUERIES) {
+                long started = System.nanoTime();
+                INDEX.search(query, 20);
+                indexNanos += System.nanoTime() - started;
+
+                started = System.nanoTime();
+                likeScan(query);
+                scanNanos += System.nanoTime() - started;
+                searches++;
+            }
+        }
+
+        long indexMicros = indexNanos / searches / 1_000;
+        long scanMicros = scanNanos / searches / 1_000;
+        log.info("Search over {} products: index {} us/query, LIKE scan {} us/query",
+                PRODUCTS, indexMicros, scanMicros);
+
+        assertTrue(indexMicros < MAX_AVERAGE_MICROS, "index average " + indexMicros + " us");
+        assertTrue(indexNanos < scanNanos, "index should beat the full scan");
+    }
+
+    // ==========================================
+    // PRIVATE HELPERS
+    // ==========================================
+
+    /**
+     * Всички думи от заявката се съдържат в SKU, името или описанието (семантиката на индекса)
+     */
+    private static Set<Long> normalizedScan(String query) {
+        List<String> tokens = SearchTextNormalizer.tokens(query);
+        Set<Long> result = new HashSet<>();
+        for (int i = 0; i < ROWS.size(); i++) {
+            String[] row = ROWS.get(i);
+            String sku = SearchTextNormalizer.normalize(row[0]);
+            String name = SearchTextNormalizer.normalize(row[1]);
+            String description = SearchTextNormalizer.normalize(row[2]);
+            boolean matches = true;
+            for (String token : tokens) {
+                if (!sku.contains(token) && !name.contains(token) && !description.contains(token)) {
+                    matches = false;
+                    break;
+                }
+            }
+            if (matches) {
+                result.add((long) i);
+            }
+        }
+        return result;
+    }
+
+    private static int likeScan(String query) {
+        String needle = query.toLowerCase(Locale.ROOT);
+        int matches = 0;
+        for (String[] row : ROWS) {
+            if (row[1].toLowerCase(Locale.ROOT).contains(needle)
+                    || row[0].toLowerCase(Locale.ROOT).contains(needle)) {
+                matches++;
+            }
+        }
+        return matches;
+    }
+}
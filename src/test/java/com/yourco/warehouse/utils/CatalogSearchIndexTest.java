@@ -0,0 +1,74 @@
+package com.yourco.warehouse.utils;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CatalogSearchIndexTest {
+
+    private CatalogSearchIndex index;
+
+    @BeforeEach
+    void setUp() {
+        index = new CatalogSearchIndex();
+        index.put(1, "KAB-100", "Кабел ПВ-А 2.5", "Меден проводник");
+        index.put(2, "BOLT-M8", "Болт М8", "Поцинкован");
+        index.put(3, "KABEL-X", "Разклонител", "за кабел");
+    }
+
+    @Test
+    void exactSkuRanksFirst() {
+        assertEquals(2L, index.search("BOLT-M8", 10).get(0));
+    }
+
+    @Test
+    void skuPrefixRanksAboveNameWordPrefix() {
+        assertEquals(List.of(3L, 1L), index.search("кабел", 10));
+    }
+
+    @Test
+    void descriptionMatchIsFoundLast() {
+        index.put(4, "PR-1", "Проводник", "");
+        assertEquals(List.of(4L, 1L), index.search("проводник", 10));
+    }
+
+    @Test
+    void latinQueryFindsCyrillicNameAndCyrillicQueryFindsLatinSku() {
+        assertEquals(List.of(2L), index.search("bolt", 10));
+        assertEquals(Set.of(1L, 3L), Set.copyOf(index.search("каб", 10)));
+    }
+
+    @Test
+    void shortQueryMatchesWordPrefixes() {
+        assertEquals(List.of(2L), index.search("бо", 10));
+        assertEquals(List.of(2L), index.search("m8", 10));
+    }
+
+    @Test
+    void allWordsMustMatch() {
+        assertEquals(List.of(1L), index.search("кабел меден", 10));
+        assertTrue(index.search("кабел болт", 10).isEmpty());
+    }
+
+    @Test
+    void limitKeepsTheBestHits() {
+        assertEquals(List.of(3L), index.search("kabel", 1));
+        assertTrue(index.search("kabel", 0).isEmpty());
+    }
+
+    @Test
+    void putReplacesAndRemoveDropsTheDocument() {
+        index.put(1, "KAB-100", "Шнур", "");
+        assertEquals(List.of(3L), index.search("кабел", 10));
+        assertEquals(List.of(1L), index.search("шнур", 10));
+
+        index.remove(3);
+        assertTrue(index.search("кабел", 10).isEmpty());
+        assertEquals(2, index.size());
+    }
+}
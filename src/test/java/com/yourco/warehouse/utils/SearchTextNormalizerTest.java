@@ -0,0 +1,53 @@
+package com.yourco.warehouse.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SearchTextNormalizerTest {
+
+    @Test
+    void foldsCyrillicAndLatinToTheSameForm() {
+        assertEquals("kabel", SearchTextNormalizer.normalize("Кабел"));
+        assertEquals("kabel", SearchTextNormalizer.normalize("кабел"));
+        assertEquals("kabel", SearchTextNormalizer.normalize("KABEL"));
+        assertEquals("kabel", SearchTextNormalizer.normalize("kabel"));
+        assertEquals(SearchTextNormalizer.normalize("Болт"), SearchTextNormalizer.normalize("BOLT"));
+    }
+
+    @Test
+    void transliteratesMultiLetterSounds() {
+        assertEquals("zhitsa shtepsel yuta", SearchTextNormalizer.normalize("Жица Щепсел Юта"));
+        assertEquals("chasha shayba yabalka", SearchTextNormalizer.normalize("Чаша Шайба Ябълка"));
+        assertEquals("hartiya", SearchTextNormalizer.normalize("Хартия"));
+    }
+
+    @Test
+    void foldsAccentedVariants() {
+        assertEquals("i", SearchTextNormalizer.normalize("ѝ"));
+        assertEquals("e", SearchTextNormalizer.normalize("Ё"));
+    }
+
+    @Test
+    void collapsesSeparatorsIntoSingleSpaces() {
+        assertEquals("pvts traba 20mm", SearchTextNormalizer.normalize("  ПВЦ-тръба,  20мм  "));
+        assertEquals("sku 01234", SearchTextNormalizer.normalize("SKU-01234"));
+        assertEquals("kabel 2 5", SearchTextNormalizer.normalize("№ кабел 2.5 !"));
+    }
+
+    @Test
+    void emptyInputGivesNoTokens() {
+        assertEquals("", SearchTextNormalizer.normalize(null));
+        assertEquals("", SearchTextNormalizer.normalize(""));
+        assertEquals("", SearchTextNormalizer.normalize(" - / "));
+        assertTrue(SearchTextNormalizer.tokens("  ,. ").isEmpty());
+    }
+
+    @Test
+    void tokensSplitTheCanonicalForm() {
+        assertEquals(List.of("bolt", "m8", "x", "40"), SearchTextNormalizer.tokens("Болт М8, x 40"));
+    }
+}